@@ -0,0 +1,101 @@
+package avlTree.jmh;
+
+import avlTree.AVLTree;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A sorted batch of batch odd keys inserted into and looked up in a tree of the keys 2*i for i < size,
+ * by a put or get loop and by putAll and getAll, one call is one batch. The batch is a run of adjacent
+ * keys at a random position. The puts insert absent keys and the teardown removes them again, the
+ * gets look up the batch which the setup inserted.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx6g"})
+public class BatchOperations {
+
+    @Param({"100000", "1000000"})
+    int size;
+
+    @Param({"10", "100", "1000", "10000", "100000"})
+    int batch;
+
+    private AVLTree<Integer, Integer> tree;
+    private Integer[] keys;
+
+
+    @Setup(Level.Trial)
+    public void fill(BenchmarkParams params){
+        if(batch > size)
+            throw new IllegalArgumentException("Batch of " + batch + " keys is larger than the tree of " + size);
+        Integer[] even = new Integer[size];
+        for(int i = 0; i < size; i++)
+            even[i] = 2 * i;
+        tree = AVLTree.fromSorted(even, even);
+        int first = new Random(11).nextInt(size - batch + 1);
+        keys = new Integer[batch];
+        for(int i = 0; i < batch; i++)
+            keys[i] = 2 * (first + i) + 1;
+        if(params.getBenchmark().contains(".get"))
+            tree.putAll(keys, keys);
+    }
+
+
+    @Benchmark
+    public void putLoop(Inserted inserted){
+        for(Integer key : keys)
+            tree.put(key, key);
+    }
+
+
+    @Benchmark
+    public void putAll(Inserted inserted){
+        tree.putAll(keys, keys);
+    }
+
+
+    @Benchmark
+    public void getLoop(Blackhole blackhole){
+        for(Integer key : keys)
+            blackhole.consume(tree.get(key));
+    }
+
+
+    @Benchmark
+    public List<Integer> getAll(){
+        return tree.getAll(keys);
+    }
+
+
+    /* Removes the batch after every put, so that every put inserts it into the tree of size keys */
+    @State(Scope.Thread)
+    public static class Inserted {
+
+        @TearDown(Level.Invocation)
+        public void remove(BatchOperations state){
+            for(Integer key : state.keys)
+                state.tree.delete(key);
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package avlTree.jmh;
+
+import avlTree.AVLTree;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building a tree of size sorted keys by a put loop and by the linear bulk loads fromSorted and
+ * fromSortedParallel, one call is one tree.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx6g"})
+public class BulkLoad {
+
+    @Param({"1000", "100000", "1000000"})
+    int size;
+
+    private Integer[] keys;
+
+
+    @Setup(Level.Trial)
+    public void keys(){
+        keys = new Integer[size];
+        for(int i = 0; i < size; i++)
+            keys[i] = i;
+    }
+
+
+    @Benchmark
+    public AVLTree<Integer, Integer> sortedPut(){
+        AVLTree<Integer, Integer> tree = new AVLTree<>();
+        for(Integer key : keys)
+            tree.put(key, key);
+        return tree;
+    }
+
+
+    @Benchmark
+    public AVLTree<Integer, Integer> fromSorted(){
+        return AVLTree.fromSorted(keys, keys);
+    }
+
+
+    @Benchmark
+    public AVLTree<Integer, Integer> fromSortedParallel(){
+        return AVLTree.fromSortedParallel(keys, keys);
+    }
+}
@@ -0,0 +1,84 @@
+package avlTree.jmh;
+
+import avlTree.AVLTree;
+import avlTree.FrozenAVLTree;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lookups of the FrozenAVLTree of an AVLTree, compare with get, floor and ceiling of MapOperations
+ * and with the FrozenAVLTree of OrderStatistics. freeze builds the array of all keys, one call is one
+ * freeze, the lookups cycle through the keys of the distribution, one call is one lookup.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx6g"})
+public class FrozenLookups {
+
+    @Param({"1000", "10000", "100000", "1000000", "10000000"})
+    int size;
+
+    @Param({"sequential", "random", "zipf"})
+    String distribution;
+
+    private Workload workload;
+    private AVLTree<Integer, Integer> tree;
+    private FrozenAVLTree<Integer, Integer> frozen;
+    private int next;
+
+
+    @Setup(Level.Trial)
+    public void fill(){
+        workload = Workload.of(distribution, size);
+        tree = new AVLTree<>();
+        for(Integer key : workload.inserts)
+            tree.put(key, key);
+        frozen = tree.freeze();
+    }
+
+
+    private int next(){
+        int i = next;
+        next = (i + 1 == size) ? 0 : i + 1;
+        return i;
+    }
+
+
+    @Benchmark
+    public FrozenAVLTree<Integer, Integer> freeze(){
+        return tree.freeze();
+    }
+
+
+    @Benchmark
+    public Integer get(){
+        return frozen.get(workload.lookups[next()]);
+    }
+
+
+    @Benchmark
+    public Integer floor(){
+        return frozen.floor(workload.probes[next()]);
+    }
+
+
+    @Benchmark
+    public Integer ceiling(){
+        return frozen.ceiling(workload.probes[next()]);
+    }
+}
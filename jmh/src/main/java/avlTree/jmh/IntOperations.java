@@ -0,0 +1,157 @@
+package avlTree.jmh;
+
+import avlTree.IntAVLTree;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.BenchmarkParams;
+
+import java.util.concurrent.TimeUnit;
+
+import static avlTree.jmh.MapOperations.BATCH;
+
+/**
+ * Operations of IntAVLTree on the keys of MapOperations without boxing, compare with AVLTree there.
+ * The values are shared, so the bytes/op of put is the heap of an entry. floor and ceiling return -1
+ * for no key instead of throwing. put and delete run in batches of BATCH absent keys like the ones of
+ * MapOperations, one call is one operation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx6g"})
+public class IntOperations {
+
+    @Param({"1000", "10000", "100000", "1000000", "10000000"})
+    int size;
+
+    @Param({"sequential", "random", "zipf"})
+    String distribution;
+
+    private IntAVLTree<Object> tree;
+    private int[] lookups;
+    private int[] probes;
+    private int[] ranks;
+    private int[] absent;
+    private int next;
+    private int batch;
+
+
+    @Setup(Level.Trial)
+    public void fill(){
+        Workload workload = Workload.of(distribution, size);
+        lookups = unbox(workload.lookups);
+        probes = unbox(workload.probes);
+        absent = unbox(workload.updates);
+        ranks = workload.ranks;
+        tree = new IntAVLTree<>();
+        for(Integer key : workload.inserts)
+            tree.put(key, Boolean.TRUE);
+    }
+
+
+    private static int[] unbox(Integer[] keys){
+        int[] result = new int[keys.length];
+        for(int i = 0; i < keys.length; i++)
+            result[i] = keys[i];
+        return result;
+    }
+
+
+    private int next(){
+        int i = next;
+        next = (i + 1 == size) ? 0 : i + 1;
+        return i;
+    }
+
+
+    private int batch(){
+        int start = batch;
+        batch = (start + 2 * BATCH > size) ? 0 : start + BATCH;
+        return start;
+    }
+
+
+    @Benchmark
+    public Object get(){
+        return tree.get(lookups[next()]);
+    }
+
+
+    @Benchmark
+    public int floor(){
+        return tree.floor(probes[next()], -1);
+    }
+
+
+    @Benchmark
+    public int ceiling(){
+        return tree.ceiling(probes[next()], -1);
+    }
+
+
+    @Benchmark
+    public int rank(){
+        return tree.rank(probes[next()]);
+    }
+
+
+    @Benchmark
+    public int select(){
+        return tree.select(ranks[next()]);
+    }
+
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void put(Updates updates){
+        for(int i = updates.start; i < updates.start + BATCH; i++)
+            tree.put(absent[i], Boolean.TRUE);
+    }
+
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void delete(Updates updates){
+        for(int i = updates.start; i < updates.start + BATCH; i++)
+            tree.delete(absent[i]);
+    }
+
+
+    /* One batch of absent keys, inserted before a delete and removed after a put */
+    @State(Scope.Thread)
+    public static class Updates {
+        int start;
+        private boolean inserted;
+
+        @Setup(Level.Invocation)
+        public void prepare(IntOperations state, BenchmarkParams params){
+            start = state.batch();
+            inserted = params.getBenchmark().endsWith(".delete");
+            if(inserted)
+                for(int i = start; i < start + BATCH; i++)
+                    state.tree.put(state.absent[i], Boolean.TRUE);
+        }
+
+        @TearDown(Level.Invocation)
+        public void restore(IntOperations state){
+            if(inserted)
+                return;
+            for(int i = start; i < start + BATCH; i++)
+                state.tree.delete(state.absent[i]);
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package avlTree.jmh;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the command line options of org.openjdk.jmh.Main and always adds the
+ * GC profiler, so every result carries the allocation rate, bytes/op and the collection counts.
+ *   java -cp jmh/target/benchmarks.jar avlTree.jmh.Main MapOperations -p size=100000
+ */
+public class Main {
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException{
+        CommandLineOptions options = new CommandLineOptions(args);
+        new Runner(new OptionsBuilder().parent(options).addProfiler(GCProfiler.class).build()).run();
+    }
+}
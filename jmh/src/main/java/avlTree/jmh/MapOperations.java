@@ -0,0 +1,158 @@
+package avlTree.jmh;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Operations of AVLTree, AVLTree with a HotKeyCache, PooledAVLTree, TreeMap and ConcurrentSkipListMap
+ * on a structure of size keys.
+ * The lookups cycle through the keys of the distribution, one call is one operation.
+ * put and delete run in batches of BATCH odd keys, which are absent from the structure:
+ * put inserts a batch and the teardown removes it again, delete removes a batch which the
+ * setup inserted, so the structure stays at size keys. keysInRange counts the keys of a
+ * range of RANGE present keys and iterate walks all keys, one call is one range or walk.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx6g"})
+public class MapOperations {
+    static final int BATCH = 1000;
+    private static final int RANGE = 100;
+
+    @Param({"1000", "10000", "100000", "1000000", "10000000"})
+    int size;
+
+    @Param({"sequential", "random", "zipf"})
+    String distribution;
+
+    @Param({"AVLTree", "AVLTreeCached", "PooledAVLTree", "TreeMap", "ConcurrentSkipListMap"})
+    String structure;
+
+    private Workload workload;
+    private Target target;
+    private int next;
+    private int batch;
+
+
+    @Setup(Level.Trial)
+    public void fill(){
+        workload = Workload.of(distribution, size);
+        target = Target.create(structure, size);
+        for(Integer key : workload.inserts)
+            target.put(key, key);
+    }
+
+
+    /* Index of the next lookup */
+    private int next(){
+        int i = next;
+        next = (i + 1 == size) ? 0 : i + 1;
+        return i;
+    }
+
+
+    /* Moves to the next batch of updates */
+    private int batch(){
+        int start = batch;
+        batch = (start + 2 * BATCH > size) ? 0 : start + BATCH;
+        return start;
+    }
+
+
+    @Benchmark
+    public Integer get(){
+        return target.get(workload.lookups[next()]);
+    }
+
+
+    @Benchmark
+    public Integer floor(){
+        return target.floor(workload.probes[next()]);
+    }
+
+
+    @Benchmark
+    public Integer ceiling(){
+        return target.ceiling(workload.probes[next()]);
+    }
+
+
+    @Benchmark
+    public int keysInRange(){
+        Integer lo = workload.lookups[next()];
+        return target.range(lo, lo + 2 * RANGE);
+    }
+
+
+    @Benchmark
+    public void iterate(Blackhole blackhole){
+        for(Iterator<Integer> keys = target.keys(); keys.hasNext(); )
+            blackhole.consume(keys.next());
+    }
+
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void put(Updates updates){
+        Integer[] keys = workload.updates;
+        for(int i = updates.start; i < updates.start + BATCH; i++)
+            target.put(keys[i], keys[i]);
+    }
+
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void delete(Updates updates){
+        Integer[] keys = workload.updates;
+        for(int i = updates.start; i < updates.start + BATCH; i++)
+            target.delete(keys[i]);
+    }
+
+
+    /* One batch of absent keys, inserted before a delete and removed after a put */
+    @State(Scope.Thread)
+    public static class Updates {
+        int start;
+        private boolean inserted;
+
+        @Setup(Level.Invocation)
+        public void prepare(MapOperations state, BenchmarkParams params){
+            start = state.batch();
+            inserted = params.getBenchmark().endsWith(".delete");
+            if(inserted){
+                Integer[] keys = state.workload.updates;
+                for(int i = start; i < start + BATCH; i++)
+                    state.target.put(keys[i], keys[i]);
+            }
+        }
+
+        @TearDown(Level.Invocation)
+        public void restore(MapOperations state){
+            if(inserted)
+                return;
+            Integer[] keys = state.workload.updates;
+            for(int i = start; i < start + BATCH; i++)
+                state.target.delete(keys[i]);
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package avlTree.jmh;
+
+import avlTree.AVLTree;
+import avlTree.FrozenAVLTree;
+import avlTree.PooledAVLTree;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntFunction;
+import java.util.function.ToIntFunction;
+
+/**
+ * rank and select of AVLTree, PooledAVLTree and of the FrozenAVLTree of an AVLTree, which the JDK
+ * maps answer only in linear time.
+ * rank probes the odd keys between the present ones, select draws the ranks of the distribution.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx6g"})
+public class OrderStatistics {
+
+    @Param({"1000", "10000", "100000", "1000000", "10000000"})
+    int size;
+
+    @Param({"sequential", "random", "zipf"})
+    String distribution;
+
+    @Param({"AVLTree", "PooledAVLTree", "FrozenAVLTree"})
+    String structure;
+
+    private Workload workload;
+    private ToIntFunction<Integer> rank;
+    private IntFunction<Integer> select;
+    private int next;
+
+
+    @Setup(Level.Trial)
+    public void fill(){
+        workload = Workload.of(distribution, size);
+        switch(structure){
+            case "AVLTree":{
+                AVLTree<Integer, Integer> tree = tree();
+                rank = tree::rank;
+                select = tree::select;
+                break;
+            }
+            case "PooledAVLTree":{
+                PooledAVLTree<Integer, Integer> tree = new PooledAVLTree<>(size);
+                for(Integer key : workload.inserts)
+                    tree.put(key, key);
+                rank = tree::rank;
+                select = tree::select;
+                break;
+            }
+            case "FrozenAVLTree":{
+                FrozenAVLTree<Integer, Integer> tree = tree().freeze();
+                rank = tree::rank;
+                select = tree::select;
+                break;
+            }
+            default:
+                throw new IllegalArgumentException("Unknown structure " + structure);
+        }
+    }
+
+
+    private AVLTree<Integer, Integer> tree(){
+        AVLTree<Integer, Integer> tree = new AVLTree<>();
+        for(Integer key : workload.inserts)
+            tree.put(key, key);
+        return tree;
+    }
+
+
+    private int next(){
+        int i = next;
+        next = (i + 1 == size) ? 0 : i + 1;
+        return i;
+    }
+
+
+    @Benchmark
+    public int rank(){
+        return rank.applyAsInt(workload.probes[next()]);
+    }
+
+
+    @Benchmark
+    public Integer select(){
+        return select.apply(workload.ranks[next()]);
+    }
+}
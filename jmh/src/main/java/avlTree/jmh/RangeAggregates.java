@@ -0,0 +1,83 @@
+package avlTree.jmh;
+
+import avlTree.AVLTree;
+import avlTree.Monoid;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sums of the values of RANGE present keys in a tree with the sum monoid, by keysInRange and get and
+ * by the cached aggregates, one call is one range. put measures the cost of keeping the aggregates,
+ * compare with put of MapOperations; it puts the present keys again, one call is one put.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx6g"})
+public class RangeAggregates {
+    private static final int RANGE = 100;
+
+    @Param({"1000", "100000", "1000000"})
+    int size;
+
+    @Param({"sequential", "random", "zipf"})
+    String distribution;
+
+    private Workload workload;
+    private AVLTree<Integer, Integer> tree;
+    private int next;
+
+
+    @Setup(Level.Trial)
+    public void fill(){
+        workload = Workload.of(distribution, size);
+        tree = new AVLTree<>(Monoid.intSum());
+        for(Integer key : workload.inserts)
+            tree.put(key, key);
+    }
+
+
+    private int next(){
+        int i = next;
+        next = (i + 1 == size) ? 0 : i + 1;
+        return i;
+    }
+
+
+    @Benchmark
+    public void put(){
+        Integer key = workload.inserts[next()];
+        tree.put(key, key);
+    }
+
+
+    @Benchmark
+    public long rangeGetSum(){
+        Integer lo = workload.lookups[next()];
+        long sum = 0;
+        for(Integer key : tree.keysInRange(lo, lo + 2 * RANGE))
+            sum += tree.get(key);
+        return sum;
+    }
+
+
+    @Benchmark
+    public Integer aggregate(){
+        Integer lo = workload.lookups[next()];
+        return tree.aggregate(lo, lo + 2 * RANGE);
+    }
+}
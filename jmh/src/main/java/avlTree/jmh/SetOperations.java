@@ -0,0 +1,71 @@
+package avlTree.jmh;
+
+import avlTree.AVLTree;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Merging a tree of the keys 3*i into a tree of the keys 2*i, both of size keys, by a put loop and
+ * by union, one call is one merge. Both change their arguments, so every invocation gets fresh trees
+ * from fromSorted.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx6g"})
+public class SetOperations {
+
+    @Param({"1000", "100000", "1000000"})
+    int size;
+
+    private Integer[] even;
+    private Integer[] third;
+    private AVLTree<Integer, Integer> target;
+    private AVLTree<Integer, Integer> source;
+
+
+    @Setup(Level.Trial)
+    public void keys(){
+        even = new Integer[size];
+        third = new Integer[size];
+        for(int i = 0; i < size; i++){
+            even[i] = 2 * i;
+            third[i] = 3 * i;
+        }
+    }
+
+
+    @Setup(Level.Invocation)
+    public void trees(){
+        target = AVLTree.fromSorted(even, even);
+        source = AVLTree.fromSorted(third, third);
+    }
+
+
+    @Benchmark
+    public AVLTree<Integer, Integer> putLoop(){
+        for(Integer key : source.keysInOrder())
+            target.put(key, key);
+        return target;
+    }
+
+
+    @Benchmark
+    public AVLTree<Integer, Integer> union(){
+        return AVLTree.union(target, source, (a, b) -> b);
+    }
+}
@@ -0,0 +1,93 @@
+package avlTree.jmh;
+
+import avlTree.AVLTree;
+import avlTree.PooledAVLTree;
+
+import java.util.Iterator;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/* Operations of the compared structures */
+interface Target {
+    void put(Integer key, Integer value);
+    Integer get(Integer key);
+    Integer floor(Integer key);
+    Integer ceiling(Integer key);
+    int range(Integer lo, Integer hi);
+    Iterator<Integer> keys();
+    void delete(Integer key);
+
+
+    /** Creates an empty structure for size keys. AVLTreeCached has a HotKeyCache of 1% of the keys
+     * in front of get, the pool of PooledAVLTree is allocated up front for size keys and a batch
+     */
+    static Target create(String structure, int size){
+        switch(structure){
+            case "AVLTree":
+                return avlTree(new AVLTree<>());
+            case "AVLTreeCached":{
+                AVLTree<Integer, Integer> tree = new AVLTree<>();
+                tree.enableCache(Math.max(16, size / 100));
+                return avlTree(tree);
+            }
+            case "PooledAVLTree":
+                return pooled(new PooledAVLTree<>(size + MapOperations.BATCH));
+            case "TreeMap":
+                return jdkMap(new TreeMap<>());
+            case "ConcurrentSkipListMap":
+                return jdkMap(new ConcurrentSkipListMap<>());
+            default:
+                throw new IllegalArgumentException("Unknown structure " + structure);
+        }
+    }
+
+
+    static Target avlTree(AVLTree<Integer, Integer> tree){
+        return new Target(){
+            public void put(Integer key, Integer value){ tree.put(key, value); }
+            public Integer get(Integer key){ return tree.get(key); }
+            public Integer floor(Integer key){ return tree.floor(key); }
+            public Integer ceiling(Integer key){ return tree.ceiling(key); }
+            public int range(Integer lo, Integer hi){
+                int count = 0;
+                for(Integer key : tree.keys(lo, hi))
+                    count++;
+                return count;
+            }
+            public Iterator<Integer> keys(){ return tree.keys().iterator(); }
+            public void delete(Integer key){ tree.delete(key); }
+        };
+    }
+
+
+    static Target pooled(PooledAVLTree<Integer, Integer> tree){
+        return new Target(){
+            public void put(Integer key, Integer value){ tree.put(key, value); }
+            public Integer get(Integer key){ return tree.get(key); }
+            public Integer floor(Integer key){ return tree.floor(key); }
+            public Integer ceiling(Integer key){ return tree.ceiling(key); }
+            public int range(Integer lo, Integer hi){ return tree.keysInRange(lo, hi).size(); }
+            public Iterator<Integer> keys(){ return tree.keys().iterator(); }
+            public void delete(Integer key){ tree.delete(key); }
+        };
+    }
+
+
+    static Target jdkMap(NavigableMap<Integer, Integer> map){
+        return new Target(){
+            public void put(Integer key, Integer value){ map.put(key, value); }
+            public Integer get(Integer key){ return map.get(key); }
+            public Integer floor(Integer key){ return map.floorKey(key); }
+            public Integer ceiling(Integer key){ return map.ceilingKey(key); }
+            public int range(Integer lo, Integer hi){
+                int count = 0;
+                for(Integer key : map.subMap(lo, true, hi, true).keySet())
+                    count++;
+                return count;
+            }
+            public Iterator<Integer> keys(){ return map.keySet().iterator(); }
+            public void delete(Integer key){ map.remove(key); }
+        };
+    }
+}
@@ -0,0 +1,104 @@
+package avlTree.jmh;
+
+import avlTree.AVLTree;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Operations of AVLTree which MapOperations does not compare with the JDK maps.
+ * getMetered is get with the TreeMetrics enabled, getAndPut and merge update the value of a present
+ * key, one call is one operation. ceilingPaging visits all keys by one ceiling per key, cursorPaging
+ * by a Cursor and stream sums the keys of a parallel stream, one call is one walk over all keys.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx6g"})
+public class TreeOperations {
+
+    @Param({"1000", "100000", "1000000"})
+    int size;
+
+    @Param({"sequential", "random", "zipf"})
+    String distribution;
+
+    private Workload workload;
+    private AVLTree<Integer, Integer> tree;
+    private AVLTree<Integer, Integer> metered;
+    private int next;
+
+
+    @Setup(Level.Trial)
+    public void fill(){
+        workload = Workload.of(distribution, size);
+        tree = new AVLTree<>();
+        metered = new AVLTree<>();
+        metered.enableMetrics();
+        for(Integer key : workload.inserts){
+            tree.put(key, key);
+            metered.put(key, key);
+        }
+    }
+
+
+    private int next(){
+        int i = next;
+        next = (i + 1 == size) ? 0 : i + 1;
+        return i;
+    }
+
+
+    @Benchmark
+    public Integer getMetered(){
+        return metered.get(workload.lookups[next()]);
+    }
+
+
+    @Benchmark
+    public void getAndPut(){
+        Integer key = workload.lookups[next()];
+        tree.put(key, tree.get(key) + 1);
+    }
+
+
+    @Benchmark
+    public Integer merge(){
+        return tree.merge(workload.lookups[next()], 1, Integer::sum);
+    }
+
+
+    @Benchmark
+    public void ceilingPaging(Blackhole blackhole){
+        for(Integer key = tree.min(); key != null; key = tree.ceiling(key + 1))
+            blackhole.consume(key);
+    }
+
+
+    @Benchmark
+    public void cursorPaging(Blackhole blackhole){
+        AVLTree<Integer, Integer>.Cursor cursor = tree.cursor();
+        for(boolean found = cursor.seekFirst(); found; found = cursor.next())
+            blackhole.consume(cursor.value());
+    }
+
+
+    @Benchmark
+    public long stream(){
+        return tree.keyStream().parallel().mapToLong(Integer::longValue).sum();
+    }
+}
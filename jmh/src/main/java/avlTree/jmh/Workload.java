@@ -0,0 +1,93 @@
+package avlTree.jmh;
+
+import java.util.Random;
+
+/**
+ * Keys of one benchmark trial.
+ * The present keys are 2*i, the probes of floor and ceiling and the keys of the
+ * measured puts and deletes are the odd numbers in between.
+ * Distributions of the accessed keys:
+ *   sequential - ascending keys
+ *   random     - uniformly shuffled keys
+ *   zipf       - inserts and updates in a random order, the lookups draw key ranks from a Zipf
+ *                distribution with exponent 1 over a shuffled mapping of ranks to keys
+ */
+final class Workload {
+    final Integer[] inserts;
+    final Integer[] lookups;
+    final Integer[] probes;
+    final Integer[] updates;
+    final int[] ranks;
+
+
+    private Workload(Integer[] inserts, Integer[] lookups, int[] ranks){
+        this.inserts = inserts;
+        this.lookups = lookups;
+        this.ranks = ranks;
+        probes = new Integer[lookups.length];
+        for(int i = 0; i < lookups.length; i++)
+            probes[i] = lookups[i] + 1;
+        updates = new Integer[inserts.length];
+        for(int i = 0; i < inserts.length; i++)
+            updates[i] = inserts[i] + 1;
+    }
+
+
+    static Workload of(String distribution, int size){
+        switch(distribution){
+            case "sequential":{
+                Integer[] keys = new Integer[size];
+                int[] ranks = new int[size];
+                for(int i = 0; i < size; i++){
+                    keys[i] = 2 * i;
+                    ranks[i] = i;
+                }
+                return new Workload(keys, keys, ranks);
+            }
+            case "random":{
+                Integer[] order = shuffledKeys(size, 43);
+                int[] ranks = new int[size];
+                for(int i = 0; i < size; i++)
+                    ranks[i] = order[i] / 2;
+                return new Workload(shuffledKeys(size, 17), shuffledKeys(size, 31), ranks);
+            }
+            case "zipf":{
+                Integer[] hot = shuffledKeys(size, 53);
+                Random random = new Random(59);
+                Integer[] lookups = new Integer[size];
+                int[] ranks = new int[size];
+                for(int i = 0; i < size; i++){
+                    int rank = zipf(random, size);
+                    lookups[i] = hot[rank];
+                    ranks[i] = hot[rank] / 2;
+                }
+                return new Workload(shuffledKeys(size, 17), lookups, ranks);
+            }
+            default:
+                throw new IllegalArgumentException("Unknown key distribution " + distribution);
+        }
+    }
+
+
+    /* The keys 2*i for i < size in a random order */
+    private static Integer[] shuffledKeys(int size, long seed){
+        Random random = new Random(seed);
+        Integer[] keys = new Integer[size];
+        for(int i = 0; i < size; i++)
+            keys[i] = 2 * i;
+        for(int i = size - 1; i > 0; i--){
+            int j = random.nextInt(i + 1);
+            Integer key = keys[i];
+            keys[i] = keys[j];
+            keys[j] = key;
+        }
+        return keys;
+    }
+
+
+    /* Draws a rank in [0, n) with probability proportional to 1 / (rank + 1) by inverting the continuous density */
+    private static int zipf(Random random, int n){
+        int rank = (int) Math.pow(n + 1, random.nextDouble()) - 1;
+        return Math.min(rank, n - 1);
+    }
+}
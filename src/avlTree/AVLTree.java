@@ -1,35 +1,534 @@
 package avlTree;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.BiFunction;
+import java.util.function.BinaryOperator;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.IntConsumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * Created by nayanzin on 10.06.17.
+ * The keys are ordered by their natural ordering or by the comparator given to the constructor.
  */
-public class AVLTree <Key extends Comparable<Key>, Value>{
+public class AVLTree <Key, Value>{
+    /* Upper bound of the AVL tree height for any int sized tree (1.44 * log2(n)) */
+    private static final int MAX_HEIGHT = 64;
+
+    /* putAll() rebuilds the tree for batches larger than size() / REBUILD_RATIO */
+    private static final int REBUILD_RATIO = 4;
+
     private Node root;
+
+    /** Nodes created after the last snapshot carry the current epoch and may be changed in place,
+     * older nodes can be shared with snapshots and are copied before a change
+     */
+    private int epoch;
+
+    /* Snapshots are read-only */
+    private final boolean readOnly;
+
+    /* Aggregate of the values cached in every node, null for a tree without aggregates */
+    private final Monoid<Value> monoid;
+
+    /* Order of the keys, null for their natural ordering */
+    private final Comparator<? super Key> comparator;
+
+    /* Maps the keys to the prefixes cached in the nodes, null for a tree without prefixes */
+    private final KeyNormalizer<? super Key> normalizer;
+
+    /* Checks the writes run when assertions are enabled and the writes since the last full check */
+    private ValidationPolicy validationPolicy = ValidationPolicy.SAMPLED;
+    private int writesSinceFullCheck;
+
+    /* Operation counters, null unless enableMetrics() was called, so disabled metrics cost a null check */
+    private TreeMetrics metrics;
+
+    /* Front cache of get, null unless enableCache() was called */
+    private HotKeyCache<Key, Value> cache;
+
+    /* Number of structural changes, iterators fail when it changes under them */
+    private int modCount;
+
+    /* Reusable stack of the nodes visited by the write path and the taken directions */
+    private final Node[] path = nodes(MAX_HEIGHT);
+    private final boolean[] pathLeft = new boolean[MAX_HEIGHT];
     /* Inner node class */
-    private class Node{
+    private class Node implements Map.Entry<Key, Value>{
         private final Key key;
         private Value value;
         private int height;
         private int size;
         private Node left;
         private Node right;
+        private final int epoch;
+        /* Normalized prefix of the key, 0 when the tree has no KeyNormalizer */
+        private final long prefix;
+        /* Aggregate of the values of the subtree in key order, kept only when the tree has a monoid */
+        private Value aggregate;
 
         public Node(Key key, Value value, int height, int size){
             this.key = key;
             this.value = value;
             this.size = size;
             this.height = height;
+            this.epoch = AVLTree.this.epoch;
+            this.prefix = prefix(key);
+            this.aggregate = (monoid == null) ? null : value;
             left = null;
             right = null;
         }
 
+        /* Copy of the node in the current epoch */
+        private Node(Node node){
+            this.key = node.key;
+            this.value = node.value;
+            this.size = node.size;
+            this.height = node.height;
+            this.epoch = AVLTree.this.epoch;
+            this.prefix = node.prefix;
+            this.aggregate = node.aggregate;
+            left = node.left;
+            right = node.right;
+        }
+
+        @Override
+        public Key getKey(){
+            return key;
+        }
+
+        @Override
+        public Value getValue(){
+            return value;
+        }
+
+        /* Values are changed through the tree, so that snapshots keep their values */
+        @Override
+        public Value setValue(Value value){
+            throw new UnsupportedOperationException("setValue() on a tree entry, use put()");
+        }
+
+        @Override
+        public boolean equals(Object other){
+            if(!(other instanceof Map.Entry))
+                return false;
+            Map.Entry<?, ?> entry = (Map.Entry<?, ?>) other;
+            return key.equals(entry.getKey()) && Objects.equals(value, entry.getValue());
+        }
+
+        @Override
+        public int hashCode(){
+            return key.hashCode() ^ Objects.hashCode(value);
+        }
+
+        @Override
+        public String toString(){
+            return key + "=" + value;
+        }
     }
 
 
     /* Counstructor */
     public AVLTree(){
+        this(null, null, null, null, false);
+    }
+
+
+    /** Counstructor of a tree which caches the aggregate of the values of every subtree,
+     * so that aggregate(lo, hi) of any key range takes O(log n)
+     */
+    public AVLTree(Monoid<Value> monoid){
+        this(null, null, null, monoid, false);
+        if(monoid == null)
+            throw new IllegalArgumentException("Argument monoid to AVLTree(Monoid) is null");
+    }
+
+
+    /* Counstructor of a tree ordered by the comparator */
+    public AVLTree(Comparator<? super Key> comparator){
+        this(null, comparator, null, null, false);
+        if(comparator == null)
+            throw new IllegalArgumentException("Argument comparator to AVLTree(Comparator) is null");
+    }
+
+
+    /** Counstructor of a tree ordered by the comparator, or by the natural ordering if it is null.
+     * A non null normalizer caches the prefix of every key in its node, the descents of get, put,
+     * delete, floor, ceiling and rank compare the prefixes as longs and call the comparator only
+     * on equal prefixes. A null monoid disables the aggregates
+     */
+    public AVLTree(Comparator<? super Key> comparator, KeyNormalizer<? super Key> normalizer, Monoid<Value> monoid){
+        this(null, comparator, normalizer, monoid, false);
+    }
+
+
+    /* Counstructor of a tree with the given nodes, snapshots share the nodes and are read-only */
+    private AVLTree(Node root, Comparator<? super Key> comparator, KeyNormalizer<? super Key> normalizer,
+                    Monoid<Value> monoid, boolean readOnly){
+        this.root = root;
+        this.comparator = comparator;
+        this.normalizer = normalizer;
+        this.monoid = monoid;
+        this.readOnly = readOnly;
+    }
+
+
+    /* Returns the comparator of the keys, null for their natural ordering */
+    public Comparator<? super Key> comparator(){
+        return comparator;
+    }
+
+
+    /* Compares two keys by the comparator or their natural ordering */
+    private int compare(Key a, Key b){
+        return compare(comparator, a, b);
+    }
+
+
+    @SuppressWarnings("unchecked")
+    private static <Key> int compare(Comparator<? super Key> comparator, Key a, Key b){
+        return (comparator == null) ? ((Comparable<? super Key>) a).compareTo(b) : comparator.compare(a, b);
+    }
+
+
+    /* Compares the key with the key of the node, different prefixes decide without a call of compare */
+    private int compare(Key key, long prefix, Node node){
+        if(normalizer != null && prefix != node.prefix)
+            return (prefix < node.prefix) ? -1 : 1;
+        return compare(key, node.key);
+    }
+
+
+    private long prefix(Key key){
+        return (normalizer == null) ? 0 : normalizer.prefix(key);
+    }
+
+
+    /* Checks that the trees order their keys the same way */
+    private boolean sameOrder(AVLTree<Key, Value> other){
+        return comparator == other.comparator && normalizer == other.normalizer;
+    }
+
+
+    /* Returns an empty writable tree with the monoid and the epoch of this tree for the results of splits */
+    private AVLTree<Key, Value> emptyTree(){
+        AVLTree<Key, Value> tree = new AVLTree<>(null, comparator, normalizer, monoid, false);
+        tree.epoch = epoch;
+        tree.validationPolicy = validationPolicy;
+        return tree;
+    }
+
+
+    /** Returns a read-only view of the current content of the tree in O(1).
+     * The snapshot shares all nodes with the tree, later writes to the tree copy
+     * only the nodes on their paths and never change the snapshot.
+     * Reading a snapshot never blocks the writers of the tree, the snapshot has to be
+     * handed over to other threads through a safe publication.
+     */
+    public AVLTree<Key, Value> snapshot(){
+        if(readOnly)
+            return this;
+        AVLTree<Key, Value> snapshot = new AVLTree<>(root, comparator, normalizer, monoid, true);
+        snapshot.epoch = epoch;
+        epoch++;
+        return snapshot;
+    }
+
+
+    /* Returns an immutable copy of the tree in the array layout of FrozenAVLTree for read only workloads, built in O(n) */
+    public FrozenAVLTree<Key, Value> freeze(){
+        return new FrozenAVLTree<>(this);
+    }
+
+
+    /* Checks if the tree is a read-only snapshot */
+    public boolean isReadOnly(){
+        return readOnly;
+    }
+
+
+    /** Starts counting comparisons, descent depths, rotations and the latency of get and put.
+     * Returns the metrics of the tree, the existing ones if they are enabled already
+     */
+    public TreeMetrics enableMetrics(){
+        if(metrics == null)
+            metrics = new TreeMetrics();
+        return metrics;
+    }
+
+
+    /* Stops counting, the returned metrics of enableMetrics() keep their last values */
+    public void disableMetrics(){
+        metrics = null;
+    }
+
+
+    /* Returns the metrics of the tree, null if they are disabled */
+    public TreeMetrics metrics(){
+        return metrics;
+    }
+
+
+    /** Puts a bounded cache of the values of hot keys in front of get and contains and returns it.
+     * Writes keep the cache coherent, see HotKeyCache. The order of the tree has to be consistent
+     * with equals, an enabled cache of another capacity is replaced
+     */
+    public HotKeyCache<Key, Value> enableCache(int capacity){
+        if(cache == null || cache.capacity() != capacity)
+            cache = new HotKeyCache<>(capacity);
+        return cache;
+    }
+
+
+    /* Drops the front cache */
+    public void disableCache(){
+        cache = null;
+    }
+
+
+    /* Returns the front cache of the tree, null if it is disabled */
+    public HotKeyCache<Key, Value> cache(){
+        return cache;
+    }
+
+
+    /* Removes the key from the front cache after its value changed or it was removed */
+    private void invalidate(Key key){
+        if(cache != null)
+            cache.remove(key);
+    }
+
+
+    /* Empties the front cache after a write of many keys */
+    private void invalidateAll(){
+        if(cache != null)
+            cache.clear();
+    }
+
+
+    /* Ends a write of many keys: fails the open iterators, empties the cache and records the write with its rotations */
+    private void bulkWrite(){
+        modCount++;
+        invalidateAll();
+        if(metrics != null)
+            metrics.recordBulkWrite();
+    }
+
+
+    /* Throws for the writes to a snapshot */
+    private void checkWritable(){
+        if(readOnly)
+            throw new UnsupportedOperationException("The tree is a read-only snapshot");
+    }
+
+
+    /* Returns the node itself if it can be changed in place, otherwise its copy of the current epoch */
+    private Node own(Node node){
+        if(node.epoch == epoch)
+            return node;
+        return new Node(node);
+    }
+
+
+    /** Builds a perfectly balanced tree from keys in strictly ascending order in O(n).
+     * values[i] is associated with keys[i]
+     */
+    public static <Key extends Comparable<Key>, Value> AVLTree<Key, Value> fromSorted(Key[] keys, Value[] values){
+        return fromSorted(keys, values, null);
+    }
+
+
+    /** fromSorted() of keys in strictly ascending order of the comparator, the built tree is ordered
+     * by it. A null comparator is the natural ordering of the keys
+     */
+    public static <Key, Value> AVLTree<Key, Value> fromSorted(Key[] keys, Value[] values, Comparator<? super Key> comparator){
+        checkSorted(keys, values, comparator, "fromSorted()");
+        AVLTree<Key, Value> tree = new AVLTree<>(comparator, null, null);
+        tree.root = tree.build(keys, values, 0, keys.length);
+        assert tree.validateWrite(null);
+        return tree;
+    }
+
+
+    /** Builds a perfectly balanced tree from size keys in strictly ascending order in O(n).
+     * The keys and values are consumed in order, so the input does not have to fit in an array
+     */
+    public static <Key extends Comparable<Key>, Value> AVLTree<Key, Value> fromSorted(Iterator<Key> keys, Iterator<Value> values, int size){
+        return fromSorted(keys, values, size, null);
+    }
+
+
+    /* fromSorted() of size keys in strictly ascending order of the comparator, null for the natural ordering */
+    public static <Key, Value> AVLTree<Key, Value> fromSorted(Iterator<Key> keys, Iterator<Value> values, int size,
+                                                              Comparator<? super Key> comparator){
+        if(keys == null || values == null)
+            throw new IllegalArgumentException("Argument to fromSorted() is null");
+        if(size < 0)
+            throw new IllegalArgumentException("Argument size to fromSorted() is negative");
+        AVLTree<Key, Value> tree = new AVLTree<>(comparator, null, null);
+        tree.root = tree.build(keys, values, size);
+        assert tree.validateWrite(null);
+        return tree;
+    }
+
+
+    /** Builds a perfectly balanced tree from keys in strictly ascending order.
+     * The left and right subtrees of large ranges are built concurrently in the common ForkJoinPool
+     */
+    public static <Key extends Comparable<Key>, Value> AVLTree<Key, Value> fromSortedParallel(Key[] keys, Value[] values){
+        return fromSortedParallel(keys, values, null);
+    }
 
+
+    /* fromSortedParallel() of keys in strictly ascending order of the comparator, null for the natural ordering */
+    public static <Key, Value> AVLTree<Key, Value> fromSortedParallel(Key[] keys, Value[] values, Comparator<? super Key> comparator){
+        checkSorted(keys, values, comparator, "fromSorted()");
+        AVLTree<Key, Value> tree = new AVLTree<>(comparator, null, null);
+        tree.root = ForkJoinPool.commonPool().invoke(tree.new BuildTask(keys, values, 0, keys.length));
+        assert tree.validateWrite(null);
+        return tree;
+    }
+
+
+    /** Writes the entries in ascending key order to the channel, starting at its position.
+     * The keys and values are encoded by the given codecs, readFrom() loads the file in O(n).
+     * The file does not record the comparator, a tree with one is read back by passing it again
+     */
+    public void writeTo(FileChannel channel, Codec<Key> keyCodec, Codec<Value> valueCodec) throws IOException{
+        if(channel == null || keyCodec == null || valueCodec == null)
+            throw new IllegalArgumentException("Argument to writeTo() is null");
+        TreeFile.write(this, channel, keyCodec, valueCodec);
+    }
+
+
+    /** Loads a tree written by writeTo() from the position of the channel in O(n), the entries are
+     * decoded from a direct buffer and built into a balanced tree by fromSorted without rotations.
+     * Like fromSorted the loaded tree has the natural order of the keys
+     */
+    public static <Key extends Comparable<Key>, Value> AVLTree<Key, Value> readFrom(FileChannel channel, Codec<Key> keyCodec, Codec<Value> valueCodec) throws IOException{
+        return readFrom(channel, keyCodec, valueCodec, null);
+    }
+
+
+    /** readFrom() of a tree written in the order of the comparator, the loaded tree is ordered by it.
+     * A file whose keys are not strictly ascending in that order is rejected as corrupt
+     */
+    public static <Key, Value> AVLTree<Key, Value> readFrom(FileChannel channel, Codec<Key> keyCodec, Codec<Value> valueCodec,
+                                                            Comparator<? super Key> comparator) throws IOException{
+        if(channel == null || keyCodec == null || valueCodec == null)
+            throw new IllegalArgumentException("Argument to readFrom() is null");
+        return TreeFile.read(channel, keyCodec, valueCodec, comparator);
+    }
+
+
+    /* readFrom() which decodes the entries from memory mapped chunks of the file instead of copying them */
+    public static <Key extends Comparable<Key>, Value> AVLTree<Key, Value> readMapped(FileChannel channel, Codec<Key> keyCodec, Codec<Value> valueCodec) throws IOException{
+        return readMapped(channel, keyCodec, valueCodec, null);
+    }
+
+
+    /* readMapped() of a tree written in the order of the comparator, null for the natural ordering */
+    public static <Key, Value> AVLTree<Key, Value> readMapped(FileChannel channel, Codec<Key> keyCodec, Codec<Value> valueCodec,
+                                                              Comparator<? super Key> comparator) throws IOException{
+        if(channel == null || keyCodec == null || valueCodec == null)
+            throw new IllegalArgumentException("Argument to readMapped() is null");
+        return TreeFile.readMapped(channel, keyCodec, valueCodec, comparator);
+    }
+
+
+    /* Checks that the keys are strictly ascending in the order and every key has a value */
+    private static <Key, Value> void checkSorted(Key[] keys, Value[] values, Comparator<? super Key> order, String method){
+        if(keys == null || values == null)
+            throw new IllegalArgumentException("Argument to " + method + " is null");
+        if(keys.length != values.length)
+            throw new IllegalArgumentException("Arguments keys and values of " + method + " differ in length");
+        for(int i = 0; i < keys.length; i++){
+            if(keys[i] == null || values[i] == null)
+                throw new IllegalArgumentException("Key or value " + i + " of " + method + " is null");
+            if(i > 0 && compare(order, keys[i - 1], keys[i]) >= 0)
+                throw new IllegalArgumentException("Keys of " + method + " are not strictly ascending at " + i);
+        }
+    }
+
+
+    /* Builds the subtree of keys[lo, hi) rooted at the middle key */
+    private Node build(Key[] keys, Value[] values, int lo, int hi){
+        if(lo >= hi)
+            return null;
+        int mid = (lo + hi) >>> 1;
+        Node node = new Node(keys[mid], values[mid], 0, hi - lo);
+        node.left = build(keys, values, lo, mid);
+        node.right = build(keys, values, mid + 1, hi);
+        update(node);
+        return node;
+    }
+
+
+    /* Builds the tree of the next size keys of the iterators */
+    private Node build(Iterator<Key> keys, Iterator<Value> values, int size){
+        return build(keys, values, size, nodes(1));
+    }
+
+
+    /** Builds the subtree of the next size keys of the iterators, it has the same shape as
+     * the array build. last holds the previously built node to check the key order
+     */
+    private Node build(Iterator<Key> keys, Iterator<Value> values, int size, Node[] last){
+        if(size == 0)
+            return null;
+        int leftSize = size >>> 1;
+        Node left = build(keys, values, leftSize, last);
+        if(!keys.hasNext() || !values.hasNext())
+            throw new IllegalArgumentException("Iterators of fromSorted() have less than size elements");
+        Key key = keys.next();
+        Value value = values.next();
+        if(key == null || value == null)
+            throw new IllegalArgumentException("Key or value of fromSorted() is null");
+        if(last[0] != null && compare(last[0].key, key) >= 0)
+            throw new IllegalArgumentException("Keys of fromSorted() are not strictly ascending at " + key);
+        Node node = new Node(key, value, 0, size);
+        last[0] = node;
+        node.left = left;
+        node.right = build(keys, values, size - leftSize - 1, last);
+        update(node);
+        return node;
+    }
+
+
+    /* Builds the halves of large ranges as forked tasks */
+    private class BuildTask extends RecursiveTask<Node>{
+        private static final long serialVersionUID = 1L;
+        private static final int SEQUENTIAL_THRESHOLD = 1 << 13;
+        private final Key[] keys;
+        private final Value[] values;
+        private final int lo;
+        private final int hi;
+
+        BuildTask(Key[] keys, Value[] values, int lo, int hi){
+            this.keys = keys;
+            this.values = values;
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        @Override
+        protected Node compute(){
+            if(hi - lo <= SEQUENTIAL_THRESHOLD)
+                return build(keys, values, lo, hi);
+            int mid = (lo + hi) >>> 1;
+            BuildTask left = new BuildTask(keys, values, lo, mid);
+            left.fork();
+            Node node = new Node(keys[mid], values[mid], 0, hi - lo);
+            node.right = new BuildTask(keys, values, mid + 1, hi).compute();
+            node.left = left.join();
+            update(node);
+            return node;
+        }
     }
 
 
@@ -51,6 +550,13 @@ public class AVLTree <Key extends Comparable<Key>, Value>{
     }
 
 
+    /* Creates a node array, Node is an inner class of a generic class so the array can only be created raw */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private Node[] nodes(int length){
+        return (Node[]) new AVLTree.Node[length];
+    }
+
+
     /** Return the height of the interal AVL tree.
      * It is assumed ths the height of an empty tree is -1
      * and the height of a tree with just one node is 0
@@ -77,6 +583,10 @@ public class AVLTree <Key extends Comparable<Key>, Value>{
     public Value get(Key key){
         if(key == null)
             throw new IllegalArgumentException("Argument to get is null");
+        if(cache != null)
+            return getCached(key);
+        if(metrics != null)
+            return getMeasured(key);
         Node node = get(root, key);
         if(node == null)
             return null;
@@ -85,20 +595,54 @@ public class AVLTree <Key extends Comparable<Key>, Value>{
     }
 
 
-    /* Recurcively search and returns value associated whith the given key */
-    private Node get(Node node, Key key){
-        if(node == null)
-            return null;
+    /* get() through the front cache, a miss descends the tree and offers a present key to the cache */
+    private Value getCached(Key key){
+        Value value = cache.get(key);
+        if(value != null)
+            return value;
+        if(metrics != null)
+            value = getMeasured(key);
+        else{
+            Node node = get(root, key);
+            value = (node == null) ? null : node.value;
+        }
+        if(value != null)
+            cache.admit(key, value);
+        return value;
+    }
 
-        int compare = key.compareTo(key);
 
-        if(compare < 0 )
-            return get(node.left, key);
+    /* get() which records its comparisons and latency */
+    private Value getMeasured(Key key){
+        long start = System.nanoTime();
+        int comparisons = 0;
+        Node node = root;
+        long prefix = prefix(key);
+        while(node != null){
+            comparisons++;
+            int compare = compare(key, prefix, node);
+            if(compare == 0)
+                break;
+            node = (compare < 0) ? node.left : node.right;
+        }
+        metrics.recordGet(comparisons, System.nanoTime() - start);
+        return (node == null) ? null : node.value;
+    }
 
-        if(compare > 0 )
-            return get(node.right, key);
 
-        return node;
+    /* Iteratively search and returns node associated whith the given key */
+    private Node get(Node node, Key key){
+        long prefix = prefix(key);
+        while(node != null){
+            int compare = compare(key, prefix, node);
+            if(compare < 0)
+                node = node.left;
+            else if(compare > 0)
+                node = node.right;
+            else
+                return node;
+        }
+        return null;
     }
 
 
@@ -112,51 +656,227 @@ public class AVLTree <Key extends Comparable<Key>, Value>{
     public void put(Key key, Value value) {
         if (key == null)
             throw new IllegalArgumentException("Argument key to put(Key, Value) is null");
+        checkWritable();
         if (value == null){
             delete(key);
             return;
         }
 
-        root = put(root, key, value);
-        assert check();
+        long start = (metrics == null) ? 0 : System.nanoTime();
+        Node node = root;
+        int depth = 0;
+        long prefix = prefix(key);
+        while(node != null){
+            int compare = compare(key, prefix, node);
+            if(compare == 0){
+                replaceValue(node, depth, value);
+                if(metrics != null)
+                    metrics.recordPut(depth + 1, System.nanoTime() - start);
+                return;
+            }
+            path[depth] = node;
+            pathLeft[depth++] = compare < 0;
+            node = (compare < 0) ? node.left : node.right;
+        }
+
+        rebalancePath(depth, new Node(key, value, 0, 1));
+        if(metrics != null)
+            metrics.recordPut(depth, System.nanoTime() - start);
+        assert validateWrite(key);
     }
 
 
-    /** recursively search place to insert key value pair.
-     * Than rebalancing the nodes form insertion place to the root node if need
+    /** Sets the value of the node found at the given depth of the path stack.
+     * Shared nodes are copied and nodes with aggregates refresh the path to the root
      */
-    private Node put(Node node, Key key, Value value){
-        if(node == null)
-            return new Node(key, value, 0, 1);
-
-        int compare = key.compareTo(node.key);
-        if(compare < 0)
-            node.left = put(node.left, key, value);
-        else if (compare > 0)
-            node.right = put(node.right, key, value);
-        else{
+    private void replaceValue(Node node, int depth, Value value){
+        invalidate(node.key);
+        if(node.epoch == epoch && monoid == null){
             node.value = value;
-            return node;
+            clearPath(depth);
+        }else{
+            node = own(node);
+            node.value = value;
+            update(node);
+            rebalancePath(depth, node);
+        }
+    }
+
+
+    /* Returns the value associated with the given key or defaultValue if the key is not in the tree */
+    public Value getOrDefault(Key key, Value defaultValue){
+        Value value = get(key);
+        return (value == null) ? defaultValue : value;
+    }
+
+
+    /** Associates the key with function(key, previous value) in one descent and returns the
+     * previous value, null if the key was absent. The previous value passed to the function is
+     * null for an absent key, a null result removes the key. The function must not change the tree
+     */
+    public Value compute(Key key, BiFunction<? super Key, ? super Value, ? extends Value> function){
+        if(function == null)
+            throw new IllegalArgumentException("Argument function to compute() is null");
+        return modify(key, function);
+    }
+
+
+    /* Associates an absent key with function(key) unless it is null and returns the previous value */
+    public Value computeIfAbsent(Key key, Function<? super Key, ? extends Value> function){
+        if(function == null)
+            throw new IllegalArgumentException("Argument function to computeIfAbsent() is null");
+        return modify(key, (k, previous) -> (previous == null) ? function.apply(k) : previous);
+    }
+
+
+    /* Associates a present key with function(key, value), removes it for a null result and returns the previous value */
+    public Value computeIfPresent(Key key, BiFunction<? super Key, ? super Value, ? extends Value> function){
+        if(function == null)
+            throw new IllegalArgumentException("Argument function to computeIfPresent() is null");
+        return modify(key, (k, previous) -> (previous == null) ? null : function.apply(k, previous));
+    }
+
+
+    /** Associates an absent key with value and a present key with function(previous value, value),
+     * a null result removes the key. Returns the previous value
+     */
+    public Value merge(Key key, Value value, BiFunction<? super Value, ? super Value, ? extends Value> function){
+        if(value == null || function == null)
+            throw new IllegalArgumentException("Argument to merge() is null");
+        return modify(key, (k, previous) -> (previous == null) ? value : function.apply(previous, value));
+    }
+
+
+    /* Associates an absent key with value and returns the previous value */
+    public Value putIfAbsent(Key key, Value value){
+        if(value == null)
+            throw new IllegalArgumentException("Argument value to putIfAbsent() is null");
+        return modify(key, (k, previous) -> (previous == null) ? value : previous);
+    }
+
+
+    /* Associates a present key with value and returns the previous value, null if the key is absent */
+    public Value replace(Key key, Value value){
+        if(value == null)
+            throw new IllegalArgumentException("Argument value to replace() is null");
+        return modify(key, (k, previous) -> (previous == null) ? null : value);
+    }
+
+
+    /** Descends once to the key, asks the function for the new value and inserts, replaces
+     * or removes the node on the recorded path. Returning the previous value leaves the tree unchanged
+     */
+    private Value modify(Key key, BiFunction<? super Key, ? super Value, ? extends Value> function){
+        if(key == null)
+            throw new IllegalArgumentException("Argument key is null");
+        checkWritable();
+        long start = (metrics == null) ? 0 : System.nanoTime();
+        Node node = root;
+        int depth = 0;
+        long prefix = prefix(key);
+        while(node != null){
+            int cmp = compare(key, prefix, node);
+            if(cmp == 0)
+                break;
+            path[depth] = node;
+            pathLeft[depth++] = cmp < 0;
+            node = (cmp < 0) ? node.left : node.right;
+        }
+
+        Value previous = (node == null) ? null : node.value;
+        int expectedModCount = modCount;
+        Value value;
+        try{
+            value = function.apply(key, previous);
+        }catch(RuntimeException | Error e){
+            clearPath(depth);
+            throw e;
+        }
+        if(modCount != expectedModCount){
+            clearPath(depth);
+            throw new ConcurrentModificationException("The function changed the tree");
+        }
+
+        if(value == previous)
+            clearPath(depth);
+        else if(node == null)
+            rebalancePath(depth, new Node(key, value, 0, 1));
+        else if(value == null)
+            remove(node, depth);
+        else
+            replaceValue(node, depth, value);
+        if(metrics != null){
+            int visited = (node == null) ? depth : depth + 1;
+            if(node != null && value == null)
+                metrics.recordDelete(visited, visited);
+            else
+                metrics.recordPut(visited, System.nanoTime() - start);
+        }
+        assert validateWrite(key);
+        return previous;
+    }
+
+
+    /** Links the given subtree to the top of the path stack.
+     * Than rebalancing the nodes form the path top to the root node if need
+     */
+    private void rebalancePath(int depth, Node child){
+        while(depth > 0){
+            Node node = own(path[--depth]);
+            path[depth] = null;
+            if(pathLeft[depth])
+                node.left = child;
+            else
+                node.right = child;
+
+            update(node);
+            child = balance(node);
         }
+        root = child;
+        modCount++;
+    }
+
 
+    /* Recomputes size, height and aggregate of the node from its children */
+    private void update(Node node){
         node.size = 1 + size(node.left) + size(node.right);
         node.height = 1 + Math.max(height(node.left), height(node.right));
-        return balance(node);
+        if(monoid != null)
+            node.aggregate = monoid.combine(monoid.combine(aggregate(node.left), node.value), aggregate(node.right));
+    }
+
+
+    /* Returns the aggregate of the subtree, the identity for an empty one */
+    private Value aggregate(Node node){
+        return (node == null) ? monoid.identity() : node.aggregate;
+    }
+
+
+    /* Releases nodes held by the path stack when the write path ends without changes */
+    private void clearPath(int depth){
+        while(depth > 0)
+            path[--depth] = null;
     }
 
 
     /* Restores AVL property of the subtree */
     private Node balance(Node node){
         if(balanceFactor(node) < -1){
-            if(balanceFactor(node.right) > 0){
+            boolean isDouble = balanceFactor(node.right) > 0;
+            if(isDouble){
                 node.right = rotateRight(node.right);
             }
             node = rotateLeft(node);
+            if(metrics != null)
+                metrics.recordRotation(isDouble);
         }else if(balanceFactor(node) > 1){
-            if(balanceFactor(node.left) < 0){
+            boolean isDouble = balanceFactor(node.left) < 0;
+            if(isDouble){
                 node.left = rotateLeft(node.left);
             }
             node = rotateRight(node);
+            if(metrics != null)
+                metrics.recordRotation(isDouble);
         }
         return node;
     }
@@ -178,13 +898,13 @@ public class AVLTree <Key extends Comparable<Key>, Value>{
 
     /* Rotates the given subtree to the right */
     private Node rotateRight(Node node){
-        Node y = node.left;
+        node = own(node);
+        Node y = own(node.left);
         node.left = y.right;
         y.right = node;
         y.size = node.size;
-        node.size = 1 + size(node.left) + size(node.right);
-
-        node.height = 1 + Math.max(height(node.left), height(node.right));
+        y.aggregate = node.aggregate;
+        update(node);
         y.height = 1 + Math.max(height(y.left), height(y.right));
 
         return y;
@@ -193,14 +913,14 @@ public class AVLTree <Key extends Comparable<Key>, Value>{
 
     /* Rotates the given subtree to the right */
     private Node rotateLeft(Node node){
-        Node y = node.right;
+        node = own(node);
+        Node y = own(node.right);
         node.right = y.left;
         y.left = node;
 
         y.size = node.size;
-        node.size = 1 + size(node.left) + size(node.right);
-
-        node.height = 1 + Math.max(height(node.left), height(node.right));
+        y.aggregate = node.aggregate;
+        update(node);
         y.height = 1 + Math.max(height(y.left), height(y.right));
 
         return y;
@@ -211,85 +931,100 @@ public class AVLTree <Key extends Comparable<Key>, Value>{
     public void delete(Key key){
         if(key == null)
             throw new IllegalArgumentException("Argument key to delete(Key) is null");
-        if(!contains(key)) return;
-        root = delete(root, key);
-        assert check();
+        checkWritable();
+        Node node = root;
+        int depth = 0;
+        long prefix = prefix(key);
+        while(node != null){
+            int cmp = compare(key, prefix, node);
+            if(cmp == 0)
+                break;
+            path[depth] = node;
+            pathLeft[depth++] = cmp < 0;
+            node = (cmp < 0) ? node.left : node.right;
+        }
+        if(node == null){
+            clearPath(depth);
+            if(metrics != null)
+                metrics.recordDelete(depth, depth);
+            return;
+        }
+        remove(node, depth);
+        if(metrics != null)
+            metrics.recordDelete(depth + 1, depth + 1);
+        assert validateWrite(key);
     }
 
 
-    /* Removes the key and repairs AVL value */
-    private Node delete(Node node, Key key){
-        int cmp = key.compareTo(node.key);
-        if(cmp < 0){
-            node.left = delete(node.left, key);
-        } else if(cmp >0){
-            node.right = delete(node.right, key);
-        } else{
-            if(node.left == null) {
-                return node.right;
-            }
-            else if(node.right == null){
-                return node.left;
-            }
-            else {
-                Node y = node;
-                node = min(y.right);
-                node.right = deleteMin(y.right);
-                node.left = y.left;
+    /* Removes the node found at the given depth of the path stack */
+    private void remove(Node node, int depth){
+        invalidate(node.key);
+        Node child;
+        if(node.left == null)
+            child = node.right;
+        else if(node.right == null)
+            child = node.left;
+        else{
+            /* The successor takes the place of the removed node on the path stack */
+            int top = depth++;
+            pathLeft[top] = false;
+            Node successor = node.right;
+            while(successor.left != null){
+                path[depth] = successor;
+                pathLeft[depth++] = true;
+                successor = successor.left;
             }
+            child = successor.right;
+            successor = own(successor);
+            successor.left = node.left;
+            successor.right = node.right;
+            path[top] = successor;
         }
-        node.size = 1 + size(node.left) + size(node.right);
-        node.height = 1 + Math.max(height(node.left), height(node.right));
-        return balance(node);
+        rebalancePath(depth, child);
     }
 
 
     /* Removes the smallest key and associated value from the tree */
     public void deleteMin(){
+        checkWritable();
         if(isEmpty()) {
             System.out.println("deleteMin() - Tree is empty");
             return;
         }
-        root = deleteMin(root);
-        assert check();
-    }
-
-
-    /* Removes the smallest key and repairs AVL property form the given subtree */
-    private Node deleteMin(Node node){
-        if(node.left == null)
-            return node.right;
-        node.left = deleteMin(node.left);
-
-        node.size = 1 + size(node.left) + size(node.right);
-        node.height = 1 + Math.max(height(node.left), height(node.right));
-        return balance(node);
+        Node node = root;
+        int depth = 0;
+        while(node.left != null){
+            path[depth] = node;
+            pathLeft[depth++] = true;
+            node = node.left;
+        }
+        invalidate(node.key);
+        rebalancePath(depth, node.right);
+        if(metrics != null)
+            metrics.recordDelete(0, depth + 1);
+        assert validateWrite(node.key);
     }
 
 
     /* Removes the largest key and associated value from the tree */
     public void deleteMax(){
+        checkWritable();
         if(isEmpty()){
             System.out.println("deleteMax() - Tree is empty");
             return;
         }
-        root = deleteMax(root);
-        assert check();
-    }
-
-
-    /* Removes max key and restores AVL property to the given subtree */
-    private Node deleteMax(Node node){
-        if(node == null)
-            return null;
-        if(node.right == null){
-            return node.left;
-        } else
-            node.right = deleteMax(node.right);
-
-        node.size = 1 + size(node.left) + size(node.right);
-        node.height = 1 + Math.max(height(node.left), height(node.right));
-        return balance(node);
+        Node node = root;
+        int depth = 0;
+        while(node.right != null){
+            path[depth] = node;
+            pathLeft[depth++] = false;
+            node = node.right;
+        }
+        invalidate(node.key);
+        rebalancePath(depth, node.left);
+        if(metrics != null)
+            metrics.recordDelete(0, depth + 1);
+        assert validateWrite(node.key);
     }
 
 
@@ -307,10 +1042,9 @@ public class AVLTree <Key extends Comparable<Key>, Value>{
     private Node min(Node node){
         if(node == null)
             throw new IllegalArgumentException("Argument node in min(Node node) is null");
-        if(node.left == null)
-            return node;
-        else
-            return min(node.left);
+        while(node.left != null)
+            node = node.left;
+        return node;
     }
 
 
@@ -328,10 +1062,9 @@ public class AVLTree <Key extends Comparable<Key>, Value>{
     private Node max(Node node){
         if(node == null)
             throw new IllegalArgumentException("Argument node in min(Node node) is null");
-        if(node.right == null)
-            return node;
-        else
-            return max(node.right);
+        while(node.right != null)
+            node = node.right;
+        return node;
     }
 
 
@@ -347,23 +1080,22 @@ public class AVLTree <Key extends Comparable<Key>, Value>{
     }
 
 
-    /* Recursively search floor node to the given key */
+    /* Iteratively search floor node to the given key */
     private Node floor(Node node, Key key){
-        if (node == null)
-            return null;
-        int cmp = key.compareTo(node.key);
-
-        if (cmp == 0)
-            return node;
-        if (cmp < 0)
-            return floor(node.left, key);
-
-        Node y = floor(node.right, key);
-
-        if (y != null)
-            return y;
-        else
-            return node;
+        Node floor = null;
+        long prefix = prefix(key);
+        while(node != null){
+            int cmp = compare(key, prefix, node);
+            if(cmp == 0)
+                return node;
+            if(cmp < 0)
+                node = node.left;
+            else{
+                floor = node;
+                node = node.right;
+            }
+        }
+        return floor;
     }
 
 
@@ -382,7 +1114,7 @@ public class AVLTree <Key extends Comparable<Key>, Value>{
         if(node == null)
             return null;
 
-        int cmp = key.compareTo(node.key);
+        int cmp = compare(key, node.key);
 
 
         if(cmp < 0)
@@ -413,23 +1145,86 @@ public class AVLTree <Key extends Comparable<Key>, Value>{
     }
 
 
-    /* Recursively search ceiling node to the given key */
+    /* Iteratively search ceiling node to the given key */
     private Node ceiling(Node node, Key key){
-        if (node == null)
-            return null;
-        int cmp = key.compareTo(node.key);
+        Node ceiling = null;
+        long prefix = prefix(key);
+        while(node != null){
+            int cmp = compare(key, prefix, node);
+            if(cmp == 0)
+                return node;
+            if(cmp > 0)
+                node = node.right;
+            else{
+                ceiling = node;
+                node = node.left;
+            }
+        }
+        return ceiling;
+    }
 
-        if (cmp == 0)
-            return node;
 
-        if (cmp > 0)
-            return ceiling(node.right, key);
+    /* Returns the entry of the smallest key, null if the tree is empty */
+    public Map.Entry<Key, Value> firstEntry(){
+        return (root == null) ? null : min(root);
+    }
 
-        Node y = ceiling(node.left, key);
-        if (y != null)
-            return y;
-        else
-            return node;
+
+    /* Returns the entry of the largest key, null if the tree is empty */
+    public Map.Entry<Key, Value> lastEntry(){
+        return (root == null) ? null : max(root);
+    }
+
+
+    /* Returns the entry of the largest key less than or equal to key, null if there is none */
+    public Map.Entry<Key, Value> floorEntry(Key key){
+        if(key == null)
+            throw new IllegalArgumentException("argument key to floorEntry() is null");
+        return floor(root, key);
+    }
+
+
+    /* Returns the entry of the smallest key greater than or equal to key, null if there is none */
+    public Map.Entry<Key, Value> ceilingEntry(Key key){
+        if(key == null)
+            throw new IllegalArgumentException("argument key to ceilingEntry() is null");
+        return ceiling(root, key);
+    }
+
+
+    /* Returns the entry of the largest key strictly less than key, null if there is none */
+    public Map.Entry<Key, Value> lowerEntry(Key key){
+        if(key == null)
+            throw new IllegalArgumentException("argument key to lowerEntry() is null");
+        Node lower = null;
+        long prefix = prefix(key);
+        for(Node node = root; node != null; ){
+            if(compare(key, prefix, node) <= 0)
+                node = node.left;
+            else{
+                lower = node;
+                node = node.right;
+            }
+        }
+        return lower;
+    }
+
+
+    /* Returns the entry of the smallest key strictly greater than key, null if there is none */
+    public Map.Entry<Key, Value> higherEntry(Key key){
+        if(key == null)
+            throw new IllegalArgumentException("argument key to higherEntry() is null");
+        Node higher = null;
+        long prefix = prefix(key);
+        for(Node node = root; node != null; ){
+            if(compare(key, prefix, node) >= 0)
+                node = node.right;
+            else{
+                higher = node;
+                node = node.left;
+            }
+        }
+        return higher;
     }
 
 
@@ -448,7 +1243,7 @@ public class AVLTree <Key extends Comparable<Key>, Value>{
     private Node myCeiling(Node node, Key key){
         if (node == null)
             return null;
-        int cmp = key.compareTo(node.key);
+        int cmp = compare(key, node.key);
 
         if(cmp > 0)
             node = myCeiling(node.right, key);
@@ -502,20 +1297,22 @@ public class AVLTree <Key extends Comparable<Key>, Value>{
     }
 
 
-    /* Recursicevly search and returns node
+    /* Iteratively search and returns node
     /* whith the k-th smallest key in a subtree */
     private Node select(Node node, int k){
-        if(node == null)
-            return null;
-
-        int nodeSize = size(node.left);
-
-        if( nodeSize > k)
-            return select(node.left, k);
-        else if(nodeSize < k)
-            return select(node.right, k - nodeSize - 1);
-        else //(nodeSize == k)
-            return node;
+        while(node != null){
+            int nodeSize = size(node.left);
+
+            if( nodeSize > k)
+                node = node.left;
+            else if(nodeSize < k){
+                k -= nodeSize + 1;
+                node = node.right;
+            }
+            else //(nodeSize == k)
+                return node;
+        }
+        return null;
     }
 
 
@@ -531,16 +1328,76 @@ public class AVLTree <Key extends Comparable<Key>, Value>{
 
     /* Returns the number of keys on the subtree less than key */
     private int rank(Node node, Key key){
+        int rank = 0;
+        long prefix = prefix(key);
+        while(node != null){
+            int cmp = compare(key, prefix, node);
+
+            if(cmp < 0)
+                node = node.left;
+            else if(cmp > 0){
+                rank += 1 + size(node.left);
+                node = node.right;
+            }
+            else
+                return rank + size(node.left);
+        }
+        return rank;
+    }
+
+
+    /* Returns the aggregate of all values of the tree in O(1) */
+    public Value aggregate(){
+        checkMonoid();
+        return aggregate(root);
+    }
+
+
+    /** Returns the aggregate of the values of the keys between lo and hi inclusive in O(log n).
+     * The walk descends to the highest node in the range and from there along both range
+     * borders, taking the cached aggregates of the subtrees which are inside the range
+     */
+    public Value aggregate(Key lo, Key hi){
+        if(lo == null || hi == null)
+            throw new IllegalArgumentException("argument to aggregate() is null");
+        checkMonoid();
+        Node node = root;
+        while(node != null){
+            if(compare(lo, node.key) > 0)
+                node = node.right;
+            else if(compare(hi, node.key) < 0)
+                node = node.left;
+            else
+                break;
+        }
         if(node == null)
-            return 0;
-        int cmp = key.compareTo(node.key);
+            return monoid.identity();
+
+        /* The left border collects the aggregate from right to left, the right border from left to right */
+        Value left = monoid.identity();
+        for(Node n = node.left; n != null; ){
+            if(compare(lo, n.key) <= 0){
+                left = monoid.combine(n.value, monoid.combine(aggregate(n.right), left));
+                n = n.left;
+            }else
+                n = n.right;
+        }
+        Value right = monoid.identity();
+        for(Node n = node.right; n != null; ){
+            if(compare(hi, n.key) >= 0){
+                right = monoid.combine(monoid.combine(right, aggregate(n.left)), n.value);
+                n = n.right;
+            }else
+                n = n.left;
+        }
+        return monoid.combine(monoid.combine(left, node.value), right);
+    }
 
-        if(cmp < 0)
-            return rank(node.left, key);
-        else if(cmp > 0)
-            return 1 + size(node.left) + rank(node.right, key);
-        else
-            return size(node.left);
+
+    /* Throws for the aggregate queries on a tree without a monoid */
+    private void checkMonoid(){
+        if(monoid == null)
+            throw new UnsupportedOperationException("The tree has no monoid, use AVLTree(Monoid)");
     }
 
 
@@ -558,7 +1415,7 @@ public class AVLTree <Key extends Comparable<Key>, Value>{
         // the number of keys less than key
         if(node == null)
             return 0;
-        int cmp = key.compareTo(node.key);
+        int cmp = compare(key, node.key);
         if(cmp > 0)
             return 1+size(node.left)+myRank(node.right, key);
         if(cmp < 0)
@@ -574,75 +1431,520 @@ public class AVLTree <Key extends Comparable<Key>, Value>{
     }
 
 
-    /* Returns all keys on the tree in-order traversal*/
+    /* Returns all keys on the tree in-order traversal, the keys are read lazily */
     public Iterable<Key> keysInOrder(){
-        List<Key> list = new ArrayList<>();
-        keysInOrder(root, list);
-        return list;
+        return () -> new KeyIterator(null, null, false);
     }
 
 
-    /* Adds the keys in the subtree to queue following an in-order traversal. */
-    private void keysInOrder(Node node, List<Key> list){
-        if(node == null)
-            return;
-        keysInOrder(node.left, list);
-        list.add(node.key);
-        keysInOrder(node.right, list);
+    /* Returns the keys between lo and hi inclusive in ascending order, the keys are read lazily */
+    public Iterable<Key> keys(Key lo, Key hi){
+        if(lo == null || hi == null)
+            throw new IllegalArgumentException("argument to keys(Key, Key) are null");
+        return () -> new KeyIterator(lo, hi, false);
     }
 
 
-    /* Returns all keys in the tree folowing a level-order traversal */
-    public Iterable<Key> keysLevelOrder(){
-        List<Key> list = new ArrayList<>();
-        if(isEmpty()){
-            System.out.println("Tree is empty");
-            return list;
+    /* Returns all keys in descending order, the keys are read lazily */
+    public Iterable<Key> descendingKeys(){
+        return () -> new KeyIterator(null, null, true);
+    }
+
+
+    /* Returns all entries in ascending key order, the entries are read lazily */
+    public Iterable<Map.Entry<Key, Value>> entries(){
+        return () -> new EntryIterator(null, null, false);
+    }
+
+
+    /* Returns a lazy iterator over the entries between lo and hi inclusive, a null bound is open */
+    Iterator<Map.Entry<Key, Value>> entryIterator(Key lo, Key hi, boolean descending){
+        return new EntryIterator(lo, hi, descending);
+    }
+
+
+    /* Returns all entries in descending key order, the entries are read lazily */
+    public Iterable<Map.Entry<Key, Value>> descendingEntries(){
+        return () -> new EntryIterator(null, null, true);
+    }
+
+
+    /* Returns a sequential stream of the entries in ascending key order */
+    public Stream<Map.Entry<Key, Value>> entryStream(){
+        return StreamSupport.stream(new EntrySpliterator(0, size()), false);
+    }
+
+
+    /* Returns a sequential stream of the keys in ascending order */
+    public Stream<Key> keyStream(){
+        return StreamSupport.stream(new KeySpliterator(0, size()), false);
+    }
+
+
+    /* Returns a cursor over the tree which is not positioned yet */
+    public Cursor cursor(){
+        return new Cursor();
+    }
+
+
+    /** Position in the tree which moves to its neighbours in amortized O(1).
+     * The cursor keeps the path from the root to its node, next() and prev() walk along that path
+     * like an iterator. Any structural change of the tree after the last seek makes the moves
+     * fail with ConcurrentModificationException, a new seek positions the cursor again
+     */
+    public class Cursor{
+        private final Node[] stack = nodes(MAX_HEIGHT);
+        private int depth;
+        private int expectedModCount = modCount;
+
+        private Cursor(){
+
         }
-        List<Node> list2 = new ArrayList<>();
-        list2.add(root);
 
-        while(!list2.isEmpty()){
-            Node x = list2.remove(0);
-            list.add(x.key);
-            if(x.left != null)
-                list2.add(x.left);
+        /* Positions the cursor at the smallest key greater than or equal to key, returns false if there is none */
+        public boolean seek(Key key){
+            if(key == null)
+                throw new IllegalArgumentException("argument key to seek() is null");
+            expectedModCount = modCount;
+            depth = 0;
+            int found = 0;
+            for(Node node = root; node != null; ){
+                stack[depth++] = node;
+                int cmp = compare(key, node.key);
+                if(cmp == 0)
+                    return true;
+                if(cmp < 0){
+                    found = depth;
+                    node = node.left;
+                }else
+                    node = node.right;
+            }
+            depth = found;
+            return isValid();
+        }
 
-            if(x.right != null)
-                list2.add(x.right);
+        /* Positions the cursor at the k-th smallest key, returns false if k is out of the tree range */
+        public boolean seekRank(int k){
+            expectedModCount = modCount;
+            depth = 0;
+            if(k < 0 || k >= size())
+                return false;
+            Node node = root;
+            while(true){
+                stack[depth++] = node;
+                int leftSize = size(node.left);
+                if(k == leftSize)
+                    return true;
+                if(k < leftSize)
+                    node = node.left;
+                else{
+                    k -= leftSize + 1;
+                    node = node.right;
+                }
+            }
+        }
+
+        /* Positions the cursor at the smallest key, returns false if the tree is empty */
+        public boolean seekFirst(){
+            return seekRank(0);
+        }
+
+        /* Positions the cursor at the largest key, returns false if the tree is empty */
+        public boolean seekLast(){
+            return seekRank(size() - 1);
+        }
+
+        /* Checks if the cursor is positioned at a key */
+        public boolean isValid(){
+            return depth > 0;
+        }
+
+        /* Moves to the next key, returns false and leaves the tree range after the largest key */
+        public boolean next(){
+            Node node = current();
+            if(node.right != null){
+                node = node.right;
+                stack[depth++] = node;
+                while(node.left != null){
+                    node = node.left;
+                    stack[depth++] = node;
+                }
+                return true;
+            }
+            Node child;
+            do{
+                child = stack[--depth];
+            }while(depth > 0 && stack[depth - 1].right == child);
+            return isValid();
+        }
+
+        /* Moves to the previous key, returns false and leaves the tree range before the smallest key */
+        public boolean prev(){
+            Node node = current();
+            if(node.left != null){
+                node = node.left;
+                stack[depth++] = node;
+                while(node.right != null){
+                    node = node.right;
+                    stack[depth++] = node;
+                }
+                return true;
+            }
+            Node child;
+            do{
+                child = stack[--depth];
+            }while(depth > 0 && stack[depth - 1].left == child);
+            return isValid();
+        }
+
+        public Key key(){
+            return current().key;
+        }
+
+        public Value value(){
+            return current().value;
+        }
+
+        /* Replaces the value at the cursor, a copy of a shared node is sought again in O(log n) */
+        public void setValue(Value value){
+            if(value == null)
+                throw new IllegalArgumentException("argument value to setValue() is null");
+            checkWritable();
+            Node node = current();
+            if(node.epoch == epoch && monoid == null){
+                invalidate(node.key);
+                node.value = value;
+                return;
+            }
+            System.arraycopy(stack, 0, path, 0, depth - 1);
+            for(int i = 0; i < depth - 1; i++)
+                pathLeft[i] = path[i].left == stack[i + 1];
+            replaceValue(node, depth - 1, value);
+            seek(node.key);
+        }
+
+        /* Returns the node at the cursor */
+        private Node current(){
+            if(modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            if(depth == 0)
+                throw new NoSuchElementException("The cursor is not positioned at a key");
+            return stack[depth - 1];
+        }
+    }
+
+
+    /** In-order iterator over the nodes between the optional lo and hi bounds.
+     * The stack holds the nodes on the path from the root whose keys are still to come,
+     * so it never grows over the tree height. remove() deletes the last key from the tree
+     * and continues from its successor
+     */
+    private abstract class NodeIterator<T> implements Iterator<T>{
+        private final Key lo;
+        private final Key hi;
+        private final boolean descending;
+        private final Node[] stack;
+        private int depth;
+        private Node last;
+        private int expectedModCount = modCount;
+
+        NodeIterator(Key lo, Key hi, boolean descending){
+            this.lo = lo;
+            this.hi = hi;
+            this.descending = descending;
+            stack = nodes(height() + 2);
+            seek(descending ? hi : lo);
+        }
+
+        /* Fills the stack with the path to the first node at or after the key, null is the first node */
+        private void seek(Key key){
+            depth = 0;
+            Node node = root;
+            while(node != null){
+                int cmp = (key == null) ? (descending ? 1 : -1) : compare(key, node.key);
+                if(descending ? cmp >= 0 : cmp <= 0){
+                    stack[depth++] = node;
+                    if(cmp == 0)
+                        return;
+                    node = descending ? node.right : node.left;
+                }else{
+                    node = descending ? node.left : node.right;
+                }
+            }
+        }
+
+        abstract T element(Node node);
+
+        @Override
+        public boolean hasNext(){
+            if(depth == 0)
+                return false;
+            Key key = stack[depth - 1].key;
+            if(descending)
+                return lo == null || compare(key, lo) >= 0;
+            return hi == null || compare(key, hi) <= 0;
+        }
+
+        @Override
+        public T next(){
+            if(modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            if(!hasNext())
+                throw new NoSuchElementException();
+            Node node = stack[--depth];
+            stack[depth] = null;
+            last = node;
+            Node child = descending ? node.left : node.right;
+            while(child != null){
+                stack[depth++] = child;
+                child = descending ? child.right : child.left;
+            }
+            return element(node);
+        }
+
+        @Override
+        public void remove(){
+            if(last == null)
+                throw new IllegalStateException();
+            if(modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            delete(last.key);
+            expectedModCount = modCount;
+            seek(last.key);
+            last = null;
         }
-        return list;
     }
 
 
+    private class KeyIterator extends NodeIterator<Key>{
+        KeyIterator(Key lo, Key hi, boolean descending){
+            super(lo, hi, descending);
+        }
+
+        @Override
+        Key element(Node node){
+            return node.key;
+        }
+    }
+
+
+    private class EntryIterator extends NodeIterator<Map.Entry<Key, Value>>{
+        EntryIterator(Key lo, Key hi, boolean descending){
+            super(lo, hi, descending);
+        }
+
+        @Override
+        Map.Entry<Key, Value> element(Node node){
+            return node;
+        }
+    }
+
+
+    /** Spliterator over the nodes with ranks in [from, to). trySplit halves the rank range
+     * with an O(log n) descent, so every part knows its exact size. The walk of a part
+     * starts with a select descent which fills the stack of an in-order traversal
+     */
+    private abstract class RankSpliterator<T> implements Spliterator<T>{
+        private int from;
+        private final int to;
+        private Node[] stack;
+        private int depth;
+        private final int expectedModCount = modCount;
+
+        RankSpliterator(int from, int to){
+            this.from = from;
+            this.to = to;
+        }
+
+        abstract T element(Node node);
+
+        abstract RankSpliterator<T> part(int from, int to);
+
+        private void start(){
+            stack = nodes(height() + 2);
+            Node node = root;
+            int k = from;
+            while(node != null){
+                int leftSize = size(node.left);
+                if(k <= leftSize){
+                    stack[depth++] = node;
+                    if(k == leftSize)
+                        return;
+                    node = node.left;
+                }else{
+                    k -= leftSize + 1;
+                    node = node.right;
+                }
+            }
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super T> action){
+            if(from >= to)
+                return false;
+            if(modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            if(stack == null)
+                start();
+            Node node = stack[--depth];
+            stack[depth] = null;
+            for(Node child = node.right; child != null; child = child.left)
+                stack[depth++] = child;
+            from++;
+            action.accept(element(node));
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super T> action){
+            while(tryAdvance(action));
+        }
+
+        @Override
+        public Spliterator<T> trySplit(){
+            if(stack != null || to - from < 2)
+                return null;
+            int mid = (from + to) >>> 1;
+            Spliterator<T> prefix = part(from, mid);
+            from = mid;
+            return prefix;
+        }
 
-    /* Returns all keys in the tree folowing a level-order traversal */
+        @Override
+        public long estimateSize(){
+            return to - from;
+        }
+
+        @Override
+        public int characteristics(){
+            return ORDERED | SORTED | DISTINCT | NONNULL | SIZED | SUBSIZED;
+        }
+    }
+
+
+    private class KeySpliterator extends RankSpliterator<Key>{
+        KeySpliterator(int from, int to){
+            super(from, to);
+        }
+
+        @Override
+        Key element(Node node){
+            return node.key;
+        }
+
+        @Override
+        RankSpliterator<Key> part(int from, int to){
+            return new KeySpliterator(from, to);
+        }
+
+        /* Order of the tree, null for the natural order of the keys */
+        @Override
+        public Comparator<? super Key> getComparator(){
+            return comparator;
+        }
+    }
+
+
+    private class EntrySpliterator extends RankSpliterator<Map.Entry<Key, Value>>{
+        EntrySpliterator(int from, int to){
+            super(from, to);
+        }
+
+        @Override
+        Map.Entry<Key, Value> element(Node node){
+            return node;
+        }
+
+        @Override
+        RankSpliterator<Map.Entry<Key, Value>> part(int from, int to){
+            return new EntrySpliterator(from, to);
+        }
+
+        @Override
+        public Comparator<? super Map.Entry<Key, Value>> getComparator(){
+            return (a, b) -> compare(a.getKey(), b.getKey());
+        }
+    }
+
+
+    /* Returns all keys in the tree folowing a level-order traversal, the keys are read lazily, nothing for an empty tree */
+    public Iterable<Key> keysLevelOrder(){
+        return LevelOrderIterator::new;
+    }
+
+
+    /* Returns all keys in the tree folowing a level-order traversal, every level is followed by null, nothing for an empty tree */
     public Iterable<Key> keysLevelOrderSeparated(){
         List<Key> list = new ArrayList<>();
-        if(isEmpty()){
-            System.out.println("Tree is empty");
-            return list;
-        }
-        List<Node> list2 = new ArrayList<>();
-        List<Node> list3 = new ArrayList<>();
-        list2.add(root);
-
-        while(!list2.isEmpty()){
-            Node x = list2.remove(0);
-            list.add(x.key);
-            if(x.left != null)
-                list3.add(x.left);
-
-            if(x.right != null)
-                list3.add(x.right);
-
-            if(list2.isEmpty()){
-                list.add(null);
-                list2.addAll(list3);
-                list3.clear();
+        levelOrder(node -> list.add(node.getKey()), depth -> list.add(null));
+        return list;
+    }
+
+
+    /** Visits the entries in level-order in O(n) time. levelEnd is called with the depth
+     * of every level after its last entry, the root is at depth 0
+     */
+    public void levelOrder(Consumer<? super Map.Entry<Key, Value>> visitor, IntConsumer levelEnd){
+        levelOrder(visitor, levelEnd, Integer.MAX_VALUE);
+    }
+
+
+    /* Visits the entries in level-order down to maxDepth inclusive */
+    public void levelOrder(Consumer<? super Map.Entry<Key, Value>> visitor, IntConsumer levelEnd, int maxDepth){
+        if(visitor == null || levelEnd == null)
+            throw new IllegalArgumentException("argument to levelOrder() is null");
+        if(isEmpty())
+            return;
+        int expectedModCount = modCount;
+        ArrayDeque<Node> queue = new ArrayDeque<>();
+        queue.add(root);
+        for(int depth = 0; !queue.isEmpty() && depth <= maxDepth; depth++){
+            boolean last = depth == maxDepth;
+            for(int count = queue.size(); count > 0; count--){
+                Node node = queue.poll();
+                visitor.accept(node);
+                if(modCount != expectedModCount)
+                    throw new ConcurrentModificationException();
+                if(last)
+                    continue;
+                if(node.left != null)
+                    queue.add(node.left);
+                if(node.right != null)
+                    queue.add(node.right);
             }
+            levelEnd.accept(depth);
+        }
+    }
+
+
+    /* Breadth-first iterator over the keys, the queue holds at most two levels */
+    private class LevelOrderIterator implements Iterator<Key>{
+        private final ArrayDeque<Node> queue = new ArrayDeque<>();
+        private final int expectedModCount = modCount;
+
+        LevelOrderIterator(){
+            if(root != null)
+                queue.add(root);
+        }
+
+        @Override
+        public boolean hasNext(){
+            return !queue.isEmpty();
+        }
+
+        @Override
+        public Key next(){
+            if(modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            Node node = queue.poll();
+            if(node == null)
+                throw new NoSuchElementException();
+            if(node.left != null)
+                queue.add(node.left);
+            if(node.right != null)
+                queue.add(node.right);
+            return node.key;
         }
-        return list;
     }
 
 
@@ -650,7 +1952,7 @@ public class AVLTree <Key extends Comparable<Key>, Value>{
     public List<Key> keysInRange(Key low, Key hi){
         if(low == null || hi == null)
             throw new IllegalArgumentException("argument to keysInRange() are null");
-        List<Key> keysInRangeList = new ArrayList();
+        List<Key> keysInRangeList = new ArrayList<>();
         keysInRange(root, keysInRangeList, low, hi);
         return keysInRangeList;
     }
@@ -660,8 +1962,8 @@ public class AVLTree <Key extends Comparable<Key>, Value>{
     private void keysInRange(Node node, List<Key> list, Key lo, Key hi){
         if(node == null)
             return;
-        int cmpLow = node.key.compareTo(lo);
-        int cmpHi  = node.key.compareTo(hi);
+        int cmpLow = compare(node.key, lo);
+        int cmpHi  = compare(node.key, hi);
 
         //When node.key is smaller than low ->go right
         if(cmpLow < 0) {
@@ -681,73 +1983,603 @@ public class AVLTree <Key extends Comparable<Key>, Value>{
     }
 
 
-    /* Checks if the AVL tree invariants are fine */
-    public boolean check(){
-        System.out.println("Testing tree");
-        boolean isBST = isBST(root, null, null);
-        boolean isAVL = isAVL(root);
-        boolean isSizeConsistent = isSizeConsistent(root);
-        boolean isRankConsistent = isRankConsistent();
-        if(!isBST)
-            System.out.println("Tree is not BST");
-        if(!isAVL)
-            System.out.println("Tree is not AVL");
-        if(!isSizeConsistent)
-            System.out.println("Tree is not isSizeConsistent");
-        if(!isRankConsistent)
-            System.out.println("Tree is not isRankConsistent");
-        return isAVL && isBST && isSizeConsistent & isRankConsistent;
-    }
-
-
-    /* Checks if the symmetric order consistent. */
-    private boolean isBST(Node node, Key min, Key max){
+    /** Joins two trees and a key between them into a new tree in O(log n).
+     * All keys of left have to be smaller than key and all keys of right greater than key.
+     * The nodes are moved, both argument trees are empty afterwards
+     */
+    public static <Key, Value> AVLTree<Key, Value> join(AVLTree<Key, Value> left, Key key, Value value, AVLTree<Key, Value> right){
+        if(left == null || key == null || value == null || right == null)
+            throw new IllegalArgumentException("Argument to join() is null");
+        left.checkWritable();
+        right.checkWritable();
+        if(!left.sameOrder(right))
+            throw new IllegalArgumentException("Trees of join() have different orders");
+        if(!left.isEmpty() && left.compare(left.max(left.root).key, key) >= 0)
+            throw new IllegalArgumentException("Keys of the left tree of join() are not smaller than key");
+        if(!right.isEmpty() && left.compare(right.min(right.root).key, key) <= 0)
+            throw new IllegalArgumentException("Keys of the right tree of join() are not greater than key");
+
+        if(left.monoid != right.monoid)
+            throw new IllegalArgumentException("Trees of join() have different monoids");
+        AVLTree<Key, Value> tree = left.emptyTree();
+        tree.epoch = Math.max(left.epoch, right.epoch);
+        tree.root = tree.join(left.root, tree.new Node(key, value, 0, 1), right.root);
+        left.root = null;
+        right.root = null;
+        left.bulkWrite();
+        right.bulkWrite();
+        assert tree.validateWrite(null);
+        return tree;
+    }
+
+
+    /** Returns the union of two trees in O(m log(n/m + 1)), m is the size of the smaller tree.
+     * Values of the keys present in both trees are merge(valueOfA, valueOfB), a null merge
+     * result drops the key. The nodes are moved, both argument trees are empty afterwards
+     */
+    public static <Key, Value> AVLTree<Key, Value> union(AVLTree<Key, Value> a, AVLTree<Key, Value> b, BinaryOperator<Value> merge){
+        AVLTree<Key, Value> tree = setOperationTree(a, b, merge);
+        tree.root = tree.combine(SetOperation.UNION, a.root, b.root, merge);
+        a.root = null;
+        b.root = null;
+        a.bulkWrite();
+        b.bulkWrite();
+        assert tree.validateWrite(null);
+        return tree;
+    }
+
+
+    /** Returns the keys present in both trees in O(m log(n/m + 1)), m is the size of the smaller tree.
+     * Values are merge(valueOfA, valueOfB), a null merge result drops the key.
+     * Both argument trees are empty afterwards
+     */
+    public static <Key, Value> AVLTree<Key, Value> intersection(AVLTree<Key, Value> a, AVLTree<Key, Value> b, BinaryOperator<Value> merge){
+        AVLTree<Key, Value> tree = setOperationTree(a, b, merge);
+        tree.root = tree.combine(SetOperation.INTERSECTION, a.root, b.root, merge);
+        a.root = null;
+        b.root = null;
+        a.bulkWrite();
+        b.bulkWrite();
+        assert tree.validateWrite(null);
+        return tree;
+    }
+
+
+    /** Returns the keys of a which are not present in b in O(m log(n/m + 1)).
+     * The nodes of a are moved, a is empty afterwards and b is only read, so it may be a snapshot
+     */
+    public static <Key, Value> AVLTree<Key, Value> difference(AVLTree<Key, Value> a, AVLTree<Key, Value> b){
+        if(a == null || b == null)
+            throw new IllegalArgumentException("Argument to difference() is null");
+        if(a == b)
+            throw new IllegalArgumentException("Arguments of difference() are the same tree");
+        if(!a.sameOrder(b))
+            throw new IllegalArgumentException("Trees of difference() have different orders");
+        a.checkWritable();
+        AVLTree<Key, Value> tree = a.emptyTree();
+        tree.root = tree.combine(SetOperation.DIFFERENCE, a.root, b.root, null);
+        a.root = null;
+        a.bulkWrite();
+        assert tree.validateWrite(null);
+        return tree;
+    }
+
+
+    /* Checks the arguments of a set operation and returns an empty tree for its result */
+    private static <Key, Value> AVLTree<Key, Value> setOperationTree(AVLTree<Key, Value> a, AVLTree<Key, Value> b, BinaryOperator<Value> merge){
+        if(a == null || b == null || merge == null)
+            throw new IllegalArgumentException("Argument to the set operation is null");
+        if(a == b)
+            throw new IllegalArgumentException("Arguments of the set operation are the same tree");
+        a.checkWritable();
+        b.checkWritable();
+        if(a.monoid != b.monoid)
+            throw new IllegalArgumentException("Trees of the set operation have different monoids");
+        if(!a.sameOrder(b))
+            throw new IllegalArgumentException("Trees of the set operation have different orders");
+        AVLTree<Key, Value> tree = a.emptyTree();
+        tree.epoch = Math.max(a.epoch, b.epoch);
+        return tree;
+    }
+
+
+    private enum SetOperation{ UNION, INTERSECTION, DIFFERENCE }
+
+
+    /** Divide and conquer step of the set operations. The first subtree is split by the root key
+     * of the other one and the halves are combined recursively, the halves of large subtrees
+     * run as forked tasks in the common ForkJoinPool
+     */
+    private Node combine(SetOperation operation, Node a, Node b, BinaryOperator<Value> merge){
+        if(operation == SetOperation.DIFFERENCE){
+            if(a == null || b == null)
+                return a;
+            Split split = new Split();
+            split(a, b.key, split);
+            Node[] halves = combineHalves(operation, split.left, b.left, split.right, b.right, merge);
+            return join2(halves[0], halves[1]);
+        }
+
+        if(a == null || b == null)
+            return (operation == SetOperation.UNION) ? (a == null ? b : a) : null;
+        Split split = new Split();
+        split(b, a.key, split);
+        Node middle = own(a);
+        Node[] halves = combineHalves(operation, middle.left, split.left, middle.right, split.right, merge);
+        if(split.middle == null){
+            if(operation == SetOperation.INTERSECTION)
+                return join2(halves[0], halves[1]);
+        }else{
+            middle.value = merge.apply(middle.value, split.middle.value);
+            if(middle.value == null)
+                return join2(halves[0], halves[1]);
+        }
+        return join(halves[0], middle, halves[1]);
+    }
+
+
+    /* Combines the left and the right halves, concurrently when they are large enough */
+    private Node[] combineHalves(SetOperation operation, Node leftA, Node leftB, Node rightA, Node rightB, BinaryOperator<Value> merge){
+        Node[] halves = nodes(2);
+        if(size(leftA) + size(leftB) + size(rightA) + size(rightB) < SetTask.SEQUENTIAL_THRESHOLD){
+            halves[0] = combine(operation, leftA, leftB, merge);
+            halves[1] = combine(operation, rightA, rightB, merge);
+        }else{
+            SetTask left = new SetTask(operation, leftA, leftB, merge);
+            left.fork();
+            halves[1] = combine(operation, rightA, rightB, merge);
+            halves[0] = left.join();
+        }
+        return halves;
+    }
+
+
+    /* Set operation of a pair of subtrees as a forked task */
+    private class SetTask extends RecursiveTask<Node>{
+        private static final long serialVersionUID = 1L;
+        private static final int SEQUENTIAL_THRESHOLD = 1 << 13;
+        private final SetOperation operation;
+        private final Node a;
+        private final Node b;
+        private final BinaryOperator<Value> merge;
+
+        SetTask(SetOperation operation, Node a, Node b, BinaryOperator<Value> merge){
+            this.operation = operation;
+            this.a = a;
+            this.b = b;
+            this.merge = merge;
+        }
+
+        @Override
+        protected Node compute(){
+            return combine(operation, a, b, merge);
+        }
+    }
+
+
+    /** Inserts the keys in strictly ascending order with their values in O(m log(n/m + 1)).
+     * The batch is split around the node keys on the way down, so keys close to each other share
+     * the descent, and every visited node is joined back with its changed subtrees. Batches of more
+     * than a quarter of the tree size are merged with the keys of the tree and rebuilt in O(n + m)
+     */
+    public void putAll(Key[] sortedKeys, Value[] values){
+        checkWritable();
+        checkSorted(sortedKeys, values, comparator, "putAll()");
+        if(sortedKeys.length == 0)
+            return;
+        if(sortedKeys.length > size() / REBUILD_RATIO)
+            root = mergeRebuild(sortedKeys, values);
+        else
+            root = putAll(root, sortedKeys, values, 0, sortedKeys.length);
+        bulkWrite();
+        assert validateWrite(null);
+    }
+
+
+    /** Inserts keys[lo, hi) into the subtree. The runs of keys which fall between two nodes
+     * become balanced subtrees and join() restores the balance of the nodes above them
+     */
+    private Node putAll(Node node, Key[] keys, Value[] values, int lo, int hi){
+        if(lo >= hi)
+            return node;
         if(node == null)
-            return true;
-        if(min!= null && node.key.compareTo(min) <= 0) return false;
-        if(max!=null && node.key.compareTo(max) >=0) return false;
+            return build(keys, values, lo, hi);
+        int index = Arrays.binarySearch(keys, lo, hi, node.key, comparator);
+        int split = (index >= 0) ? index : -index - 1;
+        node = own(node);
+        if(index >= 0)
+            node.value = values[index];
+        Node left = putAll(node.left, keys, values, lo, split);
+        Node right = putAll(node.right, keys, values, (index >= 0) ? index + 1 : split, hi);
+        return join(left, node, right);
+    }
+
 
-        return isBST(node.left, min, node.key) && isBST(node.right, node.key, max);
+    /* Merges the entries of the tree with the batch, the batch wins on equal keys, and builds the merged tree */
+    @SuppressWarnings("unchecked")
+    private Node mergeRebuild(Key[] sortedKeys, Value[] values){
+        Key[] keys = (Key[]) new Object[size() + sortedKeys.length];
+        Value[] merged = (Value[]) new Object[keys.length];
+        Iterator<Map.Entry<Key, Value>> entries = entries().iterator();
+        Map.Entry<Key, Value> entry = entries.hasNext() ? entries.next() : null;
+        int count = 0;
+        int i = 0;
+        while(entry != null || i < sortedKeys.length){
+            int cmp = (entry == null) ? 1 : (i == sortedKeys.length) ? -1 : compare(entry.getKey(), sortedKeys[i]);
+            if(cmp < 0){
+                keys[count] = entry.getKey();
+                merged[count++] = entry.getValue();
+            }else{
+                keys[count] = sortedKeys[i];
+                merged[count++] = values[i++];
+            }
+            if(cmp <= 0)
+                entry = entries.hasNext() ? entries.next() : null;
+        }
+        return build(keys, merged, 0, count);
+    }
+
+
+    /** Returns the values of the keys in strictly ascending order, null for the absent keys.
+     * Every subtree is searched only for the part of the batch in its key range,
+     * which takes O(m log(n/m + 1)) instead of m independent descents
+     */
+    public List<Value> getAll(Key[] sortedKeys){
+        if(sortedKeys == null)
+            throw new IllegalArgumentException("Argument to getAll() is null");
+        for(int i = 0; i < sortedKeys.length; i++){
+            if(sortedKeys[i] == null)
+                throw new IllegalArgumentException("Key " + i + " of getAll() is null");
+            if(i > 0 && compare(sortedKeys[i - 1], sortedKeys[i]) >= 0)
+                throw new IllegalArgumentException("Keys of getAll() are not strictly ascending at " + i);
+        }
+        List<Value> values = new ArrayList<>(Collections.nCopies(sortedKeys.length, null));
+        getAll(root, sortedKeys, 0, sortedKeys.length, values);
+        return values;
+    }
+
+
+    /* Finds the keys[lo, hi) in the subtree, the keys are split around the node key by a binary search */
+    private void getAll(Node node, Key[] keys, int lo, int hi, List<Value> values){
+        while(node != null && lo < hi){
+            int index = Arrays.binarySearch(keys, lo, hi, node.key, comparator);
+            int split = (index >= 0) ? index : -index - 1;
+            if(index >= 0)
+                values.set(index, node.value);
+            getAll(node.left, keys, lo, split, values);
+            lo = (index >= 0) ? index + 1 : split;
+            node = node.right;
+        }
+    }
+
+
+    /* Removes the keys greater than or equal to fromKey from the tree and returns them as a new tree */
+    public AVLTree<Key, Value> tailTree(Key fromKey){
+        if(fromKey == null)
+            throw new IllegalArgumentException("Argument fromKey to tailTree(Key) is null");
+        checkWritable();
+        Split split = new Split();
+        split(root, fromKey, split);
+        AVLTree<Key, Value> tail = emptyTree();
+        root = split.left;
+        tail.root = (split.middle == null) ? split.right : join(null, own(split.middle), split.right);
+        bulkWrite();
+        assert validateWrite(fromKey) && tail.validateWrite(fromKey);
+        return tail;
+    }
+
+
+    /* Removes the keys smaller than toKey from the tree and returns them as a new tree */
+    public AVLTree<Key, Value> headTree(Key toKey){
+        if(toKey == null)
+            throw new IllegalArgumentException("Argument toKey to headTree(Key) is null");
+        checkWritable();
+        Split split = new Split();
+        split(root, toKey, split);
+        AVLTree<Key, Value> head = emptyTree();
+        head.root = split.left;
+        root = (split.middle == null) ? split.right : join(null, own(split.middle), split.right);
+        bulkWrite();
+        assert validateWrite(toKey) && head.validateWrite(toKey);
+        return head;
+    }
+
+
+    /* Keeps the k smallest keys in the tree and returns the other keys as a new tree */
+    public AVLTree<Key, Value> splitAtRank(int k){
+        checkWritable();
+        if(k >= size())
+            return emptyTree();
+        return tailTree(select(root, Math.max(k, 0)).key);
     }
 
 
-    /* Checks if AVL property is consistent in subtree. */
-    private boolean isAVL(Node node){
+    /* Removes all keys between lo and hi inclusive in O(log n) */
+    public void deleteRange(Key lo, Key hi){
+        if(lo == null || hi == null)
+            throw new IllegalArgumentException("argument to deleteRange() are null");
+        checkWritable();
+        if(compare(lo, hi) > 0)
+            return;
+        Split split = new Split();
+        split(root, lo, split);
+        Node left = split.left;
+        split(split.right, hi, split);
+        root = join2(left, split.right);
+        bulkWrite();
+        assert validateWrite(lo);
+    }
+
+
+    /* Parts of a split subtree, keys smaller and greater than the split key and the node of the key */
+    private class Split{
+        private Node left;
+        private Node middle;
+        private Node right;
+    }
+
+
+    /* Splits the subtree by the key into the split parts */
+    private void split(Node node, Key key, Split split){
         if(node == null){
-            return true;
+            split.left = null;
+            split.middle = null;
+            split.right = null;
+            return;
         }
-        int bf = balanceFactor(node);
-        if(bf > 1 || bf < -1 )
-            return false;
-        return isAVL(node.left) && isAVL(node.right);
+        int cmp = compare(key, node.key);
+        if(cmp == 0){
+            split.left = node.left;
+            split.middle = node;
+            split.right = node.right;
+        }else if(cmp < 0){
+            split(node.left, key, split);
+            Node right = node.right;
+            split.right = join(split.right, own(node), right);
+        }else{
+            split(node.right, key, split);
+            Node left = node.left;
+            split.left = join(left, own(node), split.left);
+        }
+    }
+
+
+    /** Joins the subtrees and the middle node, all keys of left are smaller than the middle key
+     * and all keys of right are greater. The middle node has to be owned by the current epoch.
+     * Descends along the spine of the higher subtree to the height of the lower one
+     */
+    private Node join(Node left, Node middle, Node right){
+        if(height(left) > height(right) + 1){
+            left = own(left);
+            left.right = join(left.right, middle, right);
+            update(left);
+            return balance(left);
+        }
+        if(height(right) > height(left) + 1){
+            right = own(right);
+            right.left = join(left, middle, right.left);
+            update(right);
+            return balance(right);
+        }
+        middle.left = left;
+        middle.right = right;
+        update(middle);
+        return middle;
+    }
+
+
+    /* Joins the subtrees, all keys of left are smaller than the keys of right */
+    private Node join2(Node left, Node right){
+        if(left == null)
+            return right;
+        if(right == null)
+            return left;
+        Node middle = own(min(right));
+        return join(left, middle, deleteMin(right));
+    }
+
+
+    /* Removes the smallest key of the subtree and returns the rebalanced subtree */
+    private Node deleteMin(Node node){
+        if(node.left == null)
+            return node.right;
+        node = own(node);
+        node.left = deleteMin(node.left);
+        update(node);
+        return balance(node);
+    }
+
+
+    /** Racy variant of get for optimistic readers.
+     * It may run while a writer changes the tree, so the walk is cut after
+     * MAX_HEIGHT steps and the caller has to validate the result with its lock
+     */
+    Value getOptimistic(Key key){
+        Node node = root;
+        long prefix = prefix(key);
+        for(int steps = 0; node != null && steps < MAX_HEIGHT; steps++){
+            int compare = compare(key, prefix, node);
+            if(compare == 0)
+                return node.value;
+            node = (compare < 0) ? node.left : node.right;
+        }
+        return null;
     }
 
 
-    /* Checks if the size of the tree is consistent. */
-    private boolean isSizeConsistent(Node node){
+    /* Invariants the corrupt() hook of the tests breaks */
+    enum Corruption{ HEIGHT, SIZE, ORDER, AGGREGATE, CYCLE }
+
+
+    /** Test hook which breaks an invariant at the node of the key in place, without copying the node
+     * and without counting a modification, so that the validation has something to find.
+     * ORDER swaps the children of the node, CYCLE links the root as the left child of the node
+     */
+    void corrupt(Key key, Corruption corruption){
+        Node node = root;
+        while(node != null && compare(key, node.key) != 0)
+            node = (compare(key, node.key) < 0) ? node.left : node.right;
         if(node == null)
-            return true;
-        if(node.size != size(node.left) + size(node.right) + 1)
-            return false;
-        return isSizeConsistent(node.left) && isSizeConsistent(node.right);
+            throw new IllegalArgumentException("Key " + key + " of corrupt() is not in the tree");
+        switch(corruption){
+            case HEIGHT:
+                node.height++;
+                break;
+            case SIZE:
+                node.size++;
+                break;
+            case ORDER:
+                Node left = node.left;
+                node.left = node.right;
+                node.right = left;
+                break;
+            case AGGREGATE:
+                node.aggregate = (monoid == null) ? node.value : monoid.combine(node.aggregate, node.value);
+                break;
+            case CYCLE:
+                node.left = root;
+                break;
+        }
+    }
+
+
+    /** Checks if the AVL tree invariants are fine and prints the found violations.
+     * Use validate() for a report without output
+     */
+    public boolean check(){
+        System.out.println("Testing tree");
+        ValidationReport report = validate();
+        for(String violation : report.violations())
+            System.out.println(violation);
+        return report.isValid();
     }
 
 
-    /* Checks if rank is consistent. */
-    private boolean isRankConsistent(){
-        // rank is the number of keys on the subtree less than key
-        // select returns the k-th smallest key in the tree
-        for(int i=0; i<size(); i++){
-            if(i != rank(select(i))) return false;
+    /** Validates the whole tree in a single O(n) pass: the symmetric order, the AVL balance and
+     * the cached heights, sizes and aggregates of every node against its children. Together the
+     * size and the order checks cover rank and select
+     */
+    public ValidationReport validate(){
+        Validation validation = new Validation();
+        validate(root, null, null, 0, validation);
+        return validation.report(height());
+    }
+
+
+    /** Validates only the nodes on the path to the key and their children in O(log n).
+     * After a write it covers the nodes the write path changed and the nodes its rotations moved
+     */
+    public ValidationReport validatePath(Key key){
+        if(key == null)
+            throw new IllegalArgumentException("argument key to validatePath() is null");
+        Validation validation = new Validation();
+        Key lo = null;
+        Key hi = null;
+        Node node = root;
+        for(int depth = 0; node != null && depth < MAX_HEIGHT; depth++){
+            validateNode(node, lo, hi, validation);
+            if(node.left != null)
+                validateNode(node.left, lo, node.key, validation);
+            if(node.right != null)
+                validateNode(node.right, node.key, hi, validation);
+            int cmp = compare(key, node.key);
+            if(cmp == 0)
+                break;
+            if(cmp < 0){
+                hi = node.key;
+                node = node.left;
+            }else{
+                lo = node.key;
+                node = node.right;
+            }
         }
-        for(Key key : keysLevelOrder()){
-            if(key.compareTo(select(rank(key))) != 0)
-                return false;
+        return validation.report(height());
+    }
+
+
+    /* Sets the checks the writes run when assertions are enabled */
+    public void setValidationPolicy(ValidationPolicy policy){
+        if(policy == null)
+            throw new IllegalArgumentException("argument policy to setValidationPolicy() is null");
+        validationPolicy = policy;
+    }
+
+
+    /** Runs the checks of the validation policy after a write to the key, null for writes
+     * without a single key. Called from assert, so it returns true or throws
+     */
+    private boolean validateWrite(Key key){
+        ValidationReport report = null;
+        int interval = validationPolicy.fullCheckInterval();
+        if(interval > 0 && ++writesSinceFullCheck >= interval){
+            writesSinceFullCheck = 0;
+            report = validate();
+        }else if(key != null && validationPolicy.checksPath()){
+            report = validatePath(key);
         }
+        if(report != null && !report.isValid())
+            throw new AssertionError("AVL tree invariant violated: " + report);
         return true;
     }
 
 
+    /* Validates the subtree recursively, the walk stops below MAX_HEIGHT so that a cycle cannot loop forever */
+    private void validate(Node node, Key lo, Key hi, int depth, Validation validation){
+        if(node == null)
+            return;
+        if(depth >= MAX_HEIGHT){
+            validation.violation("Path deeper than " + MAX_HEIGHT + " at key " + node.key);
+            return;
+        }
+        validateNode(node, lo, hi, validation);
+        validate(node.left, lo, node.key, depth + 1, validation);
+        validate(node.right, node.key, hi, depth + 1, validation);
+    }
+
+
+    /* Checks the node against the key bounds of its position and its cached fields against its children */
+    private void validateNode(Node node, Key lo, Key hi, Validation validation){
+        validation.checkedNodes++;
+        if(node.key == null || node.value == null){
+            validation.violation("Null key or value at key " + node.key);
+            return;
+        }
+        if((lo != null && compare(node.key, lo) <= 0) || (hi != null && compare(node.key, hi) >= 0))
+            validation.violation("Key " + node.key + " is out of the order bounds (" + lo + ", " + hi + ")");
+        if(node.height != 1 + Math.max(height(node.left), height(node.right)))
+            validation.violation("Wrong height " + node.height + " at key " + node.key);
+        int bf = balanceFactor(node);
+        if(bf > 1 || bf < -1)
+            validation.violation("Balance factor " + bf + " at key " + node.key);
+        if(node.size != 1 + size(node.left) + size(node.right))
+            validation.violation("Wrong size " + node.size + " at key " + node.key);
+        if(node.epoch > epoch)
+            validation.violation("Epoch " + node.epoch + " of key " + node.key + " is newer than the tree epoch " + epoch);
+        if(monoid != null){
+            Value expected = monoid.combine(monoid.combine(aggregate(node.left), node.value), aggregate(node.right));
+            if(!Objects.equals(node.aggregate, expected))
+                validation.violation("Wrong aggregate " + node.aggregate + " at key " + node.key);
+        }
+    }
+
+
+    /* Collects the results of a validation */
+    private static class Validation{
+        private int checkedNodes;
+        private int violationCount;
+        private final List<String> violations = new ArrayList<>();
+
+        void violation(String message){
+            if(violationCount++ < ValidationReport.MAX_VIOLATIONS)
+                violations.add(message);
+        }
+
+        ValidationReport report(int height){
+            return new ValidationReport(checkedNodes, height, violationCount, violations);
+        }
+    }
+
+
 
 
 
@@ -0,0 +1,569 @@
+package avlTree;
+import java.util.*;
+import java.util.function.BiFunction;
+
+/**
+ * NavigableMap view of an AVLTree. subMap, headMap, tailMap and descendingMap return live views
+ * of the same tree which only keep their bounds: their lookups are single descents of the tree
+ * and their size() takes O(log n) by the ranks of the bounds instead of counting the keys.
+ * Keys are in the order of the tree, by its comparator or their natural order, and the bounds of the
+ * views are checked in the same order. Null keys and null values are not supported.
+ * The entries are read-only snapshots of their mapping, the values are changed by put.
+ */
+public class AVLTreeMap <Key, Value> extends AbstractMap<Key, Value> implements NavigableMap<Key, Value>{
+    private final AVLTree<Key, Value> tree;
+    /* Order of the tree, null for the natural order of the keys */
+    private final Comparator<? super Key> order;
+
+    /* Bounds of the view in ascending order, a null bound is open */
+    private final Key lo;
+    private final boolean loInclusive;
+    private final Key hi;
+    private final boolean hiInclusive;
+    private final boolean descending;
+
+    private EntrySet entrySet;
+    private KeySet<Key, Value> navigableKeySet;
+
+
+    /* Counstructor of a map over a new empty tree */
+    public AVLTreeMap(){
+        this(new AVLTree<>());
+    }
+
+
+    /* Counstructor of a map over a new empty tree ordered by the comparator, null for the natural order */
+    public AVLTreeMap(Comparator<? super Key> comparator){
+        this((comparator == null) ? new AVLTree<>() : new AVLTree<>(comparator));
+    }
+
+
+    /* Counstructor of a map over the given tree, changes of the map change the tree */
+    public AVLTreeMap(AVLTree<Key, Value> tree){
+        this(checkTree(tree), null, false, null, false, false);
+    }
+
+
+    /* Counstructor of a view of the tree between the bounds */
+    private AVLTreeMap(AVLTree<Key, Value> tree, Key lo, boolean loInclusive, Key hi, boolean hiInclusive, boolean descending){
+        this.tree = tree;
+        this.order = tree.comparator();
+        if(lo != null && hi != null && compare(lo, hi) > 0)
+            throw new IllegalArgumentException("fromKey > toKey");
+        this.lo = lo;
+        this.loInclusive = loInclusive;
+        this.hi = hi;
+        this.hiInclusive = hiInclusive;
+        this.descending = descending;
+    }
+
+
+    private static <Key, Value> AVLTree<Key, Value> checkTree(AVLTree<Key, Value> tree){
+        if(tree == null)
+            throw new IllegalArgumentException("Argument tree to AVLTreeMap(AVLTree) is null");
+        return tree;
+    }
+
+
+    /* Returns the tree behind the map */
+    public AVLTree<Key, Value> tree(){
+        return tree;
+    }
+
+
+    /* Compares two keys in the order of the tree */
+    @SuppressWarnings("unchecked")
+    private int compare(Key a, Key b){
+        return (order == null) ? ((Comparable<? super Key>) a).compareTo(b) : order.compare(a, b);
+    }
+
+
+    /* Range checks in ascending order */
+
+    private boolean tooLow(Key key){
+        if(lo == null)
+            return false;
+        int cmp = compare(key, lo);
+        return cmp < 0 || (cmp == 0 && !loInclusive);
+    }
+
+
+    private boolean tooHigh(Key key){
+        if(hi == null)
+            return false;
+        int cmp = compare(key, hi);
+        return cmp > 0 || (cmp == 0 && !hiInclusive);
+    }
+
+
+    private boolean inRange(Key key){
+        return !tooLow(key) && !tooHigh(key);
+    }
+
+
+    /* Checks a bound of a new view, an exclusive bound may be equal to the bound of this view */
+    private boolean inRange(Key key, boolean inclusive){
+        if(inclusive)
+            return inRange(key);
+        return (lo == null || compare(key, lo) >= 0) && (hi == null || compare(key, hi) <= 0);
+    }
+
+
+    /* Navigation in ascending order, every method is a single descent of the tree */
+
+    private Map.Entry<Key, Value> absLowest(){
+        Map.Entry<Key, Value> entry = (lo == null) ? tree.firstEntry() : loInclusive ? tree.ceilingEntry(lo) : tree.higherEntry(lo);
+        return (entry == null || tooHigh(entry.getKey())) ? null : entry;
+    }
+
+
+    private Map.Entry<Key, Value> absHighest(){
+        Map.Entry<Key, Value> entry = (hi == null) ? tree.lastEntry() : hiInclusive ? tree.floorEntry(hi) : tree.lowerEntry(hi);
+        return (entry == null || tooLow(entry.getKey())) ? null : entry;
+    }
+
+
+    private Map.Entry<Key, Value> absCeiling(Key key){
+        if(tooLow(key))
+            return absLowest();
+        Map.Entry<Key, Value> entry = tree.ceilingEntry(key);
+        return (entry == null || tooHigh(entry.getKey())) ? null : entry;
+    }
+
+
+    private Map.Entry<Key, Value> absHigher(Key key){
+        if(tooLow(key))
+            return absLowest();
+        Map.Entry<Key, Value> entry = tree.higherEntry(key);
+        return (entry == null || tooHigh(entry.getKey())) ? null : entry;
+    }
+
+
+    private Map.Entry<Key, Value> absFloor(Key key){
+        if(tooHigh(key))
+            return absHighest();
+        Map.Entry<Key, Value> entry = tree.floorEntry(key);
+        return (entry == null || tooLow(entry.getKey())) ? null : entry;
+    }
+
+
+    private Map.Entry<Key, Value> absLower(Key key){
+        if(tooHigh(key))
+            return absHighest();
+        Map.Entry<Key, Value> entry = tree.lowerEntry(key);
+        return (entry == null || tooLow(entry.getKey())) ? null : entry;
+    }
+
+
+    /* Number of keys of the tree less than key, or less than or equal to key if inclusive */
+    private int countBelow(Key key, boolean inclusive){
+        int rank = tree.rank(key);
+        return (inclusive && tree.contains(key)) ? rank + 1 : rank;
+    }
+
+
+    /* Casts the key of a lookup, keys of another type throw ClassCastException like in TreeMap */
+    @SuppressWarnings("unchecked")
+    private Key castKey(Object key){
+        if(key == null)
+            throw new NullPointerException("Null keys are not supported");
+        return (Key) key;
+    }
+
+
+    private static <Key> Key keyOrNull(Map.Entry<Key, ?> entry){
+        return (entry == null) ? null : entry.getKey();
+    }
+
+
+    private static <Key> Key keyOrThrow(Map.Entry<Key, ?> entry){
+        if(entry == null)
+            throw new NoSuchElementException();
+        return entry.getKey();
+    }
+
+
+    /* Map */
+
+    /* Returns the number of keys in the view in O(log n) */
+    @Override
+    public int size(){
+        if(lo == null && hi == null)
+            return tree.size();
+        int above = (hi == null) ? tree.size() : countBelow(hi, hiInclusive);
+        int below = (lo == null) ? 0 : countBelow(lo, !loInclusive);
+        return Math.max(0, above - below);
+    }
+
+
+    @Override
+    public boolean isEmpty(){
+        return (lo == null && hi == null) ? tree.isEmpty() : absLowest() == null;
+    }
+
+
+    @Override
+    public boolean containsKey(Object key){
+        Key k = castKey(key);
+        return inRange(k) && tree.contains(k);
+    }
+
+
+    @Override
+    public Value get(Object key){
+        Key k = castKey(key);
+        return inRange(k) ? tree.get(k) : null;
+    }
+
+
+    /* Associates the key with the value in one descent and returns the previous value */
+    @Override
+    public Value put(Key key, Value value){
+        if(key == null || value == null)
+            throw new NullPointerException("Null keys and values are not supported");
+        if(!inRange(key))
+            throw new IllegalArgumentException("key out of range");
+        return tree.compute(key, (k, previous) -> value);
+    }
+
+
+    /* Removes the key in one descent and returns its value */
+    @Override
+    public Value remove(Object key){
+        Key k = castKey(key);
+        return inRange(k) ? tree.computeIfPresent(k, (ignored, previous) -> null) : null;
+    }
+
+
+    /* Removes the keys of the view in O(log n) */
+    @Override
+    public void clear(){
+        Map.Entry<Key, Value> lowest = absLowest();
+        if(lowest != null)
+            tree.deleteRange(lowest.getKey(), absHighest().getKey());
+    }
+
+
+    @Override
+    public Value putIfAbsent(Key key, Value value){
+        if(key == null || value == null)
+            throw new NullPointerException("Null keys and values are not supported");
+        if(!inRange(key))
+            throw new IllegalArgumentException("key out of range");
+        return tree.putIfAbsent(key, value);
+    }
+
+
+    /* The entries are read-only, the values are replaced by puts of the collected keys */
+    @Override
+    public void replaceAll(BiFunction<? super Key, ? super Value, ? extends Value> function){
+        List<Map.Entry<Key, Value>> entries = new ArrayList<>(entrySet());
+        for(Map.Entry<Key, Value> entry : entries)
+            put(entry.getKey(), function.apply(entry.getKey(), entry.getValue()));
+    }
+
+
+    @Override
+    public Set<Map.Entry<Key, Value>> entrySet(){
+        if(entrySet == null)
+            entrySet = new EntrySet();
+        return entrySet;
+    }
+
+
+    @Override
+    public Set<Key> keySet(){
+        return navigableKeySet();
+    }
+
+
+    /* SortedMap */
+
+    /* Returns the comparator of the tree, reversed for the descending views, null for the natural order */
+    @Override
+    public Comparator<? super Key> comparator(){
+        if(!descending)
+            return order;
+        return (order == null) ? Collections.reverseOrder() : Collections.reverseOrder(order);
+    }
+
+
+    @Override
+    public Key firstKey(){
+        return keyOrThrow(firstEntry());
+    }
+
+
+    @Override
+    public Key lastKey(){
+        return keyOrThrow(lastEntry());
+    }
+
+
+    @Override
+    public SortedMap<Key, Value> subMap(Key fromKey, Key toKey){
+        return subMap(fromKey, true, toKey, false);
+    }
+
+
+    @Override
+    public SortedMap<Key, Value> headMap(Key toKey){
+        return headMap(toKey, false);
+    }
+
+
+    @Override
+    public SortedMap<Key, Value> tailMap(Key fromKey){
+        return tailMap(fromKey, true);
+    }
+
+
+    /* NavigableMap, the descending views swap the ascending navigation */
+
+    @Override
+    public Map.Entry<Key, Value> firstEntry(){
+        return descending ? absHighest() : absLowest();
+    }
+
+
+    @Override
+    public Map.Entry<Key, Value> lastEntry(){
+        return descending ? absLowest() : absHighest();
+    }
+
+
+    @Override
+    public Map.Entry<Key, Value> lowerEntry(Key key){
+        return descending ? absHigher(castKey(key)) : absLower(castKey(key));
+    }
+
+
+    @Override
+    public Map.Entry<Key, Value> floorEntry(Key key){
+        return descending ? absCeiling(castKey(key)) : absFloor(castKey(key));
+    }
+
+
+    @Override
+    public Map.Entry<Key, Value> ceilingEntry(Key key){
+        return descending ? absFloor(castKey(key)) : absCeiling(castKey(key));
+    }
+
+
+    @Override
+    public Map.Entry<Key, Value> higherEntry(Key key){
+        return descending ? absLower(castKey(key)) : absHigher(castKey(key));
+    }
+
+
+    @Override
+    public Key lowerKey(Key key){
+        return keyOrNull(lowerEntry(key));
+    }
+
+
+    @Override
+    public Key floorKey(Key key){
+        return keyOrNull(floorEntry(key));
+    }
+
+
+    @Override
+    public Key ceilingKey(Key key){
+        return keyOrNull(ceilingEntry(key));
+    }
+
+
+    @Override
+    public Key higherKey(Key key){
+        return keyOrNull(higherEntry(key));
+    }
+
+
+    @Override
+    public Map.Entry<Key, Value> pollFirstEntry(){
+        return poll(firstEntry());
+    }
+
+
+    @Override
+    public Map.Entry<Key, Value> pollLastEntry(){
+        return poll(lastEntry());
+    }
+
+
+    private Map.Entry<Key, Value> poll(Map.Entry<Key, Value> entry){
+        if(entry == null)
+            return null;
+        tree.delete(entry.getKey());
+        return new AbstractMap.SimpleImmutableEntry<>(entry);
+    }
+
+
+    @Override
+    public NavigableMap<Key, Value> descendingMap(){
+        return new AVLTreeMap<>(tree, lo, loInclusive, hi, hiInclusive, !descending);
+    }
+
+
+    @Override
+    public NavigableSet<Key> navigableKeySet(){
+        if(navigableKeySet == null)
+            navigableKeySet = new KeySet<>(this);
+        return navigableKeySet;
+    }
+
+
+    @Override
+    public NavigableSet<Key> descendingKeySet(){
+        return descendingMap().navigableKeySet();
+    }
+
+
+    @Override
+    public NavigableMap<Key, Value> subMap(Key fromKey, boolean fromInclusive, Key toKey, boolean toInclusive){
+        castKey(fromKey);
+        castKey(toKey);
+        if(!inRange(fromKey, fromInclusive))
+            throw new IllegalArgumentException("fromKey out of range");
+        if(!inRange(toKey, toInclusive))
+            throw new IllegalArgumentException("toKey out of range");
+        if(descending)
+            return new AVLTreeMap<>(tree, toKey, toInclusive, fromKey, fromInclusive, true);
+        return new AVLTreeMap<>(tree, fromKey, fromInclusive, toKey, toInclusive, false);
+    }
+
+
+    @Override
+    public NavigableMap<Key, Value> headMap(Key toKey, boolean inclusive){
+        castKey(toKey);
+        if(!inRange(toKey, inclusive))
+            throw new IllegalArgumentException("toKey out of range");
+        if(descending)
+            return new AVLTreeMap<>(tree, toKey, inclusive, hi, hiInclusive, true);
+        return new AVLTreeMap<>(tree, lo, loInclusive, toKey, inclusive, false);
+    }
+
+
+    @Override
+    public NavigableMap<Key, Value> tailMap(Key fromKey, boolean inclusive){
+        castKey(fromKey);
+        if(!inRange(fromKey, inclusive))
+            throw new IllegalArgumentException("fromKey out of range");
+        if(descending)
+            return new AVLTreeMap<>(tree, lo, loInclusive, fromKey, inclusive, true);
+        return new AVLTreeMap<>(tree, fromKey, inclusive, hi, hiInclusive, false);
+    }
+
+
+    /* Lazy iterator over the entries of the view, the exclusive bounds are resolved to keys of the tree when it starts */
+    Iterator<Map.Entry<Key, Value>> entryIterator(){
+        Map.Entry<Key, Value> lowest = absLowest();
+        if(lowest == null)
+            return Collections.emptyIterator();
+        return tree.entryIterator(lowest.getKey(), absHighest().getKey(), descending);
+    }
+
+
+    /* Entries of the view */
+    private class EntrySet extends AbstractSet<Map.Entry<Key, Value>>{
+        @Override
+        public Iterator<Map.Entry<Key, Value>> iterator(){
+            return entryIterator();
+        }
+
+        @Override
+        public int size(){
+            return AVLTreeMap.this.size();
+        }
+
+        @Override
+        public boolean isEmpty(){
+            return AVLTreeMap.this.isEmpty();
+        }
+
+        @Override
+        public boolean contains(Object o){
+            if(!(o instanceof Map.Entry))
+                return false;
+            Map.Entry<?, ?> entry = (Map.Entry<?, ?>) o;
+            Value value = (entry.getKey() == null) ? null : get(entry.getKey());
+            return value != null && value.equals(entry.getValue());
+        }
+
+        @Override
+        public boolean remove(Object o){
+            if(!contains(o))
+                return false;
+            AVLTreeMap.this.remove(((Map.Entry<?, ?>) o).getKey());
+            return true;
+        }
+
+        @Override
+        public void clear(){
+            AVLTreeMap.this.clear();
+        }
+    }
+
+
+    /* Keys of a view, every method delegates to the map */
+    private static class KeySet<Key, Value> extends AbstractSet<Key> implements NavigableSet<Key>{
+        private final AVLTreeMap<Key, Value> map;
+
+        KeySet(AVLTreeMap<Key, Value> map){
+            this.map = map;
+        }
+
+        @Override
+        public Iterator<Key> iterator(){
+            Iterator<Map.Entry<Key, Value>> entries = map.entryIterator();
+            return new Iterator<Key>(){
+                public boolean hasNext(){ return entries.hasNext(); }
+                public Key next(){ return entries.next().getKey(); }
+                public void remove(){ entries.remove(); }
+            };
+        }
+
+        @Override public int size(){ return map.size(); }
+        @Override public boolean isEmpty(){ return map.isEmpty(); }
+        @Override public boolean contains(Object o){ return map.containsKey(o); }
+        @Override public void clear(){ map.clear(); }
+        @Override public boolean remove(Object o){
+            if(!map.containsKey(o))
+                return false;
+            map.remove(o);
+            return true;
+        }
+
+        @Override public Comparator<? super Key> comparator(){ return map.comparator(); }
+        @Override public Key first(){ return map.firstKey(); }
+        @Override public Key last(){ return map.lastKey(); }
+        @Override public Key lower(Key key){ return map.lowerKey(key); }
+        @Override public Key floor(Key key){ return map.floorKey(key); }
+        @Override public Key ceiling(Key key){ return map.ceilingKey(key); }
+        @Override public Key higher(Key key){ return map.higherKey(key); }
+        @Override public Key pollFirst(){ return keyOrNull(map.pollFirstEntry()); }
+        @Override public Key pollLast(){ return keyOrNull(map.pollLastEntry()); }
+        @Override public NavigableSet<Key> descendingSet(){ return map.descendingKeySet(); }
+        @Override public Iterator<Key> descendingIterator(){ return descendingSet().iterator(); }
+
+        @Override
+        public NavigableSet<Key> subSet(Key fromElement, boolean fromInclusive, Key toElement, boolean toInclusive){
+            return map.subMap(fromElement, fromInclusive, toElement, toInclusive).navigableKeySet();
+        }
+
+        @Override
+        public NavigableSet<Key> headSet(Key toElement, boolean inclusive){
+            return map.headMap(toElement, inclusive).navigableKeySet();
+        }
+
+        @Override
+        public NavigableSet<Key> tailSet(Key fromElement, boolean inclusive){
+            return map.tailMap(fromElement, inclusive).navigableKeySet();
+        }
+
+        @Override public SortedSet<Key> subSet(Key fromElement, Key toElement){ return subSet(fromElement, true, toElement, false); }
+        @Override public SortedSet<Key> headSet(Key toElement){ return headSet(toElement, false); }
+        @Override public SortedSet<Key> tailSet(Key fromElement){ return tailSet(fromElement, true); }
+    }
+}
@@ -0,0 +1,67 @@
+package avlTree;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Binary encoding of the keys or the values of a tree file. decode reads exactly the bytes encode
+ * wrote and throws BufferUnderflowException when the buffer ends inside a value, the reader then
+ * refills the buffer and decodes the value again.
+ */
+public interface Codec<T> {
+
+    /* Returns an upper bound of the number of bytes encode writes for the value */
+    int maxSize(T value);
+
+    void encode(T value, ByteBuffer buffer);
+
+    T decode(ByteBuffer buffer);
+
+
+    Codec<Integer> INT = new Codec<Integer>(){
+        public int maxSize(Integer value){ return Integer.BYTES; }
+        public void encode(Integer value, ByteBuffer buffer){ buffer.putInt(value); }
+        public Integer decode(ByteBuffer buffer){ return buffer.getInt(); }
+    };
+
+
+    Codec<Long> LONG = new Codec<Long>(){
+        public int maxSize(Long value){ return Long.BYTES; }
+        public void encode(Long value, ByteBuffer buffer){ buffer.putLong(value); }
+        public Long decode(ByteBuffer buffer){ return buffer.getLong(); }
+    };
+
+
+    /* UTF-8 bytes after their int length */
+    Codec<String> STRING = new Codec<String>(){
+        public int maxSize(String value){ return Integer.BYTES + 3 * value.length(); }
+        public void encode(String value, ByteBuffer buffer){
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            buffer.putInt(bytes.length);
+            buffer.put(bytes);
+        }
+        public String decode(ByteBuffer buffer){
+            return new String(BYTES.decode(buffer), StandardCharsets.UTF_8);
+        }
+    };
+
+
+    /* Bytes after their int length */
+    Codec<byte[]> BYTES = new Codec<byte[]>(){
+        public int maxSize(byte[] value){ return Integer.BYTES + value.length; }
+        public void encode(byte[] value, ByteBuffer buffer){
+            buffer.putInt(value.length);
+            buffer.put(value);
+        }
+        public byte[] decode(ByteBuffer buffer){
+            int length = buffer.getInt();
+            if(length < 0)
+                throw new IllegalArgumentException("Negative length " + length);
+            if(buffer.remaining() < length)
+                throw new BufferUnderflowException();
+            byte[] value = new byte[length];
+            buffer.get(value);
+            return value;
+        }
+    };
+}
@@ -0,0 +1,763 @@
+package avlTree;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Thread safe AVL tree with fine grained locking, after the relaxed balance tree of Bronson, Casper,
+ * Chafi and Olukotun (A Practical Concurrent Binary Search Tree, PPoPP 2010).
+ *
+ * Every node has its own lock and a version. Writers lock only the nodes they change: an insert locks
+ * the parent of the new leaf, a value update locks its node, an unlink locks the parent and the node,
+ * and a rotation locks the parent, the node and the child which moves up. Locks are always taken from
+ * the top of the tree down, so writers in different parts of the tree never wait for each other.
+ * The heights are repaired after the write by walking up and rotating one node at a time, the tree is
+ * a strict AVL tree again once no writer runs.
+ *
+ * Readers take no lock. They walk hand over hand and validate the version of the node they come from
+ * before they trust its child: a rotation marks the node which moves down as shrinking and bumps its
+ * version, a reader which meets a shrinking node waits for the rotation, a reader whose node changed
+ * goes back to the parent and looks again. A key whose node has two children is deleted by clearing
+ * its value, the node stays as a routing node and is unlinked once it has less than two children.
+ *
+ * get and contains are linearizable and logarithmic. floor and ceiling are logarithmic and return a key
+ * which was present at some point of the call, but they are not linearizable: a key inserted or deleted
+ * nearer to the argument while the walk runs may or may not be seen. size is a counter which is exact
+ * while no writer runs. The nodes keep no subtree sizes, so keysInRange, rank and select step through
+ * the keys one ceiling at a time: they cost O(k log n) for the k keys they pass and return every key
+ * which is present during the whole call. rank and select are diagnostics for monitoring, not for hot
+ * paths.
+ *
+ * ConcurrentBenchmark measures the throughput for a growing number of threads. Numbers taken on a
+ * single core show the cost of the locking only, how the writers scale needs a machine with as many
+ * cores as threads.
+ */
+public class ConcurrentAVLTree <Key extends Comparable<Key>, Value>{
+    /* Version of an unlinked node, the versions of linked nodes are multiples of SHRINK_COUNT */
+    private static final long UNLINKED = 1L;
+    /* Set while the node moves down in a rotation */
+    private static final long SHRINKING = 2L;
+    private static final long SHRINK_COUNT = 4L;
+    /* Reads of a shrinking version before a reader blocks on the lock of the node */
+    private static final int SPIN = 100;
+
+    /* Results of nodeCondition apart from the new height */
+    private static final int UNLINK_REQUIRED = -1;
+    private static final int REBALANCE_REQUIRED = -2;
+    private static final int NOTHING_REQUIRED = -3;
+
+    /* Returned by the recursive walks when the caller has to look at its child again */
+    private static final Object RETRY = new Object();
+    /* Returned by the navigation when the subtree has no key in the asked direction */
+    private static final Object NONE = new Object();
+
+    /* The root is the right child of this node, its version never changes */
+    private final Node<Key, Value> holder = new Node<>(null, null, null);
+    private final LongAdder size = new LongAdder();
+
+
+    /* Node of the tree, the lock of a node is its monitor */
+    private static final class Node<Key, Value>{
+        private final Key key;
+        private volatile Value value;
+        private volatile int height;
+        private volatile long version;
+        private volatile Node<Key, Value> parent;
+        private volatile Node<Key, Value> left;
+        private volatile Node<Key, Value> right;
+
+        private Node(Key key, Value value, Node<Key, Value> parent){
+            this.key = key;
+            this.value = value;
+            this.parent = parent;
+            this.height = 1;
+        }
+
+        private Node<Key, Value> child(boolean left){
+            return left ? this.left : this.right;
+        }
+
+        private void setChild(boolean left, Node<Key, Value> child){
+            if(left)
+                this.left = child;
+            else
+                this.right = child;
+        }
+    }
+
+
+    /* Counstructor */
+    public ConcurrentAVLTree(){
+
+    }
+
+
+    /* Check if the tree is empty */
+    public boolean isEmpty(){
+        return navigate(null, true, false) == null;
+    }
+
+
+    /* Retruns the number of keys in tree, exact while no writer runs */
+    public int size(){
+        return size.intValue();
+    }
+
+
+    /* Return the value associated with the given key */
+    public Value get(Key key){
+        if(key == null)
+            throw new IllegalArgumentException("Argument to get is null");
+        @SuppressWarnings("unchecked")
+        Value value = (Value) attemptGet(key, holder, false, 0L);
+        return value;
+    }
+
+
+    /* Checks if the AVL tree contains the given key */
+    public boolean contains(Key key){
+        return get(key) != null;
+    }
+
+
+    /* Returns the largest key in the tree less than or equal to given key */
+    public Key floor(Key key){
+        if(key == null)
+            throw new IllegalArgumentException("Argument to floor is null");
+        return navigate(key, true, true);
+    }
+
+
+    /* Return the smallest key in the tree grater than or equal to the given key */
+    public Key ceiling(Key key){
+        if(key == null)
+            throw new IllegalArgumentException("Argument to ceiling is null");
+        return navigate(key, true, false);
+    }
+
+
+    /* Returns the number of keys on the tree strictly less than key, a diagnostic which costs O(rank log n) */
+    public int rank(Key key){
+        if(key == null)
+            throw new IllegalArgumentException("Argument to rank is null");
+        int rank = 0;
+        for(Key next = navigate(null, true, false); next != null && next.compareTo(key) < 0; next = navigate(next, false, false))
+            rank++;
+        return rank;
+    }
+
+
+    /* Returns the k-th smallest key in the tree, null if k is out of the tree range, a diagnostic which costs O(k log n) */
+    public Key select(int k){
+        if(k < 0)
+            return null;
+        Key next = navigate(null, true, false);
+        for(int i = 0; i < k && next != null; i++)
+            next = navigate(next, false, false);
+        return next;
+    }
+
+
+    /* Return keys in the given range, every key present during the whole call is returned, O((k + 1) log n) for k keys */
+    public List<Key> keysInRange(Key low, Key hi){
+        if(low == null || hi == null)
+            throw new IllegalArgumentException("Argument to keysInRange is null");
+        List<Key> keys = new ArrayList<>();
+        for(Key next = navigate(low, true, false); next != null && next.compareTo(hi) <= 0; next = navigate(next, false, false))
+            keys.add(next);
+        return keys;
+    }
+
+
+    /* Inserts specified key-value pair into the AVL tree, a null value deletes the key */
+    public void put(Key key, Value value){
+        if(key == null)
+            throw new IllegalArgumentException("Argument to put is null");
+        if(value == null){
+            delete(key);
+            return;
+        }
+        attemptPut(key, value, holder, false, 0L);
+    }
+
+
+    /* Removes the specified key and its value from the tree */
+    public void delete(Key key){
+        if(key == null)
+            throw new IllegalArgumentException("Argument to delete is null");
+        attemptRemove(key, holder, false, 0L);
+    }
+
+
+    /* Removes the smallest key and associated value from the tree */
+    public void deleteMin(){
+        for(Key min = navigate(null, true, false); min != null; min = navigate(null, true, false))
+            if(attemptRemove(min, holder, false, 0L) != null)
+                return;
+    }
+
+
+    /* Removes the largest key and associated value from the tree */
+    public void deleteMax(){
+        for(Key max = navigate(null, true, true); max != null; max = navigate(null, true, true))
+            if(attemptRemove(max, holder, false, 0L) != null)
+                return;
+    }
+
+
+    /** Looks for key below the given side of node, whose version was nodeVersion when the caller
+     * came to it. Returns the value, null if the key is missing, or RETRY if node changed meanwhile
+     */
+    private Object attemptGet(Key key, Node<Key, Value> node, boolean left, long nodeVersion){
+        while(true){
+            Node<Key, Value> child = node.child(left);
+            if(node.version != nodeVersion)
+                return RETRY;
+            if(child == null)
+                return null;
+            int cmp = key.compareTo(child.key);
+            if(cmp == 0)
+                return child.value;
+            long childVersion = child.version;
+            if((childVersion & (SHRINKING | UNLINKED)) != 0){
+                waitUntilNotShrinking(child);
+                continue;
+            }
+            if(child != node.child(left))
+                continue;
+            if(node.version != nodeVersion)
+                return RETRY;
+            Object value = attemptGet(key, child, cmp < 0, childVersion);
+            if(value != RETRY)
+                return value;
+        }
+    }
+
+
+    /* Same walk as attemptGet, returns the previous value of the key */
+    private Object attemptPut(Key key, Value value, Node<Key, Value> node, boolean left, long nodeVersion){
+        while(true){
+            Node<Key, Value> child = node.child(left);
+            if(node.version != nodeVersion)
+                return RETRY;
+            if(child == null){
+                synchronized(node){
+                    if(node.version != nodeVersion)
+                        return RETRY;
+                    if(node.child(left) != null)
+                        continue;
+                    node.setChild(left, new Node<>(key, value, node));
+                }
+                size.increment();
+                fixHeightAndRebalance(node);
+                return null;
+            }
+            int cmp = key.compareTo(child.key);
+            if(cmp == 0){
+                Object previous = attemptUpdate(child, value);
+                if(previous == RETRY)
+                    continue;
+                return previous;
+            }
+            long childVersion = child.version;
+            if((childVersion & (SHRINKING | UNLINKED)) != 0){
+                waitUntilNotShrinking(child);
+                continue;
+            }
+            if(child != node.child(left))
+                continue;
+            if(node.version != nodeVersion)
+                return RETRY;
+            Object previous = attemptPut(key, value, child, cmp < 0, childVersion);
+            if(previous != RETRY)
+                return previous;
+        }
+    }
+
+
+    /* Same walk as attemptGet, returns the removed value */
+    private Object attemptRemove(Key key, Node<Key, Value> node, boolean left, long nodeVersion){
+        while(true){
+            Node<Key, Value> child = node.child(left);
+            if(node.version != nodeVersion)
+                return RETRY;
+            if(child == null)
+                return null;
+            int cmp = key.compareTo(child.key);
+            if(cmp == 0){
+                Object previous = attemptRemoveNode(node, child);
+                if(previous == RETRY)
+                    continue;
+                return previous;
+            }
+            long childVersion = child.version;
+            if((childVersion & (SHRINKING | UNLINKED)) != 0){
+                waitUntilNotShrinking(child);
+                continue;
+            }
+            if(child != node.child(left))
+                continue;
+            if(node.version != nodeVersion)
+                return RETRY;
+            Object previous = attemptRemove(key, child, cmp < 0, childVersion);
+            if(previous != RETRY)
+                return previous;
+        }
+    }
+
+
+    /* Replaces the value of a linked node, a routing node becomes a key again */
+    private Object attemptUpdate(Node<Key, Value> node, Value value){
+        Value previous;
+        synchronized(node){
+            if(node.version == UNLINKED)
+                return RETRY;
+            previous = node.value;
+            node.value = value;
+        }
+        if(previous == null)
+            size.increment();
+        return previous;
+    }
+
+
+    /** Removes the key of node: a node with less than two children is unlinked under the locks
+     * of its parent and itself, otherwise it keeps routing the walks and only loses its value
+     */
+    private Object attemptRemoveNode(Node<Key, Value> parent, Node<Key, Value> node){
+        if(node.value == null)
+            return null;
+        Value previous;
+        if(node.left == null || node.right == null){
+            synchronized(parent){
+                if(parent.version == UNLINKED || node.parent != parent)
+                    return RETRY;
+                synchronized(node){
+                    previous = node.value;
+                    if(previous == null)
+                        return null;
+                    if(!attemptUnlink(parent, node))
+                        return RETRY;
+                }
+            }
+            size.decrement();
+            fixHeightAndRebalance(parent);
+            return previous;
+        }
+        synchronized(node){
+            if(node.version == UNLINKED || node.left == null || node.right == null)
+                return RETRY;
+            previous = node.value;
+            node.value = null;
+        }
+        if(previous != null)
+            size.decrement();
+        return previous;
+    }
+
+
+    /* Splices out a node with less than two children, the caller holds the locks of parent and node */
+    private boolean attemptUnlink(Node<Key, Value> parent, Node<Key, Value> node){
+        Node<Key, Value> parentLeft = parent.left;
+        if(parentLeft != node && parent.right != node)
+            return false;
+        Node<Key, Value> left = node.left;
+        Node<Key, Value> right = node.right;
+        if(left != null && right != null)
+            return false;
+        Node<Key, Value> splice = (left != null) ? left : right;
+        parent.setChild(parentLeft == node, splice);
+        if(splice != null)
+            splice.parent = parent;
+        node.version = UNLINKED;
+        node.value = null;
+        return true;
+    }
+
+
+    /* Waits until a rotation which moves node down has finished */
+    private static void waitUntilNotShrinking(Node<?, ?> node){
+        long version = node.version;
+        if((version & SHRINKING) == 0)
+            return;
+        for(int i = 0; i < SPIN; i++){
+            if(node.version != version)
+                return;
+            Thread.onSpinWait();
+        }
+        synchronized(node){
+            /* the rotation holds the lock of the node until it is done */
+        }
+    }
+
+
+    /** Returns the largest key less than (floor) or the smallest key greater than the given key,
+     * the key itself too if inclusive. A null key stands for the end of the order, so it finds the
+     * largest or the smallest key of the tree
+     */
+    private Key navigate(Key key, boolean inclusive, boolean floor){
+        Object found = attemptNavigate(key, inclusive, floor, holder, false, 0L);
+        @SuppressWarnings("unchecked")
+        Key result = (found == NONE) ? null : (Key) found;
+        return result;
+    }
+
+
+    /** Looks for the nearest key below the given side of node, NONE if the subtree has none.
+     * A child on the near side of key is searched on its far side first, then the child itself is
+     * taken if it is not a routing node, then the nearest key of its other side
+     */
+    private Object attemptNavigate(Key key, boolean inclusive, boolean floor, Node<Key, Value> node, boolean left, long nodeVersion){
+        while(true){
+            Node<Key, Value> child = node.child(left);
+            if(node.version != nodeVersion)
+                return RETRY;
+            if(child == null)
+                return NONE;
+            long childVersion = child.version;
+            if((childVersion & (SHRINKING | UNLINKED)) != 0){
+                waitUntilNotShrinking(child);
+                continue;
+            }
+            if(child != node.child(left))
+                continue;
+            if(node.version != nodeVersion)
+                return RETRY;
+            /* Positive if child lies on the near side of key */
+            int cmp = (key == null) ? 1 : floor ? key.compareTo(child.key) : child.key.compareTo(key);
+            Object found;
+            if(cmp < 0 || (cmp == 0 && !inclusive))
+                found = attemptNavigate(key, inclusive, floor, child, floor, childVersion);
+            else{
+                found = (cmp > 0) ? attemptNavigate(key, inclusive, floor, child, !floor, childVersion) : NONE;
+                if(found == NONE){
+                    if(child.value != null){
+                        if(child.version != childVersion)
+                            continue;
+                        return child.key;
+                    }
+                    found = attemptNavigate(null, true, floor, child, floor, childVersion);
+                }
+            }
+            if(found != RETRY)
+                return found;
+        }
+    }
+
+
+    private static int height(Node<?, ?> node){
+        return (node == null) ? 0 : node.height;
+    }
+
+
+    /* Walks up from a changed node and repairs heights, balance and routing nodes one node at a time */
+    private void fixHeightAndRebalance(Node<Key, Value> node){
+        while(node != null && node.parent != null){
+            int condition = nodeCondition(node);
+            if(condition == NOTHING_REQUIRED || node.version == UNLINKED)
+                return;
+            if(condition != UNLINK_REQUIRED && condition != REBALANCE_REQUIRED){
+                synchronized(node){
+                    node = fixHeight(node);
+                }
+            }else{
+                Node<Key, Value> parent = node.parent;
+                synchronized(parent){
+                    if(parent.version != UNLINKED && node.parent == parent){
+                        synchronized(node){
+                            node = rebalance(parent, node);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+
+    /* Returns the repair node needs, or its new height if only the height is wrong */
+    private int nodeCondition(Node<Key, Value> node){
+        Node<Key, Value> left = node.left;
+        Node<Key, Value> right = node.right;
+        if((left == null || right == null) && node.value == null)
+            return UNLINK_REQUIRED;
+        int leftHeight = height(left);
+        int rightHeight = height(right);
+        int balance = leftHeight - rightHeight;
+        if(balance < -1 || balance > 1)
+            return REBALANCE_REQUIRED;
+        int height = 1 + Math.max(leftHeight, rightHeight);
+        return (node.height != height) ? height : NOTHING_REQUIRED;
+    }
+
+
+    /* Fixes the height of a locked node, returns the next node to repair or null */
+    private Node<Key, Value> fixHeight(Node<Key, Value> node){
+        int condition = nodeCondition(node);
+        if(condition == REBALANCE_REQUIRED || condition == UNLINK_REQUIRED)
+            return node;
+        if(condition == NOTHING_REQUIRED)
+            return null;
+        node.height = condition;
+        return node.parent;
+    }
+
+
+    /* Unlinks or rotates a node, the caller holds the locks of parent and node */
+    private Node<Key, Value> rebalance(Node<Key, Value> parent, Node<Key, Value> node){
+        Node<Key, Value> left = node.left;
+        Node<Key, Value> right = node.right;
+        if((left == null || right == null) && node.value == null){
+            if(attemptUnlink(parent, node))
+                return fixHeight(parent);
+            return node;
+        }
+        int leftHeight = height(left);
+        int rightHeight = height(right);
+        int balance = leftHeight - rightHeight;
+        if(balance > 1)
+            return rebalanceToRight(parent, node, left, rightHeight);
+        if(balance < -1)
+            return rebalanceToLeft(parent, node, right, leftHeight);
+        int height = 1 + Math.max(leftHeight, rightHeight);
+        if(height != node.height){
+            node.height = height;
+            return fixHeight(parent);
+        }
+        return null;
+    }
+
+
+    /* Rotates a left heavy node to the right, single or double rotation */
+    private Node<Key, Value> rebalanceToRight(Node<Key, Value> parent, Node<Key, Value> node, Node<Key, Value> left, int rightHeight){
+        synchronized(left){
+            if(left.height - rightHeight <= 1)
+                return node;
+            Node<Key, Value> leftRight = left.right;
+            int leftLeftHeight = height(left.left);
+            int leftRightHeight = height(leftRight);
+            if(leftLeftHeight >= leftRightHeight)
+                return rotateRight(parent, node, left, rightHeight, leftLeftHeight, leftRight, leftRightHeight);
+            synchronized(leftRight){
+                leftRightHeight = leftRight.height;
+                if(leftLeftHeight >= leftRightHeight)
+                    return rotateRight(parent, node, left, rightHeight, leftLeftHeight, leftRight, leftRightHeight);
+                int leftRightLeftHeight = height(leftRight.left);
+                int balance = leftLeftHeight - leftRightLeftHeight;
+                if(balance >= -1 && balance <= 1 && !((leftLeftHeight == 0 || leftRightLeftHeight == 0) && left.value == null))
+                    return rotateRightOverLeft(parent, node, left, rightHeight, leftLeftHeight, leftRight, leftRightLeftHeight);
+            }
+            return rebalanceToLeft(node, left, leftRight, leftLeftHeight);
+        }
+    }
+
+
+    /* Mirror of rebalanceToRight */
+    private Node<Key, Value> rebalanceToLeft(Node<Key, Value> parent, Node<Key, Value> node, Node<Key, Value> right, int leftHeight){
+        synchronized(right){
+            if(right.height - leftHeight <= 1)
+                return node;
+            Node<Key, Value> rightLeft = right.left;
+            int rightRightHeight = height(right.right);
+            int rightLeftHeight = height(rightLeft);
+            if(rightRightHeight >= rightLeftHeight)
+                return rotateLeft(parent, node, right, leftHeight, rightRightHeight, rightLeft, rightLeftHeight);
+            synchronized(rightLeft){
+                rightLeftHeight = rightLeft.height;
+                if(rightRightHeight >= rightLeftHeight)
+                    return rotateLeft(parent, node, right, leftHeight, rightRightHeight, rightLeft, rightLeftHeight);
+                int rightLeftRightHeight = height(rightLeft.right);
+                int balance = rightRightHeight - rightLeftRightHeight;
+                if(balance >= -1 && balance <= 1 && !((rightRightHeight == 0 || rightLeftRightHeight == 0) && right.value == null))
+                    return rotateLeftOverRight(parent, node, right, leftHeight, rightRightHeight, rightLeft, rightLeftRightHeight);
+            }
+            return rebalanceToRight(node, right, rightLeft, rightRightHeight);
+        }
+    }
+
+
+    /* Replaces the child node of parent by child, which is the left or right child of node */
+    private static <Key, Value> void replaceChild(Node<Key, Value> parent, Node<Key, Value> node, Node<Key, Value> child){
+        if(parent.left == node)
+            parent.left = child;
+        else
+            parent.right = child;
+        child.parent = parent;
+    }
+
+
+    /** Single right rotation, node moves down and is marked shrinking meanwhile.
+     * Returns the next node to repair: node or left if the rotation left them unbalanced
+     */
+    private Node<Key, Value> rotateRight(Node<Key, Value> parent, Node<Key, Value> node, Node<Key, Value> left,
+                                         int rightHeight, int leftLeftHeight, Node<Key, Value> leftRight, int leftRightHeight){
+        long version = node.version;
+        node.version = version | SHRINKING;
+        node.left = leftRight;
+        if(leftRight != null)
+            leftRight.parent = node;
+        left.right = node;
+        node.parent = left;
+        replaceChild(parent, node, left);
+        int nodeHeight = 1 + Math.max(leftRightHeight, rightHeight);
+        node.height = nodeHeight;
+        left.height = 1 + Math.max(leftLeftHeight, nodeHeight);
+        node.version = version + SHRINK_COUNT;
+
+        int nodeBalance = leftRightHeight - rightHeight;
+        if(nodeBalance < -1 || nodeBalance > 1)
+            return node;
+        if((leftRight == null || rightHeight == 0) && node.value == null)
+            return node;
+        int leftBalance = leftLeftHeight - nodeHeight;
+        if(leftBalance < -1 || leftBalance > 1)
+            return left;
+        if(leftLeftHeight == 0 && left.value == null)
+            return left;
+        return fixHeight(parent);
+    }
+
+
+    /* Mirror of rotateRight */
+    private Node<Key, Value> rotateLeft(Node<Key, Value> parent, Node<Key, Value> node, Node<Key, Value> right,
+                                        int leftHeight, int rightRightHeight, Node<Key, Value> rightLeft, int rightLeftHeight){
+        long version = node.version;
+        node.version = version | SHRINKING;
+        node.right = rightLeft;
+        if(rightLeft != null)
+            rightLeft.parent = node;
+        right.left = node;
+        node.parent = right;
+        replaceChild(parent, node, right);
+        int nodeHeight = 1 + Math.max(leftHeight, rightLeftHeight);
+        node.height = nodeHeight;
+        right.height = 1 + Math.max(rightRightHeight, nodeHeight);
+        node.version = version + SHRINK_COUNT;
+
+        int nodeBalance = rightLeftHeight - leftHeight;
+        if(nodeBalance < -1 || nodeBalance > 1)
+            return node;
+        if((rightLeft == null || leftHeight == 0) && node.value == null)
+            return node;
+        int rightBalance = rightRightHeight - nodeHeight;
+        if(rightBalance < -1 || rightBalance > 1)
+            return right;
+        if(rightRightHeight == 0 && right.value == null)
+            return right;
+        return fixHeight(parent);
+    }
+
+
+    /* Double rotation: leftRight becomes the root of the subtree, node and left both move down */
+    private Node<Key, Value> rotateRightOverLeft(Node<Key, Value> parent, Node<Key, Value> node, Node<Key, Value> left,
+                                                 int rightHeight, int leftLeftHeight, Node<Key, Value> leftRight, int leftRightLeftHeight){
+        long version = node.version;
+        long leftVersion = left.version;
+        Node<Key, Value> leftRightLeft = leftRight.left;
+        Node<Key, Value> leftRightRight = leftRight.right;
+        int leftRightRightHeight = height(leftRightRight);
+
+        node.version = version | SHRINKING;
+        left.version = leftVersion | SHRINKING;
+        node.left = leftRightRight;
+        if(leftRightRight != null)
+            leftRightRight.parent = node;
+        left.right = leftRightLeft;
+        if(leftRightLeft != null)
+            leftRightLeft.parent = left;
+        leftRight.left = left;
+        left.parent = leftRight;
+        leftRight.right = node;
+        node.parent = leftRight;
+        replaceChild(parent, node, leftRight);
+        int nodeHeight = 1 + Math.max(leftRightRightHeight, rightHeight);
+        node.height = nodeHeight;
+        int leftHeight = 1 + Math.max(leftLeftHeight, leftRightLeftHeight);
+        left.height = leftHeight;
+        leftRight.height = 1 + Math.max(leftHeight, nodeHeight);
+        node.version = version + SHRINK_COUNT;
+        left.version = leftVersion + SHRINK_COUNT;
+
+        int nodeBalance = leftRightRightHeight - rightHeight;
+        if(nodeBalance < -1 || nodeBalance > 1)
+            return node;
+        if((leftRightRight == null || rightHeight == 0) && node.value == null)
+            return node;
+        int balance = leftHeight - nodeHeight;
+        if(balance < -1 || balance > 1)
+            return leftRight;
+        return fixHeight(parent);
+    }
+
+
+    /* Mirror of rotateRightOverLeft */
+    private Node<Key, Value> rotateLeftOverRight(Node<Key, Value> parent, Node<Key, Value> node, Node<Key, Value> right,
+                                                 int leftHeight, int rightRightHeight, Node<Key, Value> rightLeft, int rightLeftRightHeight){
+        long version = node.version;
+        long rightVersion = right.version;
+        Node<Key, Value> rightLeftLeft = rightLeft.left;
+        Node<Key, Value> rightLeftRight = rightLeft.right;
+        int rightLeftLeftHeight = height(rightLeftLeft);
+
+        node.version = version | SHRINKING;
+        right.version = rightVersion | SHRINKING;
+        node.right = rightLeftLeft;
+        if(rightLeftLeft != null)
+            rightLeftLeft.parent = node;
+        right.left = rightLeftRight;
+        if(rightLeftRight != null)
+            rightLeftRight.parent = right;
+        rightLeft.right = right;
+        right.parent = rightLeft;
+        rightLeft.left = node;
+        node.parent = rightLeft;
+        replaceChild(parent, node, rightLeft);
+        int nodeHeight = 1 + Math.max(leftHeight, rightLeftLeftHeight);
+        node.height = nodeHeight;
+        int rightHeight = 1 + Math.max(rightRightHeight, rightLeftRightHeight);
+        right.height = rightHeight;
+        rightLeft.height = 1 + Math.max(rightHeight, nodeHeight);
+        node.version = version + SHRINK_COUNT;
+        right.version = rightVersion + SHRINK_COUNT;
+
+        int nodeBalance = rightLeftLeftHeight - leftHeight;
+        if(nodeBalance < -1 || nodeBalance > 1)
+            return node;
+        if((rightLeftLeft == null || leftHeight == 0) && node.value == null)
+            return node;
+        int balance = rightHeight - nodeHeight;
+        if(balance < -1 || balance > 1)
+            return rightLeft;
+        return fixHeight(parent);
+    }
+
+
+    /** Checks the search order, the parent links, the heights and the balance of a quiescent tree
+     * and that it holds size keys. Only meaningful while no writer runs
+     */
+    boolean isValid(){
+        return valid(holder.right, holder, null, null) >= 0 && count(holder.right) == size();
+    }
+
+
+    /* Returns the height of a valid subtree, -1 if it is not */
+    private int valid(Node<Key, Value> node, Node<Key, Value> parent, Key low, Key high){
+        if(node == null)
+            return 0;
+        if(node.parent != parent || node.version == UNLINKED || (node.version & SHRINKING) != 0)
+            return -1;
+        if((low != null && node.key.compareTo(low) <= 0) || (high != null && node.key.compareTo(high) >= 0))
+            return -1;
+        if(node.value == null && (node.left == null || node.right == null))
+            return -1;
+        int left = valid(node.left, node, low, node.key);
+        int right = valid(node.right, node, node.key, high);
+        if(left < 0 || right < 0 || Math.abs(left - right) > 1 || node.height != 1 + Math.max(left, right))
+            return -1;
+        return node.height;
+    }
+
+
+    private int count(Node<Key, Value> node){
+        return (node == null) ? 0 : count(node.left) + count(node.right) + (node.value == null ? 0 : 1);
+    }
+}
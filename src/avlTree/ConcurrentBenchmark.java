@@ -0,0 +1,195 @@
+package avlTree;
+
+import java.util.Random;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Throughput and stress harness of the concurrent trees.
+ * Every thread runs a read mostly mix of get, floor and put on random keys,
+ * the throughput is printed for 1 to N threads for ConcurrentAVLTree, ShardedAVLTree,
+ * AVLTree behind a global lock and ConcurrentSkipListMap. A low read percent shows how
+ * the per node locks of ConcurrentAVLTree and the per shard locks of ShardedAVLTree scale
+ * against the global lock. Runs with more threads than cores time slice the threads and show
+ * no scaling, compare the numbers only up to the number of cores.
+ * The single threaded operations of all trees are measured by the JMH benchmarks of the jmh module,
+ * this harness stays for the stress check and the thread counts.
+ * Arguments: [max threads] [tree size] [read percent] [seconds per run]
+ */
+public class ConcurrentBenchmark {
+
+    /* Operations of the measured structures */
+    private interface Target{
+        Integer get(Integer key);
+        Integer floor(Integer key);
+        void put(Integer key, Integer value);
+    }
+
+
+    public static void main(String[] args){
+        int maxThreads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        int size = args.length > 1 ? Integer.parseInt(args[1]) : 1_000_000;
+        int readPercent = args.length > 2 ? Integer.parseInt(args[2]) : 95;
+        int seconds = args.length > 3 ? Integer.parseInt(args[3]) : 2;
+
+        stress(Math.max(2, maxThreads), 100_000);
+
+        System.out.format("%-24s %8s %16s%n", "structure", "threads", "ops/s");
+        for(int threads = 1; threads <= maxThreads; threads++){
+            ConcurrentAVLTree<Integer, Integer> concurrent = new ConcurrentAVLTree<>();
+            run("ConcurrentAVLTree", threads, size, readPercent, seconds, new Target(){
+                public Integer get(Integer key){ return concurrent.get(key); }
+                public Integer floor(Integer key){ return concurrent.floor(key); }
+                public void put(Integer key, Integer value){ concurrent.put(key, value); }
+            });
+
+            ShardedAVLTree<Integer, Integer> sharded = new ShardedAVLTree<>();
+            run("ShardedAVLTree", threads, size, readPercent, seconds, new Target(){
+                public Integer get(Integer key){ return sharded.get(key); }
+                public Integer floor(Integer key){ return sharded.floor(key); }
+                public void put(Integer key, Integer value){ sharded.put(key, value); }
+            });
+
+            AVLTree<Integer, Integer> locked = new AVLTree<>();
+            run("synchronized AVLTree", threads, size, readPercent, seconds, new Target(){
+                public synchronized Integer get(Integer key){ return locked.get(key); }
+                public synchronized Integer floor(Integer key){ return locked.isEmpty() ? null : locked.floor(key); }
+                public synchronized void put(Integer key, Integer value){ locked.put(key, value); }
+            });
+
+            ConcurrentSkipListMap<Integer, Integer> skipList = new ConcurrentSkipListMap<>();
+            run("ConcurrentSkipListMap", threads, size, readPercent, seconds, new Target(){
+                public Integer get(Integer key){ return skipList.get(key); }
+                public Integer floor(Integer key){ return skipList.floorKey(key); }
+                public void put(Integer key, Integer value){ skipList.put(key, value); }
+            });
+        }
+    }
+
+
+    /* Fills the target and prints the number of operations all threads complete per second */
+    private static void run(String name, int threads, int size, int readPercent, int seconds, Target target){
+        Integer[] keys = shuffledKeys(size, 7);
+        for(Integer key : keys)
+            target.put(key, key);
+
+        LongAdder operations = new LongAdder();
+        AtomicBoolean stop = new AtomicBoolean();
+        CountDownLatch start = new CountDownLatch(1);
+        Thread[] workers = new Thread[threads];
+        for(int t = 0; t < threads; t++){
+            workers[t] = new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                long count = 0;
+                awaitQuietly(start);
+                while(!stop.get()){
+                    Integer key = keys[random.nextInt(size)];
+                    int dice = random.nextInt(100);
+                    if(dice >= readPercent)
+                        target.put(key, key);
+                    else if((dice & 1) == 0)
+                        target.get(key);
+                    else
+                        target.floor(key + 1);
+                    count++;
+                }
+                operations.add(count);
+            });
+            workers[t].start();
+        }
+
+        long begin = System.nanoTime();
+        start.countDown();
+        sleepQuietly(seconds * 1000L);
+        stop.set(true);
+        for(Thread worker : workers)
+            joinQuietly(worker);
+        double elapsed = (System.nanoTime() - begin) / 1e9;
+        System.out.format("%-24s %8d %16.0f%n", name, threads, operations.sum() / elapsed);
+    }
+
+
+    /** Writers keep inserting and deleting their own keys while readers check that
+     * the keys which are never modified are always found with their value
+     */
+    private static void stress(int threads, int size){
+        ConcurrentAVLTree<Integer, Integer> tree = new ConcurrentAVLTree<>();
+        for(int i = 0; i < size; i++)
+            tree.put(2 * i, i);
+
+        AtomicBoolean stop = new AtomicBoolean();
+        LongAdder failures = new LongAdder();
+        Thread[] workers = new Thread[threads];
+        for(int t = 0; t < threads; t++){
+            boolean writer = t % 2 == 0;
+            long seed = t;
+            workers[t] = new Thread(() -> {
+                Random random = new Random(seed);
+                while(!stop.get()){
+                    int i = random.nextInt(size);
+                    if(writer){
+                        tree.put(2 * i + 1, i);
+                        tree.delete(2 * random.nextInt(size) + 1);
+                    }else{
+                        Integer value = tree.get(2 * i);
+                        Integer floor = tree.floor(2 * i + 1);
+                        if(value == null || value != i || floor == null || floor < 2 * i)
+                            failures.increment();
+                    }
+                }
+            });
+            workers[t].start();
+        }
+        sleepQuietly(2000);
+        stop.set(true);
+        for(Thread worker : workers)
+            joinQuietly(worker);
+        System.out.println("stress: " + threads + " threads, " + failures.sum() + " failed reads");
+    }
+
+
+    /* Returns the keys 2*i for i < size in a random order */
+    private static Integer[] shuffledKeys(int size, long seed){
+        Random random = new Random(seed);
+        Integer[] keys = new Integer[size];
+        for(int i = 0; i < size; i++)
+            keys[i] = 2 * i;
+        for(int i = size - 1; i > 0; i--){
+            int j = random.nextInt(i + 1);
+            Integer key = keys[i];
+            keys[i] = keys[j];
+            keys[j] = key;
+        }
+        return keys;
+    }
+
+
+    private static void awaitQuietly(CountDownLatch latch){
+        try{
+            latch.await();
+        }catch(InterruptedException e){
+            Thread.currentThread().interrupt();
+        }
+    }
+
+
+    private static void sleepQuietly(long millis){
+        try{
+            Thread.sleep(millis);
+        }catch(InterruptedException e){
+            Thread.currentThread().interrupt();
+        }
+    }
+
+
+    private static void joinQuietly(Thread thread){
+        try{
+            thread.join();
+        }catch(InterruptedException e){
+            Thread.currentThread().interrupt();
+        }
+    }
+}
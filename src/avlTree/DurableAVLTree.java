@@ -0,0 +1,680 @@
+package avlTree;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.StampedLock;
+import java.util.zip.CRC32;
+
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Thread safe AVL tree which survives a crash of the process. Every put, delete, deleteMin and
+ * deleteMax is appended to a write-ahead log before it changes the tree, the SyncPolicy decides
+ * when the log is forced to the disk. A background checkpoint writes a snapshot of the tree by
+ * writeTo() and starts a new log, the logs before the checkpoint are deleted. Opening the tree
+ * loads the latest checkpoint and replays the logs after it, a torn record at the end of the last
+ * log is cut off.
+ *
+ * Files of the directory:
+ *   checkpoint.N - the tree with the writes of all logs before generation N
+ *   log.N        - records of the writes after checkpoint.N, every record is its int length,
+ *                  the CRC32 of its payload and the payload: the operation, the key and the value
+ *
+ * Readers validate an optimistic read of a StampedLock and writers are serialized by its write lock,
+ * the writes to the log file and the forces of it happen outside of the lock.
+ *
+ * The files do not record the order of the keys, a directory has to be opened with the comparator
+ * it was written with. A checkpoint which is not ascending in that order fails the recovery.
+ */
+public class DurableAVLTree <Key, Value> implements AutoCloseable{
+    private static final byte PUT = 1;
+    private static final byte DELETE = 2;
+    private static final byte DELETE_MIN = 3;
+    private static final byte DELETE_MAX = 4;
+
+    private static final int RECORD_HEADER = Integer.BYTES + Integer.BYTES;
+    private static final int BUFFER_SIZE = 1 << 16;
+    /* Bytes of records after which a writer writes the log itself instead of waiting for the background */
+    private static final int MAX_PENDING = 1 << 22;
+    private static final long CHECKPOINT_CHECK_MILLIS = 1000;
+    private static final long DEFAULT_SYNC_MILLIS = 10;
+    private static final long DEFAULT_CHECKPOINT_BYTES = 64L << 20;
+
+    private static final String CHECKPOINT = "checkpoint.";
+    private static final String LOG = "log.";
+    private static final String TEMPORARY = "checkpoint.tmp";
+
+    private final Path directory;
+    private final Codec<Key> keyCodec;
+    private final Codec<Value> valueCodec;
+    private final Comparator<? super Key> comparator;
+    private final SyncPolicy policy;
+    private final long checkpointBytes;
+    private final StampedLock lock = new StampedLock();
+    private final Object checkpointLock = new Object();
+    private final ScheduledExecutorService background;
+    private final AVLTree<Key, Value> tree;
+    private Log log;
+    private volatile boolean closed;
+    private volatile IOException failure;
+
+
+    /* Opens or creates the tree in the directory with batched forces every 10 ms and checkpoints after 64 MB of log */
+    public DurableAVLTree(Path directory, Codec<Key> keyCodec, Codec<Value> valueCodec) throws IOException{
+        this(directory, keyCodec, valueCodec, SyncPolicy.BATCH, DEFAULT_SYNC_MILLIS, DEFAULT_CHECKPOINT_BYTES);
+    }
+
+
+    /** Opens or creates the tree in the directory and recovers its content.
+     * syncMillis is the interval of the background writes of the log for the BATCH and the NONE policy,
+     * a checkpoint is taken when the current log grows beyond checkpointBytes
+     */
+    public DurableAVLTree(Path directory, Codec<Key> keyCodec, Codec<Value> valueCodec,
+                          SyncPolicy policy, long syncMillis, long checkpointBytes) throws IOException{
+        this(directory, keyCodec, valueCodec, null, policy, syncMillis, checkpointBytes);
+    }
+
+
+    /* Opens or creates the tree in the directory ordered by the comparator, or by the natural ordering if it is null */
+    public DurableAVLTree(Path directory, Codec<Key> keyCodec, Codec<Value> valueCodec, Comparator<? super Key> comparator,
+                          SyncPolicy policy, long syncMillis, long checkpointBytes) throws IOException{
+        if(directory == null || keyCodec == null || valueCodec == null || policy == null)
+            throw new IllegalArgumentException("Argument to DurableAVLTree() is null");
+        if(syncMillis <= 0 || checkpointBytes <= 0)
+            throw new IllegalArgumentException("Sync interval and checkpoint size of DurableAVLTree() have to be positive");
+        this.directory = directory;
+        this.keyCodec = keyCodec;
+        this.valueCodec = valueCodec;
+        this.comparator = comparator;
+        this.policy = policy;
+        this.checkpointBytes = checkpointBytes;
+        tree = recover();
+
+        background = Executors.newScheduledThreadPool(2, task -> {
+            Thread thread = new Thread(task, "DurableAVLTree " + directory);
+            thread.setDaemon(true);
+            return thread;
+        });
+        if(policy != SyncPolicy.COMMIT)
+            background.scheduleWithFixedDelay(this::syncInBackground, syncMillis, syncMillis, TimeUnit.MILLISECONDS);
+        background.scheduleWithFixedDelay(this::checkpointInBackground,
+                CHECKPOINT_CHECK_MILLIS, CHECKPOINT_CHECK_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+
+    /* Loads the latest checkpoint, replays the logs after it and opens the last log for appending */
+    private AVLTree<Key, Value> recover() throws IOException{
+        Files.createDirectories(directory);
+        Files.deleteIfExists(directory.resolve(TEMPORARY));
+        List<Long> checkpoints = generations(CHECKPOINT);
+        long generation = checkpoints.isEmpty() ? 0 : checkpoints.get(checkpoints.size() - 1);
+        AVLTree<Key, Value> tree;
+        if(checkpoints.isEmpty())
+            tree = new AVLTree<>(comparator, null, null);
+        else
+            try(FileChannel channel = FileChannel.open(path(CHECKPOINT, generation), READ)){
+                tree = AVLTree.readMapped(channel, keyCodec, valueCodec, comparator);
+            }
+
+        List<Long> logs = new ArrayList<>();
+        for(long old : generations(LOG)){
+            if(old < generation)
+                Files.delete(path(LOG, old));
+            else
+                logs.add(old);
+        }
+        long end = 0;
+        for(int i = 0; i < logs.size(); i++){
+            generation = logs.get(i);
+            end = replay(tree, path(LOG, generation), i == logs.size() - 1);
+        }
+        log = new Log(generation, end);
+        return tree;
+    }
+
+
+    /* Applies the records of the log to the tree and returns the end of the last complete record */
+    private long replay(AVLTree<Key, Value> tree, Path path, boolean last) throws IOException{
+        try(FileChannel channel = FileChannel.open(path, READ, WRITE)){
+            LogReader reader = new LogReader(channel);
+            CRC32 crc = new CRC32();
+            long size = channel.size();
+            while(reader.require(RECORD_HEADER)){
+                ByteBuffer buffer = reader.buffer;
+                int start = buffer.position();
+                int length = buffer.getInt(start);
+                int checksum = buffer.getInt(start + Integer.BYTES);
+                if(length <= 0 || length > size - reader.position - RECORD_HEADER || !reader.require(RECORD_HEADER + length))
+                    break;
+                buffer = reader.buffer;
+                start = buffer.position();
+                ByteBuffer payload = buffer.duplicate();
+                payload.limit(start + RECORD_HEADER + length).position(start + RECORD_HEADER);
+                crc.reset();
+                crc.update(payload.duplicate());
+                if((int) crc.getValue() != checksum)
+                    break;
+                apply(tree, payload, path);
+                buffer.position(start + RECORD_HEADER + length);
+                reader.position += RECORD_HEADER + length;
+            }
+            if(reader.position < size){
+                if(!last)
+                    throw new IOException("Corrupt write-ahead log " + path + " at byte " + reader.position);
+                channel.truncate(reader.position);
+                channel.force(false);
+            }
+            return reader.position;
+        }
+    }
+
+
+    private void apply(AVLTree<Key, Value> tree, ByteBuffer payload, Path path) throws IOException{
+        try{
+            byte operation = payload.get();
+            switch(operation){
+                case PUT:
+                    Key key = keyCodec.decode(payload);
+                    tree.put(key, valueCodec.decode(payload));
+                    break;
+                case DELETE:
+                    tree.delete(keyCodec.decode(payload));
+                    break;
+                case DELETE_MIN:
+                    if(!tree.isEmpty())
+                        tree.deleteMin();
+                    break;
+                case DELETE_MAX:
+                    if(!tree.isEmpty())
+                        tree.deleteMax();
+                    break;
+                default:
+                    throw new IOException("Unknown operation " + operation + " in the write-ahead log " + path);
+            }
+        }catch(RuntimeException e){
+            throw new IOException("Record of the write-ahead log " + path + " does not match the codecs", e);
+        }
+    }
+
+
+    /* Reads the records of a log through a buffer which grows for records larger than it */
+    private static class LogReader{
+        private final FileChannel channel;
+        private ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        /* Position in the file of the buffer position */
+        private long position;
+
+        LogReader(FileChannel channel){
+            this.channel = channel;
+            buffer.flip();
+        }
+
+        /* Makes the bytes available from the buffer position on, false at the end of the file */
+        boolean require(int bytes) throws IOException{
+            if(buffer.remaining() >= bytes)
+                return true;
+            if(buffer.capacity() < bytes){
+                ByteBuffer larger = ByteBuffer.allocate(Math.max(bytes, 2 * buffer.capacity()));
+                larger.put(buffer);
+                buffer = larger;
+            }
+            else
+                buffer.compact();
+            while(buffer.position() < bytes)
+                if(channel.read(buffer) < 0)
+                    break;
+            buffer.flip();
+            return buffer.remaining() >= bytes;
+        }
+    }
+
+
+    /* Check if the tree is empty */
+    public boolean isEmpty(){
+        return size() == 0;
+    }
+
+
+    /* Retruns the number of nodes in tree */
+    public int size(){
+        long stamp = lock.readLock();
+        try{
+            return tree.size();
+        }finally{
+            lock.unlockRead(stamp);
+        }
+    }
+
+
+    /* Return the value associated with the given key */
+    public Value get(Key key){
+        if(key == null)
+            throw new IllegalArgumentException("Argument to get is null");
+        long stamp = lock.tryOptimisticRead();
+        if(stamp != 0){
+            Value value = tree.getOptimistic(key);
+            if(lock.validate(stamp))
+                return value;
+        }
+        stamp = lock.readLock();
+        try{
+            return tree.getOptimistic(key);
+        }finally{
+            lock.unlockRead(stamp);
+        }
+    }
+
+
+    /* Check if the tree contains the given key */
+    public boolean contains(Key key){
+        return get(key) != null;
+    }
+
+
+    /* Return the largest key less than or equal to the given key */
+    public Key floor(Key key){
+        long stamp = lock.readLock();
+        try{
+            return tree.floor(key);
+        }finally{
+            lock.unlockRead(stamp);
+        }
+    }
+
+
+    /* Return the smallest key greater than or equal to the given key */
+    public Key ceiling(Key key){
+        long stamp = lock.readLock();
+        try{
+            return tree.ceiling(key);
+        }finally{
+            lock.unlockRead(stamp);
+        }
+    }
+
+
+    /* Return the number of keys in the tree strictly less than the given key */
+    public int rank(Key key){
+        long stamp = lock.readLock();
+        try{
+            return tree.rank(key);
+        }finally{
+            lock.unlockRead(stamp);
+        }
+    }
+
+
+    /* Return the key of the given rank */
+    public Key select(int k){
+        long stamp = lock.readLock();
+        try{
+            return tree.select(k);
+        }finally{
+            lock.unlockRead(stamp);
+        }
+    }
+
+
+    /* Returns a read-only snapshot of the tree for the other queries and the iteration */
+    public AVLTree<Key, Value> snapshot(){
+        long stamp = lock.writeLock();
+        try{
+            return tree.snapshot();
+        }finally{
+            lock.unlockWrite(stamp);
+        }
+    }
+
+
+    /* Inserts specified key-value pair into the tree, a null value deletes the key */
+    public void put(Key key, Value value) throws IOException{
+        if(key == null)
+            throw new IllegalArgumentException("Argument key to put(Key, Value) is null");
+        Log log;
+        long position;
+        long stamp = lock.writeLock();
+        try{
+            checkOpen();
+            log = this.log;
+            position = (value == null) ? log.append(DELETE, key, null) : log.append(PUT, key, value);
+            tree.put(key, value);
+        }finally{
+            lock.unlockWrite(stamp);
+        }
+        commit(log, position);
+    }
+
+
+    /* Removes the specified key and its value from the tree */
+    public void delete(Key key) throws IOException{
+        if(key == null)
+            throw new IllegalArgumentException("Argument key to delete(Key) is null");
+        Log log;
+        long position;
+        long stamp = lock.writeLock();
+        try{
+            checkOpen();
+            log = this.log;
+            position = log.append(DELETE, key, null);
+            tree.delete(key);
+        }finally{
+            lock.unlockWrite(stamp);
+        }
+        commit(log, position);
+    }
+
+
+    /* Removes the smallest key and associated value from the tree */
+    public void deleteMin() throws IOException{
+        deleteEnd(DELETE_MIN);
+    }
+
+
+    /* Removes the largest key and associated value from the tree */
+    public void deleteMax() throws IOException{
+        deleteEnd(DELETE_MAX);
+    }
+
+
+    private void deleteEnd(byte operation) throws IOException{
+        Log log;
+        long position;
+        long stamp = lock.writeLock();
+        try{
+            checkOpen();
+            if(tree.isEmpty())
+                return;
+            log = this.log;
+            position = log.append(operation, null, null);
+            if(operation == DELETE_MIN)
+                tree.deleteMin();
+            else
+                tree.deleteMax();
+        }finally{
+            lock.unlockWrite(stamp);
+        }
+        commit(log, position);
+    }
+
+
+    /* Waits for the record under the COMMIT policy, otherwise writes the log only if the background falls behind */
+    private void commit(Log log, long position) throws IOException{
+        if(policy == SyncPolicy.COMMIT)
+            log.sync(position, true);
+        else if(log.pending() > MAX_PENDING)
+            log.sync(position, false);
+    }
+
+
+    /* Forces all writes so far to the disk regardless of the policy */
+    public void sync() throws IOException{
+        Log log;
+        long stamp = lock.readLock();
+        try{
+            checkOpen();
+            log = this.log;
+        }finally{
+            lock.unlockRead(stamp);
+        }
+        log.sync(log.position(), true);
+    }
+
+
+    /** Writes a checkpoint of the tree and deletes the logs it contains.
+     * The tree is locked only to switch to a new log and to take a snapshot, the snapshot is
+     * written while the writers go on
+     */
+    public void checkpoint() throws IOException{
+        synchronized(checkpointLock){
+            AVLTree<Key, Value> snapshot;
+            long generation;
+            long stamp = lock.writeLock();
+            try{
+                checkOpen();
+                /* The old log is forced before the first record of the new one, recovery relies on the logs being a prefix of the writes */
+                try{
+                    log.close();
+                    generation = log.generation + 1;
+                    log = new Log(generation, 0);
+                    syncDirectory();
+                }catch(IOException e){
+                    failure = e;
+                    throw e;
+                }
+                snapshot = tree.snapshot();
+            }finally{
+                lock.unlockWrite(stamp);
+            }
+
+            Path temporary = directory.resolve(TEMPORARY);
+            try(FileChannel channel = FileChannel.open(temporary, CREATE, WRITE, TRUNCATE_EXISTING)){
+                snapshot.writeTo(channel, keyCodec, valueCodec);
+                channel.force(true);
+            }
+            Files.move(temporary, path(CHECKPOINT, generation), StandardCopyOption.ATOMIC_MOVE);
+            syncDirectory();
+            for(long old : generations(CHECKPOINT))
+                if(old < generation)
+                    Files.deleteIfExists(path(CHECKPOINT, old));
+            for(long old : generations(LOG))
+                if(old < generation)
+                    Files.deleteIfExists(path(LOG, old));
+        }
+    }
+
+
+    /* Stops the background work and forces the log, the tree is recovered from the files on the next open */
+    @Override
+    public void close() throws IOException{
+        background.shutdown();
+        synchronized(checkpointLock){
+            long stamp = lock.writeLock();
+            try{
+                if(closed)
+                    return;
+                closed = true;
+                log.close();
+            }finally{
+                lock.unlockWrite(stamp);
+            }
+        }
+    }
+
+
+    private void checkOpen() throws IOException{
+        if(closed)
+            throw new IllegalStateException("DurableAVLTree is closed");
+        if(failure != null)
+            throw new IOException("Write-ahead log of " + directory + " failed", failure);
+    }
+
+
+    private void syncInBackground(){
+        Log log;
+        long stamp = lock.readLock();
+        try{
+            if(closed)
+                return;
+            log = this.log;
+        }finally{
+            lock.unlockRead(stamp);
+        }
+        try{
+            log.sync(log.position(), policy == SyncPolicy.BATCH);
+        }catch(IOException e){
+            if(!closed)
+                failure = e;
+        }
+    }
+
+
+    private void checkpointInBackground(){
+        Log log;
+        long stamp = lock.readLock();
+        try{
+            if(closed || failure != null)
+                return;
+            log = this.log;
+        }finally{
+            lock.unlockRead(stamp);
+        }
+        if(log.position() < checkpointBytes)
+            return;
+        try{
+            checkpoint();
+        }catch(IOException e){
+            failure = e;
+        }catch(IllegalStateException e){
+            /* Closed in the meantime */
+        }
+    }
+
+
+    private Path path(String prefix, long generation){
+        return directory.resolve(prefix + generation);
+    }
+
+
+    /* Returns the generations of the files with the prefix in ascending order */
+    private List<Long> generations(String prefix) throws IOException{
+        List<Long> generations = new ArrayList<>();
+        try(DirectoryStream<Path> files = Files.newDirectoryStream(directory, prefix + "*")){
+            for(Path file : files){
+                String suffix = file.getFileName().toString().substring(prefix.length());
+                try{
+                    generations.add(Long.parseLong(suffix));
+                }catch(NumberFormatException e){
+                    /* Not a file of the tree */
+                }
+            }
+        }
+        Collections.sort(generations);
+        return generations;
+    }
+
+
+    /* Makes the creation and the renames of files durable, not every platform can force a directory */
+    private void syncDirectory(){
+        try(FileChannel channel = FileChannel.open(directory, READ)){
+            channel.force(true);
+        }catch(IOException e){
+            /* Best effort */
+        }
+    }
+
+
+    /**
+     * One log file. The records are appended to a direct buffer under the write lock of the tree and
+     * written by sync() outside of it: the first caller of sync() takes the records of all writers
+     * appended so far, writes and forces them while the others queue up, and the writers which queued
+     * behind it find their records already on the disk or take the next batch (group commit).
+     */
+    private class Log{
+        final long generation;
+        private final FileChannel channel;
+        private final CRC32 crc = new CRC32();
+        private final Object syncLock = new Object();
+        /* Records not yet written, guarded by this */
+        private ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        /* The other buffer, written by the holder of syncLock */
+        private ByteBuffer spare = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        /* File positions after the last appended, written and forced record */
+        private long appended;
+        private volatile long written;
+        private volatile long synced;
+
+        Log(long generation, long end) throws IOException{
+            this.generation = generation;
+            channel = FileChannel.open(path(LOG, generation), CREATE, WRITE);
+            channel.position(end);
+            appended = written = synced = end;
+        }
+
+        /* Appends the record and returns the file position after it */
+        synchronized long append(byte operation, Key key, Value value){
+            int size = RECORD_HEADER + 1;
+            if(key != null)
+                size += keyCodec.maxSize(key);
+            if(value != null)
+                size += valueCodec.maxSize(value);
+            if(buffer.remaining() < size){
+                ByteBuffer larger = ByteBuffer.allocateDirect(Math.max(2 * buffer.capacity(), buffer.position() + size));
+                buffer.flip();
+                larger.put(buffer);
+                buffer = larger;
+            }
+            int start = buffer.position();
+            buffer.position(start + RECORD_HEADER);
+            buffer.put(operation);
+            if(key != null)
+                keyCodec.encode(key, buffer);
+            if(value != null)
+                valueCodec.encode(value, buffer);
+            int end = buffer.position();
+            ByteBuffer payload = buffer.duplicate();
+            payload.limit(end).position(start + RECORD_HEADER);
+            crc.reset();
+            crc.update(payload);
+            buffer.putInt(start, end - start - RECORD_HEADER);
+            buffer.putInt(start + Integer.BYTES, (int) crc.getValue());
+            appended += end - start;
+            return appended;
+        }
+
+        synchronized long position(){
+            return appended;
+        }
+
+        synchronized int pending(){
+            return buffer.position();
+        }
+
+        /* Writes the records up to the position to the file and forces them if asked */
+        void sync(long position, boolean force) throws IOException{
+            if((force ? synced : written) >= position)
+                return;
+            synchronized(syncLock){
+                if(written < position){
+                    ByteBuffer records;
+                    long end;
+                    synchronized(this){
+                        records = buffer;
+                        buffer = spare;
+                        end = appended;
+                    }
+                    records.flip();
+                    while(records.hasRemaining())
+                        channel.write(records);
+                    records.clear();
+                    spare = records;
+                    written = end;
+                }
+                if(force && synced < position){
+                    long end = written;
+                    channel.force(false);
+                    synced = end;
+                }
+            }
+        }
+
+        /* Forces all records and closes the file */
+        void close() throws IOException{
+            sync(position(), true);
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,211 @@
+package avlTree;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * Immutable copy of an AVLTree in the Eytzinger layout, made by AVLTree.freeze().
+ * The keys are stored in the breadth first order of a complete binary search tree in one array:
+ * the children of the index i are 2i and 2i + 1, the root is at 1. A search walks down the array
+ * by i = 2i + (key at i is less), the comparison result is added to the index instead of taken as
+ * a branch, and the lower bound is recovered from the final index by a shift. The top levels of
+ * the array stay in the cache and the nodes of one level are adjacent, unlike the Node objects of
+ * AVLTree which are spread over the heap.
+ *
+ * ranks maps an array index to the rank of its key and positions maps a rank back to the index,
+ * they answer rank and select in O(1) after the search instead of subtree sizes.
+ */
+public final class FrozenAVLTree <Key, Value>{
+    private final int size;
+    /* Order of the frozen tree, null for the natural order of the keys */
+    private final Comparator<? super Key> comparator;
+    /* Keys and values at the indices 1..size in the Eytzinger order */
+    private final Object[] keys;
+    private final Object[] values;
+    private final int[] ranks;
+    /* Index of the key of every rank */
+    private final int[] positions;
+
+
+    /* Copies the tree in O(n) */
+    FrozenAVLTree(AVLTree<Key, Value> tree){
+        size = tree.size();
+        comparator = tree.comparator();
+        keys = new Object[size + 1];
+        values = new Object[size + 1];
+        ranks = new int[size + 1];
+        positions = new int[size];
+        Iterator<Map.Entry<Key, Value>> entries = tree.entries().iterator();
+        int rank = 0;
+        /* In order traversal of the implicit tree of the array fills it with ascending keys */
+        int[] stack = new int[64];
+        int depth = 0;
+        int i = 1;
+        while(i <= size || depth > 0){
+            if(i <= size){
+                stack[depth++] = i;
+                i = 2 * i;
+            }
+            else{
+                i = stack[--depth];
+                Map.Entry<Key, Value> entry = entries.next();
+                keys[i] = entry.getKey();
+                values[i] = entry.getValue();
+                ranks[i] = rank;
+                positions[rank++] = i;
+                i = 2 * i + 1;
+            }
+        }
+    }
+
+
+    /* Check if the tree is empty */
+    public boolean isEmpty(){
+        return size == 0;
+    }
+
+
+    /* Returns the number of keys in the tree */
+    public int size(){
+        return size;
+    }
+
+
+    /* Returns the index of the smallest key greater than or equal to the given key, 0 if there is none */
+    private int lowerBound(Key key){
+        int i = 1;
+        while(i <= size)
+            i = 2 * i + (compare(key(i), key) >>> 31);
+        return i >>> (Integer.numberOfTrailingZeros(~i) + 1);
+    }
+
+
+    /* Returns the index of the smallest key strictly greater than the given key, 0 if there is none */
+    private int upperBound(Key key){
+        int i = 1;
+        while(i <= size)
+            i = 2 * i + 1 - (compare(key, key(i)) >>> 31);
+        return i >>> (Integer.numberOfTrailingZeros(~i) + 1);
+    }
+
+
+    /* Return the value associated with the given key */
+    public Value get(Key key){
+        if(key == null)
+            throw new IllegalArgumentException("Argument to get is null");
+        int i = lowerBound(key);
+        return (i != 0 && compare(key(i), key) == 0) ? value(i) : null;
+    }
+
+
+    /* Check if the tree contains the given key */
+    public boolean contains(Key key){
+        return get(key) != null;
+    }
+
+
+    /* Returns the largest key less than or equal to the given key, null if there is none */
+    public Key floor(Key key){
+        if(key == null)
+            throw new IllegalArgumentException("Argument to floor is null");
+        int i = upperBound(key);
+        int rank = (i == 0) ? size : ranks[i];
+        return (rank == 0) ? null : key(positions[rank - 1]);
+    }
+
+
+    /* Returns the smallest key greater than or equal to the given key, null if there is none */
+    public Key ceiling(Key key){
+        if(key == null)
+            throw new IllegalArgumentException("Argument to ceiling is null");
+        int i = lowerBound(key);
+        return (i == 0) ? null : key(i);
+    }
+
+
+    /* Returns the number of keys in the tree strictly less than the given key */
+    public int rank(Key key){
+        if(key == null)
+            throw new IllegalArgumentException("argument key to rank(key) is null");
+        int i = lowerBound(key);
+        return (i == 0) ? size : ranks[i];
+    }
+
+
+    /* Returns the k-th smallest key, k starts from 0, null if k is out of the tree range */
+    public Key select(int k){
+        return (k < 0 || k >= size) ? null : key(positions[k]);
+    }
+
+
+    /* Returns the value of the k-th smallest key, null if k is out of the tree range */
+    public Value selectValue(int k){
+        return (k < 0 || k >= size) ? null : value(positions[k]);
+    }
+
+
+    /* Returns the smallest key, null if the tree is empty */
+    public Key min(){
+        return select(0);
+    }
+
+
+    /* Returns the largest key, null if the tree is empty */
+    public Key max(){
+        return select(size - 1);
+    }
+
+
+    /* Returns the keys in ascending order */
+    public Iterable<Key> keys(){
+        return () -> new Iterator<Key>(){
+            private int rank;
+
+            @Override
+            public boolean hasNext(){
+                return rank < size;
+            }
+
+            @Override
+            public Key next(){
+                if(!hasNext())
+                    throw new NoSuchElementException();
+                return key(positions[rank++]);
+            }
+        };
+    }
+
+
+    /* Builds a mutable AVLTree with the same entries and comparator in O(n) */
+    @SuppressWarnings("unchecked")
+    public AVLTree<Key, Value> thaw(){
+        Key[] sortedKeys = (Key[]) new Object[size];
+        Value[] sortedValues = (Value[]) new Object[size];
+        for(int rank = 0; rank < size; rank++){
+            sortedKeys[rank] = key(positions[rank]);
+            sortedValues[rank] = value(positions[rank]);
+        }
+        AVLTree<Key, Value> tree = new AVLTree<>(comparator, null, null);
+        tree.putAll(sortedKeys, sortedValues);
+        return tree;
+    }
+
+
+    @SuppressWarnings("unchecked")
+    private int compare(Key a, Key b){
+        return (comparator == null) ? ((Comparable<? super Key>) a).compareTo(b) : comparator.compare(a, b);
+    }
+
+
+    @SuppressWarnings("unchecked")
+    private Key key(int i){
+        return (Key) keys[i];
+    }
+
+
+    @SuppressWarnings("unchecked")
+    private Value value(int i){
+        return (Value) values[i];
+    }
+}
@@ -0,0 +1,202 @@
+package avlTree;
+import java.util.Arrays;
+
+/**
+ * Bounded front cache of the values of AVLTree.get for skewed lookups, enabled by
+ * AVLTree.enableCache(). A hit costs one hash and a probe of an array instead of a descent.
+ *
+ * The entries live in an open addressing table with linear probing of twice the capacity,
+ * removed entries are filled by shifting the following entries of their probe run back, so the
+ * table needs no tombstones. The hashes are kept next to the keys, a probe reads a key object
+ * only when its hash matches. A full cache evicts by CLOCK: the hand sweeps over the table, clears
+ * the referenced bit which every hit sets and evicts the first entry without it, so keys hit since
+ * the last sweep survive. A missed key is admitted only on its second miss in a short time: the
+ * first miss leaves its hash in a doorkeeper array, so the keys of the long tail which are looked
+ * up once do not evict the hot keys.
+ *
+ * The tree removes the key of every put, delete, deleteMin, deleteMax and value change and clears
+ * the cache on the bulk operations, the cache never holds a value the tree does not have.
+ * Only present keys are cached. The keys are matched by equals() and hashCode(), so the order of
+ * the tree has to be consistent with equals.
+ */
+public final class HotKeyCache <Key, Value>{
+    private static final int MAX_CAPACITY = 1 << 28;
+
+    private final int capacity;
+    private final int mask;
+    private final Object[] keys;
+    private final Object[] values;
+    private final int[] hashes;
+    private final boolean[] referenced;
+    /* Hashes of recently missed keys by their slot */
+    private final int[] doorkeeper;
+    private int size;
+    /* Slot of the CLOCK hand */
+    private int hand;
+    private long hits;
+    private long misses;
+
+
+    HotKeyCache(int capacity){
+        if(capacity <= 0 || capacity > MAX_CAPACITY)
+            throw new IllegalArgumentException("Capacity of the cache is out of range: " + capacity);
+        this.capacity = capacity;
+        int slots = Integer.highestOneBit(capacity) << 2;
+        mask = slots - 1;
+        keys = new Object[slots];
+        values = new Object[slots];
+        hashes = new int[slots];
+        referenced = new boolean[slots];
+        doorkeeper = new int[slots];
+    }
+
+
+    private static int hash(Object key){
+        int hash = key.hashCode() * 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+
+
+    /* Returns the cached value of the key and marks it as referenced, null on a miss */
+    @SuppressWarnings("unchecked")
+    Value get(Key key){
+        int hash = hash(key);
+        for(int i = hash & mask; keys[i] != null; i = (i + 1) & mask){
+            if(hashes[i] == hash && keys[i].equals(key)){
+                referenced[i] = true;
+                hits++;
+                return (Value) values[i];
+            }
+        }
+        misses++;
+        return null;
+    }
+
+
+    /* Caches the value of a key missed by get, the first miss of a key is only noted by the doorkeeper */
+    void admit(Key key, Value value){
+        int hash = hash(key);
+        if(doorkeeper[hash & mask] != hash){
+            doorkeeper[hash & mask] = hash;
+            return;
+        }
+        int i = hash & mask;
+        for(; keys[i] != null; i = (i + 1) & mask){
+            if(hashes[i] == hash && keys[i].equals(key)){
+                values[i] = value;
+                return;
+            }
+        }
+        if(size == capacity){
+            evict();
+            for(i = hash & mask; keys[i] != null; i = (i + 1) & mask);
+        }
+        keys[i] = key;
+        values[i] = value;
+        hashes[i] = hash;
+        referenced[i] = false;
+        size++;
+    }
+
+
+    /* Removes the key if it is cached */
+    void remove(Key key){
+        int hash = hash(key);
+        for(int i = hash & mask; keys[i] != null; i = (i + 1) & mask){
+            if(hashes[i] == hash && keys[i].equals(key)){
+                delete(i);
+                return;
+            }
+        }
+    }
+
+
+    void clear(){
+        if(size == 0)
+            return;
+        Arrays.fill(keys, null);
+        Arrays.fill(values, null);
+        Arrays.fill(referenced, false);
+        Arrays.fill(doorkeeper, 0);
+        size = 0;
+        hand = 0;
+    }
+
+
+    /* Advances the CLOCK hand to the first unreferenced entry and removes it */
+    private void evict(){
+        while(true){
+            if(keys[hand] != null){
+                if(!referenced[hand]){
+                    delete(hand);
+                    return;
+                }
+                referenced[hand] = false;
+            }
+            hand = (hand + 1) & mask;
+        }
+    }
+
+
+    /* Empties the slot and shifts back the entries of its probe run which may not stay behind the gap */
+    private void delete(int gap){
+        size--;
+        for(int i = (gap + 1) & mask; keys[i] != null; i = (i + 1) & mask){
+            int home = hashes[i] & mask;
+            boolean reachable = (gap <= i) ? (gap < home && home <= i) : (gap < home || home <= i);
+            if(reachable)
+                continue;
+            keys[gap] = keys[i];
+            values[gap] = values[i];
+            hashes[gap] = hashes[i];
+            referenced[gap] = referenced[i];
+            gap = i;
+        }
+        keys[gap] = null;
+        values[gap] = null;
+        referenced[gap] = false;
+    }
+
+
+    /* Returns the maximal number of cached keys */
+    public int capacity(){
+        return capacity;
+    }
+
+
+    /* Returns the number of cached keys */
+    public int size(){
+        return size;
+    }
+
+
+    public long hits(){
+        return hits;
+    }
+
+
+    public long misses(){
+        return misses;
+    }
+
+
+    /* Returns the share of the lookups answered by the cache, 0 before the first lookup */
+    public double hitRate(){
+        long lookups = hits + misses;
+        return (lookups == 0) ? 0 : (double) hits / lookups;
+    }
+
+
+    /* Sets the hit and miss counters to zero, the cached keys stay */
+    public void resetCounters(){
+        hits = 0;
+        misses = 0;
+    }
+
+
+    @Override
+    public String toString(){
+        return String.format("HotKeyCache{capacity=%d, size=%d, hits=%d, misses=%d, hitRate=%.3f}",
+                capacity, size, hits, misses, hitRate());
+    }
+}
@@ -0,0 +1,452 @@
+package avlTree;
+import java.util.NoSuchElementException;
+
+/**
+ * AVL tree with primitive int keys.
+ * Keys are stored unboxed in the nodes and compared without Comparable calls.
+ * Methods which have no key to return throw NoSuchElementException, floor and ceiling
+ * also have variants which return a given noKey value instead.
+ */
+public class IntIntAVLTree{
+    /* Upper bound of the AVL tree height for any int sized tree (1.44 * log2(n)) */
+    private static final int MAX_HEIGHT = 64;
+
+    private Node root;
+
+    /* Value returned by get for absent keys */
+    private final int noEntryValue;
+
+    /* Reusable stack of the nodes visited by the write path and the taken directions */
+    private final Node[] path = new Node[MAX_HEIGHT];
+    private final boolean[] pathLeft = new boolean[MAX_HEIGHT];
+
+    /* Inner node class */
+    private class Node{
+        private final int key;
+        private int value;
+        private int height;
+        private int size;
+        private Node left;
+        private Node right;
+
+        public Node(int key, int value, int height, int size){
+            this.key = key;
+            this.value = value;
+            this.size = size;
+            this.height = height;
+        }
+
+    }
+
+    /* Counstructor, get returns 0 for absent keys */
+    public IntIntAVLTree(){
+        this(0);
+    }
+
+
+    /* Counstructor with the value returned by get for absent keys */
+    public IntIntAVLTree(int noEntryValue){
+        this.noEntryValue = noEntryValue;
+    }
+
+
+    /* Returns the value returned by get for absent keys */
+    public int getNoEntryValue(){
+        return noEntryValue;
+    }
+
+
+    /* Check if the tree is empty */
+    public boolean isEmpty(){
+        return root == null;
+    }
+
+
+    /* Retruns the number of nodes in tree */
+    public int size(){
+        return size(root);
+    }
+
+
+    /* Retruns the number of nodes in the subtree */
+    private int size(Node node){
+        return (node == null) ? 0 : node.size;
+    }
+
+
+    /* Return the height of the tree, -1 for the empty tree */
+    public int height(){
+        return height(root);
+    }
+
+
+    /* Retruns the height of the subtree */
+    private int height(Node node){
+        return (node == null) ? -1 : node.height;
+    }
+
+
+    /* Return the value associated with the given key, noEntryValue if the key is absent */
+    public int get(int key){
+        Node node = root;
+        while(node != null){
+            if(key < node.key)
+                node = node.left;
+            else if(key > node.key)
+                node = node.right;
+            else
+                return node.value;
+        }
+        return noEntryValue;
+    }
+
+
+    /* Checks if the tree contains the given key */
+    public boolean contains(int key){
+        Node node = root;
+        while(node != null){
+            if(key < node.key)
+                node = node.left;
+            else if(key > node.key)
+                node = node.right;
+            else
+                return true;
+        }
+        return false;
+    }
+
+
+    /* Inserts specified key-value pair into the tree */
+    public void put(int key, int value){
+        Node node = root;
+        int depth = 0;
+        while(node != null){
+            if(key == node.key){
+                node.value = value;
+                clearPath(depth);
+                return;
+            }
+            path[depth] = node;
+            pathLeft[depth] = key < node.key;
+            node = pathLeft[depth++] ? node.left : node.right;
+        }
+        rebalancePath(depth, new Node(key, value, 0, 1));
+    }
+
+
+    /* Removes the specified key and its value from the tree */
+    public void delete(int key){
+        Node node = root;
+        int depth = 0;
+        while(node != null && key != node.key){
+            path[depth] = node;
+            pathLeft[depth] = key < node.key;
+            node = pathLeft[depth++] ? node.left : node.right;
+        }
+        if(node == null){
+            clearPath(depth);
+            return;
+        }
+
+        Node child;
+        if(node.left == null)
+            child = node.right;
+        else if(node.right == null)
+            child = node.left;
+        else{
+            /* The successor takes the place of the removed node on the path stack */
+            int top = depth++;
+            pathLeft[top] = false;
+            Node successor = node.right;
+            while(successor.left != null){
+                path[depth] = successor;
+                pathLeft[depth++] = true;
+                successor = successor.left;
+            }
+            child = successor.right;
+            successor.left = node.left;
+            successor.right = node.right;
+            path[top] = successor;
+        }
+        rebalancePath(depth, child);
+    }
+
+
+    /* Removes the smallest key and associated value from the tree */
+    public void deleteMin(){
+        if(isEmpty())
+            throw new NoSuchElementException("deleteMin() - Tree is empty");
+        Node node = root;
+        int depth = 0;
+        while(node.left != null){
+            path[depth] = node;
+            pathLeft[depth++] = true;
+            node = node.left;
+        }
+        rebalancePath(depth, node.right);
+    }
+
+
+    /* Removes the largest key and associated value from the tree */
+    public void deleteMax(){
+        if(isEmpty())
+            throw new NoSuchElementException("deleteMax() - Tree is empty");
+        Node node = root;
+        int depth = 0;
+        while(node.right != null){
+            path[depth] = node;
+            pathLeft[depth++] = false;
+            node = node.right;
+        }
+        rebalancePath(depth, node.left);
+    }
+
+
+    /* Links the given subtree to the top of the path stack and rebalances up to the root */
+    private void rebalancePath(int depth, Node child){
+        while(depth > 0){
+            Node node = path[--depth];
+            path[depth] = null;
+            if(pathLeft[depth])
+                node.left = child;
+            else
+                node.right = child;
+
+            node.size = 1 + size(node.left) + size(node.right);
+            node.height = 1 + Math.max(height(node.left), height(node.right));
+            child = balance(node);
+        }
+        root = child;
+    }
+
+
+    /* Releases nodes held by the path stack when the write path ends without changes */
+    private void clearPath(int depth){
+        while(depth > 0)
+            path[--depth] = null;
+    }
+
+
+    /* Restores AVL property of the subtree */
+    private Node balance(Node node){
+        if(balanceFactor(node) < -1){
+            if(balanceFactor(node.right) > 0)
+                node.right = rotateRight(node.right);
+            node = rotateLeft(node);
+        }else if(balanceFactor(node) > 1){
+            if(balanceFactor(node.left) < 0)
+                node.left = rotateLeft(node.left);
+            node = rotateRight(node);
+        }
+        return node;
+    }
+
+
+    /* Returns the difference in height of the left and right subtrees */
+    private int balanceFactor(Node node){
+        return height(node.left) - height(node.right);
+    }
+
+
+    /* Rotates the given subtree to the right */
+    private Node rotateRight(Node node){
+        Node y = node.left;
+        node.left = y.right;
+        y.right = node;
+        y.size = node.size;
+        node.size = 1 + size(node.left) + size(node.right);
+
+        node.height = 1 + Math.max(height(node.left), height(node.right));
+        y.height = 1 + Math.max(height(y.left), height(y.right));
+        return y;
+    }
+
+
+    /* Rotates the given subtree to the left */
+    private Node rotateLeft(Node node){
+        Node y = node.right;
+        node.right = y.left;
+        y.left = node;
+        y.size = node.size;
+        node.size = 1 + size(node.left) + size(node.right);
+
+        node.height = 1 + Math.max(height(node.left), height(node.right));
+        y.height = 1 + Math.max(height(y.left), height(y.right));
+        return y;
+    }
+
+
+    /* Returns the smallest key form the tree */
+    public int min(){
+        if(isEmpty())
+            throw new NoSuchElementException("min() - Tree is empty");
+        Node node = root;
+        while(node.left != null)
+            node = node.left;
+        return node.key;
+    }
+
+
+    /* Returns the largest key form the tree */
+    public int max(){
+        if(isEmpty())
+            throw new NoSuchElementException("max() - Tree is empty");
+        Node node = root;
+        while(node.right != null)
+            node = node.right;
+        return node.key;
+    }
+
+
+    /* Returns the largest key in the tree less than or equal to given key */
+    public int floor(int key){
+        Node floor = floorNode(key);
+        if(floor == null)
+            throw new NoSuchElementException("floor(" + key + ") - No key less than or equal to the given key");
+        return floor.key;
+    }
+
+
+    /* Returns the largest key in the tree less than or equal to given key, noKey if there is none */
+    public int floor(int key, int noKey){
+        Node floor = floorNode(key);
+        return (floor == null) ? noKey : floor.key;
+    }
+
+
+    /* Returns the node of the largest key less than or equal to given key, null if there is none */
+    private Node floorNode(int key){
+        Node node = root;
+        Node floor = null;
+        while(node != null){
+            if(key == node.key)
+                return node;
+            if(key < node.key)
+                node = node.left;
+            else{
+                floor = node;
+                node = node.right;
+            }
+        }
+        return floor;
+    }
+
+
+    /* Return the smallest key in the tree greater than or equal to the given key */
+    public int ceiling(int key){
+        Node ceiling = ceilingNode(key);
+        if(ceiling == null)
+            throw new NoSuchElementException("ceiling(" + key + ") - No key greater than or equal to the given key");
+        return ceiling.key;
+    }
+
+
+    /* Return the smallest key in the tree greater than or equal to the given key, noKey if there is none */
+    public int ceiling(int key, int noKey){
+        Node ceiling = ceilingNode(key);
+        return (ceiling == null) ? noKey : ceiling.key;
+    }
+
+
+    /* Returns the node of the smallest key greater than or equal to the given key, null if there is none */
+    private Node ceilingNode(int key){
+        Node node = root;
+        Node ceiling = null;
+        while(node != null){
+            if(key == node.key)
+                return node;
+            if(key > node.key)
+                node = node.right;
+            else{
+                ceiling = node;
+                node = node.left;
+            }
+        }
+        return ceiling;
+    }
+
+
+    /* Retrurns the k-th smallest key in the tree, k index starts from 0 */
+    public int select(int k){
+        if(k < 0 || k >= size())
+            throw new NoSuchElementException("Argument k in select(k) is out of tree range");
+        Node node = root;
+        while(true){
+            int leftSize = size(node.left);
+            if(leftSize > k)
+                node = node.left;
+            else if(leftSize < k){
+                k -= leftSize + 1;
+                node = node.right;
+            }
+            else
+                return node.key;
+        }
+    }
+
+
+    /* Returns the number of keys on the tree strictly less than key */
+    public int rank(int key){
+        Node node = root;
+        int rank = 0;
+        while(node != null){
+            if(key < node.key)
+                node = node.left;
+            else if(key > node.key){
+                rank += 1 + size(node.left);
+                node = node.right;
+            }
+            else
+                return rank + size(node.left);
+        }
+        return rank;
+    }
+
+
+    /* Returns all keys of the tree in ascending order */
+    public int[] keys(){
+        int[] keys = new int[size()];
+        if(!isEmpty())
+            keysInRange(keys, min(), max());
+        return keys;
+    }
+
+
+    /* Return keys in the given range in ascending order */
+    public int[] keysInRange(int lo, int hi){
+        if(lo > hi)
+            return new int[0];
+        int count = rank(hi) - rank(lo) + (contains(hi) ? 1 : 0);
+        int[] keys = new int[count];
+        if(count > 0)
+            keysInRange(keys, lo, hi);
+        return keys;
+    }
+
+
+    /* In-order walk over the nodes of the range using the path stack as the traversal stack */
+    private void keysInRange(int[] keys, int lo, int hi){
+        Node node = root;
+        int depth = 0;
+        int count = 0;
+        while(node != null || depth > 0){
+            if(node != null){
+                if(node.key < lo){
+                    node = node.right;
+                }else{
+                    path[depth++] = node;
+                    node = node.left;
+                }
+            }else{
+                node = path[--depth];
+                path[depth] = null;
+                if(node.key > hi){
+                    clearPath(depth);
+                    return;
+                }
+                keys[count++] = node.key;
+                node = node.right;
+            }
+        }
+    }
+}
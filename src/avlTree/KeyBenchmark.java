@@ -0,0 +1,96 @@
+package avlTree;
+
+import java.util.Comparator;
+import java.util.Random;
+
+/**
+ * Benchmark of AVLTree with URL like String keys, which share long prefixes and make compareTo
+ * walk many chars. Compares the natural order, a counting comparator and the same comparator with
+ * the cached prefixes of KeyNormalizer.STRING. compares/op is the number of comparator calls,
+ * which is the number of full key comparisons.
+ *
+ * Key sets:
+ *   url  - https://host/path/id, the scheme fills the 8 chars of the prefix
+ *   host - host/path/id without the scheme
+ *
+ * Arguments: [sizes], the list is comma separated. Run without -ea.
+ */
+public class KeyBenchmark {
+    private static final int ROUNDS = 5;
+    private static final String[] WORDS = {"shop", "news", "blog", "mail", "docs", "cdn", "api", "static", "img", "video"};
+    private static final String[] TLDS = {"com", "org", "net", "io", "de"};
+
+    private static volatile Object sink;
+    private static long counter;
+    private static long comparisons;
+
+    private static final Comparator<String> COUNTING = (a, b) -> {
+        comparisons++;
+        return a.compareTo(b);
+    };
+
+
+    public static void main(String[] args){
+        int[] sizes = args.length > 0 ? parseSizes(args[0]) : new int[]{10_000, 100_000, 1_000_000};
+        System.out.format("%-6s %-12s %-10s %10s %12s %12s%n", "keys", "tree", "operation", "size", "ns/op", "compares/op");
+        for(int size : sizes){
+            for(boolean scheme : new boolean[]{true, false}){
+                String[] keys = urls(size, scheme, 17);
+                String[] probes = urls(size, scheme, 31);
+                String name = scheme ? "url" : "host";
+                for(int round = 0; round < ROUNDS; round++){
+                    boolean print = round == ROUNDS - 1;
+                    run(name, "natural", new AVLTree<>(), keys, probes, print);
+                    run(name, "comparator", new AVLTree<>(COUNTING), keys, probes, print);
+                    run(name, "prefix", new AVLTree<>(COUNTING, KeyNormalizer.STRING, null), keys, probes, print);
+                }
+            }
+        }
+    }
+
+
+    private static int[] parseSizes(String list){
+        String[] parts = list.split(",");
+        int[] sizes = new int[parts.length];
+        for(int i = 0; i < parts.length; i++)
+            sizes[i] = Integer.parseInt(parts[i].trim());
+        return sizes;
+    }
+
+
+    /* Random keys like https://www.news42.com/blog/shop/1234 */
+    private static String[] urls(int size, boolean scheme, long seed){
+        Random random = new Random(seed);
+        String[] keys = new String[size];
+        for(int i = 0; i < size; i++){
+            StringBuilder key = new StringBuilder(scheme ? "https://" : "");
+            key.append(WORDS[random.nextInt(WORDS.length)]).append(random.nextInt(100))
+                    .append('.').append(TLDS[random.nextInt(TLDS.length)]);
+            for(int part = random.nextInt(3); part >= 0; part--)
+                key.append('/').append(WORDS[random.nextInt(WORDS.length)]);
+            key.append('/').append(random.nextInt(1_000_000));
+            keys[i] = key.toString();
+        }
+        return keys;
+    }
+
+
+    private static void run(String keySet, String name, AVLTree<String, Integer> tree, String[] keys, String[] probes, boolean print){
+        measure(keySet, name, "put", keys.length, print, () -> { for(String key : keys) tree.put(key, 1); });
+        measure(keySet, name, "get", keys.length, print, () -> { for(String key : keys) sink = tree.get(key); });
+        measure(keySet, name, "floor", probes.length, print, () -> { for(String key : probes) sink = tree.floor(key); });
+        measure(keySet, name, "rank", probes.length, print, () -> { for(String key : probes) counter += tree.rank(key); });
+    }
+
+
+    private static void measure(String keySet, String name, String operation, int size, boolean print, Runnable loop){
+        comparisons = 0;
+        long start = System.nanoTime();
+        loop.run();
+        long time = System.nanoTime() - start;
+        if(print){
+            String compares = name.equals("natural") ? "-" : String.format("%.1f", (double) comparisons / size);
+            System.out.format("%-6s %-12s %-10s %10d %12.1f %12s%n", keySet, name, operation, size, (double) time / size, compares);
+        }
+    }
+}
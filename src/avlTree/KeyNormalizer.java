@@ -0,0 +1,38 @@
+package avlTree;
+
+/**
+ * Maps a key to a long prefix which is ordered like the keys: prefix(a) < prefix(b) has to imply
+ * that a is ordered before b, equal keys have equal prefixes. Keys with equal prefixes are compared
+ * in full, so a prefix may lose information, like the characters after the first eight.
+ */
+@FunctionalInterface
+public interface KeyNormalizer<Key> {
+
+    long prefix(Key key);
+
+
+    /** First 8 chars of the natural order of strings as bytes, padded by 0. A char of 0xFF or more
+     * becomes 0xFF and ends the prefix, since the chars after it cannot be ordered by bytes
+     */
+    KeyNormalizer<String> STRING = key -> {
+        long prefix = 0;
+        int length = Math.min(key.length(), Long.BYTES);
+        int i = 0;
+        while(i < length){
+            int c = Math.min(key.charAt(i++), 0xFF);
+            prefix = (prefix << 8) | c;
+            if(c == 0xFF)
+                break;
+        }
+        return (prefix << (8 * (Long.BYTES - i))) ^ Long.MIN_VALUE;
+    };
+
+
+    /* First 8 bytes in the unsigned lexicographic order of Arrays.compareUnsigned, padded by 0 */
+    KeyNormalizer<byte[]> BYTES = key -> {
+        long prefix = 0;
+        for(int i = 0; i < Long.BYTES; i++)
+            prefix = (prefix << 8) | ((i < key.length) ? key[i] & 0xFF : 0);
+        return prefix ^ Long.MIN_VALUE;
+    };
+}
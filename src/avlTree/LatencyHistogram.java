@@ -0,0 +1,91 @@
+package avlTree;
+import java.util.Arrays;
+
+/**
+ * Histogram of latencies in nanoseconds with power of two buckets: bucket b counts the latencies
+ * in [2^(b-1), 2^b). Recording is a few instructions without allocation, percentiles are
+ * reported as the upper bound of their bucket, so they are at most twice the exact value.
+ * Not thread safe, readers on other threads may see slightly stale counts.
+ */
+public final class LatencyHistogram {
+    private static final int BUCKETS = 64;
+
+    private final long[] counts = new long[BUCKETS];
+    private long count;
+    private long sum;
+    private long max;
+
+
+    /* Adds a latency */
+    public void record(long nanos){
+        if(nanos < 0)
+            nanos = 0;
+        counts[BUCKETS - Long.numberOfLeadingZeros(nanos)]++;
+        count++;
+        sum += nanos;
+        if(nanos > max)
+            max = nanos;
+    }
+
+
+    /* Returns the number of recorded latencies */
+    public long count(){
+        return count;
+    }
+
+
+    /* Returns the mean latency, 0 if nothing was recorded */
+    public double mean(){
+        return (count == 0) ? 0 : (double) sum / count;
+    }
+
+
+    /* Returns the largest recorded latency */
+    public long max(){
+        return max;
+    }
+
+
+    /* Returns the upper bound of the bucket of the given percentile between 0 and 100, 0 if nothing was recorded */
+    public long percentile(double percentile){
+        if(percentile < 0 || percentile > 100)
+            throw new IllegalArgumentException("Argument percentile is not between 0 and 100");
+        if(count == 0)
+            return 0;
+        long rank = (long) Math.ceil(count * percentile / 100);
+        long seen = 0;
+        for(int bucket = 0; bucket < BUCKETS; bucket++){
+            seen += counts[bucket];
+            if(seen >= rank && seen > 0)
+                return Math.min(max, (bucket == 0) ? 0 : (1L << bucket) - 1);
+        }
+        return max;
+    }
+
+
+    /* Returns an independent copy of the histogram */
+    public LatencyHistogram copy(){
+        LatencyHistogram copy = new LatencyHistogram();
+        System.arraycopy(counts, 0, copy.counts, 0, BUCKETS);
+        copy.count = count;
+        copy.sum = sum;
+        copy.max = max;
+        return copy;
+    }
+
+
+    /* Drops all recorded latencies */
+    public void reset(){
+        Arrays.fill(counts, 0);
+        count = 0;
+        sum = 0;
+        max = 0;
+    }
+
+
+    @Override
+    public String toString(){
+        return String.format("count %d, mean %.0f ns, p50 %d ns, p99 %d ns, p99.9 %d ns, max %d ns",
+                count, mean(), percentile(50), percentile(99), percentile(99.9), max);
+    }
+}
@@ -0,0 +1,58 @@
+package avlTree;
+import java.util.Comparator;
+import java.util.function.BinaryOperator;
+
+/**
+ * Associative operation with an identity element, the aggregate of the values cached in every
+ * node of an augmented AVLTree. combine has to be associative but does not have to be commutative,
+ * values are always combined in the key order.
+ */
+public interface Monoid<T> {
+
+    /* Returns the aggregate of no values */
+    T identity();
+
+    /* Returns the aggregate of the values of left followed by the values of right */
+    T combine(T left, T right);
+
+
+    /* Returns the monoid of the given identity and associative operation */
+    static <T> Monoid<T> of(T identity, BinaryOperator<T> combine){
+        if(combine == null)
+            throw new IllegalArgumentException("Argument combine to Monoid.of() is null");
+        return new Monoid<T>(){
+            public T identity(){ return identity; }
+            public T combine(T left, T right){ return combine.apply(left, right); }
+        };
+    }
+
+
+    /* Sum of int values */
+    static Monoid<Integer> intSum(){
+        return of(0, Integer::sum);
+    }
+
+
+    /* Sum of long values */
+    static Monoid<Long> longSum(){
+        return of(0L, Long::sum);
+    }
+
+
+    /* Sum of double values */
+    static Monoid<Double> doubleSum(){
+        return of(0.0, Double::sum);
+    }
+
+
+    /* Smallest value by the comparator, the identity is null */
+    static <T> Monoid<T> min(Comparator<? super T> comparator){
+        return of(null, (a, b) -> a == null ? b : b == null ? a : comparator.compare(a, b) <= 0 ? a : b);
+    }
+
+
+    /* Largest value by the comparator, the identity is null */
+    static <T> Monoid<T> max(Comparator<? super T> comparator){
+        return of(null, (a, b) -> a == null ? b : b == null ? a : comparator.compare(a, b) >= 0 ? a : b);
+    }
+}
@@ -0,0 +1,592 @@
+package avlTree;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * AVL tree with long keys and long values which keeps all nodes outside of the Java heap.
+ * Nodes are fixed width slots in an arena of direct ByteBuffer chunks, slot 0 is the
+ * empty subtree. The arena grows by whole chunks and slots released by the deletes are
+ * reused through a free list. The memory is released by close(), every method but close()
+ * throws IllegalStateException on a closed tree.
+ * Methods which have no key to return throw NoSuchElementException.
+ */
+public class OffHeapLongAVLTree implements AutoCloseable{
+    /* Upper bound of the AVL tree height for any int sized tree (1.44 * log2(n)) */
+    private static final int MAX_HEIGHT = 64;
+    private static final int NIL = 0;
+
+    /* Slot layout */
+    private static final int KEY = 0;
+    private static final int VALUE = 8;
+    private static final int LEFT = 16;
+    private static final int RIGHT = 20;
+    private static final int HEIGHT = 24;
+    private static final int SIZE = 28;
+    private static final int SLOT_SHIFT = 5;
+
+    /* Every chunk holds 2^15 slots, 1 MB */
+    private static final int CHUNK_SHIFT = 15;
+    private static final int CHUNK_MASK = (1 << CHUNK_SHIFT) - 1;
+    private static final int CHUNK_BYTES = 1 << (CHUNK_SHIFT + SLOT_SHIFT);
+
+    private ByteBuffer[] chunks = new ByteBuffer[4];
+    private int chunkCount;
+    private boolean closed;
+
+    private int root = NIL;
+
+    /* Next never used slot and the head of released slots list */
+    private int next = 1;
+    private int free = NIL;
+
+    /* Value returned by get for absent keys */
+    private final long noEntryValue;
+
+    /* Reusable stack of the slots visited by the write path and the taken directions */
+    private final int[] path = new int[MAX_HEIGHT];
+    private final boolean[] pathLeft = new boolean[MAX_HEIGHT];
+
+
+    /* Counstructor, get returns 0 for absent keys */
+    public OffHeapLongAVLTree(){
+        this(0);
+    }
+
+
+    /* Counstructor with the value returned by get for absent keys */
+    public OffHeapLongAVLTree(long noEntryValue){
+        this.noEntryValue = noEntryValue;
+        addChunk();
+        setHeight(NIL, -1);
+        setSize(NIL, 0);
+    }
+
+
+    /* Returns the number of bytes reserved outside of the heap */
+    public long bytesAllocated(){
+        checkOpen();
+        return (long) chunkCount * CHUNK_BYTES;
+    }
+
+
+    /* Releases the off-heap memory, the tree can't be used after it. Closing a closed tree does nothing */
+    @Override
+    public void close(){
+        if(closed)
+            return;
+        closed = true;
+        for(int i = 0; i < chunkCount; i++){
+            Memory.free(chunks[i]);
+            chunks[i] = null;
+        }
+        chunks = null;
+        chunkCount = 0;
+        root = NIL;
+    }
+
+
+    /* Throws for any use of a closed tree, its slots point to freed memory */
+    private void checkOpen(){
+        if(closed)
+            throw new IllegalStateException("Tree is closed");
+    }
+
+
+    private void addChunk(){
+        if(chunkCount == chunks.length)
+            chunks = Arrays.copyOf(chunks, 2 * chunkCount);
+        chunks[chunkCount++] = ByteBuffer.allocateDirect(CHUNK_BYTES).order(ByteOrder.nativeOrder());
+    }
+
+
+    private ByteBuffer chunk(int node){
+        return chunks[node >>> CHUNK_SHIFT];
+    }
+
+
+    private static int offset(int node){
+        return (node & CHUNK_MASK) << SLOT_SHIFT;
+    }
+
+
+    private long key(int node){
+        return chunk(node).getLong(offset(node) + KEY);
+    }
+
+
+    private long value(int node){
+        return chunk(node).getLong(offset(node) + VALUE);
+    }
+
+
+    private int left(int node){
+        return chunk(node).getInt(offset(node) + LEFT);
+    }
+
+
+    private int right(int node){
+        return chunk(node).getInt(offset(node) + RIGHT);
+    }
+
+
+    private int height(int node){
+        return chunk(node).getInt(offset(node) + HEIGHT);
+    }
+
+
+    private int size(int node){
+        return chunk(node).getInt(offset(node) + SIZE);
+    }
+
+
+    private void setValue(int node, long value){
+        chunk(node).putLong(offset(node) + VALUE, value);
+    }
+
+
+    private void setLeft(int node, int child){
+        chunk(node).putInt(offset(node) + LEFT, child);
+    }
+
+
+    private void setRight(int node, int child){
+        chunk(node).putInt(offset(node) + RIGHT, child);
+    }
+
+
+    private void setHeight(int node, int height){
+        chunk(node).putInt(offset(node) + HEIGHT, height);
+    }
+
+
+    private void setSize(int node, int size){
+        chunk(node).putInt(offset(node) + SIZE, size);
+    }
+
+
+    /* Check if the tree is empty */
+    public boolean isEmpty(){
+        checkOpen();
+        return root == NIL;
+    }
+
+
+    /* Retruns the number of nodes in tree */
+    public int size(){
+        checkOpen();
+        return size(root);
+    }
+
+
+    /* Return the height of the tree, -1 for the empty tree */
+    public int height(){
+        checkOpen();
+        return height(root);
+    }
+
+
+    /* Return the value associated with the given key, noEntryValue if the key is absent */
+    public long get(long key){
+        checkOpen();
+        int node = find(key);
+        return (node == NIL) ? noEntryValue : value(node);
+    }
+
+
+    /* Checks if the tree contains the given key */
+    public boolean contains(long key){
+        checkOpen();
+        return find(key) != NIL;
+    }
+
+
+    /* Iteratively search and returns slot associated whith the given key */
+    private int find(long key){
+        int node = root;
+        while(node != NIL){
+            long nodeKey = key(node);
+            if(key < nodeKey)
+                node = left(node);
+            else if(key > nodeKey)
+                node = right(node);
+            else
+                return node;
+        }
+        return NIL;
+    }
+
+
+    /* Inserts specified key-value pair into the tree */
+    public void put(long key, long value){
+        checkOpen();
+        int node = root;
+        int depth = 0;
+        while(node != NIL){
+            long nodeKey = key(node);
+            if(key == nodeKey){
+                setValue(node, value);
+                return;
+            }
+            path[depth] = node;
+            pathLeft[depth] = key < nodeKey;
+            node = pathLeft[depth++] ? left(node) : right(node);
+        }
+        rebalancePath(depth, allocate(key, value));
+    }
+
+
+    /* Takes a slot from the free list or from the end of the arena */
+    private int allocate(long key, long value){
+        int node;
+        if(free != NIL){
+            node = free;
+            free = left(node);
+        }else{
+            if(next == (chunkCount << CHUNK_SHIFT))
+                addChunk();
+            node = next++;
+        }
+        ByteBuffer chunk = chunk(node);
+        int offset = offset(node);
+        chunk.putLong(offset + KEY, key);
+        chunk.putLong(offset + VALUE, value);
+        chunk.putInt(offset + LEFT, NIL);
+        chunk.putInt(offset + RIGHT, NIL);
+        chunk.putInt(offset + HEIGHT, 0);
+        chunk.putInt(offset + SIZE, 1);
+        return node;
+    }
+
+
+    /* Returns the slot to the free list */
+    private void release(int node){
+        setLeft(node, free);
+        free = node;
+    }
+
+
+    /* Removes the specified key and its value from the tree */
+    public void delete(long key){
+        checkOpen();
+        int node = root;
+        int depth = 0;
+        while(node != NIL){
+            long nodeKey = key(node);
+            if(key == nodeKey)
+                break;
+            path[depth] = node;
+            pathLeft[depth] = key < nodeKey;
+            node = pathLeft[depth++] ? left(node) : right(node);
+        }
+        if(node == NIL)
+            return;
+
+        int child;
+        if(left(node) == NIL)
+            child = right(node);
+        else if(right(node) == NIL)
+            child = left(node);
+        else{
+            /* The successor takes the place of the removed node on the path stack */
+            int top = depth++;
+            pathLeft[top] = false;
+            int successor = right(node);
+            while(left(successor) != NIL){
+                path[depth] = successor;
+                pathLeft[depth++] = true;
+                successor = left(successor);
+            }
+            child = right(successor);
+            setLeft(successor, left(node));
+            setRight(successor, right(node));
+            path[top] = successor;
+        }
+        release(node);
+        rebalancePath(depth, child);
+    }
+
+
+    /* Removes the smallest key and associated value from the tree */
+    public void deleteMin(){
+        checkOpen();
+        if(isEmpty())
+            throw new NoSuchElementException("deleteMin() - Tree is empty");
+        int node = root;
+        int depth = 0;
+        while(left(node) != NIL){
+            path[depth] = node;
+            pathLeft[depth++] = true;
+            node = left(node);
+        }
+        int child = right(node);
+        release(node);
+        rebalancePath(depth, child);
+    }
+
+
+    /* Removes the largest key and associated value from the tree */
+    public void deleteMax(){
+        checkOpen();
+        if(isEmpty())
+            throw new NoSuchElementException("deleteMax() - Tree is empty");
+        int node = root;
+        int depth = 0;
+        while(right(node) != NIL){
+            path[depth] = node;
+            pathLeft[depth++] = false;
+            node = right(node);
+        }
+        int child = left(node);
+        release(node);
+        rebalancePath(depth, child);
+    }
+
+
+    /* Links the given subtree to the top of the path stack and rebalances up to the root */
+    private void rebalancePath(int depth, int child){
+        while(depth > 0){
+            int node = path[--depth];
+            if(pathLeft[depth])
+                setLeft(node, child);
+            else
+                setRight(node, child);
+            update(node);
+            child = balance(node);
+        }
+        root = child;
+    }
+
+
+    /* Recomputes size and height of the node from its children */
+    private void update(int node){
+        int left = left(node);
+        int right = right(node);
+        setSize(node, 1 + size(left) + size(right));
+        setHeight(node, 1 + Math.max(height(left), height(right)));
+    }
+
+
+    /* Restores AVL property of the subtree */
+    private int balance(int node){
+        if(balanceFactor(node) < -1){
+            if(balanceFactor(right(node)) > 0)
+                setRight(node, rotateRight(right(node)));
+            node = rotateLeft(node);
+        }else if(balanceFactor(node) > 1){
+            if(balanceFactor(left(node)) < 0)
+                setLeft(node, rotateLeft(left(node)));
+            node = rotateRight(node);
+        }
+        return node;
+    }
+
+
+    /* Returns the difference in height of the left and right subtrees */
+    private int balanceFactor(int node){
+        return height(left(node)) - height(right(node));
+    }
+
+
+    /* Rotates the given subtree to the right */
+    private int rotateRight(int node){
+        int y = left(node);
+        setLeft(node, right(y));
+        setRight(y, node);
+        setSize(y, size(node));
+        update(node);
+        setHeight(y, 1 + Math.max(height(left(y)), height(right(y))));
+        return y;
+    }
+
+
+    /* Rotates the given subtree to the left */
+    private int rotateLeft(int node){
+        int y = right(node);
+        setRight(node, left(y));
+        setLeft(y, node);
+        setSize(y, size(node));
+        update(node);
+        setHeight(y, 1 + Math.max(height(left(y)), height(right(y))));
+        return y;
+    }
+
+
+    /* Returns the smallest key form the tree */
+    public long min(){
+        checkOpen();
+        if(isEmpty())
+            throw new NoSuchElementException("min() - Tree is empty");
+        int node = root;
+        while(left(node) != NIL)
+            node = left(node);
+        return key(node);
+    }
+
+
+    /* Returns the largest key form the tree */
+    public long max(){
+        checkOpen();
+        if(isEmpty())
+            throw new NoSuchElementException("max() - Tree is empty");
+        int node = root;
+        while(right(node) != NIL)
+            node = right(node);
+        return key(node);
+    }
+
+
+    /* Returns the largest key in the tree less than or equal to given key */
+    public long floor(long key){
+        checkOpen();
+        int node = root;
+        int floor = NIL;
+        while(node != NIL){
+            long nodeKey = key(node);
+            if(key == nodeKey)
+                return key;
+            if(key < nodeKey)
+                node = left(node);
+            else{
+                floor = node;
+                node = right(node);
+            }
+        }
+        if(floor == NIL)
+            throw new NoSuchElementException("floor(" + key + ") - No key less than or equal to the given key");
+        return key(floor);
+    }
+
+
+    /* Return the smallest key in the tree greater than or equal to the given key */
+    public long ceiling(long key){
+        checkOpen();
+        int node = root;
+        int ceiling = NIL;
+        while(node != NIL){
+            long nodeKey = key(node);
+            if(key == nodeKey)
+                return key;
+            if(key > nodeKey)
+                node = right(node);
+            else{
+                ceiling = node;
+                node = left(node);
+            }
+        }
+        if(ceiling == NIL)
+            throw new NoSuchElementException("ceiling(" + key + ") - No key greater than or equal to the given key");
+        return key(ceiling);
+    }
+
+
+    /* Retrurns the k-th smallest key in the tree, k index starts from 0 */
+    public long select(int k){
+        checkOpen();
+        if(k < 0 || k >= size())
+            throw new NoSuchElementException("Argument k in select(k) is out of tree range");
+        int node = root;
+        while(true){
+            int leftSize = size(left(node));
+            if(leftSize > k)
+                node = left(node);
+            else if(leftSize < k){
+                k -= leftSize + 1;
+                node = right(node);
+            }
+            else
+                return key(node);
+        }
+    }
+
+
+    /* Returns the number of keys on the tree strictly less than key */
+    public int rank(long key){
+        checkOpen();
+        int node = root;
+        int rank = 0;
+        while(node != NIL){
+            long nodeKey = key(node);
+            if(key < nodeKey)
+                node = left(node);
+            else if(key > nodeKey){
+                rank += 1 + size(left(node));
+                node = right(node);
+            }
+            else
+                return rank + size(left(node));
+        }
+        return rank;
+    }
+
+
+    /* Returns all keys of the tree in ascending order */
+    public long[] keys(){
+        checkOpen();
+        return isEmpty() ? new long[0] : keysInRange(Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
+
+    /* Return keys in the given range in ascending order */
+    public long[] keysInRange(long lo, long hi){
+        checkOpen();
+        if(lo > hi)
+            return new long[0];
+        long[] keys = new long[rank(hi) - rank(lo) + (contains(hi) ? 1 : 0)];
+        int node = root;
+        int depth = 0;
+        int count = 0;
+        while(count < keys.length){
+            if(node != NIL){
+                if(key(node) < lo){
+                    node = right(node);
+                }else{
+                    path[depth++] = node;
+                    node = left(node);
+                }
+            }else{
+                node = path[--depth];
+                keys[count++] = key(node);
+                node = right(node);
+            }
+        }
+        return keys;
+    }
+
+
+    /* Releases direct buffers without waiting for the garbage collector */
+    private static class Memory{
+        private static final Object UNSAFE;
+        private static final Method INVOKE_CLEANER;
+
+        static{
+            Object unsafe = null;
+            Method invokeCleaner = null;
+            try{
+                Class<?> type = Class.forName("sun.misc.Unsafe");
+                Field field = type.getDeclaredField("theUnsafe");
+                field.setAccessible(true);
+                unsafe = field.get(null);
+                invokeCleaner = type.getMethod("invokeCleaner", ByteBuffer.class);
+            }catch(ReflectiveOperationException | RuntimeException e){
+                // the buffers are released by the garbage collector
+            }
+            UNSAFE = unsafe;
+            INVOKE_CLEANER = invokeCleaner;
+        }
+
+
+        static void free(ByteBuffer buffer){
+            if(INVOKE_CLEANER == null)
+                return;
+            try{
+                INVOKE_CLEANER.invoke(UNSAFE, buffer);
+            }catch(ReflectiveOperationException e){
+                // the buffer is released by the garbage collector
+            }
+        }
+    }
+}
@@ -0,0 +1,670 @@
+package avlTree;
+import java.util.*;
+
+/**
+ * AVL tree which keeps its nodes in a pool of parallel arrays instead of node objects.
+ * A node is a slot index, the children links, heights and sizes are int arrays
+ * and keys and values are kept in object arrays. Slot 0 is the empty subtree.
+ * Slots released by the deletes are reused through a free list linked by the left array.
+ */
+public class PooledAVLTree <Key extends Comparable<Key>, Value>{
+    /* Upper bound of the AVL tree height for any int sized tree (1.44 * log2(n)) */
+    private static final int MAX_HEIGHT = 64;
+    private static final int NIL = 0;
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private int root = NIL;
+
+    /* Node pool, slot NIL has height -1 and size 0 */
+    private int[] left;
+    private int[] right;
+    private int[] height;
+    private int[] size;
+    private Object[] keys;
+    private Object[] values;
+
+    /* Next never used slot and the head of released slots list */
+    private int next = 1;
+    private int free = NIL;
+
+    /* Reusable stack of the slots visited by the write path and the taken directions */
+    private final int[] path = new int[MAX_HEIGHT];
+    private final boolean[] pathLeft = new boolean[MAX_HEIGHT];
+
+    private ValidationPolicy validationPolicy = ValidationPolicy.SAMPLED;
+    private int writesSinceFullCheck;
+
+
+    /* Counstructor */
+    public PooledAVLTree(){
+        this(DEFAULT_CAPACITY);
+    }
+
+
+    /* Counstructor with the initial number of nodes the pool can hold */
+    public PooledAVLTree(int capacity){
+        if(capacity < 0)
+            throw new IllegalArgumentException("Argument capacity to PooledAVLTree(int) is negative");
+        capacity++;
+        left = new int[capacity];
+        right = new int[capacity];
+        height = new int[capacity];
+        size = new int[capacity];
+        keys = new Object[capacity];
+        values = new Object[capacity];
+        height[NIL] = -1;
+    }
+
+
+    /* Check if the tree is empty */
+    public boolean isEmpty(){
+        return root == NIL;
+    }
+
+
+    /* Retruns the number of nodes in tree */
+    public int size(){
+        return size[root];
+    }
+
+
+    /* Returns the number of nodes the pool can hold without growing */
+    public int capacity(){
+        return left.length - 1;
+    }
+
+
+    /** Return the height of the interal AVL tree.
+     * It is assumed ths the height of an empty tree is -1
+     * and the height of a tree with just one node is 0
+     */
+    public int height(){
+        return height[root];
+    }
+
+
+    @SuppressWarnings("unchecked")
+    private Key key(int node){
+        return (Key) keys[node];
+    }
+
+
+    @SuppressWarnings("unchecked")
+    private Value value(int node){
+        return (Value) values[node];
+    }
+
+
+    /* Return the value associated with the given key */
+    public Value get(Key key){
+        if(key == null)
+            throw new IllegalArgumentException("Argument to get is null");
+        int node = get(root, key);
+        return (node == NIL) ? null : value(node);
+    }
+
+
+    /* Iteratively search and returns slot associated whith the given key */
+    private int get(int node, Key key){
+        while(node != NIL){
+            int compare = key.compareTo(key(node));
+            if(compare < 0)
+                node = left[node];
+            else if(compare > 0)
+                node = right[node];
+            else
+                return node;
+        }
+        return NIL;
+    }
+
+
+    /* Checks if the AVL tree contains the given key */
+    public boolean contains(Key key){
+        return get(key) != null;
+    }
+
+
+    /* Inserts specified key-value pair into the AVL tree */
+    public void put(Key key, Value value){
+        if(key == null)
+            throw new IllegalArgumentException("Argument key to put(Key, Value) is null");
+        if(value == null){
+            delete(key);
+            return;
+        }
+
+        int node = root;
+        int depth = 0;
+        while(node != NIL){
+            int compare = key.compareTo(key(node));
+            if(compare == 0){
+                values[node] = value;
+                return;
+            }
+            path[depth] = node;
+            pathLeft[depth++] = compare < 0;
+            node = (compare < 0) ? left[node] : right[node];
+        }
+
+        rebalancePath(depth, allocate(key, value));
+        assert validateWrite(key);
+    }
+
+
+    /* Takes a slot from the free list or from the end of the pool */
+    private int allocate(Key key, Value value){
+        int node;
+        if(free != NIL){
+            node = free;
+            free = left[node];
+        }else{
+            if(next == left.length)
+                grow();
+            node = next++;
+        }
+        left[node] = NIL;
+        right[node] = NIL;
+        height[node] = 0;
+        size[node] = 1;
+        keys[node] = key;
+        values[node] = value;
+        return node;
+    }
+
+
+    /* Returns the slot to the free list and releases its key and value */
+    private void release(int node){
+        keys[node] = null;
+        values[node] = null;
+        left[node] = free;
+        free = node;
+    }
+
+
+    /* Doubles the pool capacity */
+    private void grow(){
+        int capacity = Math.max(2 * left.length, DEFAULT_CAPACITY);
+        left = Arrays.copyOf(left, capacity);
+        right = Arrays.copyOf(right, capacity);
+        height = Arrays.copyOf(height, capacity);
+        size = Arrays.copyOf(size, capacity);
+        keys = Arrays.copyOf(keys, capacity);
+        values = Arrays.copyOf(values, capacity);
+    }
+
+
+    /** Links the given subtree to the top of the path stack.
+     * Than rebalancing the nodes form the path top to the root node if need
+     */
+    private void rebalancePath(int depth, int child){
+        while(depth > 0){
+            int node = path[--depth];
+            if(pathLeft[depth])
+                left[node] = child;
+            else
+                right[node] = child;
+
+            size[node] = 1 + size[left[node]] + size[right[node]];
+            height[node] = 1 + Math.max(height[left[node]], height[right[node]]);
+            child = balance(node);
+        }
+        root = child;
+    }
+
+
+    /* Restores AVL property of the subtree */
+    private int balance(int node){
+        if(balanceFactor(node) < -1){
+            if(balanceFactor(right[node]) > 0){
+                right[node] = rotateRight(right[node]);
+            }
+            node = rotateLeft(node);
+        }else if(balanceFactor(node) > 1){
+            if(balanceFactor(left[node]) < 0){
+                left[node] = rotateLeft(left[node]);
+            }
+            node = rotateRight(node);
+        }
+        return node;
+    }
+
+
+    /* Returns the difference in height of the left and right subtrees */
+    private int balanceFactor(int node){
+        return height[left[node]] - height[right[node]];
+    }
+
+
+    /* Rotates the given subtree to the right */
+    private int rotateRight(int node){
+        int y = left[node];
+        left[node] = right[y];
+        right[y] = node;
+        size[y] = size[node];
+        size[node] = 1 + size[left[node]] + size[right[node]];
+
+        height[node] = 1 + Math.max(height[left[node]], height[right[node]]);
+        height[y] = 1 + Math.max(height[left[y]], height[right[y]]);
+
+        return y;
+    }
+
+
+    /* Rotates the given subtree to the left */
+    private int rotateLeft(int node){
+        int y = right[node];
+        right[node] = left[y];
+        left[y] = node;
+
+        size[y] = size[node];
+        size[node] = 1 + size[left[node]] + size[right[node]];
+
+        height[node] = 1 + Math.max(height[left[node]], height[right[node]]);
+        height[y] = 1 + Math.max(height[left[y]], height[right[y]]);
+
+        return y;
+    }
+
+
+    /* Removes the specified key and its value from the tree */
+    public void delete(Key key){
+        if(key == null)
+            throw new IllegalArgumentException("Argument key to delete(Key) is null");
+        int node = root;
+        int depth = 0;
+        while(node != NIL){
+            int cmp = key.compareTo(key(node));
+            if(cmp == 0)
+                break;
+            path[depth] = node;
+            pathLeft[depth++] = cmp < 0;
+            node = (cmp < 0) ? left[node] : right[node];
+        }
+        if(node == NIL)
+            return;
+
+        int child;
+        if(left[node] == NIL)
+            child = right[node];
+        else if(right[node] == NIL)
+            child = left[node];
+        else{
+            /* The successor takes the place of the removed node on the path stack */
+            int top = depth++;
+            pathLeft[top] = false;
+            int successor = right[node];
+            while(left[successor] != NIL){
+                path[depth] = successor;
+                pathLeft[depth++] = true;
+                successor = left[successor];
+            }
+            child = right[successor];
+            left[successor] = left[node];
+            right[successor] = right[node];
+            path[top] = successor;
+        }
+
+        release(node);
+        rebalancePath(depth, child);
+        assert validateWrite(key);
+    }
+
+
+    /* Removes the smallest key and associated value from the tree */
+    public void deleteMin(){
+        if(isEmpty())
+            return;
+        int node = root;
+        int depth = 0;
+        while(left[node] != NIL){
+            path[depth] = node;
+            pathLeft[depth++] = true;
+            node = left[node];
+        }
+        int child = right[node];
+        Key key = key(node);
+        release(node);
+        rebalancePath(depth, child);
+        assert validateWrite(key);
+    }
+
+
+    /* Removes the largest key and associated value from the tree */
+    public void deleteMax(){
+        if(isEmpty())
+            return;
+        int node = root;
+        int depth = 0;
+        while(right[node] != NIL){
+            path[depth] = node;
+            pathLeft[depth++] = false;
+            node = right[node];
+        }
+        int child = left[node];
+        Key key = key(node);
+        release(node);
+        rebalancePath(depth, child);
+        assert validateWrite(key);
+    }
+
+
+    /* Returns the smallest key form the tree */
+    public Key min(){
+        if(isEmpty())
+            return null;
+        int node = root;
+        while(left[node] != NIL)
+            node = left[node];
+        return key(node);
+    }
+
+
+    /* Returns the larges key form the tree */
+    public Key max(){
+        if(isEmpty())
+            return null;
+        int node = root;
+        while(right[node] != NIL)
+            node = right[node];
+        return key(node);
+    }
+
+
+    /* Returns the largest key in the tree
+    /* less than or equal to given key */
+    public Key floor(Key key){
+        if(isEmpty())
+            return null;
+        int node = root;
+        int floor = NIL;
+        while(node != NIL){
+            int cmp = key.compareTo(key(node));
+            if(cmp == 0)
+                return key(node);
+            if(cmp < 0)
+                node = left[node];
+            else{
+                floor = node;
+                node = right[node];
+            }
+        }
+        return (floor == NIL) ? null : key(floor);
+    }
+
+
+    /* Return the smallest key in the tree
+    /* grater than or equal to the given key */
+    public Key ceiling(Key key){
+        if(isEmpty())
+            return null;
+        int node = root;
+        int ceiling = NIL;
+        while(node != NIL){
+            int cmp = key.compareTo(key(node));
+            if(cmp == 0)
+                return key(node);
+            if(cmp > 0)
+                node = right[node];
+            else{
+                ceiling = node;
+                node = left[node];
+            }
+        }
+        return (ceiling == NIL) ? null : key(ceiling);
+    }
+
+
+    /* Retrurns the k-th smallest key in the tree
+    *  k index starts from 0 */
+    public Key select(int k){
+        if(k < 0 || k >= size())
+            return null;
+        int node = root;
+        while(true){
+            int leftSize = size[left[node]];
+            if(leftSize > k)
+                node = left[node];
+            else if(leftSize < k){
+                k -= leftSize + 1;
+                node = right[node];
+            }
+            else
+                return key(node);
+        }
+    }
+
+
+    /* Returns the number of keys on the tree
+    /* strictly less than key */
+    public int rank(Key key){
+        if (key == null){
+            throw new IllegalArgumentException("argument key to rank(key) is null");
+        }
+        int node = root;
+        int rank = 0;
+        while(node != NIL){
+            int cmp = key.compareTo(key(node));
+            if(cmp < 0)
+                node = left[node];
+            else if(cmp > 0){
+                rank += 1 + size[left[node]];
+                node = right[node];
+            }
+            else
+                return rank + size[left[node]];
+        }
+        return rank;
+    }
+
+
+    /* Returns all keys on the tree */
+    public Iterable<Key> keys(){
+        return keysInOrder();
+    }
+
+
+    /* Returns all keys on the tree in-order traversal*/
+    public Iterable<Key> keysInOrder(){
+        List<Key> list = new ArrayList<>(size());
+        keysInOrder(root, list);
+        return list;
+    }
+
+
+    /* Adds the keys in the subtree to queue following an in-order traversal. */
+    private void keysInOrder(int node, List<Key> list){
+        if(node == NIL)
+            return;
+        keysInOrder(left[node], list);
+        list.add(key(node));
+        keysInOrder(right[node], list);
+    }
+
+
+    /* Returns all keys in the tree folowing a level-order traversal */
+    public Iterable<Key> keysLevelOrder(){
+        List<Key> list = new ArrayList<>(size());
+        if(isEmpty())
+            return list;
+        int[] queue = new int[size()];
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = root;
+        while(head < tail){
+            int x = queue[head++];
+            list.add(key(x));
+            if(left[x] != NIL)
+                queue[tail++] = left[x];
+            if(right[x] != NIL)
+                queue[tail++] = right[x];
+        }
+        return list;
+    }
+
+
+    /* Returns all keys in the tree folowing a level-order traversal, levels are separated by null */
+    public Iterable<Key> keysLevelOrderSeparated(){
+        List<Key> list = new ArrayList<>();
+        if(isEmpty())
+            return list;
+        int[] queue = new int[size()];
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = root;
+        while(head < tail){
+            int levelEnd = tail;
+            while(head < levelEnd){
+                int x = queue[head++];
+                list.add(key(x));
+                if(left[x] != NIL)
+                    queue[tail++] = left[x];
+                if(right[x] != NIL)
+                    queue[tail++] = right[x];
+            }
+            list.add(null);
+        }
+        return list;
+    }
+
+
+    /* Return keys in the given range */
+    public List<Key> keysInRange(Key low, Key hi){
+        if(low == null || hi == null)
+            throw new IllegalArgumentException("argument to keysInRange() are null");
+        List<Key> keysInRangeList = new ArrayList<>();
+        keysInRange(root, keysInRangeList, low, hi);
+        return keysInRangeList;
+    }
+
+
+    /* Return keys in the given range */
+    private void keysInRange(int node, List<Key> list, Key lo, Key hi){
+        if(node == NIL)
+            return;
+        if(key(node).compareTo(lo) < 0){
+            keysInRange(right[node], list, lo, hi);
+            return;
+        }
+        if(key(node).compareTo(hi) > 0){
+            keysInRange(left[node], list, lo, hi);
+            return;
+        }
+        keysInRange(left[node], list, lo, hi);
+        list.add(key(node));
+        keysInRange(right[node], list, lo, hi);
+    }
+
+
+    /** Validates the whole tree in a single O(n) pass: the symmetric order, the AVL balance and
+     * the heights and sizes of every slot against its children
+     */
+    public ValidationReport validate(){
+        Validation validation = new Validation();
+        validate(root, null, null, 0, validation);
+        return validation.report(height());
+    }
+
+
+    /* Validates only the slots on the path to the key and their children in O(log n) */
+    public ValidationReport validatePath(Key key){
+        if(key == null)
+            throw new IllegalArgumentException("argument key to validatePath() is null");
+        Validation validation = new Validation();
+        Key lo = null;
+        Key hi = null;
+        int node = root;
+        for(int depth = 0; node != NIL && depth < MAX_HEIGHT; depth++){
+            validateNode(node, lo, hi, validation);
+            if(left[node] != NIL)
+                validateNode(left[node], lo, key(node), validation);
+            if(right[node] != NIL)
+                validateNode(right[node], key(node), hi, validation);
+            int cmp = key.compareTo(key(node));
+            if(cmp == 0)
+                break;
+            if(cmp < 0){
+                hi = key(node);
+                node = left[node];
+            }else{
+                lo = key(node);
+                node = right[node];
+            }
+        }
+        return validation.report(height());
+    }
+
+
+    /* Sets the checks the writes run when assertions are enabled */
+    public void setValidationPolicy(ValidationPolicy policy){
+        if(policy == null)
+            throw new IllegalArgumentException("argument policy to setValidationPolicy() is null");
+        validationPolicy = policy;
+    }
+
+
+    /* Runs the checks of the validation policy after a write to the key. Called from assert, so it returns true or throws */
+    private boolean validateWrite(Key key){
+        ValidationReport report = null;
+        int interval = validationPolicy.fullCheckInterval();
+        if(interval > 0 && ++writesSinceFullCheck >= interval){
+            writesSinceFullCheck = 0;
+            report = validate();
+        }else if(validationPolicy.checksPath()){
+            report = validatePath(key);
+        }
+        if(report != null && !report.isValid())
+            throw new AssertionError("AVL tree invariant violated: " + report);
+        return true;
+    }
+
+
+    /* Validates the subtree recursively, the walk stops below MAX_HEIGHT so that a cycle cannot loop forever */
+    private void validate(int node, Key lo, Key hi, int depth, Validation validation){
+        if(node == NIL)
+            return;
+        if(depth >= MAX_HEIGHT){
+            validation.violation("Path deeper than " + MAX_HEIGHT + " at key " + key(node));
+            return;
+        }
+        validateNode(node, lo, hi, validation);
+        validate(left[node], lo, key(node), depth + 1, validation);
+        validate(right[node], key(node), hi, depth + 1, validation);
+    }
+
+
+    /* Checks the slot against the key bounds of its position and its height and size against its children */
+    private void validateNode(int node, Key lo, Key hi, Validation validation){
+        validation.checkedNodes++;
+        if(key(node) == null || value(node) == null){
+            validation.violation("Null key or value at slot " + node);
+            return;
+        }
+        if((lo != null && key(node).compareTo(lo) <= 0) || (hi != null && key(node).compareTo(hi) >= 0))
+            validation.violation("Key " + key(node) + " is out of the order bounds (" + lo + ", " + hi + ")");
+        if(height[node] != 1 + Math.max(height[left[node]], height[right[node]]))
+            validation.violation("Wrong height " + height[node] + " at key " + key(node));
+        int bf = balanceFactor(node);
+        if(bf > 1 || bf < -1)
+            validation.violation("Balance factor " + bf + " at key " + key(node));
+        if(size[node] != 1 + size[left[node]] + size[right[node]])
+            validation.violation("Wrong size " + size[node] + " at key " + key(node));
+    }
+
+
+    /* Collects the results of a validation */
+    private static class Validation{
+        private int checkedNodes;
+        private int violationCount;
+        private final List<String> violations = new ArrayList<>();
+
+        void violation(String message){
+            if(violationCount++ < ValidationReport.MAX_VIOLATIONS)
+                violations.add(message);
+        }
+
+        ValidationReport report(int height){
+            return new ValidationReport(checkedNodes, height, violationCount, violations);
+        }
+    }
+}
@@ -0,0 +1,622 @@
+package avlTree;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * Thread safe ordered map for write heavy workloads. The key space is split into ranges, the shards,
+ * and every shard is an independent AVLTree behind its own StampedLock. Writers of different shards
+ * never wait for each other, so writes of uniformly spread keys scale with the cores as long as there
+ * are clearly more shards than threads. Readers of single keys walk their shard optimistically and
+ * validate the walk against the version of its StampedLock.
+ *
+ * The shards are kept in an array sorted by their lower bounds and a key is routed to its shard by a
+ * binary search. The array is never changed: a split or merge publishes a new array and retires the
+ * old shards under their write locks, an operation which finds its shard retired routes the key again.
+ * A shard is split at its median when it grows over maxShardSize keys or when it takes LOAD_SKEW times
+ * the average share of the writes, adjacent cold shards are merged when they hold together at most a
+ * quarter of maxShardSize keys. Splits and merges are serialized by one lock, which writers only try.
+ *
+ * size, rank and select add up the sizes of the shards before the shard in question, so they cost
+ * O(number of shards) besides the O(log n) inside one shard. They are exact while no writer runs and
+ * otherwise weakly consistent, like the size of the concurrent collections. Prefix sums of the sizes
+ * would be stale after the next write to any shard, and keeping them current would make every writer
+ * update counters shared by all shards.
+ * A range scan reads a snapshot of one shard at a time and continues at the upper bound of that shard,
+ * it returns every key which is present during the whole scan. Taking the snapshot advances the epoch
+ * of the shard tree, so the scan holds the write lock of each shard for that O(1) moment and the
+ * writers of that shard wait meanwhile; the iteration over the snapshot takes no lock.
+ */
+public class ShardedAVLTree <Key extends Comparable<Key>, Value>{
+    private static final int DEFAULT_MAX_SHARD_SIZE = 1 << 15;
+    /* Writes to one shard between two checks of the balance of all shards, a power of 2 */
+    private static final int REBALANCE_INTERVAL = 1 << 13;
+    /* Writes per shard before the load of the shards is compared */
+    private static final int LOAD_SAMPLE = 64;
+    /* A shard with this many times the average load is split */
+    private static final int LOAD_SKEW = 4;
+
+    private final int maxShardSize;
+    /* Shards split for their load alone are at least this large */
+    private final int minHotSplitSize;
+    /* Shards sorted by their ranges, which cover the whole key space */
+    private volatile Shard<Key, Value>[] shards;
+    /* Serializes the splits and merges */
+    private final ReentrantLock resize = new ReentrantLock();
+
+
+    /* Range of keys in its own tree */
+    private static final class Shard <Key extends Comparable<Key>, Value>{
+        /* Lower bound inclusive and upper bound exclusive, null is open */
+        final Key lo;
+        final Key hi;
+        final AVLTree<Key, Value> tree;
+        final StampedLock lock = new StampedLock();
+        /* Set under the write lock once the keys were moved to new shards */
+        volatile boolean retired;
+        /* Size of the tree, written under the write lock and read without it */
+        volatile int size;
+        volatile long writes;
+        /* Writes at the last rebalance, the load is the difference */
+        long checkpoint;
+
+        Shard(Key lo, Key hi, AVLTree<Key, Value> tree){
+            this.lo = lo;
+            this.hi = hi;
+            this.tree = tree;
+            size = tree.size();
+        }
+
+        long load(){
+            return writes - checkpoint;
+        }
+    }
+
+
+    /* Counstructor */
+    public ShardedAVLTree(){
+        this(DEFAULT_MAX_SHARD_SIZE);
+    }
+
+
+    /* Constructor with the size over which a shard is split */
+    public ShardedAVLTree(int maxShardSize){
+        if(maxShardSize < 16)
+            throw new IllegalArgumentException("maxShardSize is less than 16: " + maxShardSize);
+        this.maxShardSize = maxShardSize;
+        minHotSplitSize = Math.max(2, maxShardSize / 16);
+        Shard<Key, Value>[] table = table(1);
+        table[0] = new Shard<>(null, null, new AVLTree<Key, Value>());
+        shards = table;
+    }
+
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static <Key extends Comparable<Key>, Value> Shard<Key, Value>[] table(int length){
+        return (Shard<Key, Value>[]) new Shard[length];
+    }
+
+
+    /* Returns the index of the last shard whose lower bound is less than, or unless strict equal to, the key */
+    private static <Key extends Comparable<Key>, Value> int index(Shard<Key, Value>[] table, Key key, boolean strict){
+        int index = 0;
+        int lo = 1;
+        int hi = table.length - 1;
+        while(lo <= hi){
+            int mid = (lo + hi) >>> 1;
+            int compare = table[mid].lo.compareTo(key);
+            if(compare < 0 || (compare == 0 && !strict)){
+                index = mid;
+                lo = mid + 1;
+            }else
+                hi = mid - 1;
+        }
+        return index;
+    }
+
+
+    private Shard<Key, Value> shardOf(Key key){
+        Shard<Key, Value>[] table = shards;
+        return table[index(table, key, false)];
+    }
+
+
+    /* Check if the tree is empty */
+    public boolean isEmpty(){
+        return size() == 0;
+    }
+
+
+    /* Returns the number of keys, the sum of the shard sizes in O(number of shards) */
+    public int size(){
+        int size = 0;
+        for(Shard<Key, Value> shard : shards)
+            size += shard.size;
+        return size;
+    }
+
+
+    /* Returns the current number of shards */
+    public int shardCount(){
+        return shards.length;
+    }
+
+
+    /* Return the value associated with the given key */
+    public Value get(Key key){
+        if(key == null)
+            throw new IllegalArgumentException("Argument to get is null");
+        while(true){
+            Shard<Key, Value> shard = shardOf(key);
+            StampedLock lock = shard.lock;
+            long stamp = lock.tryOptimisticRead();
+            if(stamp != 0 && !shard.retired){
+                Value value = shard.tree.getOptimistic(key);
+                if(lock.validate(stamp))
+                    return value;
+            }
+            stamp = lock.readLock();
+            try{
+                if(!shard.retired)
+                    return shard.tree.getOptimistic(key);
+            }finally{
+                lock.unlockRead(stamp);
+            }
+        }
+    }
+
+
+    /* Checks if the tree contains the given key */
+    public boolean contains(Key key){
+        return get(key) != null;
+    }
+
+
+    /* Returns the largest key less than or equal to the given key, null if there is none */
+    public Key floor(Key key){
+        if(key == null)
+            throw new IllegalArgumentException("Argument to floor is null");
+        return floorOf(key);
+    }
+
+
+    /* Returns the smallest key greater than or equal to the given key, null if there is none */
+    public Key ceiling(Key key){
+        if(key == null)
+            throw new IllegalArgumentException("Argument to ceiling is null");
+        return ceilingOf(key);
+    }
+
+
+    /* Returns the smallest key, null if the tree is empty */
+    public Key min(){
+        return ceilingOf(null);
+    }
+
+
+    /* Returns the largest key, null if the tree is empty */
+    public Key max(){
+        return floorOf(null);
+    }
+
+
+    /** Returns the floor of the bound, a null bound stands for the largest key. The search starts in the
+     * shard of the bound and continues with the largest keys of the shards before it
+     */
+    private Key floorOf(Key bound){
+        boolean below = false;
+        Shard<Key, Value>[] table = shards;
+        int i = (bound == null) ? table.length - 1 : index(table, bound, false);
+        while(i >= 0){
+            Shard<Key, Value> shard = table[i];
+            long stamp = shard.lock.readLock();
+            try{
+                if(shard.retired){
+                    table = shards;
+                    i = (bound == null) ? table.length - 1 : index(table, bound, below);
+                    continue;
+                }
+                Map.Entry<Key, Value> entry = (bound == null || below) ? shard.tree.lastEntry() : shard.tree.floorEntry(bound);
+                if(entry != null)
+                    return entry.getKey();
+            }finally{
+                shard.lock.unlockRead(stamp);
+            }
+            bound = shard.lo;
+            below = true;
+            i--;
+        }
+        return null;
+    }
+
+
+    /** Returns the ceiling of the bound, a null bound stands for the smallest key. The search starts in
+     * the shard of the bound and continues at the upper bounds of the shards
+     */
+    private Key ceilingOf(Key bound){
+        Shard<Key, Value>[] table = shards;
+        int i = (bound == null) ? 0 : index(table, bound, false);
+        while(i < table.length){
+            Shard<Key, Value> shard = table[i];
+            long stamp = shard.lock.readLock();
+            try{
+                if(shard.retired){
+                    table = shards;
+                    i = (bound == null) ? 0 : index(table, bound, false);
+                    continue;
+                }
+                Map.Entry<Key, Value> entry = (bound == null) ? shard.tree.firstEntry() : shard.tree.ceilingEntry(bound);
+                if(entry != null)
+                    return entry.getKey();
+            }finally{
+                shard.lock.unlockRead(stamp);
+            }
+            bound = shard.hi;
+            i++;
+        }
+        return null;
+    }
+
+
+    /** Returns the number of keys strictly less than key: the rank in its shard plus the sizes of the
+     * shards before it, O(log n + number of shards)
+     */
+    public int rank(Key key){
+        if(key == null)
+            throw new IllegalArgumentException("argument key to rank(key) is null");
+        while(true){
+            Shard<Key, Value>[] table = shards;
+            int i = index(table, key, false);
+            Shard<Key, Value> shard = table[i];
+            int rank;
+            long stamp = shard.lock.readLock();
+            try{
+                if(shard.retired)
+                    continue;
+                rank = shard.tree.rank(key);
+            }finally{
+                shard.lock.unlockRead(stamp);
+            }
+            for(int j = 0; j < i; j++)
+                rank += table[j].size;
+            return rank;
+        }
+    }
+
+
+    /* Retrurns the k-th smallest key, k starts from 0, null if k is out of the tree range, O(log n + number of shards) */
+    public Key select(int k){
+        if(k < 0)
+            return null;
+        retry:
+        while(true){
+            int rest = k;
+            for(Shard<Key, Value> shard : shards){
+                int size = shard.size;
+                if(rest >= size){
+                    rest -= size;
+                    continue;
+                }
+                long stamp = shard.lock.readLock();
+                try{
+                    if(shard.retired)
+                        continue retry;
+                    size = shard.tree.size();
+                    if(rest < size)
+                        return shard.tree.select(rest);
+                    rest -= size;
+                }finally{
+                    shard.lock.unlockRead(stamp);
+                }
+            }
+            return null;
+        }
+    }
+
+
+    /* Return keys in the given range, read shard by shard */
+    public List<Key> keysInRange(Key low, Key hi){
+        if(low == null || hi == null)
+            throw new IllegalArgumentException("argument to keysInRange() are null");
+        List<Key> keys = new ArrayList<>();
+        for(Map.Entry<Key, Value> entry : entries(low, hi))
+            keys.add(entry.getKey());
+        return keys;
+    }
+
+
+    /* Returns all entries in ascending key order, read lazily shard by shard */
+    public Iterable<Map.Entry<Key, Value>> entries(){
+        return entries(null, null);
+    }
+
+
+    /* Returns the entries between lo and hi inclusive in ascending key order, a null bound is open */
+    public Iterable<Map.Entry<Key, Value>> entries(Key lo, Key hi){
+        if(lo != null && hi != null && lo.compareTo(hi) > 0)
+            return Collections.emptyList();
+        return () -> new RangeIterator(lo, hi);
+    }
+
+
+    /** Iterates over a snapshot of one shard at a time. The next shard is routed by the upper bound of
+     * the last one, so the scan follows the shards which are current when it reaches them
+     */
+    private final class RangeIterator implements Iterator<Map.Entry<Key, Value>>{
+        private final Key hi;
+        /* Lower bound of the next shard, null for the first shard */
+        private Key from;
+        private boolean last;
+        private Iterator<Map.Entry<Key, Value>> current = Collections.emptyIterator();
+
+        RangeIterator(Key lo, Key hi){
+            this.from = lo;
+            this.hi = hi;
+        }
+
+        @Override
+        public boolean hasNext(){
+            while(!current.hasNext()){
+                if(last)
+                    return false;
+                open();
+            }
+            return true;
+        }
+
+        @Override
+        public Map.Entry<Key, Value> next(){
+            if(!hasNext())
+                throw new NoSuchElementException();
+            return current.next();
+        }
+
+        private void open(){
+            while(true){
+                Shard<Key, Value>[] table = shards;
+                Shard<Key, Value> shard = table[(from == null) ? 0 : index(table, from, false)];
+                AVLTree<Key, Value> snapshot;
+                /* snapshot() advances the epoch of the tree, so it needs the write lock and stalls the writers of the shard briefly */
+                long stamp = shard.lock.writeLock();
+                try{
+                    if(shard.retired)
+                        continue;
+                    snapshot = shard.tree.snapshot();
+                }finally{
+                    shard.lock.unlockWrite(stamp);
+                }
+                current = snapshot.entryIterator(from, hi, false);
+                last = shard.hi == null || (hi != null && shard.hi.compareTo(hi) > 0);
+                from = shard.hi;
+                return;
+            }
+        }
+    }
+
+
+    /* Inserts specified key-value pair into the tree */
+    public void put(Key key, Value value){
+        write(key, tree -> {
+            tree.put(key, value);
+            return null;
+        });
+    }
+
+
+    /* Removes the specified key and its value from the tree */
+    public void delete(Key key){
+        write(key, tree -> {
+            tree.delete(key);
+            return null;
+        });
+    }
+
+
+    /* Computes the new value of the key atomically, see AVLTree.compute */
+    public Value compute(Key key, BiFunction<? super Key, ? super Value, ? extends Value> function){
+        return write(key, tree -> tree.compute(key, function));
+    }
+
+
+    /* Merges the value into the value of the key atomically, see AVLTree.merge */
+    public Value merge(Key key, Value value, BiFunction<? super Value, ? super Value, ? extends Value> function){
+        return write(key, tree -> tree.merge(key, value, function));
+    }
+
+
+    /* Runs the write on the shard of the key under its write lock and checks the balance of the shards afterwards */
+    private <T> T write(Key key, Function<AVLTree<Key, Value>, T> write){
+        if(key == null)
+            throw new IllegalArgumentException("Key of a write is null");
+        while(true){
+            Shard<Key, Value> shard = shardOf(key);
+            T result;
+            int size;
+            long writes;
+            long stamp = shard.lock.writeLock();
+            try{
+                if(shard.retired)
+                    continue;
+                result = write.apply(shard.tree);
+                size = shard.size = shard.tree.size();
+                writes = ++shard.writes;
+            }finally{
+                shard.lock.unlockWrite(stamp);
+            }
+            afterWrite(shard, size, writes);
+            return result;
+        }
+    }
+
+
+    /* Removes the smallest key and associated value from the tree */
+    public void deleteMin(){
+        deleteEnd(false);
+    }
+
+
+    /* Removes the largest key and associated value from the tree */
+    public void deleteMax(){
+        deleteEnd(true);
+    }
+
+
+    /* Removes the smallest or largest key from the first or last shard which is not empty */
+    private void deleteEnd(boolean max){
+        Shard<Key, Value>[] table = shards;
+        for(int j = 0; j < table.length; j++){
+            Shard<Key, Value> shard = table[max ? table.length - 1 - j : j];
+            if(shard.size == 0)
+                continue;
+            int size;
+            long writes;
+            long stamp = shard.lock.writeLock();
+            try{
+                if(shard.retired){
+                    table = shards;
+                    j = -1;
+                    continue;
+                }
+                if(shard.tree.isEmpty())
+                    continue;
+                if(max)
+                    shard.tree.deleteMax();
+                else
+                    shard.tree.deleteMin();
+                size = shard.size = shard.tree.size();
+                writes = ++shard.writes;
+            }finally{
+                shard.lock.unlockWrite(stamp);
+            }
+            afterWrite(shard, size, writes);
+            return;
+        }
+    }
+
+
+    /* Splits an oversized shard and checks all shards every REBALANCE_INTERVAL writes, unless another thread resizes */
+    private void afterWrite(Shard<Key, Value> shard, int size, long writes){
+        boolean split = size > maxShardSize;
+        if(!split && (writes & (REBALANCE_INTERVAL - 1)) != 0)
+            return;
+        if(!resize.tryLock())
+            return;
+        try{
+            if(split)
+                split(shard);
+            else
+                rebalanceShards();
+        }finally{
+            resize.unlock();
+        }
+    }
+
+
+    /* Merges the small cold shards and splits the large and hot ones */
+    public void rebalance(){
+        resize.lock();
+        try{
+            rebalanceShards();
+        }finally{
+            resize.unlock();
+        }
+    }
+
+
+    /** Merges adjacent shards which hold at most a quarter of maxShardSize keys and take at most the
+     * average load, then splits the shards over maxShardSize and the shards with LOAD_SKEW times the
+     * average load. The loads are compared once every shard took LOAD_SAMPLE writes on average
+     */
+    private void rebalanceShards(){
+        Shard<Key, Value>[] table = shards;
+        int count = table.length;
+        long total = 0;
+        for(Shard<Key, Value> shard : table)
+            total += shard.load();
+        boolean sampled = total >= (long) LOAD_SAMPLE * count;
+
+        int i = 0;
+        while(i + 1 < shards.length){
+            Shard<Key, Value> a = shards[i];
+            Shard<Key, Value> b = shards[i + 1];
+            boolean cold = !sampled || (a.load() + b.load()) * count <= total;
+            if(a.size + b.size <= maxShardSize / 4 && cold)
+                merge(a, b);
+            else
+                i++;
+        }
+        for(Shard<Key, Value> shard : table){
+            boolean hot = sampled && shard.load() * count > LOAD_SKEW * total;
+            if(!shard.retired && (shard.size > maxShardSize || (hot && shard.size >= minHotSplitSize)))
+                split(shard);
+        }
+        if(sampled){
+            for(Shard<Key, Value> shard : shards)
+                shard.checkpoint = shard.writes;
+        }
+    }
+
+
+    /* Splits the shard at its median key into two new shards, called under the resize lock */
+    private void split(Shard<Key, Value> shard){
+        long stamp = shard.lock.writeLock();
+        try{
+            if(shard.retired || shard.tree.size() < 2)
+                return;
+            Key middle = shard.tree.select(shard.tree.size() / 2);
+            AVLTree<Key, Value> right = shard.tree.tailTree(middle);
+            Shard<Key, Value>[] halves = table(2);
+            halves[0] = new Shard<>(shard.lo, middle, shard.tree);
+            halves[1] = new Shard<>(middle, shard.hi, right);
+            replace(shard, 1, halves);
+            shard.retired = true;
+        }finally{
+            shard.lock.unlockWrite(stamp);
+        }
+    }
+
+
+    /* Joins two adjacent shards into one new shard, called under the resize lock */
+    private void merge(Shard<Key, Value> a, Shard<Key, Value> b){
+        long stampA = a.lock.writeLock();
+        long stampB = b.lock.writeLock();
+        try{
+            AVLTree<Key, Value> tree = a.tree;
+            if(!b.tree.isEmpty()){
+                Map.Entry<Key, Value> first = b.tree.firstEntry();
+                Key key = first.getKey();
+                Value value = first.getValue();
+                b.tree.deleteMin();
+                tree = AVLTree.join(a.tree, key, value, b.tree);
+            }
+            Shard<Key, Value>[] merged = table(1);
+            merged[0] = new Shard<>(a.lo, b.hi, tree);
+            replace(a, 2, merged);
+            a.retired = true;
+            b.retired = true;
+        }finally{
+            b.lock.unlockWrite(stampB);
+            a.lock.unlockWrite(stampA);
+        }
+    }
+
+
+    /* Publishes a new shard array in which count shards from first on are replaced */
+    private void replace(Shard<Key, Value> first, int count, Shard<Key, Value>[] with){
+        Shard<Key, Value>[] table = shards;
+        int i = (first.lo == null) ? 0 : index(table, first.lo, false);
+        assert table[i] == first;
+        Shard<Key, Value>[] next = table(table.length - count + with.length);
+        System.arraycopy(table, 0, next, 0, i);
+        System.arraycopy(with, 0, next, i, with.length);
+        System.arraycopy(table, i + count, next, i + with.length, table.length - i - count);
+        shards = next;
+    }
+}
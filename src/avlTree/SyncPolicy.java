@@ -0,0 +1,16 @@
+package avlTree;
+
+/**
+ * When the writes of a DurableAVLTree reach the disk.
+ *   COMMIT - every write returns after its log record was forced to the disk, concurrent writers
+ *            share one force of the log (group commit)
+ *   BATCH  - the log is forced by a background thread once per sync interval, a crash loses at most
+ *            the writes of the last interval
+ *   NONE   - the log is handed to the operating system once per sync interval and never forced,
+ *            the writes survive a crash of the process but not of the machine
+ */
+public enum SyncPolicy {
+    COMMIT,
+    BATCH,
+    NONE
+}
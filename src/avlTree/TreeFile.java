@@ -0,0 +1,234 @@
+package avlTree;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Binary snapshot format of AVLTree: a header of the magic number, the format version and the
+ * number of entries, followed by the entries in ascending key order, every key and value encoded
+ * by its codec. The sorted order lets the reader rebuild the tree by fromSorted in O(n) without
+ * a single comparison based insert or rotation.
+ */
+final class TreeFile {
+    private static final int MAGIC = 0x41564C54;
+    private static final int VERSION = 1;
+    private static final int HEADER = Integer.BYTES + Integer.BYTES + Long.BYTES;
+    private static final int BUFFER_SIZE = 1 << 20;
+    private static final long MAPPED_CHUNK = 1L << 30;
+
+    private TreeFile(){
+
+    }
+
+
+    /* Writes the tree at the current position of the channel through a direct buffer */
+    static <Key, Value> void write(AVLTree<Key, Value> tree, FileChannel channel,
+                                  Codec<Key> keyCodec, Codec<Value> valueCodec) throws IOException{
+        ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        buffer.putInt(MAGIC).putInt(VERSION).putLong(tree.size());
+        for(Map.Entry<Key, Value> entry : tree.entries()){
+            int size = keyCodec.maxSize(entry.getKey()) + valueCodec.maxSize(entry.getValue());
+            if(buffer.remaining() < size){
+                flush(buffer, channel);
+                if(buffer.capacity() < size)
+                    buffer = ByteBuffer.allocateDirect(size);
+            }
+            keyCodec.encode(entry.getKey(), buffer);
+            valueCodec.encode(entry.getValue(), buffer);
+        }
+        flush(buffer, channel);
+    }
+
+
+    private static void flush(ByteBuffer buffer, FileChannel channel) throws IOException{
+        buffer.flip();
+        while(buffer.hasRemaining())
+            channel.write(buffer);
+        buffer.clear();
+    }
+
+
+    /* Reads a tree from the current position of the channel through a direct buffer, the channel may be read past the tree */
+    static <Key, Value> AVLTree<Key, Value> read(FileChannel channel, Codec<Key> keyCodec, Codec<Value> valueCodec,
+                                                 Comparator<? super Key> comparator) throws IOException{
+        return read(new ChannelSource(channel), keyCodec, valueCodec, comparator);
+    }
+
+
+    /* Reads a tree from the current position of the channel through memory mapped chunks of the file */
+    static <Key, Value> AVLTree<Key, Value> readMapped(FileChannel channel, Codec<Key> keyCodec, Codec<Value> valueCodec,
+                                                       Comparator<? super Key> comparator) throws IOException{
+        return read(new MappedSource(channel), keyCodec, valueCodec, comparator);
+    }
+
+
+    private static <Key, Value> AVLTree<Key, Value> read(Source source, Codec<Key> keyCodec, Codec<Value> valueCodec,
+                                                         Comparator<? super Key> comparator) throws IOException{
+        source.require(HEADER);
+        ByteBuffer header = source.buffer();
+        if(header.getInt() != MAGIC)
+            throw new IOException("Not an AVLTree file");
+        int version = header.getInt();
+        if(version != VERSION)
+            throw new IOException("Unsupported AVLTree file version " + version);
+        long size = header.getLong();
+        if(size < 0 || size > Integer.MAX_VALUE)
+            throw new IOException("Corrupt AVLTree file, size " + size);
+
+        EntryReader<Key, Value> reader = new EntryReader<>(source, keyCodec, valueCodec, comparator);
+        try{
+            return AVLTree.fromSorted(reader, reader.values, (int) size, comparator);
+        }catch(UncheckedIOException e){
+            throw e.getCause();
+        }catch(IllegalArgumentException e){
+            throw new IOException("Corrupt AVLTree file", e);
+        }
+    }
+
+
+    /** Decodes one entry for every key, the fromSorted build takes the value right after its key.
+     * Every key is compared with the one before it in the order of the tree, a file which is not
+     * strictly ascending is corrupt
+     */
+    private static class EntryReader<Key, Value> implements Iterator<Key>{
+        private final Source source;
+        private final Codec<Key> keyCodec;
+        private final Codec<Value> valueCodec;
+        /* Order of the keys, null for their natural order */
+        private final Comparator<? super Key> comparator;
+        private Key previous;
+        private long entry;
+        private Value value;
+
+        final Iterator<Value> values = new Iterator<Value>(){
+            public boolean hasNext(){ return true; }
+            public Value next(){ return value; }
+        };
+
+        EntryReader(Source source, Codec<Key> keyCodec, Codec<Value> valueCodec, Comparator<? super Key> comparator){
+            this.source = source;
+            this.keyCodec = keyCodec;
+            this.valueCodec = valueCodec;
+            this.comparator = comparator;
+        }
+
+        @Override
+        public boolean hasNext(){
+            return true;
+        }
+
+        @Override
+        public Key next(){
+            try{
+                while(true){
+                    ByteBuffer buffer = source.buffer();
+                    int start = buffer.position();
+                    try{
+                        Key key = keyCodec.decode(buffer);
+                        value = valueCodec.decode(buffer);
+                        if(key == null || value == null)
+                            throw new IOException("Corrupt AVLTree file, null key or value at entry " + entry);
+                        if(previous != null && compare(previous, key) >= 0)
+                            throw new IOException("Corrupt AVLTree file, keys are not strictly ascending at entry " + entry);
+                        previous = key;
+                        entry++;
+                        return key;
+                    }catch(BufferUnderflowException e){
+                        buffer.position(start);
+                        source.refill();
+                    }
+                }
+            }catch(IOException e){
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private int compare(Key a, Key b){
+            return (comparator == null) ? ((Comparable<? super Key>) a).compareTo(b) : comparator.compare(a, b);
+        }
+    }
+
+
+    /* Window of the file the entries are decoded from */
+    private interface Source{
+        ByteBuffer buffer();
+
+        /* Keeps the bytes from the buffer position on and makes at least one more byte available */
+        void refill() throws IOException;
+
+        default void require(int bytes) throws IOException{
+            while(buffer().remaining() < bytes)
+                refill();
+        }
+    }
+
+
+    /* Reads the channel into a direct buffer, the buffer grows for entries larger than it */
+    private static class ChannelSource implements Source{
+        private final FileChannel channel;
+        private ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+        ChannelSource(FileChannel channel){
+            this.channel = channel;
+            buffer.flip();
+        }
+
+        @Override
+        public ByteBuffer buffer(){
+            return buffer;
+        }
+
+        @Override
+        public void refill() throws IOException{
+            buffer.compact();
+            if(!buffer.hasRemaining()){
+                ByteBuffer larger = ByteBuffer.allocateDirect(2 * buffer.capacity());
+                buffer.flip();
+                larger.put(buffer);
+                buffer = larger;
+            }
+            int read = channel.read(buffer);
+            buffer.flip();
+            if(read < 0)
+                throw new EOFException("Unexpected end of the AVLTree file");
+        }
+    }
+
+
+    /* Maps the file in chunks of up to MAPPED_CHUNK bytes, the next chunk starts at the entry which did not fit */
+    private static class MappedSource implements Source{
+        private final FileChannel channel;
+        private long base;
+        private ByteBuffer buffer;
+
+        MappedSource(FileChannel channel) throws IOException{
+            this.channel = channel;
+            base = channel.position();
+            buffer = ByteBuffer.allocate(0);
+        }
+
+        @Override
+        public ByteBuffer buffer(){
+            return buffer;
+        }
+
+        @Override
+        public void refill() throws IOException{
+            long start = base + buffer.position();
+            long length = Math.min(channel.size() - start, Math.max(MAPPED_CHUNK, 2L * buffer.remaining() + 1));
+            if(length <= buffer.remaining())
+                throw new EOFException("Unexpected end of the AVLTree file");
+            if(length > Integer.MAX_VALUE)
+                throw new IOException("Entry of the AVLTree file is larger than a mapped buffer");
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+            base = start;
+        }
+    }
+}
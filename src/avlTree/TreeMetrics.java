@@ -0,0 +1,213 @@
+package avlTree;
+import java.lang.management.ManagementFactory;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Operation counters of an AVLTree, recorded only after AVLTree.enableMetrics().
+ * get, put and delete count the comparisons and the depth of their descent, deleteMin and deleteMax
+ * count as deletes which descend without comparisons. The compute and merge family counts as a put,
+ * or as a delete when it removes the key. putAll, deleteRange, tailTree, headTree, splitAtRank and
+ * the trees emptied by join and the set operations count as bulk writes. Every write is recorded after
+ * its rebalancing pass, so its single and double rotations are charged to it. get and put record
+ * their latency.
+ * The counters belong to the thread that writes the tree, JMX and snapshots read them without
+ * synchronization and may lag behind.
+ */
+public final class TreeMetrics implements TreeMetricsMBean {
+    private long gets;
+    private long puts;
+    private long deletes;
+    private long bulkWrites;
+    private long comparisons;
+    private long depths;
+    private int maxDepth;
+    private long singleRotations;
+    private long doubleRotations;
+    private long rebalancedWrites;
+    private int pendingRotations;
+    private final LatencyHistogram getLatency = new LatencyHistogram();
+    private final LatencyHistogram putLatency = new LatencyHistogram();
+
+
+    TreeMetrics(){
+
+    }
+
+
+    /* A get compares the key with every node on its path, so its depth is its number of comparisons */
+    void recordGet(int comparisons, long nanos){
+        gets++;
+        recordDescent(comparisons, comparisons);
+        getLatency.record(nanos);
+    }
+
+
+    void recordPut(int comparisons, long nanos){
+        puts++;
+        recordDescent(comparisons, comparisons);
+        recordWrite();
+        putLatency.record(nanos);
+    }
+
+
+    void recordDelete(int comparisons, int depth){
+        deletes++;
+        recordDescent(comparisons, depth);
+        recordWrite();
+    }
+
+
+    void recordBulkWrite(){
+        bulkWrites++;
+        recordWrite();
+    }
+
+
+    void recordRotation(boolean isDouble){
+        if(isDouble)
+            doubleRotations++;
+        else
+            singleRotations++;
+        pendingRotations++;
+    }
+
+
+    private void recordDescent(int comparisons, int depth){
+        this.comparisons += comparisons;
+        depths += depth;
+        if(depth > maxDepth)
+            maxDepth = depth;
+    }
+
+
+    /* Charges the rotations since the last write to the write which just finished its rebalancing */
+    private void recordWrite(){
+        if(pendingRotations > 0)
+            rebalancedWrites++;
+        pendingRotations = 0;
+    }
+
+
+    /* Returns a copy of the current counters */
+    public Snapshot snapshot(){
+        return new Snapshot(this);
+    }
+
+
+    /* Registers the metrics as the MBean avlTree:type=TreeMetrics,name=<name> of the platform MBean server */
+    public ObjectName register(String name){
+        try{
+            ObjectName objectName = new ObjectName("avlTree:type=TreeMetrics,name=" + ObjectName.quote(name));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+            return objectName;
+        }catch(JMException e){
+            throw new IllegalStateException("Cannot register the tree metrics " + name, e);
+        }
+    }
+
+
+    /* Removes the MBean registered by register() */
+    public void unregister(ObjectName objectName){
+        try{
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+        }catch(JMException e){
+            throw new IllegalStateException("Cannot unregister the tree metrics " + objectName, e);
+        }
+    }
+
+
+    @Override
+    public void reset(){
+        gets = 0;
+        puts = 0;
+        deletes = 0;
+        bulkWrites = 0;
+        comparisons = 0;
+        depths = 0;
+        maxDepth = 0;
+        singleRotations = 0;
+        doubleRotations = 0;
+        rebalancedWrites = 0;
+        pendingRotations = 0;
+        getLatency.reset();
+        putLatency.reset();
+    }
+
+
+    @Override public long getGets(){ return gets; }
+    @Override public long getPuts(){ return puts; }
+    @Override public long getDeletes(){ return deletes; }
+    @Override public long getBulkWrites(){ return bulkWrites; }
+    @Override public long getComparisons(){ return comparisons; }
+    @Override public double getComparisonsPerOperation(){ return perOperation(comparisons); }
+    @Override public double getAverageDepth(){ return perOperation(depths); }
+    @Override public int getMaxDepth(){ return maxDepth; }
+    @Override public long getSingleRotations(){ return singleRotations; }
+    @Override public long getDoubleRotations(){ return doubleRotations; }
+    @Override public long getRebalancedWrites(){ return rebalancedWrites; }
+    @Override public double getRotationsPerWrite(){
+        long writes = puts + deletes + bulkWrites;
+        return (writes == 0) ? 0 : (double) (singleRotations + doubleRotations) / writes;
+    }
+    @Override public double getGetLatencyMeanNanos(){ return getLatency.mean(); }
+    @Override public long getGetLatencyP99Nanos(){ return getLatency.percentile(99); }
+    @Override public long getGetLatencyMaxNanos(){ return getLatency.max(); }
+    @Override public double getPutLatencyMeanNanos(){ return putLatency.mean(); }
+    @Override public long getPutLatencyP99Nanos(){ return putLatency.percentile(99); }
+    @Override public long getPutLatencyMaxNanos(){ return putLatency.max(); }
+
+
+    /* Average over the operations which descend the tree, the bulk writes have no single descent */
+    private double perOperation(long total){
+        long operations = gets + puts + deletes;
+        return (operations == 0) ? 0 : (double) total / operations;
+    }
+
+
+    /**
+     * Immutable copy of the metrics at one point in time.
+     */
+    public static final class Snapshot{
+        public final long gets;
+        public final long puts;
+        public final long deletes;
+        public final long bulkWrites;
+        public final long comparisons;
+        public final double comparisonsPerOperation;
+        public final double averageDepth;
+        public final int maxDepth;
+        public final long singleRotations;
+        public final long doubleRotations;
+        public final long rebalancedWrites;
+        public final double rotationsPerWrite;
+        public final LatencyHistogram getLatency;
+        public final LatencyHistogram putLatency;
+
+        private Snapshot(TreeMetrics metrics){
+            gets = metrics.gets;
+            puts = metrics.puts;
+            deletes = metrics.deletes;
+            bulkWrites = metrics.bulkWrites;
+            comparisons = metrics.comparisons;
+            comparisonsPerOperation = metrics.getComparisonsPerOperation();
+            averageDepth = metrics.getAverageDepth();
+            maxDepth = metrics.maxDepth;
+            singleRotations = metrics.singleRotations;
+            doubleRotations = metrics.doubleRotations;
+            rebalancedWrites = metrics.rebalancedWrites;
+            rotationsPerWrite = metrics.getRotationsPerWrite();
+            getLatency = metrics.getLatency.copy();
+            putLatency = metrics.putLatency.copy();
+        }
+
+        @Override
+        public String toString(){
+            return String.format("gets %d, puts %d, deletes %d, bulk writes %d, comparisons/op %.2f, depth avg %.2f max %d,"
+                            + " rotations single %d double %d, rebalanced writes %d, rotations/write %.3f%n"
+                            + "get latency: %s%nput latency: %s",
+                    gets, puts, deletes, bulkWrites, comparisonsPerOperation, averageDepth, maxDepth,
+                    singleRotations, doubleRotations, rebalancedWrites, rotationsPerWrite, getLatency, putLatency);
+        }
+    }
+}
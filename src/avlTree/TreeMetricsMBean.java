@@ -0,0 +1,26 @@
+package avlTree;
+
+/**
+ * JMX view of the TreeMetrics of a tree.
+ */
+public interface TreeMetricsMBean {
+    long getGets();
+    long getPuts();
+    long getDeletes();
+    long getBulkWrites();
+    long getComparisons();
+    double getComparisonsPerOperation();
+    double getAverageDepth();
+    int getMaxDepth();
+    long getSingleRotations();
+    long getDoubleRotations();
+    long getRebalancedWrites();
+    double getRotationsPerWrite();
+    double getGetLatencyMeanNanos();
+    long getGetLatencyP99Nanos();
+    long getGetLatencyMaxNanos();
+    double getPutLatencyMeanNanos();
+    long getPutLatencyP99Nanos();
+    long getPutLatencyMaxNanos();
+    void reset();
+}
@@ -0,0 +1,42 @@
+package avlTree;
+
+/**
+ * Decides which invariant checks the writes of an AVLTree run when assertions are enabled.
+ * The path check looks only at the nodes on the path of the written key and their children
+ * in O(log n), the full check validates the whole tree in O(n) once every fullCheckInterval writes.
+ * Without -ea no check runs, whatever the policy is.
+ */
+public final class ValidationPolicy {
+    /* No checks */
+    public static final ValidationPolicy OFF = new ValidationPolicy(false, 0);
+
+    /* Path check after every write and a full check every 1024 writes */
+    public static final ValidationPolicy SAMPLED = new ValidationPolicy(true, 1024);
+
+    /* Full check after every write */
+    public static final ValidationPolicy FULL = new ValidationPolicy(true, 1);
+
+    private final boolean checkPath;
+    private final int fullCheckInterval;
+
+
+    /* fullCheckInterval 0 turns the full checks off */
+    public ValidationPolicy(boolean checkPath, int fullCheckInterval){
+        if(fullCheckInterval < 0)
+            throw new IllegalArgumentException("Argument fullCheckInterval of ValidationPolicy is negative");
+        this.checkPath = checkPath;
+        this.fullCheckInterval = fullCheckInterval;
+    }
+
+
+    /* Checks if every write validates the path of its key */
+    public boolean checksPath(){
+        return checkPath;
+    }
+
+
+    /* Returns the number of writes between two full checks, 0 if there are no full checks */
+    public int fullCheckInterval(){
+        return fullCheckInterval;
+    }
+}
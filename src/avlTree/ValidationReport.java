@@ -0,0 +1,68 @@
+package avlTree;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Result of a tree validation: the number of checked nodes, the height of the checked part
+ * and the found violations of the tree invariants. At most MAX_VIOLATIONS messages are kept,
+ * violationCount() counts all of them.
+ */
+public final class ValidationReport {
+    static final int MAX_VIOLATIONS = 100;
+
+    private final int checkedNodes;
+    private final int height;
+    private final int violationCount;
+    private final List<String> violations;
+
+
+    ValidationReport(int checkedNodes, int height, int violationCount, List<String> violations){
+        this.checkedNodes = checkedNodes;
+        this.height = height;
+        this.violationCount = violationCount;
+        this.violations = Collections.unmodifiableList(violations);
+    }
+
+
+    /* Checks if no invariant is violated */
+    public boolean isValid(){
+        return violationCount == 0;
+    }
+
+
+    /* Returns the number of nodes the validation visited */
+    public int checkedNodes(){
+        return checkedNodes;
+    }
+
+
+    /* Returns the height of the checked tree, -1 for an empty one */
+    public int height(){
+        return height;
+    }
+
+
+    /* Returns the number of all found violations */
+    public int violationCount(){
+        return violationCount;
+    }
+
+
+    /* Returns the messages of the first found violations */
+    public List<String> violations(){
+        return violations;
+    }
+
+
+    @Override
+    public String toString(){
+        StringBuilder builder = new StringBuilder();
+        builder.append(isValid() ? "valid" : "invalid").append(", ")
+                .append(checkedNodes).append(" nodes checked, height ").append(height);
+        for(String violation : violations)
+            builder.append(System.lineSeparator()).append("  ").append(violation);
+        if(violationCount > violations.size())
+            builder.append(System.lineSeparator()).append("  ... ").append(violationCount - violations.size()).append(" more");
+        return builder.toString();
+    }
+}
@@ -0,0 +1,196 @@
+package avlTree;
+
+import org.junit.Test;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class AVLTreeAggregateTest {
+    private static final int RANGE = 1500;
+
+    /* Concatenation is not commutative, an aggregate combined out of the key order does not match the fold */
+    private static final Monoid<String> CONCAT = Monoid.of("", String::concat);
+
+
+    /** Every kind of write, the splits and joins, the set operations and both putAll paths run on a tree
+     * with a monoid. After each of them aggregate() and aggregate(lo, hi) of random ranges have to match
+     * a fold of the values of TreeMap in the key order
+     */
+    @Test
+    public void aggregatesMatchAFoldOverTreeMap(){
+        Random random = new Random(28);
+        AVLTree<Integer, String> tree = new AVLTree<>(CONCAT);
+        TreeMap<Integer, String> expected = new TreeMap<>();
+        fill(random, tree, expected, 500);
+        for(int round = 0; round < 3000; round++){
+            int key = random.nextInt(RANGE);
+            String value = value(random);
+            switch(random.nextInt(16)){
+                case 0:
+                    tree.delete(key);
+                    expected.remove(key);
+                    break;
+                case 1:
+                    if(!expected.isEmpty()){
+                        tree.deleteMin();
+                        expected.pollFirstEntry();
+                        tree.deleteMax();
+                        expected.pollLastEntry();
+                    }
+                    break;
+                case 2:
+                    tree.compute(key, (k, v) -> (v != null && v.length() > 3) ? null : value);
+                    expected.compute(key, (k, v) -> (v != null && v.length() > 3) ? null : value);
+                    break;
+                case 3:
+                    tree.merge(key, value, String::concat);
+                    expected.merge(key, value, String::concat);
+                    break;
+                case 4:
+                    int hi = key + random.nextInt(50);
+                    tree.deleteRange(key, hi);
+                    expected.subMap(key, true, hi, true).clear();
+                    break;
+                case 5:
+                    /* The split parts carry their own aggregates until they are joined back */
+                    AVLTree<Integer, String> tail = tree.tailTree(key);
+                    assertAggregates(expected.headMap(key, false), tree, random);
+                    assertAggregates(expected.tailMap(key, true), tail, random);
+                    tail.delete(key);
+                    tree = AVLTree.join(tree, key, value, tail);
+                    expected.put(key, value);
+                    break;
+                case 6:
+                    AVLTree<Integer, String> head = tree.headTree(key);
+                    assertAggregates(expected.headMap(key, false), head, random);
+                    assertAggregates(expected.tailMap(key, true), tree, random);
+                    tree = AVLTree.union(head, tree, (a, b) -> b);
+                    break;
+                case 7:
+                    AVLTree<Integer, String> rest = tree.splitAtRank(random.nextInt(expected.size() + 1));
+                    tree = AVLTree.union(tree, rest, (a, b) -> b);
+                    break;
+                case 8:
+                    AVLTree<Integer, String> other = new AVLTree<>(CONCAT);
+                    TreeMap<Integer, String> otherExpected = new TreeMap<>();
+                    fill(random, other, otherExpected, random.nextInt(300));
+                    tree = AVLTree.union(tree, other, String::concat);
+                    otherExpected.forEach((k, v) -> expected.merge(k, v, String::concat));
+                    break;
+                case 9:
+                    AVLTree<Integer, String> keep = new AVLTree<>(CONCAT);
+                    TreeMap<Integer, String> keepExpected = new TreeMap<>();
+                    fill(random, keep, keepExpected, 2 * RANGE);
+                    tree = AVLTree.intersection(tree, keep, (a, b) -> b);
+                    expected.keySet().retainAll(keepExpected.keySet());
+                    expected.replaceAll((k, v) -> keepExpected.get(k));
+                    if(expected.size() < 200)
+                        fill(random, tree, expected, 400);
+                    break;
+                case 10:
+                    AVLTree<Integer, String> drop = new AVLTree<>(CONCAT);
+                    TreeMap<Integer, String> dropExpected = new TreeMap<>();
+                    fill(random, drop, dropExpected, random.nextInt(100));
+                    tree = AVLTree.difference(tree, drop.snapshot());
+                    expected.keySet().removeAll(dropExpected.keySet());
+                    break;
+                case 11:
+                case 12:
+                    /* Small batches take the recursive path, batches above a quarter of the size the merge and rebuild */
+                    int batch = (random.nextInt(2) == 0) ? 1 + random.nextInt(Math.max(1, expected.size() / 8))
+                                                         : expected.size() / 4 + 1 + random.nextInt(100);
+                    TreeMap<Integer, String> entries = new TreeMap<>();
+                    while(entries.size() < batch)
+                        entries.put(random.nextInt(RANGE), value(random));
+                    tree.putAll(entries.keySet().toArray(new Integer[0]), entries.values().toArray(new String[0]));
+                    expected.putAll(entries);
+                    break;
+                case 13:
+                    AVLTree<Integer, String>.Cursor cursor = tree.cursor();
+                    if(cursor.seek(key)){
+                        cursor.setValue(value);
+                        expected.put(cursor.key(), value);
+                    }
+                    break;
+                case 14:
+                    Iterator<Map.Entry<Integer, String>> iterator = tree.entries().iterator();
+                    for(int skip = key / 8; iterator.hasNext() && skip >= 0; skip--){
+                        Map.Entry<Integer, String> entry = iterator.next();
+                        if(skip == 0){
+                            iterator.remove();
+                            expected.remove(entry.getKey());
+                        }
+                    }
+                    break;
+                default:
+                    tree.put(key, value);
+                    expected.put(key, value);
+            }
+            assertAggregates(expected, tree, random);
+        }
+        assertTrue(tree.validate().isValid());
+    }
+
+
+    /* The aggregates of a snapshot stay those of the tree when it was taken */
+    @Test
+    public void snapshotKeepsItsAggregates(){
+        Random random = new Random(29);
+        AVLTree<Integer, String> tree = new AVLTree<>(CONCAT);
+        TreeMap<Integer, String> expected = new TreeMap<>();
+        fill(random, tree, expected, 800);
+        AVLTree<Integer, String> snapshot = tree.snapshot();
+        TreeMap<Integer, String> frozen = new TreeMap<>(expected);
+        fill(random, tree, expected, 800);
+        for(int i = 0; i < 400; i++)
+            tree.delete(random.nextInt(RANGE));
+        assertAggregates(frozen, snapshot, random);
+    }
+
+
+    private static void fill(Random random, AVLTree<Integer, String> tree, TreeMap<Integer, String> expected, int count){
+        for(int i = 0; i < count; i++){
+            int key = random.nextInt(RANGE);
+            String value = value(random);
+            tree.put(key, value);
+            expected.put(key, value);
+        }
+    }
+
+
+    private static String value(Random random){
+        return Character.toString((char) ('a' + random.nextInt(26)));
+    }
+
+
+    private static void assertAggregates(Map<Integer, String> expected, AVLTree<Integer, String> tree, Random random){
+        TreeMap<Integer, String> sorted = new TreeMap<>(expected);
+        assertEquals(fold(sorted), tree.aggregate());
+        for(int i = 0; i < 20; i++){
+            int lo = random.nextInt(RANGE + 20) - 10;
+            int hi = lo + random.nextInt(RANGE / 3) - 20;
+            String range = (lo > hi) ? CONCAT.identity() : fold(sorted.subMap(lo, true, hi, true));
+            assertEquals("aggregate(" + lo + ", " + hi + ")", range, tree.aggregate(lo, hi));
+        }
+        if(!sorted.isEmpty()){
+            int first = sorted.firstKey();
+            int last = sorted.lastKey();
+            assertEquals(fold(sorted), tree.aggregate(first, last));
+            assertEquals(sorted.get(first), tree.aggregate(first, first));
+        }
+    }
+
+
+    /* Combines the values in the key order one by one */
+    private static String fold(Map<Integer, String> entries){
+        String aggregate = CONCAT.identity();
+        for(String value : entries.values())
+            aggregate = CONCAT.combine(aggregate, value);
+        return aggregate;
+    }
+}
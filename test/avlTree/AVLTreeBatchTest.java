@@ -0,0 +1,137 @@
+package avlTree;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import static avlTree.AVLTreeSplitJoinTest.assertContent;
+import static avlTree.AVLTreeSplitJoinTest.randomTree;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class AVLTreeBatchTest {
+
+    /** Batches below, at and above a quarter of the tree size take the recursive insert and the
+     * merge and rebuild of putAll. Half of the batch keys overwrite keys of the tree, and a snapshot
+     * taken before every batch has to keep the old content
+     */
+    @Test
+    public void putAllMatchesTreeMapOnBothSidesOfTheRebuildSwitch(){
+        Random random = new Random(36);
+        for(int batch : new int[]{1, 2, 10, 500, 999, 1000, 1001, 1002, 1500, 4000, 12_000}){
+            TreeMap<Integer, Integer> expected = new TreeMap<>();
+            AVLTree<Integer, Integer> tree = new AVLTree<>();
+            for(int i = 0; i < 4000; i++){
+                tree.put(2 * i, i);
+                expected.put(2 * i, i);
+            }
+            AVLTree<Integer, Integer> snapshot = tree.snapshot();
+            TreeMap<Integer, Integer> old = new TreeMap<>(expected);
+
+            TreeMap<Integer, Integer> entries = new TreeMap<>();
+            while(entries.size() < batch)
+                entries.put(random.nextInt(2 * Math.max(8000, batch)), -random.nextInt(1000) - 1);
+            tree.putAll(entries.keySet().toArray(new Integer[0]), entries.values().toArray(new Integer[0]));
+            expected.putAll(entries);
+            assertContent(expected, tree);
+            assertContent(old, snapshot);
+        }
+
+        AVLTree<Integer, Integer> empty = new AVLTree<>();
+        empty.putAll(new Integer[]{1, 2, 3}, new Integer[]{4, 5, 6});
+        empty.putAll(new Integer[0], new Integer[0]);
+        TreeMap<Integer, Integer> expected = new TreeMap<>();
+        expected.put(1, 4);
+        expected.put(2, 5);
+        expected.put(3, 6);
+        assertContent(expected, empty);
+    }
+
+
+    /* Repeated small and large batches on one tree, mixed with single writes */
+    @Test
+    public void repeatedBatchesMatchTreeMap(){
+        Random random = new Random(37);
+        TreeMap<Integer, Integer> expected = new TreeMap<>();
+        AVLTree<Integer, Integer> tree = randomTree(random, 1000, expected);
+        for(int round = 0; round < 200; round++){
+            int batch = (round % 3 == 0) ? expected.size() / 4 + random.nextInt(200) : 1 + random.nextInt(Math.max(1, expected.size() / 5));
+            TreeMap<Integer, Integer> entries = new TreeMap<>();
+            while(entries.size() < batch)
+                entries.put(random.nextInt(10_000), round);
+            tree.putAll(entries.keySet().toArray(new Integer[0]), entries.values().toArray(new Integer[0]));
+            expected.putAll(entries);
+            for(int i = 0; i < 50; i++){
+                int key = random.nextInt(10_000);
+                tree.delete(key);
+                expected.remove(key);
+            }
+        }
+        assertContent(expected, tree);
+    }
+
+
+    /* A rejected batch leaves the tree unchanged */
+    @Test
+    public void putAllRejectsInvalidBatches(){
+        TreeMap<Integer, Integer> expected = new TreeMap<>();
+        AVLTree<Integer, Integer> tree = randomTree(new Random(38), 100, expected);
+        Integer[][] keys = {{1, 3, 2}, {1, 1}, {1, null}, {1, 2}, null, {1, 2}};
+        Integer[][] values = {{1, 1, 1}, {1, 1}, {1, 1}, {1, null}, {1}, {1}};
+        for(int i = 0; i < keys.length; i++){
+            try{
+                tree.putAll(keys[i], values[i]);
+                fail("batch " + i + " was accepted");
+            }catch(IllegalArgumentException e){
+                // invalid batch
+            }
+            assertContent(expected, tree);
+        }
+
+        /* The keys have to ascend in the order of the tree, not in their natural order */
+        AVLTree<Integer, Integer> reversed = new AVLTree<>(Collections.reverseOrder());
+        reversed.putAll(new Integer[]{3, 2, 1}, new Integer[]{3, 2, 1});
+        try{
+            reversed.putAll(new Integer[]{4, 5}, new Integer[]{4, 5});
+            fail("naturally ascending keys were accepted by a reversed tree");
+        }catch(IllegalArgumentException e){
+            // wrong order
+        }
+        assertEquals(3, reversed.size());
+        assertEquals(Integer.valueOf(3), reversed.min());
+    }
+
+
+    @Test
+    public void getAllMatchesTreeMap(){
+        Random random = new Random(39);
+        TreeMap<Integer, Integer> expected = new TreeMap<>();
+        AVLTree<Integer, Integer> tree = randomTree(random, 5000, expected);
+        for(int batch : new int[]{0, 1, 2, 10, 100, 1000, 5000, 10_200}){
+            TreeSet<Integer> keys = new TreeSet<>();
+            while(keys.size() < batch)
+                keys.add(random.nextInt(10_200) - 100);
+            List<Integer> expectedValues = new ArrayList<>();
+            for(Integer key : keys)
+                expectedValues.add(expected.get(key));
+            assertEquals(expectedValues, tree.getAll(keys.toArray(new Integer[0])));
+        }
+        assertEquals(Collections.nCopies(3, null), new AVLTree<Integer, Integer>().getAll(new Integer[]{1, 2, 3}));
+
+        for(Integer[] keys : new Integer[][]{{2, 1}, {1, 1}, {1, null}, null}){
+            try{
+                tree.getAll(keys);
+                fail("getAll() accepted an invalid batch");
+            }catch(IllegalArgumentException e){
+                // invalid batch
+            }
+        }
+        assertTrue(tree.validate().isValid());
+    }
+}
@@ -0,0 +1,116 @@
+package avlTree;
+
+import org.junit.Test;
+
+import java.util.ConcurrentModificationException;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static avlTree.AVLTreeSplitJoinTest.assertContent;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/* The compute family changes the tree like the methods of TreeMap, but returns the previous value */
+public class AVLTreeComputeTest {
+
+    @Test
+    public void computeFamilyMatchesTreeMap(){
+        Random random = new Random(17);
+        AVLTree<Integer, Integer> tree = new AVLTree<>();
+        TreeMap<Integer, Integer> expected = new TreeMap<>();
+        for(int i = 0; i < 100_000; i++){
+            int key = random.nextInt(2000);
+            Integer value = random.nextInt(100);
+            Integer previous = expected.get(key);
+            Integer returned;
+            switch(random.nextInt(8)){
+                case 0:
+                    /* Removes when the sum is divisible by 5 */
+                    returned = tree.compute(key, (k, v) -> (v == null) ? value : ((v + value) % 5 == 0) ? null : v + value);
+                    expected.compute(key, (k, v) -> (v == null) ? value : ((v + value) % 5 == 0) ? null : v + value);
+                    break;
+                case 1:
+                    returned = tree.computeIfAbsent(key, k -> (value % 4 == 0) ? null : value);
+                    expected.computeIfAbsent(key, k -> (value % 4 == 0) ? null : value);
+                    break;
+                case 2:
+                    returned = tree.computeIfPresent(key, (k, v) -> (value % 3 == 0) ? null : v + value);
+                    expected.computeIfPresent(key, (k, v) -> (value % 3 == 0) ? null : v + value);
+                    break;
+                case 3:
+                    returned = tree.merge(key, value, (a, b) -> (a > 150) ? null : a + b);
+                    expected.merge(key, value, (a, b) -> (a > 150) ? null : a + b);
+                    break;
+                case 4:
+                    returned = tree.putIfAbsent(key, value);
+                    assertEquals(expected.putIfAbsent(key, value), returned);
+                    break;
+                case 5:
+                    returned = tree.replace(key, value);
+                    assertEquals(expected.replace(key, value), returned);
+                    break;
+                case 6:
+                    /* The default only for an absent key, the value of a present key is never -1 */
+                    if(previous == null)
+                        assertEquals(Integer.valueOf(-1), tree.getOrDefault(key, -1));
+                    else
+                        assertEquals(previous, tree.getOrDefault(key, -1));
+                    returned = previous;
+                    break;
+                default:
+                    tree.put(key, value);
+                    expected.put(key, value);
+                    returned = previous;
+            }
+            assertEquals(previous, returned);
+            if(i % 10_000 == 0)
+                assertContent(expected, tree);
+        }
+        assertContent(expected, tree);
+    }
+
+
+    @Test
+    public void functionWhichReturnsThePreviousValueLeavesTheTreeUnchanged(){
+        AVLTree<Integer, Integer> tree = new AVLTree<>();
+        tree.put(1, 1);
+        AVLTree<Integer, Integer> snapshot = tree.snapshot();
+        assertEquals(Integer.valueOf(1), tree.compute(1, (k, v) -> v));
+        assertEquals(null, tree.compute(2, (k, v) -> null));
+        assertEquals(1, tree.size());
+        assertEquals(Integer.valueOf(1), snapshot.get(1));
+    }
+
+
+    @Test
+    public void functionWhichChangesTheTreeIsRejected(){
+        AVLTree<Integer, Integer> tree = new AVLTree<>();
+        for(int i = 0; i < 100; i++)
+            tree.put(i, i);
+        try{
+            tree.compute(200, (k, v) -> {
+                tree.delete(50);
+                return 1;
+            });
+            fail("compute did not detect the change of the tree");
+        }catch(ConcurrentModificationException expected){
+            // rejected
+        }
+        try{
+            tree.compute(300, (k, v) -> {
+                throw new IllegalStateException();
+            });
+            fail("exception of the function was lost");
+        }catch(IllegalStateException expected){
+            // passed on
+        }
+        TreeMap<Integer, Integer> expected = new TreeMap<>();
+        for(int i = 0; i < 100; i++)
+            if(i != 50)
+                expected.put(i, i);
+        assertContent(expected, tree);
+        tree.put(300, 300);
+        expected.put(300, 300);
+        assertContent(expected, tree);
+    }
+}
@@ -0,0 +1,226 @@
+package avlTree;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static avlTree.AVLTreeSplitJoinTest.assertContent;
+import static avlTree.AVLTreeSplitJoinTest.randomTree;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class AVLTreeCursorTest {
+
+    @Test
+    public void seeksAndMovesMatchTreeMap(){
+        Random random = new Random(40);
+        TreeMap<Integer, Integer> expected = new TreeMap<>();
+        AVLTree<Integer, Integer> tree = randomTree(random, 3000, expected);
+        List<Integer> keys = new ArrayList<>(expected.keySet());
+        AVLTree<Integer, Integer>.Cursor cursor = tree.cursor();
+        assertFalse(cursor.isValid());
+
+        /* A walk from the first key to the end and from the last key to the start visits every key */
+        List<Integer> walked = new ArrayList<>();
+        for(boolean valid = cursor.seekFirst(); valid; valid = cursor.next()){
+            walked.add(cursor.key());
+            assertEquals(expected.get(cursor.key()), cursor.value());
+        }
+        assertEquals(keys, walked);
+        assertFalse(cursor.isValid());
+        walked.clear();
+        for(boolean valid = cursor.seekLast(); valid; valid = cursor.prev())
+            walked.add(0, cursor.key());
+        assertEquals(keys, walked);
+        assertFalse(cursor.isValid());
+
+        for(int i = 0; i < 1000; i++){
+            int key = random.nextInt(10_200) - 100;
+            Integer ceiling = expected.ceilingKey(key);
+            assertEquals(ceiling != null, cursor.seek(key));
+            if(ceiling == null){
+                assertFalse(cursor.isValid());
+                continue;
+            }
+            assertEquals(ceiling, cursor.key());
+            Integer higher = expected.higherKey(ceiling);
+            Integer lower = expected.lowerKey(ceiling);
+            if(random.nextBoolean()){
+                assertEquals(higher != null, cursor.next());
+                if(higher != null)
+                    assertEquals(higher, cursor.key());
+            }else{
+                assertEquals(lower != null, cursor.prev());
+                if(lower != null)
+                    assertEquals(lower, cursor.key());
+            }
+
+            int k = random.nextInt(keys.size() + 2) - 1;
+            assertEquals(k >= 0 && k < keys.size(), cursor.seekRank(k));
+            if(k >= 0 && k < keys.size())
+                assertEquals(keys.get(k), cursor.key());
+        }
+    }
+
+
+    @Test
+    public void cursorOffTheEndsHasNoKey(){
+        AVLTree<Integer, Integer> tree = new AVLTree<>();
+        AVLTree<Integer, Integer>.Cursor cursor = tree.cursor();
+        assertFalse(cursor.seekFirst());
+        assertFalse(cursor.seekLast());
+        assertFalse(cursor.seek(1));
+        assertFalse(cursor.seekRank(0));
+        assertNoKey(cursor);
+
+        tree.put(1, 1);
+        tree.put(2, 2);
+        cursor = tree.cursor();
+        assertTrue(cursor.seekLast());
+        assertFalse(cursor.next());
+        assertNoKey(cursor);
+        assertTrue(cursor.seekFirst());
+        assertFalse(cursor.prev());
+        assertNoKey(cursor);
+        assertFalse(cursor.seek(3));
+        assertNoKey(cursor);
+        assertFalse(cursor.seekRank(-1));
+        assertFalse(cursor.seekRank(2));
+        assertNoKey(cursor);
+    }
+
+
+    /** setValue() on a tree whose nodes a snapshot shares copies the path to the node and seeks it again.
+     * The walk continues from the copied node, the snapshot keeps the old values
+     */
+    @Test
+    public void setValueOnASharedTreeCopiesThePath(){
+        Random random = new Random(41);
+        TreeMap<Integer, Integer> expected = new TreeMap<>();
+        AVLTree<Integer, Integer> tree = randomTree(random, 4000, expected);
+        TreeMap<Integer, Integer> old = new TreeMap<>(expected);
+        AVLTree<Integer, Integer> snapshot = tree.snapshot();
+        List<AVLTree<Integer, Integer>> snapshots = new ArrayList<>();
+        List<TreeMap<Integer, Integer>> olds = new ArrayList<>();
+
+        AVLTree<Integer, Integer>.Cursor cursor = tree.cursor();
+        List<Integer> walked = new ArrayList<>();
+        int count = 0;
+        for(boolean valid = cursor.seekFirst(); valid; valid = cursor.next()){
+            int key = cursor.key();
+            walked.add(key);
+            cursor.setValue(-key);
+            expected.put(key, -key);
+            assertEquals(key, (int) cursor.key());
+            assertEquals(-key, (int) cursor.value());
+            /* A new snapshot now and then shares the already copied nodes again */
+            if(++count % 500 == 0){
+                snapshots.add(tree.snapshot());
+                olds.add(new TreeMap<>(expected));
+            }
+        }
+        assertEquals(new ArrayList<>(expected.keySet()), walked);
+        assertContent(expected, tree);
+        assertContent(old, snapshot);
+        for(int i = 0; i < snapshots.size(); i++)
+            assertContent(olds.get(i), snapshots.get(i));
+
+        /* A cursor of a snapshot reads it but cannot write */
+        AVLTree<Integer, Integer>.Cursor reader = snapshot.cursor();
+        assertTrue(reader.seekFirst());
+        assertEquals(old.firstEntry().getValue(), reader.value());
+        try{
+            reader.setValue(1);
+            fail("setValue() on a snapshot did not throw");
+        }catch(UnsupportedOperationException e){
+            // read-only
+        }
+    }
+
+
+    /* setValue() keeps the aggregates of a tree with a monoid */
+    @Test
+    public void setValueUpdatesTheAggregates(){
+        AVLTree<Integer, Integer> tree = new AVLTree<>(Monoid.intSum());
+        for(int i = 0; i < 1000; i++)
+            tree.put(i, 1);
+        AVLTree<Integer, Integer>.Cursor cursor = tree.cursor();
+        for(boolean valid = cursor.seek(100); valid && cursor.key() < 200; valid = cursor.next())
+            cursor.setValue(3);
+        assertEquals(Integer.valueOf(1200), tree.aggregate());
+        assertEquals(Integer.valueOf(300), tree.aggregate(100, 199));
+        assertTrue(tree.validate().isValid());
+    }
+
+
+    @Test
+    public void structuralChangeInvalidatesTheCursor(){
+        TreeMap<Integer, Integer> expected = new TreeMap<>();
+        AVLTree<Integer, Integer> tree = randomTree(new Random(42), 500, expected);
+        List<Runnable> changes = new ArrayList<>();
+        changes.add(() -> tree.put(-1, 1));
+        changes.add(() -> tree.delete(-1));
+        changes.add(tree::deleteMax);
+        changes.add(() -> tree.putAll(new Integer[]{-3, -2}, new Integer[]{1, 1}));
+        for(Runnable change : changes){
+            AVLTree<Integer, Integer>.Cursor cursor = tree.cursor();
+            assertTrue(cursor.seekFirst());
+            change.run();
+            assertConcurrentModification(cursor::next);
+            assertConcurrentModification(cursor::prev);
+            assertConcurrentModification(cursor::key);
+            assertConcurrentModification(() -> cursor.setValue(1));
+            /* A new seek positions the cursor on the changed tree */
+            assertTrue(cursor.seekFirst());
+            assertEquals(tree.min(), cursor.key());
+        }
+        expected.pollLastEntry();
+        expected.put(-3, 1);
+        expected.put(-2, 1);
+
+        /* Setting values is not a structural change, the other cursors stay valid */
+        AVLTree<Integer, Integer>.Cursor writer = tree.cursor();
+        AVLTree<Integer, Integer>.Cursor reader = tree.cursor();
+        assertTrue(writer.seekFirst());
+        assertTrue(reader.seekFirst());
+        writer.setValue(7);
+        assertEquals(Integer.valueOf(7), reader.value());
+        assertTrue(reader.next());
+        expected.put(expected.firstKey(), 7);
+        assertContent(expected, tree);
+    }
+
+
+    private static void assertNoKey(AVLTree<Integer, Integer>.Cursor cursor){
+        assertFalse(cursor.isValid());
+        try{
+            cursor.key();
+            fail("key() of a cursor without a position did not throw");
+        }catch(NoSuchElementException e){
+            // no position
+        }
+        try{
+            cursor.next();
+            fail("next() of a cursor without a position did not throw");
+        }catch(NoSuchElementException e){
+            // no position
+        }
+    }
+
+
+    private static void assertConcurrentModification(Runnable call){
+        try{
+            call.run();
+            fail("no ConcurrentModificationException");
+        }catch(ConcurrentModificationException e){
+            // fail-fast
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package avlTree;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.TreeMap;
+
+import static avlTree.AVLTreeSplitJoinTest.assertContent;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+public class AVLTreeFromSortedTest {
+    /* Sizes around the powers of two and above the fork threshold of the parallel build (1 << 13) */
+    private static final int[] SIZES = {0, 1, 2, 3, 4, 7, 8, 15, 16, 17, 1023, 1024, 1025,
+                                        (1 << 13) - 1, 1 << 13, (1 << 13) + 1, 20_000, (1 << 15) - 1, 1 << 15};
+
+
+    /* The array, iterator and parallel builds give a valid tree of minimal height for every size */
+    @Test
+    public void everyBuildHasMinimalHeight(){
+        for(int size : SIZES){
+            Integer[] keys = new Integer[size];
+            Integer[] values = new Integer[size];
+            TreeMap<Integer, Integer> expected = new TreeMap<>();
+            for(int i = 0; i < size; i++){
+                keys[i] = 3 * i;
+                values[i] = -i;
+                expected.put(keys[i], values[i]);
+            }
+            int height = 32 - Integer.numberOfLeadingZeros(size) - 1;
+            List<AVLTree<Integer, Integer>> trees = Arrays.asList(AVLTree.fromSorted(keys, values),
+                    AVLTree.fromSorted(Arrays.asList(keys).iterator(), Arrays.asList(values).iterator(), size),
+                    AVLTree.fromSortedParallel(keys, values));
+            for(AVLTree<Integer, Integer> tree : trees){
+                assertEquals("height of " + size + " keys", height, tree.height());
+                assertContent(expected, tree);
+            }
+        }
+    }
+
+
+    /* The builds of a comparator take the keys in its order and keep it for the later writes */
+    @Test
+    public void buildsOfAComparatorUseItsOrder(){
+        Comparator<Integer> order = Collections.reverseOrder();
+        int size = 3 << 13;
+        Integer[] keys = new Integer[size];
+        Integer[] values = new Integer[size];
+        TreeMap<Integer, Integer> expected = new TreeMap<>(order);
+        for(int i = 0; i < size; i++){
+            keys[i] = size - i;
+            values[i] = i;
+            expected.put(keys[i], values[i]);
+        }
+        List<AVLTree<Integer, Integer>> trees = Arrays.asList(AVLTree.fromSorted(keys, values, order),
+                AVLTree.fromSorted(Arrays.asList(keys).iterator(), Arrays.asList(values).iterator(), size, order),
+                AVLTree.fromSortedParallel(keys, values, order));
+        expected.put(-1, -1);
+        for(AVLTree<Integer, Integer> tree : trees){
+            assertSame(order, tree.comparator());
+            tree.put(-1, -1);
+            assertContent(expected, tree);
+        }
+        try{
+            AVLTree.fromSorted(new Integer[]{1, 2}, new Integer[]{1, 2}, order);
+            fail("ascending keys were accepted in descending order");
+        }catch(IllegalArgumentException e){
+            // wrong order
+        }
+    }
+
+
+    @Test
+    public void unsortedOrIncompleteInputIsRejected(){
+        Integer[][] keys = {{1, 3, 2}, {1, 1}, {1, null}, {1, 2}, {1, 2}, null};
+        Integer[][] values = {{1, 1, 1}, {1, 1}, {1, 1}, {1, null}, {1}, {}};
+        for(int i = 0; i < keys.length; i++)
+            expectRejected(keys[i], values[i]);
+
+        /* A disorder deep inside a range the parallel build forks */
+        Integer[] large = new Integer[1 << 15];
+        for(int i = 0; i < large.length; i++)
+            large[i] = i;
+        large[20_000] = large[19_999];
+        expectRejected(large, large);
+
+        try{
+            AVLTree.fromSorted(Arrays.asList(1, 2).iterator(), Arrays.asList(1, 2).iterator(), 3);
+            fail("iterators shorter than size were accepted");
+        }catch(IllegalArgumentException e){
+            // too short
+        }
+        try{
+            AVLTree.fromSorted(Arrays.asList(1, 2).iterator(), Arrays.asList(1, 2).iterator(), -1);
+            fail("negative size was accepted");
+        }catch(IllegalArgumentException e){
+            // negative size
+        }
+        AVLTree<Integer, Integer> prefix = AVLTree.fromSorted(Arrays.asList(1, 2, 0).iterator(), Arrays.asList(1, 2, 0).iterator(), 2);
+        assertEquals(2, prefix.size());
+    }
+
+
+    /* The array, iterator and parallel builds all reject the input */
+    private static void expectRejected(Integer[] keys, Integer[] values){
+        for(int build = 0; build < 3; build++){
+            try{
+                if(build == 0)
+                    AVLTree.fromSorted(keys, values);
+                else if(build == 1)
+                    AVLTree.fromSortedParallel(keys, values);
+                else if(keys != null && keys.length == values.length)
+                    AVLTree.fromSorted(Arrays.asList(keys).iterator(), Arrays.asList(values).iterator(), keys.length);
+                else
+                    continue;
+                fail("build " + build + " accepted " + Arrays.toString(keys));
+            }catch(IllegalArgumentException e){
+                // rejected
+            }
+        }
+    }
+}
@@ -0,0 +1,256 @@
+package avlTree;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.Spliterator;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+import static avlTree.AVLTreeSplitJoinTest.assertContent;
+import static avlTree.AVLTreeSplitJoinTest.list;
+import static avlTree.AVLTreeSplitJoinTest.randomTree;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class AVLTreeIteratorTest {
+
+    @Test
+    public void iteratorsWalkInOrderWithinTheBounds(){
+        Random random = new Random(30);
+        TreeMap<Integer, Integer> expected = new TreeMap<>();
+        AVLTree<Integer, Integer> tree = randomTree(random, 5000, expected);
+        assertEquals(new ArrayList<>(expected.keySet()), list(tree.keys()));
+        assertEquals(new ArrayList<>(expected.descendingKeySet()), list(tree.descendingKeys()));
+        assertEntries(expected, tree.entries());
+        assertEntries(expected.descendingMap(), tree.descendingEntries());
+        for(int i = 0; i < 500; i++){
+            int lo = random.nextInt(10_200) - 100;
+            int hi = lo + random.nextInt(2000) - 100;
+            List<Integer> range = (lo > hi) ? Collections.emptyList() : new ArrayList<>(expected.subMap(lo, true, hi, true).keySet());
+            assertEquals("keys(" + lo + ", " + hi + ")", range, list(tree.keys(lo, hi)));
+        }
+        int first = expected.firstKey();
+        int last = expected.lastKey();
+        assertEquals(Collections.singletonList(first), list(tree.keys(first, first)));
+        assertEquals(new ArrayList<>(expected.keySet()), list(tree.keys(first, last)));
+
+        AVLTree<Integer, Integer> empty = new AVLTree<>();
+        assertFalse(empty.keys().iterator().hasNext());
+        assertFalse(empty.descendingEntries().iterator().hasNext());
+        assertFalse(empty.keys(0, 10).iterator().hasNext());
+    }
+
+
+    @Test
+    public void iteratorsFollowTheComparator(){
+        Random random = new Random(31);
+        AVLTree<Integer, Integer> tree = new AVLTree<>(Collections.reverseOrder());
+        TreeMap<Integer, Integer> expected = new TreeMap<>(Collections.reverseOrder());
+        for(int i = 0; i < 2000; i++){
+            int key = random.nextInt(5000);
+            tree.put(key, i);
+            expected.put(key, i);
+        }
+        assertEquals(new ArrayList<>(expected.keySet()), list(tree.keys()));
+        assertEquals(new ArrayList<>(expected.descendingKeySet()), list(tree.descendingKeys()));
+        assertEquals(new ArrayList<>(expected.subMap(3000, true, 1000, true).keySet()), list(tree.keys(3000, 1000)));
+        assertEquals(new ArrayList<>(expected.keySet()), tree.keyStream().collect(Collectors.toList()));
+    }
+
+
+    @Test
+    public void removeDeletesTheLastKeyAndContinues(){
+        Random random = new Random(32);
+        TreeMap<Integer, Integer> expected = new TreeMap<>();
+        AVLTree<Integer, Integer> tree = randomTree(random, 3000, expected);
+
+        /* Every odd key in ascending order, then every key divisible by 3 in descending order */
+        List<Integer> seen = new ArrayList<>();
+        for(Iterator<Map.Entry<Integer, Integer>> iterator = tree.entries().iterator(); iterator.hasNext(); ){
+            int key = iterator.next().getKey();
+            seen.add(key);
+            if(key % 2 == 1)
+                iterator.remove();
+        }
+        assertEquals(new ArrayList<>(expected.keySet()), seen);
+        expected.keySet().removeIf(key -> key % 2 == 1);
+        assertContent(expected, tree);
+
+        seen.clear();
+        for(Iterator<Integer> iterator = tree.descendingKeys().iterator(); iterator.hasNext(); ){
+            int key = iterator.next();
+            seen.add(key);
+            if(key % 3 == 0)
+                iterator.remove();
+        }
+        assertEquals(new ArrayList<>(expected.descendingKeySet()), seen);
+        expected.keySet().removeIf(key -> key % 3 == 0);
+        assertContent(expected, tree);
+
+        /* Removing every key of a bounded range empties only that range */
+        for(Iterator<Integer> iterator = tree.keys(2000, 4000).iterator(); iterator.hasNext(); ){
+            iterator.next();
+            iterator.remove();
+        }
+        expected.subMap(2000, true, 4000, true).clear();
+        assertContent(expected, tree);
+
+        Iterator<Integer> iterator = tree.keys().iterator();
+        try{
+            iterator.remove();
+            fail("remove() before next() did not throw");
+        }catch(IllegalStateException e){
+            // nothing to remove
+        }
+        iterator.next();
+        iterator.remove();
+        try{
+            iterator.remove();
+            fail("second remove() did not throw");
+        }catch(IllegalStateException e){
+            // already removed
+        }
+        expected.pollFirstEntry();
+        assertContent(expected, tree);
+    }
+
+
+    @Test
+    public void iteratorsFailFastAfterAStructuralChange(){
+        TreeMap<Integer, Integer> expected = new TreeMap<>();
+        AVLTree<Integer, Integer> tree = randomTree(new Random(33), 100, expected);
+        List<Runnable> changes = new ArrayList<>();
+        changes.add(() -> tree.put(-1, 1));
+        changes.add(() -> tree.delete(-1));
+        changes.add(tree::deleteMin);
+        changes.add(() -> tree.deleteRange(0, 500));
+        for(Runnable change : changes){
+            Iterator<Integer> keys = tree.keys().iterator();
+            Iterator<Map.Entry<Integer, Integer>> entries = tree.descendingEntries().iterator();
+            Spliterator<Integer> spliterator = tree.keyStream().spliterator();
+            keys.next();
+            entries.next();
+            spliterator.tryAdvance(key -> { });
+            change.run();
+            assertThrowsConcurrentModification(keys::next);
+            assertThrowsConcurrentModification(entries::next);
+            assertThrowsConcurrentModification(keys::remove);
+            assertThrowsConcurrentModification(() -> spliterator.tryAdvance(key -> { }));
+        }
+
+        /* Another iterator's remove() is a change for every other iterator */
+        Iterator<Integer> remover = tree.keys().iterator();
+        Iterator<Integer> reader = tree.keys().iterator();
+        remover.next();
+        remover.remove();
+        assertThrowsConcurrentModification(reader::next);
+
+        Iterator<Integer> done = tree.keys(-5, -1).iterator();
+        assertFalse(done.hasNext());
+        try{
+            done.next();
+            fail("next() after the end did not throw");
+        }catch(NoSuchElementException e){
+            // end of the range
+        }
+    }
+
+
+    @Test
+    public void spliteratorSplitsIntoExactlySizedParts(){
+        Random random = new Random(34);
+        TreeMap<Integer, Integer> expected = new TreeMap<>();
+        AVLTree<Integer, Integer> tree = randomTree(random, 6000, expected);
+        Spliterator<Integer> spliterator = tree.keyStream().spliterator();
+        int characteristics = Spliterator.ORDERED | Spliterator.SORTED | Spliterator.DISTINCT
+                              | Spliterator.NONNULL | Spliterator.SIZED | Spliterator.SUBSIZED;
+        assertEquals(characteristics, spliterator.characteristics() & characteristics);
+        assertNull(spliterator.getComparator());
+        assertEquals(expected.size(), spliterator.getExactSizeIfKnown());
+
+        /* Splitting down to single keys and walking the parts in order gives all keys */
+        List<Integer> keys = new ArrayList<>();
+        split(spliterator, keys);
+        assertEquals(new ArrayList<>(expected.keySet()), keys);
+
+        /* A part which started to advance does not split any more, its estimate counts down */
+        Spliterator<Map.Entry<Integer, Integer>> entries = tree.entryStream().spliterator();
+        Spliterator<Map.Entry<Integer, Integer>> prefix = entries.trySplit();
+        assertEquals(expected.size() / 2, prefix.estimateSize());
+        assertEquals(expected.size() - expected.size() / 2, entries.estimateSize());
+        assertTrue(prefix.tryAdvance(entry -> assertEquals(expected.firstKey(), entry.getKey())));
+        assertEquals(expected.size() / 2 - 1, prefix.estimateSize());
+        assertNull(prefix.trySplit());
+
+        Spliterator<Integer> single = new AVLTree<Integer, Integer>().keyStream().spliterator();
+        assertNull(single.trySplit());
+        assertEquals(0, single.estimateSize());
+        assertFalse(single.tryAdvance(key -> fail("empty tree advanced")));
+    }
+
+
+    @Test
+    public void parallelStreamMatchesTheSequentialOne(){
+        TreeMap<Integer, Integer> expected = new TreeMap<>();
+        AVLTree<Integer, Integer> tree = randomTree(new Random(35), 200_000, expected);
+        long sequential = tree.entryStream().mapToLong(entry -> (long) entry.getKey() * entry.getValue()).sum();
+        long parallel = tree.entryStream().parallel().mapToLong(entry -> (long) entry.getKey() * entry.getValue()).sum();
+        long brute = 0;
+        for(Map.Entry<Integer, Integer> entry : expected.entrySet())
+            brute += (long) entry.getKey() * entry.getValue();
+        assertEquals(brute, sequential);
+        assertEquals(sequential, parallel);
+        assertEquals(new ArrayList<>(expected.keySet()), tree.keyStream().parallel().collect(Collectors.toList()));
+        assertEquals(expected.size(), tree.entryStream().parallel().filter(entry -> entry.getValue() != null).count());
+    }
+
+
+    /* Splits the spliterator as far as it goes and walks the parts from the left to the right */
+    private static void split(Spliterator<Integer> spliterator, List<Integer> keys){
+        long size = spliterator.estimateSize();
+        Spliterator<Integer> prefix = spliterator.trySplit();
+        if(prefix == null){
+            assertTrue(size < 2);
+            spliterator.forEachRemaining(keys::add);
+            return;
+        }
+        assertEquals(size, prefix.estimateSize() + spliterator.estimateSize());
+        assertTrue(Math.abs(prefix.estimateSize() - spliterator.estimateSize()) <= 1);
+        split(prefix, keys);
+        split(spliterator, keys);
+    }
+
+
+    private static void assertEntries(NavigableMap<Integer, Integer> expected, Iterable<Map.Entry<Integer, Integer>> entries){
+        Iterator<Map.Entry<Integer, Integer>> iterator = entries.iterator();
+        for(Map.Entry<Integer, Integer> entry : expected.entrySet()){
+            assertTrue(iterator.hasNext());
+            Map.Entry<Integer, Integer> actual = iterator.next();
+            assertEquals(entry.getKey(), actual.getKey());
+            assertEquals(entry.getValue(), actual.getValue());
+        }
+        assertFalse(iterator.hasNext());
+    }
+
+
+    private static void assertThrowsConcurrentModification(Runnable call){
+        try{
+            call.run();
+            fail("no ConcurrentModificationException");
+        }catch(ConcurrentModificationException e){
+            // fail-fast
+        }
+    }
+}
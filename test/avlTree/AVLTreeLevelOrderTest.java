@@ -0,0 +1,171 @@
+package avlTree;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static avlTree.AVLTreeSplitJoinTest.list;
+import static avlTree.AVLTreeSplitJoinTest.randomTree;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class AVLTreeLevelOrderTest {
+
+    /* fromSorted roots every range at its middle key, so the levels of its trees are known */
+    @Test
+    public void levelsOfABuiltTreeAreTheMiddlesOfTheRanges(){
+        for(int size : new int[]{1, 2, 3, 7, 8, 100, 1000}){
+            AVLTree<Integer, Integer> tree = built(size);
+            List<List<Integer>> levels = levels(size);
+
+            List<Integer> keys = new ArrayList<>();
+            List<Integer> separated = new ArrayList<>();
+            for(List<Integer> level : levels){
+                keys.addAll(level);
+                separated.addAll(level);
+                separated.add(null);
+            }
+            assertEquals(keys, list(tree.keysLevelOrder()));
+            assertEquals(separated, list(tree.keysLevelOrderSeparated()));
+
+            /* levelEnd follows the last entry of every level with its depth */
+            List<List<Integer>> visited = new ArrayList<>();
+            List<Integer> current = new ArrayList<>();
+            tree.levelOrder(entry -> current.add(entry.getKey()), depth -> {
+                assertEquals(visited.size(), depth);
+                visited.add(new ArrayList<>(current));
+                current.clear();
+            });
+            assertTrue(current.isEmpty());
+            assertEquals(levels, visited);
+            assertEquals(tree.height() + 1, visited.size());
+        }
+    }
+
+
+    @Test
+    public void maxDepthCutsTheLowerLevels(){
+        AVLTree<Integer, Integer> tree = built(1000);
+        List<List<Integer>> levels = levels(1000);
+        for(int maxDepth = -1; maxDepth <= tree.height() + 2; maxDepth++){
+            List<Integer> keys = new ArrayList<>();
+            List<Integer> depths = new ArrayList<>();
+            tree.levelOrder(entry -> keys.add(entry.getKey()), depths::add, maxDepth);
+            List<Integer> expectedKeys = new ArrayList<>();
+            List<Integer> expectedDepths = new ArrayList<>();
+            for(int depth = 0; depth <= Math.min(maxDepth, tree.height()); depth++){
+                expectedKeys.addAll(levels.get(depth));
+                expectedDepths.add(depth);
+            }
+            assertEquals("maxDepth " + maxDepth, expectedKeys, keys);
+            assertEquals("maxDepth " + maxDepth, expectedDepths, depths);
+        }
+    }
+
+
+    /* The levels of a random tree hold every key once, the sizes of the levels follow the AVL shape */
+    @Test
+    public void levelsOfARandomTreeHoldEveryKey(){
+        TreeMap<Integer, Integer> expected = new TreeMap<>();
+        AVLTree<Integer, Integer> tree = randomTree(new Random(49), 5000, expected);
+        List<Integer> sizes = new ArrayList<>();
+        List<Integer> keys = new ArrayList<>();
+        int[] count = new int[1];
+        tree.levelOrder(entry -> {
+            keys.add(entry.getKey());
+            assertEquals(expected.get(entry.getKey()), entry.getValue());
+            count[0]++;
+        }, depth -> {
+            sizes.add(count[0]);
+            count[0] = 0;
+        });
+        assertEquals(tree.height() + 1, sizes.size());
+        for(int depth = 0; depth < sizes.size(); depth++)
+            assertTrue(sizes.get(depth) <= 1 << depth);
+        /* The root of an AVL tree of height 2 or more has both children */
+        assertEquals(1, (int) sizes.get(0));
+        assertEquals(2, (int) sizes.get(1));
+        keys.sort(null);
+        assertEquals(new ArrayList<>(expected.keySet()), keys);
+    }
+
+
+    @Test
+    public void emptyTreeHasNoLevelsAndPrintsNothing(){
+        PrintStream out = System.out;
+        ByteArrayOutputStream printed = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(printed));
+        try{
+            AVLTree<Integer, Integer> tree = new AVLTree<>();
+            assertFalse(tree.keysLevelOrder().iterator().hasNext());
+            assertFalse(tree.keysLevelOrderSeparated().iterator().hasNext());
+            tree.levelOrder(entry -> fail("empty tree visited an entry"), depth -> fail("empty tree ended a level"));
+        }finally{
+            System.setOut(out);
+        }
+        assertEquals(0, printed.size());
+    }
+
+
+    @Test
+    public void argumentsAndChangesAreChecked(){
+        AVLTree<Integer, Integer> tree = built(100);
+        try{
+            tree.levelOrder(null, depth -> { });
+            fail("null visitor was accepted");
+        }catch(IllegalArgumentException e){
+            // no visitor
+        }
+        try{
+            tree.levelOrder(entry -> { }, null);
+            fail("null levelEnd was accepted");
+        }catch(IllegalArgumentException e){
+            // no levelEnd
+        }
+        try{
+            tree.levelOrder(entry -> tree.delete(entry.getKey()), depth -> { });
+            fail("a visitor which changed the tree was not detected");
+        }catch(ConcurrentModificationException e){
+            // changed by the visitor
+        }
+    }
+
+
+    private static AVLTree<Integer, Integer> built(int size){
+        Integer[] keys = new Integer[size];
+        for(int i = 0; i < size; i++)
+            keys[i] = i;
+        return AVLTree.fromSorted(keys, keys);
+    }
+
+
+    /* Levels of the tree fromSorted builds from the keys 0 to size - 1, a breadth-first walk over the index ranges */
+    private static List<List<Integer>> levels(int size){
+        List<List<Integer>> levels = new ArrayList<>();
+        List<int[]> ranges = new ArrayList<>();
+        ranges.add(new int[]{0, size});
+        while(!ranges.isEmpty()){
+            List<Integer> level = new ArrayList<>();
+            List<int[]> next = new ArrayList<>();
+            for(int[] range : ranges){
+                int mid = (range[0] + range[1]) >>> 1;
+                level.add(mid);
+                if(range[0] < mid)
+                    next.add(new int[]{range[0], mid});
+                if(mid + 1 < range[1])
+                    next.add(new int[]{mid + 1, range[1]});
+            }
+            levels.add(level);
+            ranges = next;
+        }
+        return levels;
+    }
+}
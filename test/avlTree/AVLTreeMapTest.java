@@ -0,0 +1,118 @@
+package avlTree;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.NavigableMap;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class AVLTreeMapTest {
+
+    @Test
+    public void viewsOfAComparatorOrderedTreeUseItsOrder(){
+        AVLTree<Integer, Integer> tree = new AVLTree<>(Comparator.reverseOrder());
+        for(int i = 0; i < 10; i++)
+            tree.put(i, i);
+        AVLTreeMap<Integer, Integer> map = new AVLTreeMap<>(tree);
+
+        assertSame(tree.comparator(), map.comparator());
+        NavigableMap<Integer, Integer> head = map.headMap(5, false);
+        assertEquals(Arrays.asList(9, 8, 7, 6), new ArrayList<>(head.keySet()));
+        assertNull(head.get(3));
+        assertFalse(head.containsKey(3));
+        assertEquals(Integer.valueOf(7), head.get(7));
+        assertEquals(4, head.size());
+        assertEquals(Arrays.asList(3, 2, 1, 0), new ArrayList<>(map.tailMap(4, false).keySet()));
+        assertEquals(Arrays.asList(7, 6, 5), new ArrayList<>(map.subMap(7, true, 4, false).keySet()));
+        assertEquals(Integer.valueOf(4), map.higherKey(5));
+        assertEquals(Integer.valueOf(6), map.lowerKey(5));
+    }
+
+
+    @Test
+    public void descendingViewReversesTheComparatorOfTheTree(){
+        AVLTreeMap<Integer, Integer> natural = new AVLTreeMap<>();
+        assertNull(natural.comparator());
+        assertEquals(1, natural.descendingMap().comparator().compare(1, 2));
+
+        AVLTreeMap<Integer, Integer> reversed = new AVLTreeMap<>(Comparator.reverseOrder());
+        for(int i = 0; i < 10; i++)
+            reversed.put(i, i);
+        NavigableMap<Integer, Integer> descending = reversed.descendingMap();
+        assertTrue(descending.comparator().compare(1, 2) < 0);
+        assertEquals(Arrays.asList(0, 1, 2, 3, 4), new ArrayList<>(descending.headMap(5).keySet()));
+        assertNull(descending.headMap(5).get(7));
+    }
+
+
+    @Test(expected = IllegalArgumentException.class)
+    public void boundsOutOfTheComparatorOrderAreRejected(){
+        new AVLTreeMap<Integer, Integer>(Comparator.reverseOrder()).subMap(2, true, 7, true);
+    }
+
+
+    @Test
+    public void randomViewsMatchTreeMap(){
+        Random random = new Random(3);
+        for(Comparator<Integer> order : Arrays.<Comparator<Integer>>asList(null, Collections.reverseOrder())){
+            AVLTreeMap<Integer, Integer> map = new AVLTreeMap<>(order);
+            TreeMap<Integer, Integer> expected = new TreeMap<>(order);
+            for(int i = 0; i < 500; i++){
+                int key = random.nextInt(1000);
+                map.put(key, i);
+                expected.put(key, i);
+            }
+            for(int round = 0; round < 200; round++){
+                int a = random.nextInt(1100) - 50;
+                int b = random.nextInt(1100) - 50;
+                if(expected.comparator() != null ? expected.comparator().compare(a, b) > 0 : a > b){
+                    int t = a;
+                    a = b;
+                    b = t;
+                }
+                boolean aInclusive = random.nextBoolean();
+                boolean bInclusive = random.nextBoolean();
+                NavigableMap<Integer, Integer> view = map.subMap(a, aInclusive, b, bInclusive);
+                NavigableMap<Integer, Integer> expectedView = expected.subMap(a, aInclusive, b, bInclusive);
+                if(random.nextBoolean()){
+                    view = view.descendingMap();
+                    expectedView = expectedView.descendingMap();
+                }
+                assertEquals(expectedView, view);
+                assertEquals(new ArrayList<>(expectedView.keySet()), new ArrayList<>(view.keySet()));
+                assertEquals(expectedView.size(), view.size());
+                int probe = random.nextInt(1100) - 50;
+                assertEquals(expectedView.get(probe), view.get(probe));
+                assertEquals(expectedView.floorKey(probe), view.floorKey(probe));
+                assertEquals(expectedView.ceilingKey(probe), view.ceilingKey(probe));
+                assertEquals(expectedView.lowerKey(probe), view.lowerKey(probe));
+                assertEquals(expectedView.higherKey(probe), view.higherKey(probe));
+                NavigableMap<Integer, Integer> expectedHead;
+                try{
+                    expectedHead = expectedView.headMap(probe, true);
+                }catch(IllegalArgumentException e){
+                    expectedHead = null;
+                }
+                NavigableMap<Integer, Integer> head;
+                try{
+                    head = view.headMap(probe, true);
+                }catch(IllegalArgumentException e){
+                    head = null;
+                }
+                assertEquals(expectedHead == null, head == null);
+                if(head != null)
+                    assertEquals(new ArrayList<>(expectedHead.keySet()), new ArrayList<>(head.keySet()));
+            }
+        }
+    }
+}
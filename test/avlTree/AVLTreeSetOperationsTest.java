@@ -0,0 +1,93 @@
+package avlTree;
+
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.function.BinaryOperator;
+
+import static avlTree.AVLTreeSplitJoinTest.assertContent;
+import static avlTree.AVLTreeSplitJoinTest.randomTree;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class AVLTreeSetOperationsTest {
+    /* Drops some of the keys present in both trees */
+    private static final BinaryOperator<Integer> MERGE = (a, b) -> ((a + b) % 3 == 0) ? null : a - b;
+
+    /* Sizes below and above the size from which the halves are forked */
+    private static final int[] SIZES = {0, 1, 100, 5000, 40_000};
+
+
+    @Test
+    public void unionMatchesTreeMap(){
+        Random random = new Random(13);
+        for(int a : SIZES)
+            for(int b : SIZES){
+                TreeMap<Integer, Integer> expectedA = new TreeMap<>();
+                TreeMap<Integer, Integer> expectedB = new TreeMap<>();
+                AVLTree<Integer, Integer> treeA = randomTree(random, a, expectedA);
+                AVLTree<Integer, Integer> treeB = randomTree(random, b, expectedB);
+                TreeMap<Integer, Integer> expected = new TreeMap<>(expectedA);
+                for(Integer key : expectedB.keySet())
+                    expected.merge(key, expectedB.get(key), MERGE);
+                assertContent(expected, AVLTree.union(treeA, treeB, MERGE));
+                assertEquals(0, treeA.size());
+                assertEquals(0, treeB.size());
+            }
+    }
+
+
+    @Test
+    public void intersectionMatchesTreeMap(){
+        Random random = new Random(14);
+        for(int a : SIZES)
+            for(int b : SIZES){
+                TreeMap<Integer, Integer> expectedA = new TreeMap<>();
+                TreeMap<Integer, Integer> expectedB = new TreeMap<>();
+                AVLTree<Integer, Integer> treeA = randomTree(random, a, expectedA);
+                AVLTree<Integer, Integer> treeB = randomTree(random, b, expectedB);
+                TreeMap<Integer, Integer> expected = new TreeMap<>();
+                for(Integer key : expectedA.keySet())
+                    if(expectedB.containsKey(key)){
+                        Integer value = MERGE.apply(expectedA.get(key), expectedB.get(key));
+                        if(value != null)
+                            expected.put(key, value);
+                    }
+                assertContent(expected, AVLTree.intersection(treeA, treeB, MERGE));
+            }
+    }
+
+
+    @Test
+    public void differenceMatchesTreeMapAndOnlyReadsTheSecondTree(){
+        Random random = new Random(15);
+        for(int a : SIZES)
+            for(int b : SIZES){
+                TreeMap<Integer, Integer> expectedA = new TreeMap<>();
+                TreeMap<Integer, Integer> expectedB = new TreeMap<>();
+                AVLTree<Integer, Integer> treeA = randomTree(random, a, expectedA);
+                AVLTree<Integer, Integer> treeB = randomTree(random, b, expectedB);
+                AVLTree<Integer, Integer> snapshot = treeB.snapshot();
+                TreeMap<Integer, Integer> expected = new TreeMap<>(expectedA);
+                expected.keySet().removeAll(expectedB.keySet());
+                assertContent(expected, AVLTree.difference(treeA, snapshot));
+                assertContent(expectedB, snapshot);
+                assertContent(expectedB, treeB);
+            }
+    }
+
+
+    @Test
+    public void setOperationsOfSnapshotNodesLeaveTheSnapshotIntact(){
+        Random random = new Random(16);
+        TreeMap<Integer, Integer> expectedA = new TreeMap<>();
+        TreeMap<Integer, Integer> expectedB = new TreeMap<>();
+        AVLTree<Integer, Integer> treeA = randomTree(random, 20_000, expectedA);
+        AVLTree<Integer, Integer> treeB = randomTree(random, 20_000, expectedB);
+        AVLTree<Integer, Integer> snapshotA = treeA.snapshot();
+        AVLTree<Integer, Integer> union = AVLTree.union(treeA, treeB, Integer::sum);
+        assertTrue(union.size() >= expectedA.size());
+        assertContent(expectedA, snapshotA);
+    }
+}
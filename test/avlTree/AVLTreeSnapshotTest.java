@@ -0,0 +1,182 @@
+package avlTree;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static avlTree.AVLTreeSplitJoinTest.assertContent;
+import static avlTree.AVLTreeSplitJoinTest.randomTree;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class AVLTreeSnapshotTest {
+
+    /** Snapshots taken between rounds of every kind of write keep the content and the shape they were
+     * taken with. The writes include the in-place value replacements of put on an existing key and of
+     * Cursor.setValue, which may change a node only when no snapshot shares it
+     */
+    @Test
+    public void snapshotsKeepTheirContentUnderWrites(){
+        Random random = new Random(50);
+        TreeMap<Integer, Integer> expected = new TreeMap<>();
+        AVLTree<Integer, Integer> tree = randomTree(random, 3000, expected);
+        List<AVLTree<Integer, Integer>> snapshots = new ArrayList<>();
+        List<TreeMap<Integer, Integer>> contents = new ArrayList<>();
+        List<ValidationReport> reports = new ArrayList<>();
+        for(int round = 0; round < 40; round++){
+            AVLTree<Integer, Integer> snapshot = tree.snapshot();
+            snapshots.add(snapshot);
+            contents.add(new TreeMap<>(expected));
+            reports.add(snapshot.validate());
+
+            for(int i = 0; i < 500; i++){
+                int key = random.nextInt(10_000);
+                int value = random.nextInt(1000);
+                switch(random.nextInt(12)){
+                    case 0:
+                        tree.delete(key);
+                        expected.remove(key);
+                        break;
+                    case 1:
+                        if(!expected.isEmpty()){
+                            tree.deleteMin();
+                            expected.pollFirstEntry();
+                            tree.deleteMax();
+                            expected.pollLastEntry();
+                        }
+                        break;
+                    case 2:
+                        /* put on an existing key replaces the value */
+                        Integer existing = expected.ceilingKey(key);
+                        if(existing != null){
+                            tree.put(existing, value);
+                            expected.put(existing, value);
+                        }
+                        break;
+                    case 3:
+                        AVLTree<Integer, Integer>.Cursor cursor = tree.cursor();
+                        for(boolean valid = cursor.seek(key); valid && cursor.key() < key + 50; valid = cursor.next()){
+                            cursor.setValue(value);
+                            expected.put(cursor.key(), value);
+                        }
+                        break;
+                    case 4:
+                        tree.compute(key, (k, v) -> (v == null) ? value : null);
+                        expected.compute(key, (k, v) -> (v == null) ? value : null);
+                        break;
+                    case 5:
+                        tree.merge(key, value, Integer::sum);
+                        expected.merge(key, value, Integer::sum);
+                        break;
+                    case 6:
+                        int hi = key + random.nextInt(30);
+                        tree.deleteRange(key, hi);
+                        expected.subMap(key, true, hi, true).clear();
+                        break;
+                    case 7:
+                        AVLTree<Integer, Integer> tail = tree.tailTree(key);
+                        tail.put(key, value);
+                        tail.delete(key);
+                        tree = AVLTree.join(tree, key, value, tail);
+                        expected.put(key, value);
+                        break;
+                    case 8:
+                        Integer[] keys = {key, key + 1, key + 2};
+                        Integer[] values = {value, value, value};
+                        tree.putAll(keys, values);
+                        for(Integer k : keys)
+                            expected.put(k, value);
+                        break;
+                    case 9:
+                        Iterator<Map.Entry<Integer, Integer>> entries = tree.entries().iterator();
+                        for(int skip = key / 100; entries.hasNext() && skip >= 0; skip--){
+                            Map.Entry<Integer, Integer> entry = entries.next();
+                            if(skip == 0){
+                                entries.remove();
+                                expected.remove(entry.getKey());
+                            }
+                        }
+                        break;
+                    default:
+                        tree.put(key, value);
+                        expected.put(key, value);
+                }
+            }
+            /* A large batch rebuilds the whole tree from merged arrays */
+            if(round % 10 == 9){
+                TreeMap<Integer, Integer> batch = new TreeMap<>();
+                while(batch.size() < expected.size() / 2)
+                    batch.put(random.nextInt(10_000), round);
+                tree.putAll(batch.keySet().toArray(new Integer[0]), batch.values().toArray(new Integer[0]));
+                expected.putAll(batch);
+            }
+
+            for(int s = 0; s < snapshots.size(); s++){
+                assertContent(contents.get(s), snapshots.get(s));
+                ValidationReport report = snapshots.get(s).validate();
+                assertEquals(reports.get(s).checkedNodes(), report.checkedNodes());
+                assertEquals(reports.get(s).height(), report.height());
+            }
+        }
+        assertContent(expected, tree);
+    }
+
+
+    /* Every write to a snapshot throws and leaves it unchanged */
+    @Test
+    public void snapshotRejectsWrites(){
+        TreeMap<Integer, Integer> expected = new TreeMap<>();
+        AVLTree<Integer, Integer> tree = randomTree(new Random(51), 1000, expected);
+        AVLTree<Integer, Integer> snapshot = tree.snapshot();
+        assertSame(snapshot, snapshot.snapshot());
+        int key = expected.firstKey();
+        List<Runnable> writes = new ArrayList<>();
+        writes.add(() -> snapshot.put(key, 1));
+        writes.add(() -> snapshot.put(-1, 1));
+        writes.add(() -> snapshot.delete(key));
+        writes.add(snapshot::deleteMin);
+        writes.add(snapshot::deleteMax);
+        writes.add(() -> snapshot.compute(key, (k, v) -> 1));
+        writes.add(() -> snapshot.computeIfAbsent(-1, k -> 1));
+        writes.add(() -> snapshot.computeIfPresent(key, (k, v) -> null));
+        writes.add(() -> snapshot.merge(key, 1, Integer::sum));
+        writes.add(() -> snapshot.putIfAbsent(-1, 1));
+        writes.add(() -> snapshot.replace(key, 1));
+        writes.add(() -> snapshot.putAll(new Integer[]{-1}, new Integer[]{1}));
+        writes.add(() -> snapshot.deleteRange(0, 5000));
+        writes.add(() -> snapshot.tailTree(5000));
+        writes.add(() -> snapshot.headTree(5000));
+        writes.add(() -> snapshot.splitAtRank(10));
+        writes.add(() -> AVLTree.join(snapshot, 20_000, 1, new AVLTree<>()));
+        writes.add(() -> AVLTree.union(snapshot, new AVLTree<>(), (a, b) -> a));
+        writes.add(() -> AVLTree.difference(snapshot, new AVLTree<>()));
+        writes.add(() -> {
+            AVLTree<Integer, Integer>.Cursor cursor = snapshot.cursor();
+            cursor.seekFirst();
+            cursor.setValue(1);
+        });
+        writes.add(() -> {
+            Iterator<Integer> keys = snapshot.keys().iterator();
+            keys.next();
+            keys.remove();
+        });
+        writes.add(() -> snapshot.entries().iterator().next().setValue(1));
+        for(int i = 0; i < writes.size(); i++){
+            try{
+                writes.get(i).run();
+                fail("write " + i + " to a snapshot did not throw");
+            }catch(UnsupportedOperationException e){
+                // read-only
+            }
+            assertContent(expected, snapshot);
+        }
+        assertContent(expected, tree);
+    }
+}
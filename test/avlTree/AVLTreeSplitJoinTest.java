@@ -0,0 +1,143 @@
+package avlTree;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class AVLTreeSplitJoinTest {
+
+    @Test
+    public void tailAndHeadTreesMatchTreeMap(){
+        Random random = new Random(8);
+        for(int round = 0; round < 50; round++){
+            TreeMap<Integer, Integer> expected = new TreeMap<>();
+            AVLTree<Integer, Integer> tree = randomTree(random, random.nextInt(3000), expected);
+            int key = random.nextInt(12_000) - 1000;
+            AVLTree<Integer, Integer> tail = tree.tailTree(key);
+            assertContent(expected.headMap(key, false), tree);
+            assertContent(expected.tailMap(key, true), tail);
+
+            TreeMap<Integer, Integer> rest = new TreeMap<>(expected.tailMap(key, true));
+            key = random.nextInt(12_000) - 1000;
+            AVLTree<Integer, Integer> head = tail.headTree(key);
+            assertContent(rest.headMap(key, false), head);
+            assertContent(rest.tailMap(key, true), tail);
+        }
+    }
+
+
+    @Test
+    public void splitAtRankKeepsTheSmallestKeys(){
+        Random random = new Random(9);
+        for(int round = 0; round < 50; round++){
+            TreeMap<Integer, Integer> expected = new TreeMap<>();
+            AVLTree<Integer, Integer> tree = randomTree(random, random.nextInt(2000), expected);
+            int k = random.nextInt(expected.size() + 10) - 5;
+            AVLTree<Integer, Integer> rest = tree.splitAtRank(k);
+            List<Integer> keys = new ArrayList<>(expected.keySet());
+            int cut = Math.max(0, Math.min(k, keys.size()));
+            assertEquals(keys.subList(0, cut), list(tree.keys()));
+            assertEquals(keys.subList(cut, keys.size()), list(rest.keys()));
+            assertTrue(tree.validate().isValid() && rest.validate().isValid());
+        }
+    }
+
+
+    @Test
+    public void joinOfSplitTreesRestoresTheTree(){
+        Random random = new Random(10);
+        for(int round = 0; round < 50; round++){
+            TreeMap<Integer, Integer> expected = new TreeMap<>();
+            AVLTree<Integer, Integer> tree = randomTree(random, 1 + random.nextInt(3000), expected);
+            /* Unbalanced sizes on both sides exercise the descent along the spine */
+            int key = expected.keySet().toArray(new Integer[0])[random.nextInt(expected.size())];
+            AVLTree<Integer, Integer> right = tree.tailTree(key);
+            Integer value = right.get(key);
+            right.delete(key);
+            AVLTree<Integer, Integer> joined = AVLTree.join(tree, key, value, right);
+            assertContent(expected, joined);
+            assertEquals(0, tree.size());
+            assertEquals(0, right.size());
+        }
+    }
+
+
+    @Test(expected = IllegalArgumentException.class)
+    public void joinRejectsOverlappingTrees(){
+        AVLTree<Integer, Integer> left = new AVLTree<>();
+        AVLTree<Integer, Integer> right = new AVLTree<>();
+        left.put(5, 5);
+        right.put(3, 3);
+        AVLTree.join(left, 4, 4, right);
+    }
+
+
+    @Test
+    public void deleteRangeMatchesTreeMap(){
+        Random random = new Random(11);
+        TreeMap<Integer, Integer> expected = new TreeMap<>();
+        AVLTree<Integer, Integer> tree = randomTree(random, 20_000, expected);
+        for(int round = 0; round < 200; round++){
+            int lo = random.nextInt(11_000) - 500;
+            int hi = lo + random.nextInt(400) - 50;
+            tree.deleteRange(lo, hi);
+            if(lo <= hi)
+                expected.subMap(lo, true, hi, true).clear();
+            if(round % 5 == 0){
+                int key = random.nextInt(10_000);
+                tree.put(key, round);
+                expected.put(key, round);
+            }
+        }
+        assertContent(expected, tree);
+    }
+
+
+    @Test
+    public void splitsLeaveSnapshotsIntact(){
+        Random random = new Random(12);
+        TreeMap<Integer, Integer> expected = new TreeMap<>();
+        AVLTree<Integer, Integer> tree = randomTree(random, 5000, expected);
+        AVLTree<Integer, Integer> snapshot = tree.snapshot();
+        tree.deleteRange(1000, 4000);
+        AVLTree<Integer, Integer> tail = tree.tailTree(7000);
+        tail.put(-1, -1);
+        assertContent(expected, snapshot);
+        assertContent(expected.headMap(1000, false), tree.headTree(1000));
+    }
+
+
+    static AVLTree<Integer, Integer> randomTree(Random random, int count, TreeMap<Integer, Integer> expected){
+        AVLTree<Integer, Integer> tree = new AVLTree<>();
+        for(int i = 0; i < count; i++){
+            int key = random.nextInt(10_000);
+            tree.put(key, i);
+            expected.put(key, i);
+        }
+        return tree;
+    }
+
+
+    static void assertContent(Map<Integer, Integer> expected, AVLTree<Integer, Integer> tree){
+        assertTrue(tree.validate().toString(), tree.validate().isValid());
+        assertEquals(expected.size(), tree.size());
+        assertEquals(new ArrayList<>(expected.keySet()), list(tree.keys()));
+        for(Map.Entry<Integer, Integer> entry : expected.entrySet())
+            assertEquals(entry.getValue(), tree.get(entry.getKey()));
+    }
+
+
+    static List<Integer> list(Iterable<Integer> keys){
+        List<Integer> list = new ArrayList<>();
+        for(Integer key : keys)
+            list.add(key);
+        return list;
+    }
+}
@@ -0,0 +1,162 @@
+package avlTree;
+
+import org.junit.Test;
+
+import java.util.Iterator;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static avlTree.AVLTreeSplitJoinTest.randomTree;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class AVLTreeValidationTest {
+
+    @Test
+    public void validTreeHasAnEmptyReport(){
+        TreeMap<Integer, Integer> expected = new TreeMap<>();
+        AVLTree<Integer, Integer> tree = randomTree(new Random(43), 5000, expected);
+        ValidationReport report = tree.validate();
+        assertTrue(report.isValid());
+        assertEquals(0, report.violationCount());
+        assertTrue(report.violations().isEmpty());
+        assertEquals(expected.size(), report.checkedNodes());
+        assertEquals(tree.height(), report.height());
+        assertTrue(report.toString().startsWith("valid"));
+
+        /* The path check visits at most the path and the children of its nodes */
+        for(int key = -10; key < 10_010; key += 37){
+            ValidationReport path = tree.validatePath(key);
+            assertTrue(path.isValid());
+            assertTrue(path.checkedNodes() <= 3 * (tree.height() + 1));
+        }
+
+        ValidationReport empty = new AVLTree<Integer, Integer>().validate();
+        assertTrue(empty.isValid());
+        assertEquals(0, empty.checkedNodes());
+        assertEquals(-1, empty.height());
+    }
+
+
+    /* Every kind of corruption is reported by the full validation and by the path check of its key */
+    @Test
+    public void corruptionsAreReported(){
+        check(AVLTree.Corruption.HEIGHT, "Wrong height");
+        check(AVLTree.Corruption.SIZE, "Wrong size");
+        check(AVLTree.Corruption.ORDER, "out of the order bounds");
+        check(AVLTree.Corruption.AGGREGATE, "Wrong aggregate");
+        /* The messages of the repeated walks around a cycle fill the report before its depth violation */
+        check(AVLTree.Corruption.CYCLE, "Wrong height");
+    }
+
+
+    /* The walk around a cycle repeats its violations until MAX_HEIGHT, the report keeps the first messages only */
+    @Test
+    public void reportKeepsTheFirstViolations(){
+        AVLTree<Integer, Integer> tree = randomTree(new Random(44), 5000, new TreeMap<>());
+        tree.corrupt(levelOrderKey(tree, 1), AVLTree.Corruption.CYCLE);
+        ValidationReport report = tree.validate();
+        assertFalse(report.isValid());
+        assertTrue(report.violationCount() > ValidationReport.MAX_VIOLATIONS);
+        assertEquals(ValidationReport.MAX_VIOLATIONS, report.violations().size());
+        assertTrue(report.toString(), report.toString().contains((report.violationCount() - ValidationReport.MAX_VIOLATIONS) + " more"));
+    }
+
+
+    /** The policies decide what the writes check under -ea: FULL finds a corruption anywhere at the next
+     * write, SAMPLED only on the path of the written key until its next full check, OFF never
+     */
+    @Test
+    public void validationPolicyDecidesWhatTheWritesCheck(){
+        AVLTree<Integer, Integer> tree = tree(new Random(45));
+        tree.setValidationPolicy(ValidationPolicy.OFF);
+        tree.corrupt(tree.max(), AVLTree.Corruption.SIZE);
+        for(int i = 0; i < 3000; i++)
+            tree.put(-1 - i % 100, i);
+        assertFalse(tree.validate().isValid());
+
+        tree = tree(new Random(46));
+        tree.setValidationPolicy(ValidationPolicy.FULL);
+        tree.corrupt(tree.max(), AVLTree.Corruption.SIZE);
+        expectAssertion(tree, 1);
+
+        /* The path check of a write far from the corruption misses it, the full check every 1024 writes finds it */
+        tree = tree(new Random(47));
+        tree.setValidationPolicy(ValidationPolicy.SAMPLED);
+        tree.corrupt(tree.max(), AVLTree.Corruption.SIZE);
+        int writes = expectAssertion(tree, ValidationPolicy.SAMPLED.fullCheckInterval());
+        assertTrue(writes > 1);
+
+        /* The path check of a write at the largest key covers the left child of the root, which the write does not change */
+        tree = tree(new Random(48));
+        tree.setValidationPolicy(new ValidationPolicy(true, 0));
+        tree.corrupt(levelOrderKey(tree, 1), AVLTree.Corruption.SIZE);
+        try{
+            tree.put(tree.max() + 1, 0);
+            fail("the path check missed a corruption on the path");
+        }catch(AssertionError e){
+            assertTrue(e.getMessage(), e.getMessage().contains("Wrong size"));
+        }
+
+        try{
+            tree.setValidationPolicy(null);
+            fail("null policy was accepted");
+        }catch(IllegalArgumentException e){
+            // no policy
+        }
+        try{
+            new ValidationPolicy(true, -1);
+            fail("negative interval was accepted");
+        }catch(IllegalArgumentException e){
+            // negative interval
+        }
+    }
+
+
+    private static void check(AVLTree.Corruption corruption, String message){
+        /* The left child of the root has children to swap in a tree of this size */
+        AVLTree<Integer, Integer> tree = tree(new Random(corruption.ordinal()));
+        int key = levelOrderKey(tree, 1);
+        tree.corrupt(key, corruption);
+        ValidationReport report = tree.validate();
+        assertFalse(corruption + " was not found", report.isValid());
+        assertTrue(report.toString(), report.violations().stream().anyMatch(violation -> violation.contains(message)));
+        ValidationReport path = tree.validatePath(key);
+        assertFalse(corruption + " was not found on the path", path.isValid());
+    }
+
+
+    /* Tree with the sum of the values, so that the aggregates are validated too */
+    private static AVLTree<Integer, Integer> tree(Random random){
+        AVLTree<Integer, Integer> tree = new AVLTree<>(Monoid.intSum());
+        for(int i = 0; i < 2000; i++)
+            tree.put(random.nextInt(10_000), 1 + random.nextInt(100));
+        return tree;
+    }
+
+
+    /* Returns the key at the index of the level order, 0 is the root and 1 its left child */
+    private static int levelOrderKey(AVLTree<Integer, Integer> tree, int index){
+        Iterator<Integer> keys = tree.keysLevelOrder().iterator();
+        for(int i = 0; i < index; i++)
+            keys.next();
+        return keys.next();
+    }
+
+
+    /* Writes the smallest keys until a write fails its validation and returns the number of writes */
+    private static int expectAssertion(AVLTree<Integer, Integer> tree, int maxWrites){
+        for(int i = 1; i <= maxWrites; i++){
+            try{
+                tree.put(-i, i);
+            }catch(AssertionError e){
+                assertTrue(e.getMessage(), e.getMessage().contains("Wrong size"));
+                return i;
+            }
+        }
+        fail("no write found the corruption within " + maxWrites + " writes");
+        return -1;
+    }
+}
@@ -0,0 +1,150 @@
+package avlTree;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ConcurrentAVLTreeTest {
+
+    @Test
+    public void matchesTreeMap(){
+        Random random = new Random(5);
+        ConcurrentAVLTree<Integer, Integer> tree = new ConcurrentAVLTree<>();
+        TreeMap<Integer, Integer> expected = new TreeMap<>();
+        assertTrue(tree.isEmpty());
+        for(int i = 0; i < 50_000; i++){
+            int key = random.nextInt(5000);
+            switch(random.nextInt(8)){
+                case 0: case 1: case 2:
+                    tree.delete(key);
+                    expected.remove(key);
+                    break;
+                case 3:
+                    tree.deleteMin();
+                    if(!expected.isEmpty())
+                        expected.pollFirstEntry();
+                    break;
+                case 4:
+                    tree.deleteMax();
+                    if(!expected.isEmpty())
+                        expected.pollLastEntry();
+                    break;
+                default:
+                    tree.put(key, i);
+                    expected.put(key, i);
+            }
+        }
+        assertTrue(tree.isValid());
+        assertEquals(expected.size(), tree.size());
+        assertEquals(expected.isEmpty(), tree.isEmpty());
+        for(int i = 0; i < 2000; i++){
+            int key = random.nextInt(5200) - 100;
+            assertEquals(expected.get(key), tree.get(key));
+            assertEquals(expected.floorKey(key), tree.floor(key));
+            assertEquals(expected.ceilingKey(key), tree.ceiling(key));
+        }
+        for(int i = 0; i < 50; i++){
+            int key = random.nextInt(5200) - 100;
+            assertEquals(expected.headMap(key).size(), tree.rank(key));
+            int k = random.nextInt(expected.size() + 2) - 1;
+            assertEquals((k < 0 || k >= expected.size()) ? null : new ArrayList<>(expected.keySet()).get(k), tree.select(k));
+            int hi = key + random.nextInt(500);
+            assertEquals(new ArrayList<>(expected.subMap(key, true, hi, true).keySet()), tree.keysInRange(key, hi));
+        }
+    }
+
+
+    @Test
+    public void putNullDeletesAndDeletedKeysCanComeBack(){
+        ConcurrentAVLTree<Integer, Integer> tree = new ConcurrentAVLTree<>();
+        for(int i = 0; i < 100; i++)
+            tree.put(i, i);
+        for(int i = 0; i < 100; i += 2)
+            tree.put(i, null);
+        assertEquals(50, tree.size());
+        assertNull(tree.get(50));
+        assertFalse(tree.contains(50));
+        assertEquals(Integer.valueOf(49), tree.floor(50));
+        assertEquals(Integer.valueOf(51), tree.ceiling(50));
+        tree.put(50, -1);
+        assertEquals(Integer.valueOf(-1), tree.get(50));
+        assertEquals(51, tree.size());
+        assertTrue(tree.isValid());
+    }
+
+
+    /** Every writer owns the keys of its residue class and keeps the expected state of them,
+     * readers meanwhile check the even keys, which are never written after the setup
+     */
+    @Test
+    public void concurrentWritersKeepTheTreeConsistent() throws InterruptedException{
+        int writers = 4;
+        int readers = 2;
+        int range = 20_000;
+        ConcurrentAVLTree<Integer, Integer> tree = new ConcurrentAVLTree<>();
+        for(int i = 0; i < range; i += 2)
+            tree.put(i, i);
+
+        ConcurrentHashMap<Integer, Integer> expected = new ConcurrentHashMap<>();
+        AtomicBoolean stop = new AtomicBoolean();
+        AtomicInteger failures = new AtomicInteger();
+        Thread[] threads = new Thread[writers + readers];
+        for(int t = 0; t < writers; t++){
+            int owner = t;
+            threads[t] = new Thread(() -> {
+                Random random = new Random(owner);
+                for(int i = 0; i < 200_000; i++){
+                    int key = 2 * (writers * random.nextInt(range / (2 * writers)) + owner) + 1;
+                    if(random.nextInt(3) == 0){
+                        tree.delete(key);
+                        expected.remove(key);
+                    }else{
+                        tree.put(key, i);
+                        expected.put(key, i);
+                    }
+                }
+            });
+        }
+        for(int t = writers; t < threads.length; t++){
+            long seed = t;
+            threads[t] = new Thread(() -> {
+                Random random = new Random(seed);
+                while(!stop.get()){
+                    int key = 2 * random.nextInt(range / 2);
+                    Integer value = tree.get(key);
+                    Integer floor = tree.floor(key + 1);
+                    Integer ceiling = tree.ceiling(key - 1);
+                    if(value == null || value != key || floor == null || floor < key || ceiling == null || ceiling > key)
+                        failures.incrementAndGet();
+                }
+            });
+        }
+        for(Thread thread : threads)
+            thread.start();
+        for(int t = 0; t < writers; t++)
+            threads[t].join();
+        stop.set(true);
+        for(int t = writers; t < threads.length; t++)
+            threads[t].join();
+
+        assertEquals(0, failures.get());
+        assertTrue(tree.isValid());
+        assertEquals(range / 2 + expected.size(), tree.size());
+        for(int key = 1; key < range; key += 2)
+            assertEquals(expected.get(key), tree.get(key));
+        TreeMap<Integer, Integer> all = new TreeMap<>(expected);
+        for(int i = 0; i < range; i += 2)
+            all.put(i, i);
+        assertEquals(new ArrayList<>(all.keySet()), tree.keysInRange(0, range));
+    }
+}
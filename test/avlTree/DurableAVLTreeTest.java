@@ -0,0 +1,185 @@
+package avlTree;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static java.nio.file.StandardOpenOption.WRITE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DurableAVLTreeTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+
+    @Test
+    public void recoversTheWritesOfACrashedProcess() throws IOException{
+        Path directory = folder.newFolder("tree").toPath();
+        Path crash = folder.newFolder("crash").toPath();
+        TreeMap<Integer, Integer> expected = new TreeMap<>();
+        try(DurableAVLTree<Integer, Integer> tree = open(directory)){
+            write(tree, expected, new Random(1), 20_000);
+            tree.checkpoint();
+            write(tree, expected, new Random(2), 20_000);
+            tree.sync();
+            copy(directory, crash);
+        }
+        try(DurableAVLTree<Integer, Integer> recovered = open(crash)){
+            assertContent(expected, recovered);
+        }
+        try(DurableAVLTree<Integer, Integer> reopened = open(directory)){
+            assertContent(expected, reopened);
+        }
+    }
+
+
+    @Test
+    public void tornRecordAtTheEndOfTheLogIsCutOff() throws IOException{
+        Path directory = folder.newFolder("tree").toPath();
+        Path crash = folder.newFolder("crash").toPath();
+        TreeMap<Integer, Integer> expected = new TreeMap<>();
+        try(DurableAVLTree<Integer, Integer> tree = open(directory)){
+            write(tree, expected, new Random(3), 5000);
+            tree.put(-1, -1);
+            tree.sync();
+            copy(directory, crash);
+        }
+        Path log = lastLog(crash);
+        try(FileChannel channel = FileChannel.open(log, WRITE)){
+            channel.truncate(channel.size() - 3);
+        }
+        long torn = Files.size(log);
+        try(DurableAVLTree<Integer, Integer> recovered = open(crash)){
+            assertContent(expected, recovered);
+            assertTrue(Files.size(log) < torn);
+            recovered.put(-2, -2);
+            expected.put(-2, -2);
+        }
+        try(DurableAVLTree<Integer, Integer> reopened = open(crash)){
+            assertContent(expected, reopened);
+        }
+    }
+
+
+    @Test
+    public void recordWithAWrongChecksumEndsTheReplay() throws IOException{
+        Path directory = folder.newFolder("tree").toPath();
+        TreeMap<Integer, Integer> expected = new TreeMap<>();
+        try(DurableAVLTree<Integer, Integer> tree = open(directory)){
+            write(tree, expected, new Random(4), 1000);
+            tree.put(-1, -1);
+            tree.put(-2, -2);
+        }
+        /* A put of an int key and value is 17 bytes, flip a byte of the value of the second last record */
+        Path log = lastLog(directory);
+        try(FileChannel channel = FileChannel.open(log, WRITE)){
+            channel.write(ByteBuffer.wrap(new byte[]{(byte) 0x55}), channel.size() - 17 - 1);
+        }
+        try(DurableAVLTree<Integer, Integer> recovered = open(directory)){
+            assertContent(expected, recovered);
+        }
+    }
+
+
+    /* The checkpoint and the logs of a tree of a comparator are recovered in its order */
+    @Test
+    public void recoversATreeOfAComparator() throws IOException{
+        Path directory = folder.newFolder("tree").toPath();
+        Comparator<Integer> order = Collections.reverseOrder();
+        TreeMap<Integer, Integer> expected = new TreeMap<>(order);
+        try(DurableAVLTree<Integer, Integer> tree = open(directory, order)){
+            write(tree, expected, new Random(5), 10_000);
+            tree.checkpoint();
+            write(tree, expected, new Random(6), 10_000);
+        }
+        try(DurableAVLTree<Integer, Integer> recovered = open(directory, order)){
+            assertContent(expected, recovered);
+            assertEquals(expected.firstKey(), recovered.snapshot().min());
+        }
+    }
+
+
+    private static DurableAVLTree<Integer, Integer> open(Path directory) throws IOException{
+        return open(directory, null);
+    }
+
+
+    private static DurableAVLTree<Integer, Integer> open(Path directory, Comparator<Integer> order) throws IOException{
+        return new DurableAVLTree<>(directory, Codec.INT, Codec.INT, order, SyncPolicy.COMMIT, 10, 64L << 20);
+    }
+
+
+    /* Random puts and deletes, deleteMin and deleteMax on both trees */
+    private static void write(DurableAVLTree<Integer, Integer> tree, TreeMap<Integer, Integer> expected,
+                              Random random, int count) throws IOException{
+        for(int i = 0; i < count; i++){
+            int key = random.nextInt(10_000);
+            switch(random.nextInt(10)){
+                case 0: case 1:
+                    tree.delete(key);
+                    expected.remove(key);
+                    break;
+                case 2:
+                    tree.deleteMin();
+                    expected.pollFirstEntry();
+                    break;
+                case 3:
+                    tree.deleteMax();
+                    expected.pollLastEntry();
+                    break;
+                default:
+                    tree.put(key, i);
+                    expected.put(key, i);
+            }
+        }
+    }
+
+
+    private static void assertContent(TreeMap<Integer, Integer> expected, DurableAVLTree<Integer, Integer> tree){
+        assertEquals(expected.size(), tree.size());
+        for(Map.Entry<Integer, Integer> entry : expected.entrySet())
+            assertEquals(entry.getValue(), tree.get(entry.getKey()));
+        if(!expected.isEmpty()){
+            assertEquals(expected.firstKey(), tree.select(0));
+            assertEquals(expected.lastKey(), tree.select(expected.size() - 1));
+        }
+    }
+
+
+    /* The files of a directory at one moment, as a crash of the process leaves them */
+    private static void copy(Path from, Path to) throws IOException{
+        try(DirectoryStream<Path> files = Files.newDirectoryStream(from)){
+            for(Path file : files)
+                Files.copy(file, to.resolve(file.getFileName()));
+        }
+    }
+
+
+    private static Path lastLog(Path directory) throws IOException{
+        Path last = null;
+        long generation = -1;
+        try(DirectoryStream<Path> files = Files.newDirectoryStream(directory, "log.*")){
+            for(Path file : files){
+                long g = Long.parseLong(file.getFileName().toString().substring("log.".length()));
+                if(g > generation){
+                    generation = g;
+                    last = file;
+                }
+            }
+        }
+        return last;
+    }
+}
@@ -0,0 +1,76 @@
+package avlTree;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static avlTree.AVLTreeSplitJoinTest.assertContent;
+import static avlTree.AVLTreeSplitJoinTest.list;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class FrozenAVLTreeTest {
+
+    /* Every size up to a few levels covers the complete and the partly filled last levels of the array */
+    @Test
+    public void everySmallSizeMatchesTreeMap(){
+        for(int size = 0; size <= 130; size++){
+            AVLTree<Integer, Integer> tree = new AVLTree<>();
+            TreeMap<Integer, Integer> expected = new TreeMap<>();
+            for(int i = 0; i < size; i++){
+                tree.put(3 * i, i);
+                expected.put(3 * i, i);
+            }
+            assertMatches(expected, tree.freeze(), -2, 3 * size + 2);
+        }
+    }
+
+
+    @Test
+    public void randomTreesMatchTreeMapInBothOrders(){
+        Random random = new Random(18);
+        for(Comparator<Integer> order : Arrays.<Comparator<Integer>>asList(null, Collections.reverseOrder())){
+            AVLTree<Integer, Integer> tree = (order == null) ? new AVLTree<>() : new AVLTree<>(order);
+            TreeMap<Integer, Integer> expected = new TreeMap<>(order);
+            for(int i = 0; i < 50_000; i++){
+                int key = random.nextInt(200_000);
+                tree.put(key, i);
+                expected.put(key, i);
+            }
+            FrozenAVLTree<Integer, Integer> frozen = tree.freeze();
+            assertSame(tree.comparator(), order);
+            assertMatches(expected, frozen, -10, 200_010);
+            assertContent(expected, frozen.thaw());
+        }
+    }
+
+
+    private static void assertMatches(TreeMap<Integer, Integer> expected, FrozenAVLTree<Integer, Integer> frozen, int lo, int hi){
+        assertEquals(expected.size(), frozen.size());
+        assertEquals(expected.isEmpty(), frozen.isEmpty());
+        List<Integer> keys = new ArrayList<>(expected.keySet());
+        assertEquals(keys, list(frozen.keys()));
+        assertEquals(expected.isEmpty() ? null : expected.firstKey(), frozen.min());
+        assertEquals(expected.isEmpty() ? null : expected.lastKey(), frozen.max());
+        int step = Math.max(1, (hi - lo) / 5000);
+        for(int key = lo; key <= hi; key += step){
+            assertEquals(expected.get(key), frozen.get(key));
+            assertEquals(expected.floorKey(key), frozen.floor(key));
+            assertEquals(expected.ceilingKey(key), frozen.ceiling(key));
+            assertEquals(expected.headMap(key, false).size(), frozen.rank(key));
+        }
+        for(int k = -1; k <= keys.size(); k += Math.max(1, keys.size() / 1000)){
+            Integer key = (k < 0 || k >= keys.size()) ? null : keys.get(k);
+            assertEquals(key, frozen.select(k));
+            assertEquals((key == null) ? null : expected.get(key), frozen.selectValue(k));
+        }
+        assertNull(frozen.select(keys.size()));
+    }
+}
@@ -0,0 +1,150 @@
+package avlTree;
+
+import org.junit.Test;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static avlTree.AVLTreeSplitJoinTest.assertContent;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class HotKeyCacheTest {
+    /* Keys read between every two writes, so they are admitted and stay cached */
+    private static final int HOT = 64;
+
+
+    /** Every kind of write runs between reads of the hot keys, after each of them the reads
+     * through the cache have to match TreeMap. The small capacity keeps the evictions busy
+     */
+    @Test
+    public void readsThroughTheCacheSeeEveryWrite(){
+        Random random = new Random(19);
+        AVLTree<Integer, Integer> tree = new AVLTree<>();
+        TreeMap<Integer, Integer> expected = new TreeMap<>();
+        HotKeyCache<Integer, Integer> cache = tree.enableCache(48);
+        for(int i = 0; i < 2 * HOT; i++){
+            tree.put(i, i);
+            expected.put(i, i);
+        }
+        for(int round = 0; round < 20_000; round++){
+            readHotKeys(random, tree, expected);
+            int key = random.nextInt(2 * HOT);
+            int value = random.nextInt(1000);
+            switch(random.nextInt(16)){
+                case 0:
+                    tree.delete(key);
+                    expected.remove(key);
+                    break;
+                case 1:
+                    if(!expected.isEmpty()){
+                        tree.deleteMin();
+                        expected.pollFirstEntry();
+                    }
+                    break;
+                case 2:
+                    if(!expected.isEmpty()){
+                        tree.deleteMax();
+                        expected.pollLastEntry();
+                    }
+                    break;
+                case 3:
+                    tree.compute(key, (k, v) -> (v != null && v % 2 == 0) ? null : value);
+                    expected.compute(key, (k, v) -> (v != null && v % 2 == 0) ? null : value);
+                    break;
+                case 4:
+                    tree.merge(key, value, Integer::sum);
+                    expected.merge(key, value, Integer::sum);
+                    break;
+                case 5:
+                    tree.replace(key, value);
+                    expected.replace(key, value);
+                    break;
+                case 6:
+                    tree.putIfAbsent(key, value);
+                    expected.putIfAbsent(key, value);
+                    break;
+                case 7:
+                    Integer[] keys = {key / 2, key / 2 + HOT};
+                    Integer[] values = {value, value + 1};
+                    tree.putAll(keys, values);
+                    expected.put(keys[0], values[0]);
+                    expected.put(keys[1], values[1]);
+                    break;
+                case 8:
+                    int hi = key + random.nextInt(8);
+                    tree.deleteRange(key, hi);
+                    expected.subMap(key, true, hi, true).clear();
+                    break;
+                case 9:
+                    /* The emptied arguments of join must not answer from their caches */
+                    AVLTree<Integer, Integer> left = tree;
+                    AVLTree<Integer, Integer> right = tree.tailTree(key);
+                    right.enableCache(48);
+                    for(int probe = key; probe < 2 * HOT; probe++)
+                        right.get(probe);
+                    right.delete(key);
+                    tree = AVLTree.join(left, key, value, right);
+                    cache = tree.enableCache(48);
+                    expected.put(key, value);
+                    for(int probe = 0; probe < 2 * HOT; probe++)
+                        assertTrue(left.get(probe) == null && right.get(probe) == null);
+                    break;
+                case 10:
+                    AVLTree<Integer, Integer>.Cursor cursor = tree.cursor();
+                    if(cursor.seek(key)){
+                        cursor.setValue(value);
+                        expected.put(cursor.key(), value);
+                    }
+                    break;
+                case 11:
+                    Iterator<Map.Entry<Integer, Integer>> entries = tree.entries().iterator();
+                    for(int skip = key / 8; entries.hasNext() && skip >= 0; skip--){
+                        Map.Entry<Integer, Integer> entry = entries.next();
+                        if(skip == 0){
+                            entries.remove();
+                            expected.remove(entry.getKey());
+                        }
+                    }
+                    break;
+                default:
+                    tree.put(key, value);
+                    expected.put(key, value);
+            }
+            for(int probe = 0; probe < 2 * HOT; probe++)
+                assertEquals(expected.get(probe), tree.get(probe));
+        }
+        assertContent(expected, tree);
+        assertTrue(cache.size() <= cache.capacity());
+        assertTrue(cache.hits() > 0);
+    }
+
+
+    @Test
+    public void clearedCacheMissesAndRefills(){
+        AVLTree<Integer, Integer> tree = new AVLTree<>();
+        HotKeyCache<Integer, Integer> cache = tree.enableCache(8);
+        tree.put(1, 1);
+        tree.get(1);
+        tree.get(1);
+        assertEquals(1, cache.size());
+        tree.get(1);
+        assertEquals(1, cache.hits());
+        tree.deleteRange(0, 0);
+        assertEquals(0, cache.size());
+        tree.put(1, 2);
+        assertEquals(Integer.valueOf(2), tree.get(1));
+        assertEquals(Integer.valueOf(2), tree.get(1));
+        assertEquals(Integer.valueOf(2), tree.get(1));
+    }
+
+
+    private static void readHotKeys(Random random, AVLTree<Integer, Integer> tree, TreeMap<Integer, Integer> expected){
+        for(int i = 0; i < 8; i++){
+            int key = random.nextInt(HOT);
+            assertEquals(expected.get(key), tree.get(key));
+        }
+    }
+}
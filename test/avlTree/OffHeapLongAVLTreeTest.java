@@ -0,0 +1,71 @@
+package avlTree;
+
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class OffHeapLongAVLTreeTest {
+
+    @Test
+    public void matchesTreeMap(){
+        Random random = new Random(11);
+        TreeMap<Long, Long> expected = new TreeMap<>();
+        try(OffHeapLongAVLTree tree = new OffHeapLongAVLTree(-1)){
+            for(int i = 0; i < 100_000; i++){
+                long key = random.nextInt(50_000);
+                if(random.nextInt(3) == 0){
+                    tree.delete(key);
+                    expected.remove(key);
+                }else{
+                    tree.put(key, i);
+                    expected.put(key, (long) i);
+                }
+            }
+            assertEquals(expected.size(), tree.size());
+            for(int i = 0; i < 1000; i++){
+                long key = random.nextInt(52_000) - 1000;
+                assertEquals(expected.getOrDefault(key, -1L).longValue(), tree.get(key));
+                assertEquals(expected.headMap(key).size(), tree.rank(key));
+                Long floor = expected.floorKey(key);
+                if(floor != null)
+                    assertEquals(floor.longValue(), tree.floor(key));
+                Long ceiling = expected.ceilingKey(key);
+                if(ceiling != null)
+                    assertEquals(ceiling.longValue(), tree.ceiling(key));
+            }
+            long[] keys = expected.subMap(1000L, true, 2000L, true).keySet().stream().mapToLong(Long::longValue).toArray();
+            assertArrayEquals(keys, tree.keysInRange(1000, 2000));
+            assertEquals((long) expected.firstKey(), tree.select(0));
+            assertTrue(tree.bytesAllocated() > 0);
+        }
+    }
+
+
+    @Test
+    public void everyMethodThrowsAfterClose(){
+        OffHeapLongAVLTree tree = new OffHeapLongAVLTree();
+        tree.put(1, 1);
+        tree.close();
+        tree.close();
+        Runnable[] calls = {
+                () -> tree.get(1), () -> tree.contains(1), tree::isEmpty, tree::size, tree::height,
+                () -> tree.put(2, 2), () -> tree.delete(1), tree::deleteMin, tree::deleteMax,
+                tree::min, tree::max, () -> tree.floor(1), () -> tree.ceiling(1), () -> tree.select(0),
+                () -> tree.rank(1), tree::keys, () -> tree.keysInRange(0, 5), tree::bytesAllocated
+        };
+        for(int i = 0; i < calls.length; i++){
+            try{
+                calls[i].run();
+                fail("call " + i + " did not throw on a closed tree");
+            }catch(IllegalStateException expected){
+                // closed
+            }
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package avlTree;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static avlTree.AVLTreeSplitJoinTest.list;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class PooledAVLTreeTest {
+
+    /* Every write is checked by the full validation, the small key space makes the slots get released and reused */
+    @Test
+    public void randomWritesMatchTreeMap(){
+        Random random = new Random(24);
+        PooledAVLTree<Integer, Integer> tree = new PooledAVLTree<>(4);
+        tree.setValidationPolicy(ValidationPolicy.FULL);
+        TreeMap<Integer, Integer> expected = new TreeMap<>();
+        for(int i = 0; i < 20_000; i++){
+            int key = random.nextInt(2000);
+            switch(random.nextInt(8)){
+                case 0: case 1:
+                    tree.delete(key);
+                    expected.remove(key);
+                    break;
+                case 2:
+                    tree.deleteMin();
+                    expected.pollFirstEntry();
+                    break;
+                case 3:
+                    tree.deleteMax();
+                    expected.pollLastEntry();
+                    break;
+                case 4:
+                    tree.put(key, null);
+                    expected.remove(key);
+                    break;
+                default:
+                    tree.put(key, i);
+                    expected.put(key, i);
+            }
+            if(i % 1000 == 0)
+                assertContent(expected, tree, random);
+        }
+        assertContent(expected, tree, random);
+
+        /* The released slots are reused, refilling the deleted keys does not grow the pool */
+        int capacity = tree.capacity();
+        for(int key = 0; key < 2000 && tree.size() < capacity; key++)
+            tree.put(key, key);
+        assertEquals(capacity, tree.capacity());
+        assertTrue(tree.validate().isValid());
+    }
+
+
+    /* The queries of an empty tree answer null or nothing */
+    @Test
+    public void emptyTreeAnswersNull(){
+        PooledAVLTree<Integer, Integer> tree = new PooledAVLTree<>(0);
+        assertTrue(tree.isEmpty());
+        assertEquals(-1, tree.height());
+        assertNull(tree.min());
+        assertNull(tree.max());
+        assertNull(tree.floor(1));
+        assertNull(tree.ceiling(1));
+        assertNull(tree.select(0));
+        assertEquals(0, tree.rank(1));
+        tree.deleteMin();
+        tree.deleteMax();
+        tree.delete(1);
+        assertFalse(tree.keysLevelOrder().iterator().hasNext());
+        assertFalse(tree.keysLevelOrderSeparated().iterator().hasNext());
+        ValidationReport report = tree.validate();
+        assertTrue(report.isValid());
+        assertEquals(0, report.checkedNodes());
+        assertEquals(-1, report.height());
+    }
+
+
+    private static void assertContent(TreeMap<Integer, Integer> expected, PooledAVLTree<Integer, Integer> tree, Random random){
+        ValidationReport report = tree.validate();
+        assertTrue(report.toString(), report.isValid());
+        assertEquals(expected.size(), report.checkedNodes());
+        assertEquals(expected.size(), tree.size());
+        assertEquals(expected.isEmpty(), tree.isEmpty());
+        List<Integer> keys = new ArrayList<>(expected.keySet());
+        assertEquals(keys, list(tree.keys()));
+        assertEquals(expected.size(), list(tree.keysLevelOrder()).size());
+        assertEquals(expected.isEmpty() ? null : expected.firstKey(), tree.min());
+        assertEquals(expected.isEmpty() ? null : expected.lastKey(), tree.max());
+        for(int i = 0; i < 200; i++){
+            int key = random.nextInt(2100) - 50;
+            assertEquals(expected.get(key), tree.get(key));
+            assertEquals(expected.containsKey(key), tree.contains(key));
+            assertEquals(expected.floorKey(key), tree.floor(key));
+            assertEquals(expected.ceilingKey(key), tree.ceiling(key));
+            assertEquals(expected.headMap(key).size(), tree.rank(key));
+            assertTrue(tree.validatePath(key).isValid());
+            int k = random.nextInt(keys.size() + 2) - 1;
+            assertEquals((k < 0 || k >= keys.size()) ? null : keys.get(k), tree.select(k));
+            int hi = key + random.nextInt(100);
+            assertEquals(new ArrayList<>(expected.subMap(key, true, hi, true).keySet()), tree.keysInRange(key, hi));
+        }
+    }
+}
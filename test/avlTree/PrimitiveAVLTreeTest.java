@@ -0,0 +1,270 @@
+package avlTree;
+
+import org.junit.Test;
+
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class PrimitiveAVLTreeTest {
+    /* Keys are drawn from a small range around 0 and the extremes of the key type */
+    private static final int RANGE = 4000;
+
+
+    @Test
+    public void intAVLTreeMatchesTreeMap(){
+        Random random = new Random(25);
+        IntAVLTree<Integer> tree = new IntAVLTree<>();
+        TreeMap<Integer, Integer> expected = new TreeMap<>();
+        for(int i = 0; i < 40_000; i++){
+            int key = intKey(random);
+            switch(random.nextInt(8)){
+                case 0: case 1:
+                    tree.delete(key);
+                    expected.remove(key);
+                    break;
+                case 2:
+                    if(!expected.isEmpty()){
+                        tree.deleteMin();
+                        expected.pollFirstEntry();
+                    }
+                    break;
+                case 3:
+                    if(!expected.isEmpty()){
+                        tree.deleteMax();
+                        expected.pollLastEntry();
+                    }
+                    break;
+                default:
+                    tree.put(key, i);
+                    expected.put(key, i);
+            }
+            if(i % 4000 == 0){
+                assertEquals(expected.size(), tree.size());
+                assertBalanced(expected.size(), tree.height());
+            }
+        }
+        assertArrayEquals(expected.keySet().stream().mapToInt(Integer::intValue).toArray(), tree.keys());
+        assertEquals((int) expected.firstKey(), tree.min());
+        assertEquals((int) expected.lastKey(), tree.max());
+        for(int i = 0; i < 2000; i++){
+            int key = intKey(random);
+            assertEquals(expected.get(key), tree.get(key));
+            assertEquals(expected.containsKey(key), tree.contains(key));
+            assertEquals(expected.headMap(key).size(), tree.rank(key));
+            Integer floor = expected.floorKey(key);
+            Integer ceiling = expected.ceilingKey(key);
+            assertEquals((floor == null) ? -7 : floor, tree.floor(key, -7));
+            assertEquals((ceiling == null) ? -7 : ceiling, tree.ceiling(key, -7));
+            assertKey(floor, () -> tree.floor(key));
+            assertKey(ceiling, () -> tree.ceiling(key));
+            int hi = key + random.nextInt(RANGE / 4);
+            if(hi >= key)
+                assertArrayEquals(expected.subMap(key, true, hi, true).keySet().stream().mapToInt(Integer::intValue).toArray(),
+                        tree.keysInRange(key, hi));
+        }
+        assertSelect(expected.size(), k -> (long) tree.select(k), expected.keySet().stream().mapToLong(Integer::longValue).toArray());
+        assertArrayEquals(new int[0], tree.keysInRange(1, 0));
+    }
+
+
+    @Test
+    public void longAVLTreeMatchesTreeMap(){
+        Random random = new Random(26);
+        LongAVLTree<Integer> tree = new LongAVLTree<>();
+        TreeMap<Long, Integer> expected = new TreeMap<>();
+        for(int i = 0; i < 40_000; i++){
+            long key = longKey(random);
+            switch(random.nextInt(8)){
+                case 0: case 1:
+                    tree.delete(key);
+                    expected.remove(key);
+                    break;
+                case 2:
+                    if(!expected.isEmpty()){
+                        tree.deleteMin();
+                        expected.pollFirstEntry();
+                    }
+                    break;
+                case 3:
+                    if(!expected.isEmpty()){
+                        tree.deleteMax();
+                        expected.pollLastEntry();
+                    }
+                    break;
+                default:
+                    tree.put(key, i);
+                    expected.put(key, i);
+            }
+            if(i % 4000 == 0){
+                assertEquals(expected.size(), tree.size());
+                assertBalanced(expected.size(), tree.height());
+            }
+        }
+        long[] keys = expected.keySet().stream().mapToLong(Long::longValue).toArray();
+        assertArrayEquals(keys, tree.keys());
+        assertEquals((long) expected.firstKey(), tree.min());
+        assertEquals((long) expected.lastKey(), tree.max());
+        for(int i = 0; i < 2000; i++){
+            long key = longKey(random);
+            assertEquals(expected.get(key), tree.get(key));
+            assertEquals(expected.containsKey(key), tree.contains(key));
+            assertEquals(expected.headMap(key).size(), tree.rank(key));
+            Long floor = expected.floorKey(key);
+            Long ceiling = expected.ceilingKey(key);
+            assertEquals((floor == null) ? Long.MIN_VALUE : floor, tree.floor(key, Long.MIN_VALUE));
+            assertEquals((ceiling == null) ? Long.MIN_VALUE : ceiling, tree.ceiling(key, Long.MIN_VALUE));
+            assertKey(floor, () -> tree.floor(key));
+            assertKey(ceiling, () -> tree.ceiling(key));
+            long hi = key + random.nextInt(RANGE / 4);
+            if(hi >= key)
+                assertArrayEquals(expected.subMap(key, true, hi, true).keySet().stream().mapToLong(Long::longValue).toArray(),
+                        tree.keysInRange(key, hi));
+        }
+        assertSelect(expected.size(), tree::select, keys);
+    }
+
+
+    @Test
+    public void intIntAVLTreeMatchesTreeMap(){
+        Random random = new Random(27);
+        IntIntAVLTree tree = new IntIntAVLTree(-1);
+        TreeMap<Integer, Integer> expected = new TreeMap<>();
+        for(int i = 0; i < 40_000; i++){
+            int key = intKey(random);
+            switch(random.nextInt(8)){
+                case 0: case 1:
+                    tree.delete(key);
+                    expected.remove(key);
+                    break;
+                case 2:
+                    if(!expected.isEmpty()){
+                        tree.deleteMin();
+                        expected.pollFirstEntry();
+                    }
+                    break;
+                case 3:
+                    if(!expected.isEmpty()){
+                        tree.deleteMax();
+                        expected.pollLastEntry();
+                    }
+                    break;
+                default:
+                    tree.put(key, i);
+                    expected.put(key, i);
+            }
+            if(i % 4000 == 0){
+                assertEquals(expected.size(), tree.size());
+                assertBalanced(expected.size(), tree.height());
+            }
+        }
+        assertArrayEquals(expected.keySet().stream().mapToInt(Integer::intValue).toArray(), tree.keys());
+        for(int i = 0; i < 2000; i++){
+            int key = intKey(random);
+            assertEquals((int) expected.getOrDefault(key, -1), tree.get(key));
+            assertEquals(expected.containsKey(key), tree.contains(key));
+            assertEquals(expected.headMap(key).size(), tree.rank(key));
+            Integer floor = expected.floorKey(key);
+            Integer ceiling = expected.ceilingKey(key);
+            assertEquals((floor == null) ? Integer.MAX_VALUE : floor, tree.floor(key, Integer.MAX_VALUE));
+            assertEquals((ceiling == null) ? Integer.MAX_VALUE : ceiling, tree.ceiling(key, Integer.MAX_VALUE));
+            assertKey(floor, () -> tree.floor(key));
+            assertKey(ceiling, () -> tree.ceiling(key));
+        }
+        assertSelect(expected.size(), k -> (long) tree.select(k), expected.keySet().stream().mapToLong(Integer::longValue).toArray());
+    }
+
+
+    /* The queries of an empty tree without a key to return throw, the sentinel variants return noKey */
+    @Test
+    public void emptyTreesThrowOrReturnNoKey(){
+        IntAVLTree<Integer> ints = new IntAVLTree<>();
+        LongAVLTree<Integer> longs = new LongAVLTree<>();
+        IntIntAVLTree intInts = new IntIntAVLTree(5);
+        assertEquals(3, ints.floor(1, 3));
+        assertEquals(3L, longs.ceiling(1, 3));
+        assertEquals(5, intInts.get(1));
+        assertEquals(0, intInts.rank(1));
+        Runnable[] calls = {
+                ints::min, ints::max, ints::deleteMin, () -> ints.floor(1), () -> ints.ceiling(1), () -> ints.select(0),
+                longs::min, longs::max, longs::deleteMax, () -> longs.floor(1), () -> longs.ceiling(1), () -> longs.select(0),
+                intInts::min, intInts::max, intInts::deleteMin, intInts::deleteMax, () -> intInts.select(-1)
+        };
+        for(int i = 0; i < calls.length; i++){
+            try{
+                calls[i].run();
+                fail("call " + i + " did not throw on an empty tree");
+            }catch(NoSuchElementException expected){
+                // no key
+            }
+        }
+    }
+
+
+    private static int intKey(Random random){
+        switch(random.nextInt(50)){
+            case 0: return Integer.MIN_VALUE + random.nextInt(3);
+            case 1: return Integer.MAX_VALUE - random.nextInt(3);
+            default: return random.nextInt(RANGE) - RANGE / 2;
+        }
+    }
+
+
+    private static long longKey(Random random){
+        switch(random.nextInt(50)){
+            case 0: return Long.MIN_VALUE + random.nextInt(3);
+            case 1: return Long.MAX_VALUE - random.nextInt(3);
+            default: return (random.nextInt(RANGE) - RANGE / 2) * (1L << 33);
+        }
+    }
+
+
+    /* The height of an AVL tree of n nodes is below 1.45 * log2(n + 2) */
+    private static void assertBalanced(int size, int height){
+        assertTrue("height " + height + " of " + size + " keys",
+                height < 1.45 * Math.log(size + 2) / Math.log(2));
+    }
+
+
+    private interface Query{
+        Number key();
+    }
+
+
+    /* Checks the key the query answers, a null expected key means it throws NoSuchElementException */
+    private static void assertKey(Number expected, Query query){
+        try{
+            Number key = query.key();
+            if(expected == null)
+                fail("query answered " + key + " instead of throwing");
+            assertEquals(expected.longValue(), key.longValue());
+        }catch(NoSuchElementException e){
+            if(expected != null)
+                fail("query threw instead of answering " + expected);
+        }
+    }
+
+
+    private interface Select{
+        long select(int k);
+    }
+
+
+    private static void assertSelect(int size, Select select, long[] keys){
+        for(int k = 0; k < size; k++)
+            assertEquals(keys[k], select.select(k));
+        for(int k : new int[]{-1, size}){
+            try{
+                select.select(k);
+                fail("select(" + k + ") did not throw");
+            }catch(NoSuchElementException expected){
+                // out of range
+            }
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package avlTree;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ShardedAVLTreeTest {
+
+    @Test
+    public void splitsAndMergesKeepTheContent(){
+        Random random = new Random(20);
+        ShardedAVLTree<Integer, Integer> tree = new ShardedAVLTree<>(16);
+        TreeMap<Integer, Integer> expected = new TreeMap<>();
+        for(int i = 0; i < 20_000; i++){
+            int key = random.nextInt(5000);
+            tree.put(key, i);
+            expected.put(key, i);
+        }
+        assertTrue(tree.shardCount() > 16);
+        assertContent(expected, tree);
+
+        /* Emptying most of the key space lets the cold shards merge again */
+        int shards = tree.shardCount();
+        for(int key = 0; key < 4900; key++){
+            tree.delete(key);
+            expected.remove(key);
+        }
+        tree.deleteMin();
+        expected.pollFirstEntry();
+        tree.deleteMax();
+        expected.pollLastEntry();
+        tree.rebalance();
+        assertTrue(tree.shardCount() < shards);
+        assertContent(expected, tree);
+    }
+
+
+    /** Writers own the odd keys of their residue class, readers check the even keys which are never
+     * written after the setup, scans check the order of the ranges, and one thread keeps rebalancing.
+     * The small shards make the writers split and merge them all the time
+     */
+    @Test
+    public void concurrentSplitsAndMergesKeepTheTreeConsistent() throws InterruptedException{
+        int writers = 4;
+        int range = 20_000;
+        ShardedAVLTree<Integer, Integer> tree = new ShardedAVLTree<>(64);
+        for(int i = 0; i < range; i += 2)
+            tree.put(i, i);
+
+        ConcurrentHashMap<Integer, Integer> expected = new ConcurrentHashMap<>();
+        AtomicBoolean stop = new AtomicBoolean();
+        AtomicInteger failures = new AtomicInteger();
+        List<Thread> threads = new ArrayList<>();
+        for(int t = 0; t < writers; t++){
+            int owner = t;
+            threads.add(new Thread(() -> {
+                Random random = new Random(owner);
+                for(int i = 0; i < 100_000; i++){
+                    /* Writes move between hot ranges, so shards grow, split, shrink and merge */
+                    int hotRange = (i / 10_000) % 4;
+                    int slot = hotRange * (range / 8) + random.nextInt(range / 8);
+                    int key = 2 * (slot - slot % writers + owner) + 1;
+                    if(key >= range)
+                        continue;
+                    if(random.nextInt(2) == 0){
+                        tree.delete(key);
+                        expected.remove(key);
+                    }else{
+                        tree.merge(key, 1, Integer::sum);
+                        expected.merge(key, 1, Integer::sum);
+                    }
+                }
+            }));
+        }
+        Thread reader = new Thread(() -> {
+            Random random = new Random(writers);
+            while(!stop.get()){
+                int key = 2 * random.nextInt(range / 2);
+                Integer value = tree.get(key);
+                Integer floor = tree.floor(key + 1);
+                Integer ceiling = tree.ceiling(key - 1);
+                if(value == null || value != key || floor == null || floor < key || ceiling == null || ceiling > key)
+                    failures.incrementAndGet();
+            }
+        });
+        Thread scanner = new Thread(() -> {
+            Random random = new Random(writers + 1);
+            while(!stop.get()){
+                int lo = 2 * random.nextInt(range / 2);
+                int hi = lo + 2 * random.nextInt(500);
+                List<Integer> keys = tree.keysInRange(lo, hi);
+                int evens = 0;
+                for(int i = 0; i < keys.size(); i++){
+                    if(i > 0 && keys.get(i - 1) >= keys.get(i))
+                        failures.incrementAndGet();
+                    if(keys.get(i) % 2 == 0)
+                        evens++;
+                }
+                if(evens != (Math.min(hi, range - 2) - lo) / 2 + 1)
+                    failures.incrementAndGet();
+            }
+        });
+        Thread rebalancer = new Thread(() -> {
+            while(!stop.get())
+                tree.rebalance();
+        });
+        for(Thread thread : threads)
+            thread.start();
+        reader.start();
+        scanner.start();
+        rebalancer.start();
+        for(Thread thread : threads)
+            thread.join();
+        stop.set(true);
+        reader.join();
+        scanner.join();
+        rebalancer.join();
+
+        assertEquals(0, failures.get());
+        TreeMap<Integer, Integer> all = new TreeMap<>(expected);
+        for(int i = 0; i < range; i += 2)
+            all.put(i, i);
+        assertContent(all, tree);
+        assertTrue(tree.shardCount() > 1);
+    }
+
+
+    private static void assertContent(TreeMap<Integer, Integer> expected, ShardedAVLTree<Integer, Integer> tree){
+        assertEquals(expected.size(), tree.size());
+        assertEquals(expected.isEmpty(), tree.isEmpty());
+        List<Integer> keys = new ArrayList<>(expected.keySet());
+        assertEquals(keys, tree.keysInRange(Integer.MIN_VALUE, Integer.MAX_VALUE));
+        List<Integer> scanned = new ArrayList<>();
+        for(Map.Entry<Integer, Integer> entry : tree.entries()){
+            scanned.add(entry.getKey());
+            assertEquals(expected.get(entry.getKey()), entry.getValue());
+        }
+        assertEquals(keys, scanned);
+        if(!keys.isEmpty()){
+            assertEquals(keys.get(0), tree.min());
+            assertEquals(keys.get(keys.size() - 1), tree.max());
+        }
+        Random random = new Random(21);
+        for(int i = 0; i < 500; i++){
+            int key = random.nextInt(22_000) - 1000;
+            assertEquals(expected.get(key), tree.get(key));
+            assertEquals(expected.floorKey(key), tree.floor(key));
+            assertEquals(expected.ceilingKey(key), tree.ceiling(key));
+            assertEquals(expected.headMap(key).size(), tree.rank(key));
+            int k = random.nextInt(keys.size() + 2) - 1;
+            assertEquals((k < 0 || k >= keys.size()) ? null : keys.get(k), tree.select(k));
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package avlTree;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static avlTree.AVLTreeSplitJoinTest.assertContent;
+import static avlTree.AVLTreeSplitJoinTest.randomTree;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TreeFileTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+
+    @Test
+    public void writtenTreeIsReadBack() throws IOException{
+        TreeMap<Integer, Integer> expected = new TreeMap<>();
+        AVLTree<Integer, Integer> tree = randomTree(new Random(22), 50_000, expected);
+        Path file = folder.newFile().toPath();
+        try(FileChannel channel = FileChannel.open(file, WRITE)){
+            tree.writeTo(channel, Codec.INT, Codec.INT);
+        }
+        try(FileChannel channel = FileChannel.open(file, READ)){
+            assertContent(expected, AVLTree.readFrom(channel, Codec.INT, Codec.INT));
+        }
+        try(FileChannel channel = FileChannel.open(file, READ)){
+            assertContent(expected, AVLTree.readMapped(channel, Codec.INT, Codec.INT));
+        }
+    }
+
+
+    /* A tree of a comparator is read back in its order by passing the comparator again */
+    @Test
+    public void treeOfAComparatorIsReadBackInItsOrder() throws IOException{
+        Comparator<Integer> order = Collections.reverseOrder();
+        Random random = new Random(23);
+        AVLTree<Integer, Integer> tree = new AVLTree<>(order);
+        TreeMap<Integer, Integer> expected = new TreeMap<>(order);
+        for(int i = 0; i < 20_000; i++){
+            int key = random.nextInt(50_000);
+            tree.put(key, i);
+            expected.put(key, i);
+        }
+        Path file = folder.newFile().toPath();
+        try(FileChannel channel = FileChannel.open(file, WRITE)){
+            tree.writeTo(channel, Codec.INT, Codec.INT);
+        }
+        for(boolean mapped : new boolean[]{false, true}){
+            try(FileChannel channel = FileChannel.open(file, READ)){
+                AVLTree<Integer, Integer> read = mapped ? AVLTree.readMapped(channel, Codec.INT, Codec.INT, order)
+                                                        : AVLTree.readFrom(channel, Codec.INT, Codec.INT, order);
+                assertSame(order, read.comparator());
+                assertContent(expected, read);
+            }
+        }
+        /* Read in the natural order the descending keys are a corrupt file */
+        assertCorrupt(file);
+    }
+
+
+    @Test
+    public void keysOutOfOrderAreACorruptFile() throws IOException{
+        assertCorrupt(write(1, 2, 3, 5, 4, 6));
+        assertCorrupt(write(1, 2, 2, 3));
+        assertCorrupt(write(9, 1));
+    }
+
+
+    /* Writes a file of the given keys in the given order, every value is its key */
+    private Path write(int... keys) throws IOException{
+        ByteBuffer buffer = ByteBuffer.allocate(16 + 8 * keys.length);
+        buffer.putInt(0x41564C54).putInt(1).putLong(keys.length);
+        for(int key : keys)
+            buffer.putInt(key).putInt(key);
+        buffer.flip();
+        Path file = folder.newFile().toPath();
+        try(FileChannel channel = FileChannel.open(file, CREATE, WRITE)){
+            channel.write(buffer);
+        }
+        return file;
+    }
+
+
+    private static void assertCorrupt(Path file) throws IOException{
+        for(boolean mapped : new boolean[]{false, true}){
+            try(FileChannel channel = FileChannel.open(file, READ)){
+                if(mapped)
+                    AVLTree.readMapped(channel, Codec.INT, Codec.INT);
+                else
+                    AVLTree.readFrom(channel, Codec.INT, Codec.INT);
+                fail("keys out of order were read");
+            }catch(IOException e){
+                assertTrue(e.getMessage(), e.getMessage().contains("ascending"));
+            }
+        }
+    }
+}
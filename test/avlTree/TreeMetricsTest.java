@@ -0,0 +1,112 @@
+package avlTree;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TreeMetricsTest {
+
+    @Test
+    public void rotationsOfADeleteAreChargedToTheDelete(){
+        AVLTree<Integer, Integer> tree = new AVLTree<>();
+        TreeMetrics metrics = tree.enableMetrics();
+        for(int key : new int[]{2, 1, 3, 4})
+            tree.put(key, key);
+        assertEquals(0, metrics.getRebalancedWrites());
+
+        tree.delete(1);
+        assertEquals(1, metrics.getSingleRotations());
+        assertEquals(1, metrics.getRebalancedWrites());
+
+        tree.put(10, 10);
+        assertEquals(1, metrics.getRebalancedWrites());
+        assertEquals(5, metrics.getPuts());
+        assertEquals(1, metrics.getDeletes());
+    }
+
+
+    @Test
+    public void deleteMinAndMaxDescendWithoutComparisons(){
+        AVLTree<Integer, Integer> tree = new AVLTree<>();
+        for(int i = 0; i < 100; i++)
+            tree.put(i, i);
+        TreeMetrics metrics = tree.enableMetrics();
+        tree.deleteMin();
+        tree.deleteMax();
+        assertEquals(2, metrics.getDeletes());
+        assertEquals(0, metrics.getComparisons());
+        assertTrue(metrics.getAverageDepth() >= 6);
+        assertNotEquals(metrics.getComparisonsPerOperation(), metrics.getAverageDepth(), 0.0);
+    }
+
+
+    @Test
+    public void rotatingDeleteMinIsARebalancedWrite(){
+        AVLTree<Integer, Integer> tree = new AVLTree<>();
+        TreeMetrics metrics = tree.enableMetrics();
+        for(int key : new int[]{2, 1, 3, 4})
+            tree.put(key, key);
+        tree.deleteMin();
+        assertEquals(1, metrics.getRebalancedWrites());
+    }
+
+
+    @Test
+    public void computeWhichRemovesTheKeyCountsAsDelete(){
+        AVLTree<Integer, Integer> tree = new AVLTree<>();
+        TreeMetrics metrics = tree.enableMetrics();
+        tree.put(1, 1);
+        tree.compute(1, (key, value) -> null);
+        assertEquals(1, metrics.getPuts());
+        assertEquals(1, metrics.getDeletes());
+        tree.merge(2, 2, Integer::sum);
+        assertEquals(2, metrics.getPuts());
+    }
+
+
+    @Test
+    public void bulkWritesAreRecorded(){
+        AVLTree<Integer, Integer> tree = new AVLTree<>();
+        TreeMetrics metrics = tree.enableMetrics();
+        Integer[] keys = new Integer[1000];
+        for(int i = 0; i < keys.length; i++)
+            keys[i] = 2 * i;
+        tree.putAll(keys, keys);
+        Integer[] more = {1, 3, 5};
+        tree.putAll(more, more);
+        tree.deleteRange(100, 200);
+        AVLTree<Integer, Integer> tail = tree.tailTree(1000);
+        tree.headTree(50);
+        assertEquals(5, metrics.getBulkWrites());
+        assertEquals(0, metrics.getPuts());
+        assertTrue(tail.size() > 0);
+
+        /* The rotations of the bulk writes are charged to them, a plain put after them starts from zero */
+        long rebalanced = metrics.getRebalancedWrites();
+        tree.put(Integer.MAX_VALUE - 1, 0);
+        tree.delete(Integer.MAX_VALUE - 1);
+        assertTrue(metrics.getRebalancedWrites() - rebalanced <= 2);
+        assertEquals(metrics.getRotationsPerWrite(),
+                (double) (metrics.getSingleRotations() + metrics.getDoubleRotations()) / 7, 1e-9);
+    }
+
+
+    @Test
+    public void averageDepthIsTrackedApartFromComparisons(){
+        AVLTree<Integer, Integer> tree = new AVLTree<>();
+        TreeMetrics metrics = tree.enableMetrics();
+        for(int i = 0; i < 1000; i++)
+            tree.put(i, i);
+        for(int i = 0; i < 1000; i++)
+            tree.get(i);
+        TreeMetrics.Snapshot snapshot = metrics.snapshot();
+        assertEquals(snapshot.comparisonsPerOperation, snapshot.averageDepth, 1e-9);
+        assertTrue(snapshot.maxDepth <= 1.45 * Math.log(1002) / Math.log(2) + 1);
+
+        tree.deleteMin();
+        snapshot = metrics.snapshot();
+        assertTrue(snapshot.averageDepth > snapshot.comparisonsPerOperation);
+    }
+}